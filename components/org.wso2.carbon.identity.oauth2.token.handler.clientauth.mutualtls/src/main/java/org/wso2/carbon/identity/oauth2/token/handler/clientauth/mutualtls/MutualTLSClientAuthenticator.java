@@ -22,14 +22,12 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
-import com.nimbusds.jose.util.DefaultResourceRetriever;
 import com.nimbusds.jose.util.Resource;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.oltu.oauth2.common.OAuth;
 import org.wso2.carbon.identity.application.common.model.ServiceProvider;
-import org.wso2.carbon.identity.core.util.IdentityUtil;
 import org.wso2.carbon.identity.oauth.common.OAuth2ErrorCodes;
 import org.wso2.carbon.identity.oauth.common.exception.InvalidOAuthClientException;
 import org.wso2.carbon.identity.oauth.dao.OAuthAppDO;
@@ -38,35 +36,44 @@ import org.wso2.carbon.identity.oauth2.bean.OAuthClientAuthnContext;
 import org.wso2.carbon.identity.oauth2.client.authentication.AbstractOAuthClientAuthenticator;
 import org.wso2.carbon.identity.oauth2.client.authentication.OAuthClientAuthnException;
 import org.wso2.carbon.identity.oauth2.model.ClientAuthenticationMethodModel;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.cache.JWKSThumbprintIndex;
 import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.cache.MutualTLSJWKSCache;
 import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.cache.MutualTLSJWKSCacheEntry;
 import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.cache.MutualTLSJWKSCacheKey;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.cache.MutualTLSJWKSLocalDirectory;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.cache.MutualTLSJWKSNearCache;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.cache.MutualTLSJWKSRefresher;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.filter.RegisteredCertificateFilter;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.throttle.FailedAuthenticationThrottler;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.CertificateThumbprint;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.ClientCertificateParser;
 import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.CommonConstants;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.LogRateLimiter;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSConfig;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSMetrics;
 import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSUtil;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.ThumbprintEngine;
 import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.security.Principal;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
-import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.util.Arrays;
-import java.util.Base64;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.http.HttpServletRequest;
-import javax.xml.bind.DatatypeConverter;
 
 import static org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSUtil.JAVAX_SERVLET_REQUEST_CERTIFICATE;
 import static org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSUtil.isJwksUriConfigured;
@@ -85,6 +92,10 @@ public class MutualTLSClientAuthenticator extends AbstractOAuthClientAuthenticat
     private static final String MTLS_CLIENT_AUTHENTICATOR_AUTH_METHOD = "tls_client_auth";
     private static final String MTLS_CLIENT_AUTHENTICATOR_DISPLAY_NAME = "Mutual TLS";
 
+    // Created on first use, since the identity configuration is not necessarily available at construction, and
+    // recreated when the configuration is reloaded.
+    private volatile CertificateHeaderReader certificateHeaderReader;
+
     /**
      * @param request                 HttpServletRequest which is the incoming request.
      * @param bodyParams              Body parameter map of the request.
@@ -97,9 +108,6 @@ public class MutualTLSClientAuthenticator extends AbstractOAuthClientAuthenticat
                                       OAuthClientAuthnContext oAuthClientAuthnContext)
             throws OAuthClientAuthnException {
 
-        X509Certificate registeredCert;
-        URL jwksUri;
-
         // This value is consumed by MTLS token binding to validate whether the client was authenticated using MTLS.
         oAuthClientAuthnContext.addParameter(CommonConstants.AUTHENTICATOR_TYPE_PARAM,
                 CommonConstants.AUTHENTICATOR_TYPE_MTLS);
@@ -119,62 +127,111 @@ public class MutualTLSClientAuthenticator extends AbstractOAuthClientAuthenticat
             }
         }
 
+        FailedAuthenticationThrottler throttler = FailedAuthenticationThrottler.getInstance();
+        String remoteAddress = null;
+        if (throttler.isEnabled()) {
+            remoteAddress = throttler.getSourceAddress(request);
+            if (throttler.isAddressThrottled(remoteAddress)) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Too many failed Mutual TLS authentications from the address of the request. "
+                            + "Rejecting the request of client: " + oAuthClientAuthnContext.getClientId());
+                }
+                return false;
+            }
+        }
+
+        X509Certificate requestCert = null;
         try {
             if (log.isDebugEnabled()) {
                 log.debug("Authenticating client : " + oAuthClientAuthnContext.getClientId() + " with public " +
                         "certificate.");
             }
-            X509Certificate requestCert;
-            Object certObject = request.getAttribute(JAVAX_SERVLET_REQUEST_CERTIFICATE);
-            Optional<X509Certificate> x509certObject = getCertificateFromHeader(request);
-
-            if (certObject instanceof X509Certificate[]) {
-                X509Certificate[] cert = (X509Certificate[]) certObject;
-                requestCert = cert[0];
-            } else if (certObject instanceof X509Certificate) {
-                requestCert = (X509Certificate) certObject;
-            } else if (x509certObject.isPresent()) {
-                requestCert = x509certObject.get();
-            } else {
+            requestCert = getRequestCertificate(request, oAuthClientAuthnContext);
+            if (requestCert == null) {
                 if (log.isDebugEnabled()) {
                     log.debug("Could not find client certificate in required format for client: " +
                             oAuthClientAuthnContext.getClientId());
                 }
                 return false;
             }
-
-            String tenantDomain = OAuth2Util.getTenantDomainOfOauthApp(oAuthClientAuthnContext.getClientId());
-            ServiceProvider serviceProvider = getServiceProvider(oAuthClientAuthnContext.getClientId(), tenantDomain);
-            OAuthAppDO oAuthAppdo = OAuth2Util.getAppInformationByClientId(
-                    oAuthClientAuthnContext.getClientId(), tenantDomain);
-            if (isJwksUriConfigured(serviceProvider)) {
+            if (throttler.isClientThrottled(oAuthClientAuthnContext.getClientId(), requestCert)) {
                 if (log.isDebugEnabled()) {
-                    log.debug("Public certificate not configured for Service Provider with client_id: "
-                            + oAuthClientAuthnContext.getClientId() + " of tenantDomain: " + tenantDomain + ". "
-                            + "Fetching the jwks endpoint for validating request certificate");
+                    log.debug("Too many failed Mutual TLS authentications with the presented certificate. "
+                            + "Rejecting the request of client: " + oAuthClientAuthnContext.getClientId());
                 }
-                jwksUri = getJWKSEndpointOfSP(serviceProvider, oAuthClientAuthnContext.getClientId());
-                return authenticate(jwksUri, requestCert, oAuthAppdo);
+                return false;
+            }
+            boolean authenticated = authenticateRequestCertificate(requestCert, oAuthClientAuthnContext);
+            if (authenticated) {
+                // Consumed by MTLS token binding, so that the certificate is not parsed and digested again.
+                oAuthClientAuthnContext.addParameter(CommonConstants.CLIENT_CERTIFICATE_THUMBPRINT_PARAM,
+                        ThumbprintEngine.getThumbprint(requestCert).getSha256Base64Url());
             } else {
-                if (log.isDebugEnabled()) {
-                    log.debug("Public certificate configured for Service Provider with client_id: "
-                            + oAuthClientAuthnContext.getClientId() + " of tenantDomain: " + tenantDomain
-                            + ". Using public certificate  for validating request certificate");
-                }
-                registeredCert = (X509Certificate) OAuth2Util
-                        .getX509CertOfOAuthApp(oAuthClientAuthnContext.getClientId(), tenantDomain);
-                return authenticate(registeredCert, requestCert, oAuthAppdo);
+                throttler.recordFailure(oAuthClientAuthnContext.getClientId(), requestCert, remoteAddress);
             }
+            return authenticated;
+        } catch (CertificateEncodingException e) {
+            throw new OAuthClientAuthnException(OAuth2ErrorCodes.SERVER_ERROR, "Error occurred while computing the " +
+                    "thumbprint of the certificate of client ID: " + oAuthClientAuthnContext.getClientId(), e);
         } catch (IdentityOAuth2Exception e) {
             throw new OAuthClientAuthnException(OAuth2ErrorCodes.SERVER_ERROR, "Error occurred while retrieving " +
                     "public certificate of client ID: " + oAuthClientAuthnContext.getClientId(), e);
         } catch (InvalidOAuthClientException e) {
+            throttler.recordFailure(oAuthClientAuthnContext.getClientId(), requestCert, remoteAddress);
             throw new OAuthClientAuthnException(OAuth2ErrorCodes.INVALID_CLIENT, "Error occurred while retrieving " +
                     "tenant domain for the client ID: " + oAuthClientAuthnContext.getClientId(), e);
         }
 
     }
 
+    /**
+     * Authenticate the client of the context with the certificate presented with the request.
+     *
+     * @param requestCert             Certificate presented with the request.
+     * @param oAuthClientAuthnContext OAuth client authentication context.
+     * @return Whether the authentication is successful or not.
+     * @throws IdentityOAuth2Exception     Error while retrieving the client metadata.
+     * @throws InvalidOAuthClientException Client id is not registered.
+     * @throws OAuthClientAuthnException   Error while validating the certificate.
+     */
+    private boolean authenticateRequestCertificate(X509Certificate requestCert,
+                                                   OAuthClientAuthnContext oAuthClientAuthnContext)
+            throws IdentityOAuth2Exception, InvalidOAuthClientException, OAuthClientAuthnException {
+
+        if (RegisteredCertificateFilter.getInstance().isDefinitelyUnregistered(
+                oAuthClientAuthnContext.getClientId(), requestCert)) {
+            if (log.isDebugEnabled()) {
+                log.debug("Client certificate is not registered for any service provider. Rejecting the "
+                        + "request of client: " + oAuthClientAuthnContext.getClientId());
+            }
+            return false;
+        }
+
+        String tenantDomain = OAuth2Util.getTenantDomainOfOauthApp(oAuthClientAuthnContext.getClientId());
+        ServiceProvider serviceProvider = getServiceProvider(oAuthClientAuthnContext.getClientId(), tenantDomain);
+        OAuthAppDO oAuthAppdo = OAuth2Util.getAppInformationByClientId(
+                oAuthClientAuthnContext.getClientId(), tenantDomain);
+        if (isJwksUriConfigured(serviceProvider)) {
+            if (log.isDebugEnabled()) {
+                log.debug("Public certificate not configured for Service Provider with client_id: "
+                        + oAuthClientAuthnContext.getClientId() + " of tenantDomain: " + tenantDomain + ". "
+                        + "Fetching the jwks endpoint for validating request certificate");
+            }
+            URL jwksUri = getJWKSEndpointOfSP(serviceProvider, oAuthClientAuthnContext.getClientId());
+            List<URL> mirrorUris = getJWKSMirrorsOfSP(serviceProvider, oAuthClientAuthnContext.getClientId());
+            return authenticate(jwksUri, mirrorUris, requestCert, oAuthAppdo);
+        } else {
+            if (log.isDebugEnabled()) {
+                log.debug("Public certificate configured for Service Provider with client_id: "
+                        + oAuthClientAuthnContext.getClientId() + " of tenantDomain: " + tenantDomain
+                        + ". Using public certificate  for validating request certificate");
+            }
+            X509Certificate registeredCert = (X509Certificate) OAuth2Util
+                    .getX509CertOfOAuthApp(oAuthClientAuthnContext.getClientId(), tenantDomain);
+            return authenticate(registeredCert, requestCert, oAuthAppdo);
+        }
+    }
+
     /**
      * Returns whether the incoming request can be authenticated or not using the given inputs.
      *
@@ -187,7 +244,7 @@ public class MutualTLSClientAuthenticator extends AbstractOAuthClientAuthenticat
     public boolean canAuthenticate(HttpServletRequest request, Map<String, List> bodyParams,
                                    OAuthClientAuthnContext context) {
 
-        String headerName = IdentityUtil.getProperty(CommonConstants.MTLS_AUTH_HEADER);
+        String headerName = MutualTLSConfig.getInstance().getClientCertificateHeader();
         if (clientIdExistsAsParam(bodyParams)) {
             // If the Private key JWT authenticator was hit previously, then the MTLS authenticator should
             // not authenticate the client.
@@ -205,10 +262,14 @@ public class MutualTLSClientAuthenticator extends AbstractOAuthClientAuthenticat
                 }
                 return true;
             } else {
-                if (StringUtils.isNotBlank(headerName) && getCertificateFromHeader(request).isPresent()) {
+                Optional<X509Certificate> headerCert = StringUtils.isNotBlank(headerName) ?
+                        getCertificateFromHeader(request) : Optional.empty();
+                if (headerCert.isPresent()) {
                     if (log.isDebugEnabled()) {
                         log.debug("A valid certificate was found from the request header hence returning true.");
                     }
+                    // Keep the parsed certificate, so that it is not parsed again during authentication.
+                    context.addParameter(CommonConstants.CLIENT_CERTIFICATE_PARAM, headerCert.get());
                     return true;
                 } else {
                     if (log.isDebugEnabled()) {
@@ -245,68 +306,77 @@ public class MutualTLSClientAuthenticator extends AbstractOAuthClientAuthenticat
         return oAuthClientAuthnContext.getClientId();
     }
 
+    /**
+     * Retrieve the client certificate of the request. The certificate set by the container during the TLS
+     * handshake is preferred over the certificate already parsed from the header by canAuthenticate, which is
+     * preferred over parsing the header.
+     *
+     * @param request                 HttpServletRequest which is the incoming request.
+     * @param oAuthClientAuthnContext OAuth client authentication context.
+     * @return Client certificate, or null if a valid certificate was not found.
+     */
+    private X509Certificate getRequestCertificate(HttpServletRequest request,
+                                                  OAuthClientAuthnContext oAuthClientAuthnContext) {
+
+        Object certObject = request.getAttribute(JAVAX_SERVLET_REQUEST_CERTIFICATE);
+        if (certObject instanceof X509Certificate[]) {
+            X509Certificate[] cert = (X509Certificate[]) certObject;
+            return cert[0];
+        } else if (certObject instanceof X509Certificate) {
+            return (X509Certificate) certObject;
+        }
+        Object parsedCert = oAuthClientAuthnContext.getParameter(CommonConstants.CLIENT_CERTIFICATE_PARAM);
+        if (parsedCert instanceof X509Certificate) {
+            return (X509Certificate) parsedCert;
+        }
+        return getCertificateFromHeader(request).orElse(null);
+    }
+
     private Optional<X509Certificate> getCertificateFromHeader(HttpServletRequest request) {
 
-        String headerName = IdentityUtil.getProperty(CommonConstants.MTLS_AUTH_HEADER);
+        MutualTLSConfig config = MutualTLSConfig.getInstance();
+        String headerName = config.getClientCertificateHeader();
+        if (StringUtils.isBlank(headerName)) {
+            return Optional.empty();
+        }
         String headerString = request.getHeader(headerName);
 
         if (StringUtils.isNotBlank(headerString)) {
             if (log.isDebugEnabled()) {
-                log.debug(String.format("%s header available in request as %s", headerName, headerString));
+                // The content is not logged, since the header is not yet checked against the length limit.
+                log.debug(String.format("%s header of length %d available in request", headerName,
+                        headerString.length()));
             }
 
+            CertificateHeaderReader headerReader = getCertificateHeaderReader(config);
             try {
-                return Optional.of(parseCertificate(headerString));
-            } catch (CertificateException | UnsupportedEncodingException e) {
-                log.error("Unable to parse the certificate sent in header", e);
+                return Optional.of(headerReader.parser.parse(headerString));
+            } catch (CertificateException e) {
+                if (headerReader.parseFailureLogLimiter.tryAcquire()) {
+                    long suppressed = headerReader.parseFailureLogLimiter.drainSuppressedCount();
+                    log.error(String.format("Unable to parse the certificate sent in header %s of length %d. %s. " +
+                            "Similar failures suppressed since the last report: %d", headerName,
+                            headerString.length(), e.getMessage(), suppressed));
+                } else {
+                    MutualTLSMetrics.increment(MutualTLSMetrics.Counter.CERT_PARSE_FAILURE_LOG_SUPPRESSED);
+                }
+                if (log.isDebugEnabled()) {
+                    log.debug("Unable to parse the certificate sent in header", e);
+                }
             }
         }
 
         return Optional.empty();
     }
 
-    /**
-     * Return Certificate for give Certificate Content.
-     *
-     * @param content Certificate Content
-     * @return X509Certificate X.509 certificate after decoding the certificate content.
-     * @throws CertificateException Certificate Exception.
-     */
-    private X509Certificate parseCertificate(String content) throws CertificateException, UnsupportedEncodingException {
+    private CertificateHeaderReader getCertificateHeaderReader(MutualTLSConfig config) {
 
-        if (log.isDebugEnabled()) {
-            log.debug("Trying to parse the client certificate: " + content);
+        CertificateHeaderReader headerReader = certificateHeaderReader;
+        if (headerReader == null || headerReader.config != config) {
+            headerReader = new CertificateHeaderReader(config);
+            certificateHeaderReader = headerReader;
         }
-        byte[] decoded;
-        String sanitizedCertificate = sanitizeCertificate(content);
-        // First we try to Base64 decode, if it is not decodable, we try to url decode first and then Base64 decode.
-        try {
-            decoded = Base64.getDecoder().decode(sanitizedCertificate);
-        } catch (IllegalArgumentException e) {
-            log.debug("Error while base64 decoding the certificate. Trying URL decoding first.");
-            String urlDecodedContent = URLDecoder.decode(content, StandardCharsets.UTF_8.name());
-            sanitizedCertificate = sanitizeCertificate(urlDecodedContent);
-            decoded = Base64.getDecoder().decode(sanitizedCertificate);
-        }
-
-        return (java.security.cert.X509Certificate) CertificateFactory.getInstance(CommonConstants.X509)
-                .generateCertificate(new ByteArrayInputStream(decoded));
-    }
-
-    /**
-     * Sanitize the certificate before decoding.
-     *
-     * @param content certificate as a string.
-     * @return sanitized certificate.
-     */
-    private String sanitizeCertificate(String content) {
-
-        String certContent = StringUtils.trim(content);
-        // Remove Certificate Headers.
-        String certBody = certContent.replaceAll(CommonConstants.BEGIN_CERT, StringUtils.EMPTY)
-                .replaceAll(CommonConstants.END_CERT, StringUtils.EMPTY);
-        // Removing all whitespaces and new lines.
-        return certBody.replaceAll("\\s", StringUtils.EMPTY).replace("\\n", StringUtils.EMPTY);
+        return headerReader;
     }
 
     private boolean clientIdExistsAsParam(Map<String, List> contentParam) {
@@ -340,9 +410,7 @@ public class MutualTLSClientAuthenticator extends AbstractOAuthClientAuthenticat
 
         boolean trustedCert = false;
         try {
-            String publicKeyOfRegisteredCert = MutualTLSUtil.getThumbPrint(registeredCert, null);
-            String publicKeyOfRequestCert = MutualTLSUtil.getThumbPrint(requestCert, null);
-            if (StringUtils.equals(publicKeyOfRegisteredCert, publicKeyOfRequestCert)) {
+            if (ThumbprintEngine.matches(registeredCert, requestCert)) {
                 if (log.isDebugEnabled()) {
                     log.debug("Client certificate thumbprint matched with the registered certificate thumbprint.");
                 }
@@ -373,29 +441,21 @@ public class MutualTLSClientAuthenticator extends AbstractOAuthClientAuthenticat
 
         boolean trustedCert = false;
         try {
-            String publicKeyOfRegisteredCert = MutualTLSUtil.getThumbPrint(registeredCert, null);
-            String publicKeyOfRequestCert = MutualTLSUtil.getThumbPrint(requestCert, null);
-            if (StringUtils.equals(publicKeyOfRegisteredCert, publicKeyOfRequestCert)) {
+            if (ThumbprintEngine.matches(registeredCert, requestCert)) {
                 if (log.isDebugEnabled()) {
                     log.debug(String.format("Client certificate thumbprint %s matched with the registered " +
-                            "certificate thumbprint %s.", publicKeyOfRequestCert, publicKeyOfRegisteredCert));
+                            "certificate thumbprint.", ThumbprintEngine.getThumbprint(requestCert)));
                 }
-                Principal requestCertificateSubjectDN = requestCert.getSubjectDN();
-                if (StringUtils.isNotEmpty(oAuthAppDO.getTlsClientAuthSubjectDN())) {
-                    if (requestCertificateSubjectDN != null &&
-                            !oAuthAppDO.getTlsClientAuthSubjectDN().equals(requestCertificateSubjectDN.toString())) {
-                        log.debug(String.format("Client certificate subjectDN %s does not match with the registered " +
-                                        "certificate subjectDN %s.", requestCertificateSubjectDN,
-                                oAuthAppDO.getTlsClientAuthSubjectDN()));
-                        return false;
-                    }
+                if (!isSubjectDNMatched(requestCert, oAuthAppDO)) {
+                    return false;
                 }
                 trustedCert = true;
             } else {
                 if (log.isDebugEnabled()) {
                     log.debug(String.format("Client Authentication failed. Client certificate thumbprint " +
                                     "%s did not match with the registered certificate thumbprint %s.",
-                            publicKeyOfRequestCert, publicKeyOfRegisteredCert));
+                            ThumbprintEngine.getThumbprint(requestCert),
+                            registeredCert == null ? null : ThumbprintEngine.getThumbprint(registeredCert)));
                 }
             }
         } catch (CertificateEncodingException e) {
@@ -410,59 +470,89 @@ public class MutualTLSClientAuthenticator extends AbstractOAuthClientAuthenticat
      * certificate against the public key of the certificate presented at TLS hand shake for authentication.
      *
      * @param jwksUri     JWKS URI registered at service provider configuration.
+     * @param mirrorUris  Mirrors of the JWKS URI registered at service provider configuration.
      * @param requestCert X.509 certificate presented to server during TLS hand shake.
      * @return Whether the client was successfully authenticated or not.
      */
-    private boolean authenticate(URL jwksUri, X509Certificate requestCert, OAuthAppDO oAuthAppDO)
-            throws OAuthClientAuthnException {
+    private boolean authenticate(URL jwksUri, List<URL> mirrorUris, X509Certificate requestCert,
+                                 OAuthAppDO oAuthAppDO) throws OAuthClientAuthnException {
 
         try {
-            return isAuthenticated(getResourceContent(jwksUri), requestCert, oAuthAppDO);
+            if (isAuthenticated(getThumbprintIndex(jwksUri, mirrorUris), requestCert, oAuthAppDO)) {
+                return true;
+            }
+            // The client may have added a key to its JWK Set after it was cached.
+            JWKSThumbprintIndex refreshedIndex = refreshThumbprintIndex(jwksUri, mirrorUris);
+            return refreshedIndex != null && isAuthenticated(refreshedIndex, requestCert, oAuthAppDO);
         } catch (IOException e) {
             throw new OAuthClientAuthnException(OAuth2ErrorCodes.SERVER_ERROR,
                     "Error occurred while opening HTTP connection for the JWKS URL : " + jwksUri, e);
-        } catch (CertificateException e) {
-            throw new OAuthClientAuthnException(OAuth2ErrorCodes.SERVER_ERROR,
-                    "Error occurred while parsing certificate retrieved from JWKS endpoint ", e);
+        } catch (CertificateEncodingException e) {
+            throw new OAuthClientAuthnException(OAuth2ErrorCodes.INVALID_GRANT, "Error occurred while " +
+                    "generating certificate thumbprint. Error: " + e.getMessage(), e);
         }
     }
 
     /**
-     * Authenticate the client by iterating through the JSON Array and matching each attribute.
+     * Authenticate the client by looking up the thumbprints of the certificate presented at TLS hand shake in the
+     * thumbprint index of the JWK Set. The certificate is hashed once, whatever the number of keys.
      *
-     * @param resourceArray Json Array retrieved from JWKS endpoint
-     * @param requestCert   X.509 certificate presented to server during TLS hand shake.
+     * @param thumbprintIndex Thumbprint index of the JWK Set retrieved from the JWKS endpoint.
+     * @param requestCert     X.509 certificate presented to server during TLS hand shake.
      * @return Whether the client was successfully authenticated or not.
      */
-    private boolean isAuthenticated(JsonArray resourceArray, X509Certificate requestCert, OAuthAppDO oAuthAppDO)
-            throws CertificateException, OAuthClientAuthnException {
+    private boolean isAuthenticated(JWKSThumbprintIndex thumbprintIndex, X509Certificate requestCert,
+                                    OAuthAppDO oAuthAppDO) throws CertificateEncodingException {
 
-        for (JsonElement jsonElement : resourceArray) {
-            JsonElement attributeValue = jsonElement.getAsJsonObject().get(CommonConstants.X5T);
-            if (attributeValue != null && attributeValue.getAsString().equals(MutualTLSUtil.getThumbPrint(requestCert,
-                    null))) {
-                if (log.isDebugEnabled()) {
-                    log.debug("Client authentication successful using the attribute: " + CommonConstants.X5T);
-                }
-                return true;
+        if (thumbprintIndex == null) {
+            return false;
+        }
+        CertificateThumbprint thumbprint = ThumbprintEngine.getThumbprint(requestCert);
+        // The x5t member is matched as defined by RFC 7517 and in the thumbprint format of the OAuth2 component.
+        if (thumbprintIndex.hasX5t() && (thumbprintIndex.containsX5t(thumbprint.getSha1Base64Url())
+                || thumbprintIndex.containsX5t(MutualTLSUtil.getThumbPrint(requestCert, null)))) {
+            if (log.isDebugEnabled()) {
+                log.debug("Client authentication successful using the attribute: " + CommonConstants.X5T);
             }
-            attributeValue = jsonElement.getAsJsonObject().get(CommonConstants.X5C);
-
-            if (attributeValue != null) {
-                CertificateFactory factory = CertificateFactory.getInstance(CommonConstants.X509);
-                X509Certificate cert = (X509Certificate) factory.generateCertificate(
-                        new ByteArrayInputStream(DatatypeConverter.parseBase64Binary(attributeValue.getAsString())));
-                if (authenticate(cert, requestCert, oAuthAppDO)) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Client authentication successful using the attribute: " + CommonConstants.X5C);
-                    }
-                    return true;
-                }
+            return true;
+        }
+        if (thumbprintIndex.containsX5tS256(thumbprint)) {
+            if (log.isDebugEnabled()) {
+                log.debug("Client authentication successful using the attribute: " + CommonConstants.X5T_S256);
             }
+            return true;
+        }
+        if (thumbprintIndex.containsCertificate(thumbprint) && isSubjectDNMatched(requestCert, oAuthAppDO)) {
+            if (log.isDebugEnabled()) {
+                log.debug("Client authentication successful using the attribute: " + CommonConstants.X5C);
+            }
+            return true;
         }
         return false;
     }
 
+    /**
+     * Check the subject DN of the certificate presented at TLS hand shake against the subject DN registered for the
+     * client, if any.
+     *
+     * @param requestCert X.509 certificate presented to server during TLS hand shake.
+     * @return Whether the subject DN is not registered or matches the certificate.
+     */
+    private static boolean isSubjectDNMatched(X509Certificate requestCert, OAuthAppDO oAuthAppDO) {
+
+        Principal requestCertificateSubjectDN = requestCert.getSubjectDN();
+        if (StringUtils.isNotEmpty(oAuthAppDO.getTlsClientAuthSubjectDN())) {
+            if (requestCertificateSubjectDN != null &&
+                    !oAuthAppDO.getTlsClientAuthSubjectDN().equals(requestCertificateSubjectDN.toString())) {
+                log.debug(String.format("Client certificate subjectDN %s does not match with the registered " +
+                                "certificate subjectDN %s.", requestCertificateSubjectDN,
+                        oAuthAppDO.getTlsClientAuthSubjectDN()));
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Fetch JWK Set as a String from JWKS endpoint.
      *
@@ -471,51 +561,158 @@ public class MutualTLSClientAuthenticator extends AbstractOAuthClientAuthenticat
     public JsonArray getResourceContent(URL jwksUri) throws IOException {
 
         if (jwksUri != null) {
+            MutualTLSJWKSCacheEntry jwks = getJWKS(jwksUri, Collections.emptyList());
+            return jwks == null ? null : parseKeys(jwks.getValue());
+        }
 
-            Resource resource = null;
-            MutualTLSJWKSCacheKey mutualTLSJWKSCacheKey = new MutualTLSJWKSCacheKey(jwksUri.toString());
-            MutualTLSJWKSCacheEntry mutualTLSJWKSCacheEntry = MutualTLSJWKSCache.getInstance()
-                    .getValueFromCache(mutualTLSJWKSCacheKey);
-            if (mutualTLSJWKSCacheEntry != null) {
-                if (log.isDebugEnabled()) {
-                    log.debug("Retrieving JWKS for " + jwksUri.toString() + " from cache.");
-                }
-                resource = mutualTLSJWKSCacheEntry.getValue();
-                if (log.isDebugEnabled() && resource != null) {
-                    log.debug("Cache hit for " + jwksUri.toString());
-                }
-            }
-            if (resource == null) {
+        return null;
+    }
 
-                DefaultResourceRetriever defaultResourceRetriever;
-                defaultResourceRetriever = new DefaultResourceRetriever(
-                        MutualTLSUtil.readHTTPConnectionConfigValue(CommonConstants.HTTP_CONNECTION_TIMEOUT_XPATH),
-                        MutualTLSUtil.readHTTPConnectionConfigValue(CommonConstants.HTTP_READ_TIMEOUT_XPATH));
-                if (log.isDebugEnabled()) {
-                    log.debug("Fetching JWKS from remote endpoint. JWKS URI: " + jwksUri);
-                }
-                resource = defaultResourceRetriever.retrieveResource(jwksUri);
-                MutualTLSJWKSCache.getInstance()
-                        .addToCache(mutualTLSJWKSCacheKey, new MutualTLSJWKSCacheEntry(resource));
+    /**
+     * Get the thumbprint index of the JWK Set of a JWKS endpoint.
+     *
+     * @param jwksUri JWKS Endpoint URL
+     * @return Thumbprint index of the JWK Set.
+     */
+    protected JWKSThumbprintIndex getThumbprintIndex(URL jwksUri) throws IOException {
+
+        return getThumbprintIndex(jwksUri, Collections.emptyList());
+    }
+
+    /**
+     * Get the thumbprint index of the JWK Set of a JWKS endpoint that may be retrieved from its mirrors.
+     *
+     * @param jwksUri    JWKS Endpoint URL
+     * @param mirrorUris Mirrors of the JWKS endpoint, or an empty list if there are none.
+     * @return Thumbprint index of the JWK Set.
+     */
+    protected JWKSThumbprintIndex getThumbprintIndex(URL jwksUri, List<URL> mirrorUris) throws IOException {
+
+        if (jwksUri == null) {
+            return null;
+        }
+        MutualTLSJWKSCacheEntry jwks = getJWKS(jwksUri, mirrorUris);
+        return jwks == null ? null : jwks.getThumbprintIndex();
+    }
+
+    /**
+     * Fetch the JWK Set again after the client certificate did not match the cached JWK Set. The JWK Set is only
+     * fetched if refreshing on a miss is enabled and the JWKS endpoint was not fetched within the cooldown period.
+     *
+     * @param jwksUri JWKS Endpoint URL
+     * @return Thumbprint index of the fetched JWK Set, or null if the JWK Set was not fetched.
+     */
+    protected JWKSThumbprintIndex refreshThumbprintIndex(URL jwksUri) {
+
+        return refreshThumbprintIndex(jwksUri, Collections.emptyList());
+    }
+
+    /**
+     * Fetch the JWK Set of a JWKS endpoint that may be retrieved from its mirrors again, after the client certificate
+     * did not match the cached JWK Set.
+     *
+     * @param jwksUri    JWKS Endpoint URL
+     * @param mirrorUris Mirrors of the JWKS endpoint, or an empty list if there are none.
+     * @return Thumbprint index of the fetched JWK Set, or null if the JWK Set was not fetched.
+     */
+    protected JWKSThumbprintIndex refreshThumbprintIndex(URL jwksUri, List<URL> mirrorUris) {
+
+        MutualTLSConfig config = MutualTLSConfig.getInstance();
+        if (jwksUri == null || !config.isJwksRefreshOnMissEnabled()) {
+            return null;
+        }
+        if (MutualTLSJWKSLocalDirectory.getInstance().get(jwksUri) != null
+                || MutualTLSJWKSLocalDirectory.isFileUri(jwksUri)) {
+            // Local JWKS files are reloaded as soon as they change.
+            return null;
+        }
+        MutualTLSJWKSCacheEntry jwks;
+        try {
+            jwks = MutualTLSJWKSRefresher.getInstance().refresh(jwksUri, mirrorUris,
+                    TimeUnit.SECONDS.toMillis(config.getJwksRefreshOnMissCooldown()));
+        } catch (IOException e) {
+            // The cached JWK Set is still valid, so a failed refresh is treated as a mismatch.
+            log.warn("Error while refreshing the JWKS of " + jwksUri + " after the client certificate did not " +
+                    "match the cached JWKS.", e);
+            return null;
+        }
+        if (jwks == null) {
+            return null;
+        }
+        MutualTLSMetrics.increment(MutualTLSMetrics.Counter.JWKS_REFRESHED_ON_MISS);
+        return jwks.getThumbprintIndex();
+    }
+
+    /**
+     * Get the JWK Set of a JWKS endpoint from the JWKS local directory, from the near cache, from the JWKS cache, or
+     * else from the endpoint. A JWK Set that may be retrieved from mirrors is cached against the endpoint along with
+     * the mirrors.
+     *
+     * @param jwksUri    JWKS Endpoint URL
+     * @param mirrorUris Mirrors of the JWKS endpoint, or an empty list if there are none.
+     * @return JWK Set with its thumbprint index.
+     */
+    private MutualTLSJWKSCacheEntry getJWKS(URL jwksUri, List<URL> mirrorUris) throws IOException {
+
+        MutualTLSJWKSCacheEntry localJwks = MutualTLSJWKSLocalDirectory.getInstance().get(jwksUri);
+        if (localJwks != null) {
+            if (log.isDebugEnabled()) {
+                log.debug("Retrieving JWKS for " + jwksUri + " from the JWKS local directory.");
             }
-            if (resource != null) {
-                JsonParser jp = new JsonParser();
-                try (InputStream inputStream = new ByteArrayInputStream(
-                        resource.getContent().getBytes(StandardCharsets.UTF_8));
-                     InputStreamReader inputStreamReader = new InputStreamReader(inputStream)) {
-                    JsonElement root = jp.parse(inputStreamReader);
-                    JsonObject rootObj = root.getAsJsonObject();
-                    JsonElement keys = rootObj.get(CommonConstants.KEYS);
-                    if (keys != null) {
-                        return keys.getAsJsonArray();
-                    } else {
-                        return null;
-                    }
-                }
+            return localJwks;
+        }
+        if (MutualTLSJWKSLocalDirectory.isFileUri(jwksUri)) {
+            throw new IOException("JWKS file: " + jwksUri + " is not in the JWKS local directory.");
+        }
+        MutualTLSJWKSCacheKey mutualTLSJWKSCacheKey = new MutualTLSJWKSCacheKey(jwksUri, mirrorUris);
+        String jwksUriString = mutualTLSJWKSCacheKey.getJWKSCacheKey();
+        MutualTLSJWKSNearCache nearCache = MutualTLSJWKSNearCache.getInstance();
+        MutualTLSJWKSCacheEntry mutualTLSJWKSCacheEntry = nearCache.get(jwksUriString);
+        if (mutualTLSJWKSCacheEntry != null) {
+            if (log.isDebugEnabled()) {
+                log.debug("Retrieving JWKS for " + jwksUriString + " from the near cache.");
             }
+            return mutualTLSJWKSCacheEntry;
         }
+        long nearCacheStamp = nearCache.getStamp();
+        mutualTLSJWKSCacheEntry = MutualTLSJWKSCache.getInstance().getValueFromCache(mutualTLSJWKSCacheKey);
+        if (mutualTLSJWKSCacheEntry != null && mutualTLSJWKSCacheEntry.getValue() != null) {
+            if (log.isDebugEnabled()) {
+                log.debug("Cache hit for " + jwksUriString);
+            }
+        } else {
+            mutualTLSJWKSCacheEntry = MutualTLSJWKSRefresher.getInstance().fetch(jwksUri, mirrorUris);
+            // Adding to the JWKS cache invalidates the near cache entry, so the stamp is taken afterwards.
+            nearCacheStamp = nearCache.getStamp();
+        }
+        nearCache.put(jwksUriString, mutualTLSJWKSCacheEntry, nearCacheStamp);
+        return mutualTLSJWKSCacheEntry;
+    }
 
-        return null;
+    /**
+     * Parse the keys of a JWK Set.
+     *
+     * @param resource JWK Set retrieved from the JWKS endpoint.
+     * @return Keys of the JWK Set, or null if there are none.
+     */
+    private static JsonArray parseKeys(Resource resource) throws IOException {
+
+        if (resource == null) {
+            return null;
+        }
+        JsonParser jp = new JsonParser();
+        try (InputStream inputStream = new ByteArrayInputStream(
+                resource.getContent().getBytes(StandardCharsets.UTF_8));
+             InputStreamReader inputStreamReader = new InputStreamReader(inputStream)) {
+            JsonElement root = jp.parse(inputStreamReader);
+            JsonObject rootObj = root.getAsJsonObject();
+            JsonElement keys = rootObj.get(CommonConstants.KEYS);
+            if (keys != null) {
+                return keys.getAsJsonArray();
+            } else {
+                return null;
+            }
+        }
     }
 
     /**
@@ -544,6 +741,18 @@ public class MutualTLSClientAuthenticator extends AbstractOAuthClientAuthenticat
         return url;
     }
 
+    /**
+     * Fetch the mirrors of the JWKS endpoint using client ID. Mirrors that are not valid URLs are ignored.
+     *
+     * @param serviceProvider Service Provider
+     * @param clientID        Client ID
+     * @return Mirrors of the JWKS endpoint in the order they are tried.
+     */
+    public List<URL> getJWKSMirrorsOfSP(ServiceProvider serviceProvider, String clientID) {
+
+        return MutualTLSUtil.getJWKSMirrors(serviceProvider);
+    }
+
     @Override
     public String getName() {
 
@@ -561,5 +770,22 @@ public class MutualTLSClientAuthenticator extends AbstractOAuthClientAuthenticat
         return Arrays.asList(new ClientAuthenticationMethodModel(MTLS_CLIENT_AUTHENTICATOR_AUTH_METHOD,
                 MTLS_CLIENT_AUTHENTICATOR_DISPLAY_NAME));
     }
-}
 
+    /**
+     * Certificate parser and parse failure log limiter created from a configuration snapshot.
+     */
+    private static class CertificateHeaderReader {
+
+        private final MutualTLSConfig config;
+        private final ClientCertificateParser parser;
+        private final LogRateLimiter parseFailureLogLimiter;
+
+        CertificateHeaderReader(MutualTLSConfig config) {
+
+            this.config = config;
+            this.parser = new ClientCertificateParser(config.getMaxCertificateHeaderLength(),
+                    config.getMaxCertificateLength());
+            this.parseFailureLogLimiter = new LogRateLimiter(config.getCertificateParseFailureLogInterval());
+        }
+    }
+}
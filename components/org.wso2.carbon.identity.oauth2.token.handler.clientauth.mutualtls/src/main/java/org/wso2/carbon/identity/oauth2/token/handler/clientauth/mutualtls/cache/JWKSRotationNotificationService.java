@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.cache;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSConfig;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSMetrics;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Accepts notices that the keys published at a JWKS URI were rotated, and refreshes the cached JWK Set of the URI
+ * right away instead of waiting for it to expire. This allows long cache timeouts for clients that announce their
+ * key rotations.
+ * <p>
+ * Refreshes are coalesced with any fetch of the URI in progress, and limited per URI by the configured minimum
+ * interval. Only JWK Sets that are cached are refreshed, so a notice can not make the server fetch an arbitrary URI.
+ * A JWKS URI registered with mirrors is cached against the URI along with its mirrors, so the JWK Set of each list of
+ * mirrors the URI was fetched with is refreshed as well.
+ * The service is registered as an OSGi service. Authenticating the notifying party is left to the component exposing
+ * the service.
+ */
+public class JWKSRotationNotificationService {
+
+    private static final Log log = LogFactory.getLog(JWKSRotationNotificationService.class);
+
+    private final MutualTLSJWKSRefresher refresher;
+
+    public JWKSRotationNotificationService() {
+
+        this(MutualTLSJWKSRefresher.getInstance());
+    }
+
+    JWKSRotationNotificationService(MutualTLSJWKSRefresher refresher) {
+
+        this.refresher = refresher;
+    }
+
+    /**
+     * Refresh the cached JWK Set of a JWKS URI whose keys were rotated.
+     *
+     * @param jwksUri JWKS URI.
+     * @return Whether a JWK Set of the URI was refreshed. A JWK Set is not refreshed if it is not cached, or if it was
+     * fetched less than the configured minimum interval ago.
+     * @throws IdentityOAuth2Exception If the JWKS URI is not valid, or the JWK Set could not be fetched. The cached
+     *                                 JWK Set is kept when the fetch fails.
+     */
+    public boolean notifyRotation(String jwksUri) throws IdentityOAuth2Exception {
+
+        if (StringUtils.isBlank(jwksUri)) {
+            throw new IdentityOAuth2Exception("JWKS URI is required to refresh the JWKS.");
+        }
+        URL url;
+        try {
+            url = new URL(jwksUri);
+        } catch (MalformedURLException e) {
+            throw new IdentityOAuth2Exception("Invalid JWKS URI: " + jwksUri, e);
+        }
+        List<List<URL>> mirrorSets = new ArrayList<>();
+        mirrorSets.add(Collections.emptyList());
+        mirrorSets.addAll(refresher.getMirrorSets(url));
+        long minInterval = TimeUnit.SECONDS.toMillis(MutualTLSConfig.getInstance().getJwksRotationNoticeMinInterval());
+        boolean cached = false;
+        boolean refreshed = false;
+        IOException error = null;
+        for (List<URL> mirrorUris : mirrorSets) {
+            if (MutualTLSJWKSCache.getInstance().getValueFromCache(new MutualTLSJWKSCacheKey(url, mirrorUris))
+                    == null) {
+                continue;
+            }
+            cached = true;
+            try {
+                refreshed |= refresher.refresh(url, mirrorUris, minInterval) != null;
+            } catch (IOException e) {
+                // The JWK Sets of the other mirrors are still refreshed.
+                error = e;
+            }
+        }
+        if (!cached && log.isDebugEnabled()) {
+            log.debug("Ignoring the rotation notice of JWKS URI: " + jwksUri + " as its JWKS is not cached.");
+        }
+        if (error != null) {
+            throw new IdentityOAuth2Exception("Error while refreshing the JWKS of: " + jwksUri, error);
+        }
+        if (!refreshed) {
+            return false;
+        }
+        MutualTLSMetrics.increment(MutualTLSMetrics.Counter.JWKS_ROTATION_REFRESHED);
+        if (log.isDebugEnabled()) {
+            log.debug("Refreshed the JWKS of: " + jwksUri + " on a rotation notice.");
+        }
+        return true;
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.cache;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.CertificateThumbprint;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.CommonConstants;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSMetrics;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.ThumbprintEngine;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Thumbprints of the keys of a JWK Set, parsed once when the JWK Set is fetched and shipped with the
+ * {@link MutualTLSJWKSCacheEntry}, so that other nodes do not decode the certificates of the JWK Set again.
+ * <p>
+ * The x5t and x5t#S256 members of the keys, and the Base64url encoded SHA-256 digest of the first certificate of the
+ * x5c members, are kept in a single map from the thumbprint to the members it was taken from. A certificate is looked
+ * up with the digests of its {@link CertificateThumbprint}, so it is hashed once per algorithm whatever the number of
+ * keys. The index is immutable.
+ * <p>
+ * The node that builds an index also keeps the thumbprints of the x5c certificates keyed by their encoded form, so
+ * that an index built for a refreshed JWK Set only decodes and hashes the certificates that were added or changed.
+ */
+public final class JWKSThumbprintIndex implements Serializable {
+
+    private static final long serialVersionUID = 4410935468301573267L;
+    private static final Log log = LogFactory.getLog(JWKSThumbprintIndex.class);
+    private static final Base64.Encoder BASE64_URL_ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final int MEMBER_X5T = 1;
+    private static final int MEMBER_X5T_S256 = 1 << 1;
+    private static final int MEMBER_X5C = 1 << 2;
+    // Longer values are not thumbprints of any supported algorithm, and are not indexed.
+    private static final int MAX_THUMBPRINT_LENGTH = 256;
+    private static final JWKSThumbprintIndex EMPTY =
+            new JWKSThumbprintIndex(new HashMap<>(), 0, false, Collections.emptyMap());
+
+    private final HashMap<String, Integer> thumbprints;
+    private final int size;
+    private final boolean hasX5t;
+    // Not replicated, as it is only used to build the index of the next version of the JWK Set on this node.
+    private final transient Map<String, String> certificateThumbprints;
+
+    private JWKSThumbprintIndex(HashMap<String, Integer> thumbprints, int size, boolean hasX5t,
+                                Map<String, String> certificateThumbprints) {
+
+        this.thumbprints = thumbprints;
+        this.size = size;
+        this.hasX5t = hasX5t;
+        this.certificateThumbprints = certificateThumbprints;
+    }
+
+    /**
+     * Build the index of a JWK Set. Keys without the x5t, x5t#S256 or x5c members, and certificates that can not be
+     * decoded, are counted in the index without the corresponding thumbprint.
+     *
+     * @param content JWK Set.
+     * @return Index of the JWK Set, which is empty if the content is not a JWK Set.
+     */
+    public static JWKSThumbprintIndex build(String content) {
+
+        return build(content, null);
+    }
+
+    /**
+     * Build the index of a JWK Set, reusing the thumbprints of the x5c certificates that are also in the previous
+     * version of the JWK Set.
+     *
+     * @param content  JWK Set.
+     * @param previous Index of the previous version of the JWK Set, or null if there is none.
+     * @return Index of the JWK Set, which is empty if the content is not a JWK Set.
+     */
+    public static JWKSThumbprintIndex build(String content, JWKSThumbprintIndex previous) {
+
+        if (content == null) {
+            return EMPTY;
+        }
+        JsonElement keys;
+        try {
+            JsonElement root = new JsonParser().parse(content);
+            if (root == null || !root.isJsonObject()) {
+                return EMPTY;
+            }
+            keys = root.getAsJsonObject().get(CommonConstants.KEYS);
+        } catch (JsonParseException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("JWKS content is not valid JSON. The thumbprint index is left empty.", e);
+            }
+            return EMPTY;
+        }
+        if (keys == null || !keys.isJsonArray()) {
+            return EMPTY;
+        }
+        Map<String, String> previousThumbprints = previous == null ? null : previous.certificateThumbprints;
+        HashMap<String, Integer> thumbprints = new HashMap<>();
+        Map<String, String> certificateThumbprints = new HashMap<>();
+        int size = 0;
+        boolean hasX5t = false;
+        int reused = 0;
+        for (JsonElement key : keys.getAsJsonArray()) {
+            if (!key.isJsonObject()) {
+                continue;
+            }
+            size++;
+            hasX5t |= add(thumbprints, getString(key.getAsJsonObject().get(CommonConstants.X5T)), MEMBER_X5T);
+            add(thumbprints, getString(key.getAsJsonObject().get(CommonConstants.X5T_S256)), MEMBER_X5T_S256);
+            String certificate = getCertificate(key.getAsJsonObject().get(CommonConstants.X5C));
+            if (certificate == null) {
+                continue;
+            }
+            String thumbprint = previousThumbprints == null ? null : previousThumbprints.get(certificate);
+            if (thumbprint != null) {
+                reused++;
+            } else {
+                thumbprint = getCertificateThumbprint(certificate);
+            }
+            if (add(thumbprints, thumbprint, MEMBER_X5C)) {
+                certificateThumbprints.put(certificate, thumbprint);
+            }
+        }
+        MutualTLSMetrics.add(MutualTLSMetrics.Counter.JWKS_CERTIFICATE_THUMBPRINT_REUSED, reused);
+        if (log.isDebugEnabled() && previous != null) {
+            log.debug("Reused the thumbprints of " + reused + " of the " + certificateThumbprints.size()
+                    + " certificates of the refreshed JWKS.");
+        }
+        return new JWKSThumbprintIndex(thumbprints, size, hasX5t, certificateThumbprints);
+    }
+
+    /**
+     * @return Number of keys in the index.
+     */
+    public int size() {
+
+        return size;
+    }
+
+    /**
+     * @return Number of distinct thumbprints in the index.
+     */
+    public int getThumbprintCount() {
+
+        return thumbprints.size();
+    }
+
+    /**
+     * @return Whether a key has the x5t member.
+     */
+    public boolean hasX5t() {
+
+        return hasX5t;
+    }
+
+    /**
+     * Check whether a key has the given x5t member.
+     *
+     * @param x5t x5t value.
+     * @return Whether a key has the x5t value.
+     */
+    public boolean containsX5t(String x5t) {
+
+        return contains(x5t, MEMBER_X5T);
+    }
+
+    /**
+     * Check whether a key has the x5t#S256 member of the given certificate.
+     *
+     * @param thumbprint Thumbprint of the certificate.
+     * @return Whether a key has the x5t#S256 value of the certificate.
+     */
+    public boolean containsX5tS256(CertificateThumbprint thumbprint) {
+
+        return thumbprint != null && contains(thumbprint.getSha256Base64Url(), MEMBER_X5T_S256);
+    }
+
+    /**
+     * Check whether the first certificate of the x5c member of a key is the given certificate.
+     *
+     * @param thumbprint Thumbprint of the certificate.
+     * @return Whether a key has the certificate.
+     */
+    public boolean containsCertificate(CertificateThumbprint thumbprint) {
+
+        return thumbprint != null && contains(thumbprint.getSha256Base64Url(), MEMBER_X5C);
+    }
+
+    /**
+     * Write the index to a snapshot. The thumbprints of the certificates kept to build the next version of the index
+     * are not written.
+     *
+     * @param out Snapshot output.
+     * @throws IOException If the index could not be written.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+
+        out.writeInt(size);
+        out.writeBoolean(hasX5t);
+        out.writeInt(thumbprints.size());
+        for (Map.Entry<String, Integer> thumbprint : thumbprints.entrySet()) {
+            out.writeUTF(thumbprint.getKey());
+            out.writeByte(thumbprint.getValue());
+        }
+    }
+
+    /**
+     * Read an index written by {@link #writeTo(DataOutput)}.
+     *
+     * @param in Snapshot input.
+     * @return Index read from the snapshot.
+     * @throws IOException If the index could not be read.
+     */
+    public static JWKSThumbprintIndex readFrom(DataInput in) throws IOException {
+
+        int size = in.readInt();
+        boolean hasX5t = in.readBoolean();
+        int count = in.readInt();
+        if (size < 0 || count < 0) {
+            throw new IOException("Invalid JWKS thumbprint index. Keys : " + size + ", thumbprints : " + count);
+        }
+        HashMap<String, Integer> thumbprints = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            String thumbprint = in.readUTF();
+            thumbprints.put(thumbprint, in.readByte() & (MEMBER_X5T | MEMBER_X5T_S256 | MEMBER_X5C));
+        }
+        return new JWKSThumbprintIndex(thumbprints, size, hasX5t, Collections.emptyMap());
+    }
+
+    private boolean contains(String thumbprint, int member) {
+
+        if (thumbprint == null) {
+            return false;
+        }
+        Integer members = thumbprints.get(thumbprint);
+        return members != null && (members & member) != 0;
+    }
+
+    private static boolean add(Map<String, Integer> thumbprints, String thumbprint, int member) {
+
+        if (thumbprint == null || thumbprint.length() > MAX_THUMBPRINT_LENGTH) {
+            return false;
+        }
+        thumbprints.merge(thumbprint, member, (members, added) -> members | added);
+        return true;
+    }
+
+    private static String getString(JsonElement member) {
+
+        return member != null && member.isJsonPrimitive() ? member.getAsString() : null;
+    }
+
+    private static String getCertificate(JsonElement x5c) {
+
+        if (x5c == null) {
+            return null;
+        }
+        JsonElement certificate = x5c;
+        if (x5c.isJsonArray()) {
+            if (x5c.getAsJsonArray().size() == 0) {
+                return null;
+            }
+            certificate = x5c.getAsJsonArray().get(0);
+        }
+        return certificate.isJsonPrimitive() ? certificate.getAsString() : null;
+    }
+
+    private static String getCertificateThumbprint(String certificate) {
+
+        try {
+            String thumbprint = BASE64_URL_ENCODER.encodeToString(ThumbprintEngine.getThumbprint(
+                    Base64.getMimeDecoder().decode(certificate)).getSha256());
+            MutualTLSMetrics.increment(MutualTLSMetrics.Counter.JWKS_CERTIFICATE_THUMBPRINT_COMPUTED);
+            return thumbprint;
+        } catch (IllegalArgumentException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Certificate of the x5c member of a JWK is not Base64 encoded.", e);
+            }
+            return null;
+        }
+    }
+}
@@ -22,7 +22,8 @@ import org.wso2.carbon.identity.application.authentication.framework.cache.Authe
 import org.wso2.carbon.utils.CarbonUtils;
 
 /**
- * JWKS cache enables caching responses from JWK URIs
+ * JWKS cache enables caching responses from JWK URIs. Changes to the cache are propagated to the
+ * {@link MutualTLSJWKSNearCache} in front of it, and to the {@link MutualTLSWarmStartSnapshot}.
  */
 public class MutualTLSJWKSCache extends AuthenticationBaseCache<MutualTLSJWKSCacheKey, MutualTLSJWKSCacheEntry> {
 
@@ -32,6 +33,7 @@ public class MutualTLSJWKSCache extends AuthenticationBaseCache<MutualTLSJWKSCac
 
     private MutualTLSJWKSCache() {
         super(JWKS_CACHE_NAME);
+        addListener(new MutualTLSJWKSCacheListener());
     }
 
     /**
@@ -43,4 +45,25 @@ public class MutualTLSJWKSCache extends AuthenticationBaseCache<MutualTLSJWKSCac
         CarbonUtils.checkSecurity();
         return instance;
     }
+
+    @Override
+    public void addToCache(MutualTLSJWKSCacheKey key, MutualTLSJWKSCacheEntry entry) {
+        super.addToCache(key, entry);
+        MutualTLSJWKSNearCache.getInstance().invalidate(key.getJWKSCacheKey());
+        MutualTLSWarmStartSnapshot.getInstance().record(key.getJWKSCacheKey(), entry);
+    }
+
+    @Override
+    public void clearCacheEntry(MutualTLSJWKSCacheKey key) {
+        super.clearCacheEntry(key);
+        MutualTLSJWKSNearCache.getInstance().invalidate(key.getJWKSCacheKey());
+        MutualTLSWarmStartSnapshot.getInstance().forget(key.getJWKSCacheKey());
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        MutualTLSJWKSNearCache.getInstance().invalidateAll();
+        MutualTLSWarmStartSnapshot.getInstance().forgetAll();
+    }
 }
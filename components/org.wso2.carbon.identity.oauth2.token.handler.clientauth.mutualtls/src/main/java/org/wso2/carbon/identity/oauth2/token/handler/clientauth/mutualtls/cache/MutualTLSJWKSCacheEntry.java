@@ -23,16 +23,100 @@ import com.nimbusds.jose.util.Resource;
 /**
  * MutualTLSJWKSCacheEntry wraps Resource cache value to make them serializable.
  * This will be used with MutualTLSJWKSCache.
+ * <p>
+ * The content of the response is kept with the time it was fetched and its {@link JWKSThumbprintIndex}, so that an
+ * entry replicated to another node of the cluster can be used there without fetching or parsing the JWK Set again.
  */
 public class MutualTLSJWKSCacheEntry extends org.wso2.carbon.identity.core.cache.CacheEntry {
 
-    private transient Resource resource;
+    private static final long serialVersionUID = 3046745478155316862L;
+
+    private final String content;
+    private final String contentType;
+    private final long fetchedTime;
+    private final JWKSThumbprintIndex thumbprintIndex;
+    private transient volatile Resource resource;
 
     public MutualTLSJWKSCacheEntry(Resource resource) {
+        this(resource, System.currentTimeMillis());
+    }
+
+    /**
+     * @param resource    Response of the JWKS endpoint.
+     * @param fetchedTime Time in milliseconds the response was fetched.
+     */
+    public MutualTLSJWKSCacheEntry(Resource resource, long fetchedTime) {
+        this(resource, fetchedTime, null);
+    }
+
+    /**
+     * @param resource    Response of the JWKS endpoint.
+     * @param fetchedTime Time in milliseconds the response was fetched.
+     * @param previous    Previous response of the JWKS endpoint, whose thumbprints are reused for the keys that did
+     *                    not change, or null if there is none.
+     */
+    public MutualTLSJWKSCacheEntry(Resource resource, long fetchedTime, MutualTLSJWKSCacheEntry previous) {
         this.resource = resource;
+        this.content = resource == null ? null : resource.getContent();
+        this.contentType = resource == null ? null : resource.getContentType();
+        this.fetchedTime = fetchedTime;
+        if (previous != null && content != null && content.equals(previous.content)) {
+            this.thumbprintIndex = previous.thumbprintIndex;
+        } else {
+            this.thumbprintIndex = JWKSThumbprintIndex.build(content,
+                    previous == null ? null : previous.thumbprintIndex);
+        }
+    }
+
+    /**
+     * @param content         Content of the response.
+     * @param contentType     Content type of the response.
+     * @param fetchedTime     Time in milliseconds the response was fetched.
+     * @param thumbprintIndex Thumbprints of the keys of the JWK Set, built when the response was fetched.
+     */
+    MutualTLSJWKSCacheEntry(String content, String contentType, long fetchedTime,
+                            JWKSThumbprintIndex thumbprintIndex) {
+        this.content = content;
+        this.contentType = contentType;
+        this.fetchedTime = fetchedTime;
+        this.thumbprintIndex = thumbprintIndex;
     }
 
     public Resource getValue() {
-        return resource;
+        Resource value = resource;
+        if (value == null && content != null) {
+            // The resource is not serialized, and is created again from the content on other nodes.
+            value = new Resource(content, contentType);
+            resource = value;
+        }
+        return value;
+    }
+
+    /**
+     * @return Content of the response, or null if there is none.
+     */
+    public String getContent() {
+        return content;
+    }
+
+    /**
+     * @return Content type of the response.
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * @return Time in milliseconds the response was fetched from the JWKS endpoint.
+     */
+    public long getFetchedTime() {
+        return fetchedTime;
+    }
+
+    /**
+     * @return Thumbprints of the keys of the JWK Set.
+     */
+    public JWKSThumbprintIndex getThumbprintIndex() {
+        return thumbprintIndex;
     }
 }
@@ -18,10 +18,19 @@
 
 package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.cache;
 
+import com.google.gson.JsonArray;
+import com.google.gson.JsonPrimitive;
+
 import java.io.Serializable;
+import java.net.URL;
+import java.util.List;
 
 /**
  * Key attribute of MutualTLSJWKSCache is jwksUri. JWKS cache is stored against this key.
+ * <p>
+ * A JWK Set that may be retrieved from the mirrors of its JWKS URI is stored against the JWKS URI along with its
+ * mirrors, so that it is only used for the service providers that registered the same mirrors. The key of such a JWK
+ * Set is a JSON array of the URIs, which can not be mistaken for a URI.
  */
 public class MutualTLSJWKSCacheKey implements Serializable {
 
@@ -32,6 +41,23 @@ public class MutualTLSJWKSCacheKey implements Serializable {
         this.jwksUri = jwksUri;
     }
 
+    /**
+     * @param jwksUri    JWKS URI.
+     * @param mirrorUris Mirrors of the JWKS URI in the order they are tried, or an empty list if there are none.
+     */
+    public MutualTLSJWKSCacheKey(URL jwksUri, List<URL> mirrorUris) {
+        if (mirrorUris == null || mirrorUris.isEmpty()) {
+            this.jwksUri = jwksUri.toString();
+            return;
+        }
+        JsonArray uris = new JsonArray();
+        uris.add(new JsonPrimitive(jwksUri.toString()));
+        for (URL mirrorUri : mirrorUris) {
+            uris.add(new JsonPrimitive(mirrorUri.toString()));
+        }
+        this.jwksUri = uris.toString();
+    }
+
     public String getJWKSCacheKey() {
         return jwksUri;
     }
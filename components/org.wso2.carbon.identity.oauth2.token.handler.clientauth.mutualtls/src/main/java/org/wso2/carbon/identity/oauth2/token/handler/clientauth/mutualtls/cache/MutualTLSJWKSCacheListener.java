@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.cache;
+
+import org.wso2.carbon.identity.core.cache.AbstractCacheListener;
+
+import javax.cache.event.CacheEntryEvent;
+import javax.cache.event.CacheEntryListenerException;
+
+/**
+ * Propagates the updates, removals and expiries of {@link MutualTLSJWKSCache} entries, including the invalidations
+ * received from other nodes, to the {@link MutualTLSJWKSNearCache}.
+ */
+public class MutualTLSJWKSCacheListener extends AbstractCacheListener<MutualTLSJWKSCacheKey, MutualTLSJWKSCacheEntry> {
+
+    @Override
+    public void entryUpdated(CacheEntryEvent<? extends MutualTLSJWKSCacheKey, ? extends MutualTLSJWKSCacheEntry>
+                                     cacheEntryEvent) throws CacheEntryListenerException {
+
+        invalidate(cacheEntryEvent);
+    }
+
+    @Override
+    public void entryRemoved(CacheEntryEvent<? extends MutualTLSJWKSCacheKey, ? extends MutualTLSJWKSCacheEntry>
+                                     cacheEntryEvent) throws CacheEntryListenerException {
+
+        invalidate(cacheEntryEvent);
+    }
+
+    @Override
+    public void entryExpired(CacheEntryEvent<? extends MutualTLSJWKSCacheKey, ? extends MutualTLSJWKSCacheEntry>
+                                     cacheEntryEvent) throws CacheEntryListenerException {
+
+        invalidate(cacheEntryEvent);
+    }
+
+    private static void invalidate(CacheEntryEvent<? extends MutualTLSJWKSCacheKey, ?> cacheEntryEvent) {
+
+        if (cacheEntryEvent == null || cacheEntryEvent.getKey() == null) {
+            MutualTLSJWKSNearCache.getInstance().invalidateAll();
+        } else {
+            MutualTLSJWKSNearCache.getInstance().invalidate(cacheEntryEvent.getKey().getJWKSCacheKey());
+        }
+    }
+}
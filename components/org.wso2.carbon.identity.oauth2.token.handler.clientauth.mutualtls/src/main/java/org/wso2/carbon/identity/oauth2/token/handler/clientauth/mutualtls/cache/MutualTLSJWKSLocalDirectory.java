@@ -0,0 +1,333 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.cache;
+
+import com.nimbusds.jose.util.Resource;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSConfig;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSMetrics;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * JWKS files received out of band, served from a local directory instead of fetching their JWKS URIs.
+ * <p>
+ * A JWKS URI is resolved against the directory in two ways. A file URI resolves to the file it names, if the file is
+ * directly in the directory. Any other URI resolves to the file named after its host, port, path and query, URL
+ * encoded in UTF-8, with the .json extension, such as partner.example.com%2F.well-known%2Fjwks.json for
+ * https://partner.example.com/.well-known/jwks. The host is in lower case. As the file name covers the whole URI, a
+ * file is only used for the service providers that registered that exact JWKS URI, and not for every JWKS URI of the
+ * same host. Other JWKS URIs are fetched as usual.
+ * <p>
+ * All the files of the directory are loaded with their thumbprint index when the directory is configured, and each file
+ * is loaded again when a {@link WatchService} reports that it was created, modified or deleted. Files should be
+ * replaced by an atomic move, so that a partially written file is not loaded.
+ */
+public class MutualTLSJWKSLocalDirectory {
+
+    private static final Log log = LogFactory.getLog(MutualTLSJWKSLocalDirectory.class);
+    private static final MutualTLSJWKSLocalDirectory instance = new MutualTLSJWKSLocalDirectory();
+    private static final String SIZE_GAUGE = "JWKSLocalDirectory.Size";
+    private static final String WATCH_THREAD_NAME = "MutualTLSJWKSLocalDirectoryWatcher";
+    private static final String FILE_PROTOCOL = "file";
+    private static final String FILE_EXTENSION = ".json";
+    private static final String CONTENT_TYPE = "application/json";
+    private static final long MAX_FILE_SIZE = 1024 * 1024;
+
+    private final Map<String, MutualTLSJWKSCacheEntry> files = new ConcurrentHashMap<>();
+    private volatile Path directory;
+    private WatchService watchService;
+    private Thread watchThread;
+
+    private MutualTLSJWKSLocalDirectory() {
+
+    }
+
+    public static MutualTLSJWKSLocalDirectory getInstance() {
+
+        return instance;
+    }
+
+    /**
+     * Load and watch the directory of the current configuration, if there is one.
+     */
+    public void start() {
+
+        reconfigure(MutualTLSConfig.getInstance());
+    }
+
+    /**
+     * Apply a configuration. The files are only loaded again when the directory has changed.
+     *
+     * @param config Configuration to apply.
+     */
+    public synchronized void reconfigure(MutualTLSConfig config) {
+
+        if (config.getJwksLocalDirectory() == null) {
+            if (directory != null) {
+                stop();
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("JWKS local directory is not configured.");
+            }
+            return;
+        }
+        Path path = Paths.get(config.getJwksLocalDirectory()).toAbsolutePath().normalize();
+        if (path.equals(directory)) {
+            return;
+        }
+        stop();
+        configure(path);
+    }
+
+    /**
+     * Stop watching the directory and discard the loaded files.
+     */
+    public synchronized void stop() {
+
+        directory = null;
+        files.clear();
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                log.warn("Error while closing the watch service of the JWKS local directory.", e);
+            }
+            watchService = null;
+        }
+        if (watchThread != null) {
+            watchThread.interrupt();
+            watchThread = null;
+        }
+        MutualTLSMetrics.unregisterGauge(SIZE_GAUGE);
+    }
+
+    /**
+     * @return Whether a directory is loaded.
+     */
+    public boolean isEnabled() {
+
+        return directory != null;
+    }
+
+    /**
+     * Returns the JWK Set of a JWKS URI from the local directory.
+     *
+     * @param jwksUri JWKS URI.
+     * @return JWK Set with its thumbprint index, or null if the URI does not resolve to a loaded file.
+     */
+    public MutualTLSJWKSCacheEntry get(URL jwksUri) {
+
+        Path current = directory;
+        if (current == null || jwksUri == null) {
+            return null;
+        }
+        String fileName = getFileName(jwksUri, current);
+        return fileName == null ? null : files.get(fileName);
+    }
+
+    /**
+     * Check whether a JWKS URI is a file URI, which can only be served from the local directory.
+     *
+     * @param jwksUri JWKS URI.
+     * @return Whether the URI is a file URI.
+     */
+    public static boolean isFileUri(URL jwksUri) {
+
+        return jwksUri != null && FILE_PROTOCOL.equalsIgnoreCase(jwksUri.getProtocol());
+    }
+
+    /**
+     * @return Number of loaded files.
+     */
+    public int size() {
+
+        return files.size();
+    }
+
+    /**
+     * Load all the files of a directory and watch it for changes.
+     *
+     * @param path Absolute and normalized path of the directory.
+     */
+    synchronized void configure(Path path) {
+
+        if (!Files.isDirectory(path)) {
+            log.error("JWKS local directory: " + path + " is not a directory. JWKS files are not served locally.");
+            return;
+        }
+        try {
+            watchService = path.getFileSystem().newWatchService();
+            path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            log.error("Error while watching the JWKS local directory: " + path + ". JWKS files are not served locally.",
+                    e);
+            stop();
+            return;
+        }
+        directory = path;
+        loadAll(path);
+        WatchService currentWatchService = watchService;
+        watchThread = new Thread(() -> watch(currentWatchService, path), WATCH_THREAD_NAME);
+        watchThread.setDaemon(true);
+        watchThread.start();
+        MutualTLSMetrics.registerGauge(SIZE_GAUGE, this::size);
+        if (log.isDebugEnabled()) {
+            log.debug("Loaded " + files.size() + " JWKS files from the JWKS local directory: " + path);
+        }
+    }
+
+    private void watch(WatchService service, Path path) {
+
+        while (true) {
+            WatchKey key;
+            try {
+                key = service.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ClosedWatchServiceException e) {
+                return;
+            }
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    loadAll(path);
+                } else {
+                    load(path, event.context().toString());
+                }
+            }
+            if (!key.reset()) {
+                log.warn("JWKS local directory: " + path + " is no longer accessible. JWKS files are not reloaded.");
+                return;
+            }
+        }
+    }
+
+    private void loadAll(Path path) {
+
+        Set<String> fileNames = new HashSet<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+            for (Path file : stream) {
+                fileNames.add(file.getFileName().toString());
+                load(path, file.getFileName().toString());
+            }
+        } catch (IOException e) {
+            log.error("Error while listing the JWKS local directory: " + path, e);
+            return;
+        }
+        files.keySet().retainAll(fileNames);
+    }
+
+    private void load(Path path, String fileName) {
+
+        Path file = path.resolve(fileName);
+        if (!path.equals(directory)) {
+            // The directory was changed or stopped while the event was processed.
+            return;
+        }
+        if (!Files.isRegularFile(file)) {
+            if (files.remove(fileName) != null && log.isDebugEnabled()) {
+                log.debug("Removed JWKS file: " + file);
+            }
+            return;
+        }
+        try {
+            if (Files.size(file) > MAX_FILE_SIZE) {
+                log.warn("JWKS file: " + file + " is larger than " + MAX_FILE_SIZE + " bytes and is not loaded.");
+                files.remove(fileName);
+                return;
+            }
+            String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+            // The thumbprints of the certificates that did not change are reused from the previous version.
+            files.put(fileName, new MutualTLSJWKSCacheEntry(new Resource(content, CONTENT_TYPE),
+                    Files.getLastModifiedTime(file).toMillis(), files.get(fileName)));
+            MutualTLSMetrics.increment(MutualTLSMetrics.Counter.JWKS_LOCAL_FILE_LOADED);
+            if (log.isDebugEnabled()) {
+                log.debug("Loaded JWKS file: " + file);
+            }
+        } catch (IOException e) {
+            // The previous version of the file, if any, is kept.
+            log.error("Error while loading JWKS file: " + file, e);
+        }
+    }
+
+    private static String getFileName(URL jwksUri, Path directory) {
+
+        if (isFileUri(jwksUri)) {
+            try {
+                Path file = Paths.get(jwksUri.toURI()).toAbsolutePath().normalize();
+                return directory.equals(file.getParent()) ? file.getFileName().toString() : null;
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                if (log.isDebugEnabled()) {
+                    log.debug("JWKS URI: " + jwksUri + " is not a valid file URI.", e);
+                }
+                return null;
+            }
+        }
+        if (StringUtils.isEmpty(jwksUri.getHost())) {
+            return null;
+        }
+        return getRemoteFileName(jwksUri);
+    }
+
+    /**
+     * Returns the name of the file a JWKS URI other than a file URI resolves to.
+     *
+     * @param jwksUri JWKS URI with a host.
+     * @return URL encoded host, port, path and query of the URI, with the .json extension.
+     */
+    static String getRemoteFileName(URL jwksUri) {
+
+        StringBuilder location = new StringBuilder(jwksUri.getHost().toLowerCase(Locale.ROOT));
+        if (jwksUri.getPort() != -1) {
+            location.append(':').append(jwksUri.getPort());
+        }
+        location.append(jwksUri.getFile());
+        try {
+            // Every character that may separate the host, path and query, or name another directory, is encoded.
+            return URLEncoder.encode(location.toString(), StandardCharsets.UTF_8.name()) + FILE_EXTENSION;
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is supported by every JVM.
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,401 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.cache;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.nimbusds.jose.util.Resource;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.CommonConstants;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSConfig;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSMetrics;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Mirrors of JWKS URIs, and hedged retrieval of a JWK Set from a JWKS URI and its mirrors.
+ * <p>
+ * A JWK Set is first requested from the JWKS URI. If it has not answered within the configured hedge delay, or if it
+ * fails, the next mirror is requested as well, and so on in the order of the mirrors. The first response that is a JWK
+ * Set is used, and the requests still in progress are cancelled. A JWKS URI without mirrors is requested on the
+ * calling thread without any overhead.
+ * <p>
+ * The requests are made by a bounded pool of threads. A cancelled request is interrupted, but a blocking read of a
+ * connection is only ended by its timeout, so hedging requires both the connection and the read timeouts of JWKS
+ * endpoints. Without them, the JWKS URI and its mirrors are requested one after the other on the calling thread.
+ * <p>
+ * The mirrors are read from the configuration of the service provider whose client is authenticated, and the JWK Set
+ * retrieved through them is cached against the JWKS URI along with the mirrors, as a JWKS URI may be registered by
+ * other service providers without these mirrors. The requests, failures, timeouts and slow responses of each URI are
+ * tracked, and published through {@link MutualTLSMetrics}.
+ */
+public class MutualTLSJWKSMirrors {
+
+    private static final Log log = LogFactory.getLog(MutualTLSJWKSMirrors.class);
+    private static final MutualTLSJWKSMirrors instance = new MutualTLSJWKSMirrors();
+    private static final String FETCH_THREAD_NAME = "MutualTLSJWKSMirrorFetch";
+    // The statistics are dropped beyond this many URIs.
+    private static final int MAX_TRACKED_URIS = 10000;
+    private static final int MAX_FETCH_THREADS = 16;
+    // A request is failed right away beyond this many queued requests, and the next URI is requested instead.
+    private static final int MAX_QUEUED_FETCHES = 256;
+
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+    private ExecutorService fetchExecutor;
+
+    private MutualTLSJWKSMirrors() {
+
+        MutualTLSMetrics.registerJwksUriStats(this::getStatValues);
+    }
+
+    public static MutualTLSJWKSMirrors getInstance() {
+
+        return instance;
+    }
+
+    /**
+     * Returns the statistics of the JWKS URIs and mirrors requested through hedged retrieval.
+     *
+     * @return Statistics keyed by the URI.
+     */
+    public Map<String, Stats> getStats() {
+
+        return Collections.unmodifiableMap(new TreeMap<>(stats));
+    }
+
+    private Map<String, Map<String, Long>> getStatValues() {
+
+        Map<String, Map<String, Long>> values = new TreeMap<>();
+        for (Map.Entry<String, Stats> uriStats : stats.entrySet()) {
+            values.put(uriStats.getKey(), uriStats.getValue().getValues());
+        }
+        return values;
+    }
+
+    /**
+     * Stop the requests in progress and discard the statistics.
+     */
+    public synchronized void stop() {
+
+        if (fetchExecutor != null) {
+            fetchExecutor.shutdownNow();
+            fetchExecutor = null;
+        }
+        stats.clear();
+    }
+
+    /**
+     * Retrieve the JWK Set of a JWKS URI, from the URI or from one of its mirrors.
+     *
+     * @param jwksUri    JWKS URI.
+     * @param mirrorUris Mirrors of the JWKS URI in the order they are tried, or an empty list if there are none.
+     * @param retriever  Retriever of a single URI.
+     * @return First JWK Set received.
+     * @throws IOException If neither the URI nor its mirrors returned a JWK Set.
+     */
+    Resource retrieve(URL jwksUri, List<URL> mirrorUris, MutualTLSJWKSRefresher.JWKSRetriever retriever)
+            throws IOException {
+
+        if (mirrorUris == null || mirrorUris.isEmpty()) {
+            return retriever.retrieve(jwksUri);
+        }
+        List<URL> uris = new ArrayList<>(mirrorUris.size() + 1);
+        uris.add(jwksUri);
+        uris.addAll(mirrorUris);
+        MutualTLSConfig config = MutualTLSConfig.getInstance();
+        if (config.getJwksConnectionTimeout() <= 0 || config.getJwksReadTimeout() <= 0) {
+            if (log.isDebugEnabled()) {
+                log.debug("The mirrors of JWKS URI: " + jwksUri + " are not requested in parallel as the connection "
+                        + "and read timeouts of JWKS endpoints are not configured.");
+            }
+            return retrieveSequentially(uris, retriever);
+        }
+        return retrieveHedged(uris, retriever, config.getJwksMirrorHedgeDelay());
+    }
+
+    private Resource retrieveSequentially(List<URL> uris, MutualTLSJWKSRefresher.JWKSRetriever retriever)
+            throws IOException {
+
+        IOException failure = null;
+        for (URL uri : uris) {
+            getStats(uri).requests.increment();
+            Attempt attempt;
+            try {
+                attempt = new Attempt(uri, retriever.retrieve(uri), null);
+            } catch (IOException e) {
+                attempt = new Attempt(uri, null, e);
+            } catch (RuntimeException e) {
+                attempt = new Attempt(uri, null, new IOException(e));
+            }
+            if (isUsed(attempt, uris)) {
+                return attempt.resource;
+            }
+            failure = addFailure(failure, attempt, uris);
+        }
+        throw failure;
+    }
+
+    Resource retrieveHedged(List<URL> uris, MutualTLSJWKSRefresher.JWKSRetriever retriever, long hedgeDelay)
+            throws IOException {
+
+        BlockingQueue<Attempt> completed = new LinkedBlockingQueue<>();
+        List<Future<?>> requests = new ArrayList<>(uris.size());
+        IOException failure = null;
+        int pending = 0;
+        try {
+            while (true) {
+                if (pending == 0) {
+                    if (requests.size() == uris.size()) {
+                        throw failure;
+                    }
+                    requests.add(request(uris.get(requests.size()), retriever, completed));
+                    pending++;
+                }
+                Attempt attempt = requests.size() < uris.size()
+                        ? completed.poll(hedgeDelay, TimeUnit.MILLISECONDS) : completed.take();
+                if (attempt == null) {
+                    // The last URI requested is slow, so the next one is requested as well.
+                    getStats(uris.get(requests.size() - 1)).slow.increment();
+                    MutualTLSMetrics.increment(MutualTLSMetrics.Counter.JWKS_FETCH_HEDGED);
+                    requests.add(request(uris.get(requests.size()), retriever, completed));
+                    pending++;
+                    continue;
+                }
+                pending--;
+                if (isUsed(attempt, uris)) {
+                    return attempt.resource;
+                }
+                failure = addFailure(failure, attempt, uris);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while retrieving the JWKS of: " + uris.get(0), e);
+        } finally {
+            for (Future<?> request : requests) {
+                request.cancel(true);
+            }
+        }
+    }
+
+    private Future<?> request(URL uri, MutualTLSJWKSRefresher.JWKSRetriever retriever,
+                              BlockingQueue<Attempt> completed) {
+
+        getStats(uri).requests.increment();
+        try {
+            return getFetchExecutor().submit(() -> {
+                try {
+                    completed.add(new Attempt(uri, retriever.retrieve(uri), null));
+                } catch (IOException e) {
+                    completed.add(new Attempt(uri, null, e));
+                } catch (RuntimeException e) {
+                    completed.add(new Attempt(uri, null, new IOException(e)));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            completed.add(new Attempt(uri, null, new IOException("Too many JWKS requests in progress to request: "
+                    + uri, e)));
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    private boolean isUsed(Attempt attempt, List<URL> uris) {
+
+        if (attempt.error != null || !isJWKSet(attempt.resource)) {
+            return false;
+        }
+        getStats(attempt.uri).used.increment();
+        if (!attempt.uri.toString().equals(uris.get(0).toString())) {
+            MutualTLSMetrics.increment(MutualTLSMetrics.Counter.JWKS_MIRROR_USED);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("JWKS of: " + uris.get(0) + " retrieved from: " + attempt.uri);
+        }
+        return true;
+    }
+
+    private IOException addFailure(IOException failure, Attempt attempt, List<URL> uris) {
+
+        Stats uriStats = getStats(attempt.uri);
+        uriStats.failures.increment();
+        if (attempt.error instanceof SocketTimeoutException) {
+            uriStats.timeouts.increment();
+        }
+        IOException error = attempt.error != null ? attempt.error
+                : new IOException("Response of: " + attempt.uri + " is not a JWK Set.");
+        log.warn("Error while retrieving the JWKS of: " + uris.get(0) + " from: " + attempt.uri, error);
+        if (failure == null) {
+            return new IOException("Error while retrieving the JWKS of: " + uris.get(0) + " from any of its "
+                    + uris.size() + " URIs.", error);
+        }
+        failure.addSuppressed(error);
+        return failure;
+    }
+
+    private synchronized ExecutorService getFetchExecutor() {
+
+        if (fetchExecutor == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_FETCH_THREADS, MAX_FETCH_THREADS, 60,
+                    TimeUnit.SECONDS, new LinkedBlockingQueue<>(MAX_QUEUED_FETCHES), runnable -> {
+                        Thread thread = new Thread(runnable, FETCH_THREAD_NAME);
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            fetchExecutor = executor;
+        }
+        return fetchExecutor;
+    }
+
+    private Stats getStats(URL uri) {
+
+        String uriString = uri.toString();
+        Stats uriStats = stats.get(uriString);
+        if (uriStats == null) {
+            if (stats.size() >= MAX_TRACKED_URIS) {
+                stats.clear();
+            }
+            uriStats = stats.computeIfAbsent(uriString, key -> new Stats());
+        }
+        return uriStats;
+    }
+
+    private static boolean isJWKSet(Resource resource) {
+
+        if (resource == null || resource.getContent() == null) {
+            return false;
+        }
+        try {
+            JsonElement root = new JsonParser().parse(resource.getContent());
+            return root != null && root.isJsonObject() && root.getAsJsonObject().get(CommonConstants.KEYS) != null
+                    && root.getAsJsonObject().get(CommonConstants.KEYS).isJsonArray();
+        } catch (JsonParseException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Response of a URI, or the error it failed with.
+     */
+    private static class Attempt {
+
+        private final URL uri;
+        private final Resource resource;
+        private final IOException error;
+
+        Attempt(URL uri, Resource resource, IOException error) {
+
+            this.uri = uri;
+            this.resource = resource;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Statistics of a JWKS URI or mirror.
+     */
+    public static class Stats {
+
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder used = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder timeouts = new LongAdder();
+        private final LongAdder slow = new LongAdder();
+
+        /**
+         * @return Number of times the URI was requested.
+         */
+        public long getRequests() {
+
+            return requests.sum();
+        }
+
+        /**
+         * @return Number of times the response of the URI was used.
+         */
+        public long getUsed() {
+
+            return used.sum();
+        }
+
+        /**
+         * @return Number of requests that failed or did not return a JWK Set.
+         */
+        public long getFailures() {
+
+            return failures.sum();
+        }
+
+        /**
+         * @return Number of requests that failed as the connection or the read timed out.
+         */
+        public long getTimeouts() {
+
+            return timeouts.sum();
+        }
+
+        /**
+         * @return Number of requests that did not complete within the hedge delay.
+         */
+        public long getSlow() {
+
+            return slow.sum();
+        }
+
+        /**
+         * @return Values of the statistics keyed by their name.
+         */
+        public Map<String, Long> getValues() {
+
+            Map<String, Long> values = new TreeMap<>();
+            values.put("requests", getRequests());
+            values.put("used", getUsed());
+            values.put("failures", getFailures());
+            values.put("timeouts", getTimeouts());
+            values.put("slow", getSlow());
+            return values;
+        }
+
+        @Override
+        public String toString() {
+
+            return "{requests=" + getRequests() + ", used=" + getUsed() + ", failures=" + getFailures()
+                    + ", timeouts=" + getTimeouts() + ", slow=" + getSlow() + "}";
+        }
+    }
+}
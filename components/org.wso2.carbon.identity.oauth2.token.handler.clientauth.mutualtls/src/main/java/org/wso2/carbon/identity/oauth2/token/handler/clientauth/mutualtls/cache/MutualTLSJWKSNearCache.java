@@ -0,0 +1,311 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.cache;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSConfig;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSMetrics;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Node local near cache of JWKS responses in front of {@link MutualTLSJWKSCache}, keyed by the JWKS URI. Lookups only
+ * read a concurrent map, without the security check and the key allocation of the JWKS cache.
+ * <p>
+ * The JWKS cache remains the source of truth. Its updates, removals and expiries, including the invalidations
+ * received from other nodes, remove the entry of the near cache, and a response read from the JWKS cache is only
+ * added if no invalidation happened since the read started. Entries also expire after the configured timeout.
+ * <p>
+ * The cache is bounded by the total weight of the responses, which approximates their size in memory. When the
+ * weight is exceeded, expired entries are removed first, and then arbitrary entries until a quarter of the maximum
+ * weight is free.
+ */
+public class MutualTLSJWKSNearCache {
+
+    private static final Log log = LogFactory.getLog(MutualTLSJWKSNearCache.class);
+    private static final MutualTLSJWKSNearCache instance = new MutualTLSJWKSNearCache();
+    private static final String SIZE_GAUGE = "JWKSNearCache.Size";
+    private static final String WEIGHT_GAUGE = "JWKSNearCache.Weight";
+    // Approximate size of an entry excluding the characters of the URI and of the response.
+    private static final int ENTRY_OVERHEAD = 128;
+    // Approximate size of a thumbprint in the thumbprint index.
+    private static final int THUMBPRINT_OVERHEAD = 120;
+
+    private final AtomicLong invalidations = new AtomicLong();
+    private volatile Entries entries;
+
+    private MutualTLSJWKSNearCache() {
+
+    }
+
+    public static MutualTLSJWKSNearCache getInstance() {
+
+        return instance;
+    }
+
+    /**
+     * Create the cache from the current configuration if the cache is enabled.
+     */
+    public void start() {
+
+        reconfigure(MutualTLSConfig.getInstance());
+    }
+
+    /**
+     * Apply a configuration. The cached responses are only discarded when the cache is disabled or its limits have
+     * changed.
+     *
+     * @param config Configuration to apply.
+     */
+    public synchronized void reconfigure(MutualTLSConfig config) {
+
+        if (!config.isJwksNearCacheEnabled()) {
+            if (entries != null) {
+                stop();
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Mutual TLS JWKS near cache is disabled.");
+            }
+            return;
+        }
+        long maxWeight = config.getJwksNearCacheMaxWeight();
+        long timeout = TimeUnit.SECONDS.toMillis(config.getJwksNearCacheTimeout());
+        if (entries != null && entries.maxWeight == maxWeight && entries.timeout == timeout) {
+            return;
+        }
+        configure(maxWeight, timeout);
+        if (log.isDebugEnabled()) {
+            log.debug("Mutual TLS JWKS near cache is enabled with a maximum weight of " + maxWeight
+                    + " bytes and a timeout of " + timeout + " ms.");
+        }
+    }
+
+    /**
+     * Disable the cache and discard the cached responses.
+     */
+    public synchronized void stop() {
+
+        entries = null;
+        MutualTLSMetrics.unregisterGauge(SIZE_GAUGE);
+        MutualTLSMetrics.unregisterGauge(WEIGHT_GAUGE);
+    }
+
+    /**
+     * @return Whether the cache is enabled.
+     */
+    public boolean isEnabled() {
+
+        return entries != null;
+    }
+
+    /**
+     * Returns the cached response of a JWKS URI.
+     *
+     * @param jwksUri JWKS URI.
+     * @return Cached response, or null if there is none.
+     */
+    public MutualTLSJWKSCacheEntry get(String jwksUri) {
+
+        return get(jwksUri, System.currentTimeMillis());
+    }
+
+    /**
+     * Returns a stamp to pass to {@link #put(String, MutualTLSJWKSCacheEntry, long)}, taken before the response is
+     * read from the JWKS cache.
+     *
+     * @return Invalidation stamp.
+     */
+    public long getStamp() {
+
+        return invalidations.get();
+    }
+
+    /**
+     * Cache the response of a JWKS URI, unless an entry was invalidated since the stamp was taken.
+     *
+     * @param jwksUri  JWKS URI.
+     * @param response Response read from the JWKS cache or fetched from the JWKS endpoint.
+     * @param stamp    Stamp taken before the response was read.
+     */
+    public void put(String jwksUri, MutualTLSJWKSCacheEntry response, long stamp) {
+
+        put(jwksUri, response, stamp, System.currentTimeMillis());
+    }
+
+    /**
+     * Remove the cached response of a JWKS URI.
+     *
+     * @param jwksUri JWKS URI.
+     */
+    public void invalidate(String jwksUri) {
+
+        invalidations.incrementAndGet();
+        Entries current = entries;
+        if (current != null && jwksUri != null) {
+            current.remove(jwksUri);
+        }
+    }
+
+    /**
+     * Remove all the cached responses.
+     */
+    public void invalidateAll() {
+
+        invalidations.incrementAndGet();
+        Entries current = entries;
+        if (current != null) {
+            for (String jwksUri : current.map.keySet()) {
+                current.remove(jwksUri);
+            }
+        }
+    }
+
+    /**
+     * @return Number of cached responses, or 0 if the cache is disabled.
+     */
+    public int size() {
+
+        Entries current = entries;
+        return current == null ? 0 : current.map.size();
+    }
+
+    /**
+     * @return Total weight of the cached responses in bytes, or 0 if the cache is disabled.
+     */
+    public long getWeight() {
+
+        Entries current = entries;
+        return current == null ? 0 : current.weight.get();
+    }
+
+    MutualTLSJWKSCacheEntry get(String jwksUri, long now) {
+
+        Entries current = entries;
+        if (current == null || jwksUri == null) {
+            return null;
+        }
+        Entry entry = current.map.get(jwksUri);
+        if (entry == null || entry.expiryTime <= now) {
+            MutualTLSMetrics.increment(MutualTLSMetrics.Counter.JWKS_NEAR_CACHE_MISS);
+            return null;
+        }
+        MutualTLSMetrics.increment(MutualTLSMetrics.Counter.JWKS_NEAR_CACHE_HIT);
+        return entry.response;
+    }
+
+    void put(String jwksUri, MutualTLSJWKSCacheEntry response, long stamp, long now) {
+
+        Entries current = entries;
+        if (current == null || jwksUri == null || response == null || response.getContent() == null) {
+            return;
+        }
+        long weight = ENTRY_OVERHEAD + 2L * (jwksUri.length() + response.getContent().length())
+                + (long) THUMBPRINT_OVERHEAD * response.getThumbprintIndex().getThumbprintCount();
+        if (weight > current.maxWeight) {
+            return;
+        }
+        Entry entry = new Entry(response, weight, now + current.timeout);
+        Entry previous = current.map.put(jwksUri, entry);
+        current.weight.addAndGet(previous == null ? weight : weight - previous.weight);
+        // Undo the put if an invalidation raced with it, as the response may predate the invalidation.
+        if (invalidations.get() != stamp) {
+            current.remove(jwksUri, entry);
+            return;
+        }
+        if (current.weight.get() > current.maxWeight) {
+            current.evict(now);
+        }
+    }
+
+    /**
+     * Replace the cached responses with an empty cache.
+     *
+     * @param maxWeight Maximum total weight of the cached responses in bytes.
+     * @param timeout   Time in milliseconds a response is kept.
+     */
+    synchronized void configure(long maxWeight, long timeout) {
+
+        this.entries = new Entries(maxWeight, timeout);
+        MutualTLSMetrics.registerGauge(SIZE_GAUGE, this::size);
+        MutualTLSMetrics.registerGauge(WEIGHT_GAUGE, this::getWeight);
+    }
+
+    private static final class Entry {
+
+        private final MutualTLSJWKSCacheEntry response;
+        private final long weight;
+        private final long expiryTime;
+
+        Entry(MutualTLSJWKSCacheEntry response, long weight, long expiryTime) {
+
+            this.response = response;
+            this.weight = weight;
+            this.expiryTime = expiryTime;
+        }
+    }
+
+    private static final class Entries {
+
+        private final Map<String, Entry> map = new ConcurrentHashMap<>();
+        private final AtomicLong weight = new AtomicLong();
+        private final long maxWeight;
+        private final long timeout;
+
+        Entries(long maxWeight, long timeout) {
+
+            this.maxWeight = maxWeight;
+            this.timeout = timeout;
+        }
+
+        void remove(String jwksUri) {
+
+            Entry removed = map.remove(jwksUri);
+            if (removed != null) {
+                weight.addAndGet(-removed.weight);
+            }
+        }
+
+        void remove(String jwksUri, Entry entry) {
+
+            if (map.remove(jwksUri, entry)) {
+                weight.addAndGet(-entry.weight);
+            }
+        }
+
+        synchronized void evict(long now) {
+
+            for (Map.Entry<String, Entry> entry : map.entrySet()) {
+                if (entry.getValue().expiryTime <= now) {
+                    remove(entry.getKey(), entry.getValue());
+                }
+            }
+            long target = maxWeight - maxWeight / 4;
+            Iterator<Map.Entry<String, Entry>> iterator = map.entrySet().iterator();
+            while (weight.get() > target && iterator.hasNext()) {
+                Map.Entry<String, Entry> entry = iterator.next();
+                remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.cache;
+
+import com.nimbusds.jose.util.DefaultResourceRetriever;
+import com.nimbusds.jose.util.Resource;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSConfig;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSMetrics;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Fetches JWK Sets from their JWKS endpoints into the {@link MutualTLSJWKSCache}. Concurrent fetches of the same JWKS
+ * URI are coalesced into a single request whose result is shared by all the callers, so that a burst of requests
+ * for a JWK Set that is not cached reaches the JWKS endpoint once. JWKS URIs with mirrors are fetched through
+ * {@link MutualTLSJWKSMirrors}, and are cached and coalesced by the JWKS URI along with the mirrors.
+ * <p>
+ * Refreshes of a JWK Set that are not caused by a cache miss, such as key rotation notices, are limited per JWKS URI
+ * by a minimum interval since the last fetch of the URI.
+ * <p>
+ * The mirrors each JWKS URI was fetched with are tracked, so that a refresh of the URI reaches the JWK Sets cached
+ * against the URI along with its mirrors.
+ * <p>
+ * A JWK Set restored from the {@link MutualTLSWarmStartSnapshot} is used on its first cache miss instead of fetching
+ * its JWKS URI, which is then fetched in the background.
+ */
+public class MutualTLSJWKSRefresher {
+
+    private static final Log log = LogFactory.getLog(MutualTLSJWKSRefresher.class);
+    private static final MutualTLSJWKSRefresher instance = new MutualTLSJWKSRefresher();
+    // The fetch times are dropped beyond this many URIs, which only allows one early refresh of each URI.
+    private static final int MAX_TRACKED_URIS = 10000;
+
+    private final Map<String, CompletableFuture<MutualTLSJWKSCacheEntry>> inFlightFetches = new ConcurrentHashMap<>();
+    private final Map<String, Long> fetchTimes = new ConcurrentHashMap<>();
+    // Mirrors by the cache key of the JWK Set, by JWKS URI. URLs are not compared directly as they resolve their hosts.
+    private final Map<String, Map<String, List<URL>>> mirrorSets = new ConcurrentHashMap<>();
+    private final JWKSRetriever retriever;
+
+    private MutualTLSJWKSRefresher() {
+
+        this(MutualTLSJWKSRefresher::retrieve);
+    }
+
+    MutualTLSJWKSRefresher(JWKSRetriever retriever) {
+
+        this.retriever = retriever;
+    }
+
+    public static MutualTLSJWKSRefresher getInstance() {
+
+        return instance;
+    }
+
+    /**
+     * Fetch the JWK Set of a JWKS URI and add it to the JWKS cache. A caller arriving while the URI is being fetched
+     * waits for that fetch instead of starting another one.
+     *
+     * @param jwksUri JWKS URI.
+     * @return Fetched JWK Set.
+     * @throws IOException If the JWK Set could not be fetched.
+     */
+    public MutualTLSJWKSCacheEntry fetch(URL jwksUri) throws IOException {
+
+        return fetch(jwksUri, Collections.emptyList());
+    }
+
+    /**
+     * Fetch the JWK Set of a JWKS URI, from the URI or from one of its mirrors, and add it to the JWKS cache against
+     * the URI and its mirrors. A caller arriving while the same URIs are being fetched waits for that fetch instead
+     * of starting another one.
+     *
+     * @param jwksUri    JWKS URI.
+     * @param mirrorUris Mirrors of the JWKS URI in the order they are tried, or an empty list if there are none.
+     * @return Fetched JWK Set.
+     * @throws IOException If the JWK Set could not be fetched.
+     */
+    public MutualTLSJWKSCacheEntry fetch(URL jwksUri, List<URL> mirrorUris) throws IOException {
+
+        return fetch(jwksUri, mirrorUris, true);
+    }
+
+    private MutualTLSJWKSCacheEntry fetch(URL jwksUri, List<URL> mirrorUris, boolean useRestored)
+            throws IOException {
+
+        MutualTLSJWKSCacheKey cacheKey = new MutualTLSJWKSCacheKey(jwksUri, mirrorUris);
+        String jwksUriString = cacheKey.getJWKSCacheKey();
+        CompletableFuture<MutualTLSJWKSCacheEntry> fetch = new CompletableFuture<>();
+        CompletableFuture<MutualTLSJWKSCacheEntry> inFlightFetch = inFlightFetches.putIfAbsent(jwksUriString, fetch);
+        if (inFlightFetch != null) {
+            MutualTLSMetrics.increment(MutualTLSMetrics.Counter.JWKS_FETCH_COALESCED);
+            return await(inFlightFetch, jwksUriString);
+        }
+        try {
+            // A restored JWK Set is discarded by a refresh, which should reach the JWKS endpoint.
+            MutualTLSJWKSCacheEntry restored = MutualTLSWarmStartSnapshot.getInstance().takeRestored(jwksUriString);
+            if (restored != null && useRestored) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Using the JWKS restored from the warm start snapshot. JWKS URI: " + jwksUriString);
+                }
+                MutualTLSJWKSCache.getInstance().addToCache(cacheKey, restored);
+                recordMirrors(jwksUri, jwksUriString, mirrorUris);
+                fetch.complete(restored);
+                MutualTLSWarmStartSnapshot.getInstance().revalidate(jwksUri, mirrorUris);
+                return restored;
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Fetching JWKS from remote endpoint. JWKS URI: " + jwksUriString);
+            }
+            long fetchTime = System.currentTimeMillis();
+            // The cached JWK Set, if any, is the previous version of a refreshed JWK Set.
+            MutualTLSJWKSCacheEntry previous = MutualTLSJWKSCache.getInstance().getValueFromCache(cacheKey);
+            Resource resource = MutualTLSJWKSMirrors.getInstance().retrieve(jwksUri, mirrorUris, retriever);
+            MutualTLSJWKSCacheEntry jwks = new MutualTLSJWKSCacheEntry(resource, fetchTime, previous);
+            MutualTLSJWKSCache.getInstance().addToCache(cacheKey, jwks);
+            recordFetch(jwksUriString, fetchTime);
+            recordMirrors(jwksUri, jwksUriString, mirrorUris);
+            fetch.complete(jwks);
+            return jwks;
+        } catch (IOException | RuntimeException e) {
+            fetch.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightFetches.remove(jwksUriString, fetch);
+        }
+    }
+
+    /**
+     * Fetch the JWK Set of a JWKS URI again, unless it was fetched less than the given interval ago.
+     *
+     * @param jwksUri     JWKS URI.
+     * @param minInterval Minimum time in milliseconds since the last fetch of the URI.
+     * @return Fetched JWK Set, or null if the URI was fetched too recently.
+     * @throws IOException If the JWK Set could not be fetched.
+     */
+    public MutualTLSJWKSCacheEntry refresh(URL jwksUri, long minInterval) throws IOException {
+
+        return refresh(jwksUri, Collections.emptyList(), minInterval);
+    }
+
+    /**
+     * Fetch the JWK Set of a JWKS URI and its mirrors again, unless they were fetched less than the given interval
+     * ago.
+     *
+     * @param jwksUri     JWKS URI.
+     * @param mirrorUris  Mirrors of the JWKS URI in the order they are tried, or an empty list if there are none.
+     * @param minInterval Minimum time in milliseconds since the last fetch of the URIs.
+     * @return Fetched JWK Set, or null if the URIs were fetched too recently.
+     * @throws IOException If the JWK Set could not be fetched.
+     */
+    public MutualTLSJWKSCacheEntry refresh(URL jwksUri, List<URL> mirrorUris, long minInterval) throws IOException {
+
+        String jwksUriString = new MutualTLSJWKSCacheKey(jwksUri, mirrorUris).getJWKSCacheKey();
+        long now = System.currentTimeMillis();
+        boolean[] allowed = new boolean[1];
+        fetchTimes.compute(jwksUriString, (uri, lastFetchTime) -> {
+            allowed[0] = lastFetchTime == null || now - lastFetchTime >= minInterval;
+            return allowed[0] ? now : lastFetchTime;
+        });
+        if (!allowed[0]) {
+            MutualTLSMetrics.increment(MutualTLSMetrics.Counter.JWKS_REFRESH_RATE_LIMITED);
+            if (log.isDebugEnabled()) {
+                log.debug("JWKS URI: " + jwksUriString + " was fetched less than " + minInterval
+                        + " ms ago. The refresh is skipped.");
+            }
+            return null;
+        }
+        return fetch(jwksUri, mirrorUris, false);
+    }
+
+    /**
+     * Returns the mirrors a JWKS URI was fetched with on this node. Each list of mirrors is a separate JWK Set in the
+     * JWKS cache.
+     *
+     * @param jwksUri JWKS URI.
+     * @return Lists of mirrors of the JWKS URI, not including the JWKS URI fetched without mirrors.
+     */
+    public List<List<URL>> getMirrorSets(URL jwksUri) {
+
+        Map<String, List<URL>> mirrors = mirrorSets.get(jwksUri.toString());
+        return mirrors == null ? Collections.emptyList() : new ArrayList<>(mirrors.values());
+    }
+
+    private void recordMirrors(URL jwksUri, String cacheKey, List<URL> mirrorUris) {
+
+        if (mirrorUris == null || mirrorUris.isEmpty()) {
+            return;
+        }
+        if (mirrorSets.size() >= MAX_TRACKED_URIS) {
+            mirrorSets.clear();
+        }
+        mirrorSets.computeIfAbsent(jwksUri.toString(), uri -> new ConcurrentHashMap<>()).putIfAbsent(cacheKey,
+                Collections.unmodifiableList(new ArrayList<>(mirrorUris)));
+    }
+
+    private void recordFetch(String jwksUri, long fetchTime) {
+
+        if (fetchTimes.size() >= MAX_TRACKED_URIS) {
+            fetchTimes.clear();
+        }
+        fetchTimes.merge(jwksUri, fetchTime, Math::max);
+    }
+
+    private static MutualTLSJWKSCacheEntry await(CompletableFuture<MutualTLSJWKSCacheEntry> fetch, String jwksUri)
+            throws IOException {
+
+        try {
+            return fetch.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the JWKS of: " + jwksUri, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw new IOException("Error while fetching the JWKS of: " + jwksUri, e.getCause());
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException("Error while fetching the JWKS of: " + jwksUri, e.getCause());
+        }
+    }
+
+    private static Resource retrieve(URL jwksUri) throws IOException {
+
+        MutualTLSConfig config = MutualTLSConfig.getInstance();
+        return new DefaultResourceRetriever(config.getJwksConnectionTimeout(), config.getJwksReadTimeout())
+                .retrieveResource(jwksUri);
+    }
+
+    /**
+     * Retrieves the JWK Set of a JWKS URI.
+     */
+    @FunctionalInterface
+    interface JWKSRetriever {
+
+        Resource retrieve(URL jwksUri) throws IOException;
+    }
+}
@@ -0,0 +1,481 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.cache;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.filter.RegisteredCertificateFilter;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSConfig;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSMetrics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Snapshot of the JWK Sets fetched by this node, with their {@link JWKSThumbprintIndex}, persisted to a file so that a
+ * restarted node does not start with cold caches.
+ * <p>
+ * The snapshot is written periodically and when the component is deactivated, to a temporary file which then
+ * replaces the snapshot file atomically. It is read once at activation through a memory mapped buffer. The file starts
+ * with a magic number and a format version, and ends with a CRC-32 checksum of its content, so that a file of another
+ * version or a damaged file is ignored as a whole.
+ * <p>
+ * A JWK Set keeps the time it was fetched across restarts, and is neither written nor restored once it is older than
+ * the configured maximum age. A restored JWK Set is not added to the JWKS cache, which is shared with the other nodes
+ * of a cluster, until it is first looked up on this node. It is then used right away and revalidated in the background
+ * by fetching its JWKS URI again.
+ * <p>
+ * The {@link RegisteredCertificateFilter} is not persisted. A filter restored from the snapshot would miss the
+ * certificates registered on other nodes while this node was down, and reject them until its first rebuild, so a
+ * restarted node does not reject any certificate until its filter is built afresh.
+ */
+public class MutualTLSWarmStartSnapshot {
+
+    private static final Log log = LogFactory.getLog(MutualTLSWarmStartSnapshot.class);
+    private static final MutualTLSWarmStartSnapshot instance = new MutualTLSWarmStartSnapshot();
+    private static final String RESTORED_GAUGE = "WarmStartSnapshot.Restored";
+    private static final String THREAD_NAME = "MutualTLSWarmStartSnapshot";
+    private static final String TEMPORARY_FILE_SUFFIX = ".tmp";
+    // "MTLS" in ASCII.
+    private static final int MAGIC = 0x4D544C53;
+    // Version 1 also held the registered certificate filter.
+    private static final int VERSION = 2;
+    private static final int HEADER_LENGTH = 16;
+    private static final int CHECKSUM_LENGTH = 8;
+    // JWK Sets are not recorded beyond this many JWKS URIs.
+    private static final int MAX_ENTRIES = 10000;
+
+    private final Map<String, MutualTLSJWKSCacheEntry> entries = new ConcurrentHashMap<>();
+    private final Map<String, MutualTLSJWKSCacheEntry> restored = new ConcurrentHashMap<>();
+    private volatile Path file;
+    private volatile long maxAge;
+    private int writeInterval;
+    private volatile ScheduledExecutorService executor;
+
+    private MutualTLSWarmStartSnapshot() {
+
+    }
+
+    public static MutualTLSWarmStartSnapshot getInstance() {
+
+        return instance;
+    }
+
+    /**
+     * Restore the snapshot file of the current configuration, if there is one, and schedule its periodic write.
+     */
+    public synchronized void start() {
+
+        MutualTLSConfig config = MutualTLSConfig.getInstance();
+        if (config.getSnapshotFile() != null) {
+            load(Paths.get(config.getSnapshotFile()).toAbsolutePath().normalize(),
+                    TimeUnit.SECONDS.toMillis(config.getSnapshotMaxAge()), System.currentTimeMillis());
+        }
+        reconfigure(config);
+    }
+
+    /**
+     * Apply a configuration. The snapshot is only restored at activation, so a changed snapshot file is written but
+     * not read.
+     *
+     * @param config Configuration to apply.
+     */
+    public synchronized void reconfigure(MutualTLSConfig config) {
+
+        if (config.getSnapshotFile() == null) {
+            if (file != null) {
+                shutdown();
+                entries.clear();
+                restored.clear();
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Warm start snapshot is disabled.");
+            }
+            return;
+        }
+        configure(Paths.get(config.getSnapshotFile()).toAbsolutePath().normalize(), config.getSnapshotWriteInterval(),
+                TimeUnit.SECONDS.toMillis(config.getSnapshotMaxAge()));
+    }
+
+    /**
+     * Record the JWK Sets added to the JWKS cache and write them periodically to a snapshot file. The periodic write
+     * is only rescheduled when the file or the interval has changed.
+     *
+     * @param path          Absolute and normalized path of the snapshot file.
+     * @param writeInterval Interval in seconds between two writes.
+     * @param maxAge        Maximum age in milliseconds of the written and restored JWK Sets.
+     */
+    synchronized void configure(Path path, int writeInterval, long maxAge) {
+
+        this.maxAge = maxAge;
+        if (path.equals(file) && writeInterval == this.writeInterval) {
+            return;
+        }
+        shutdown();
+        file = path;
+        this.writeInterval = writeInterval;
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::writeSnapshot, writeInterval, writeInterval, TimeUnit.SECONDS);
+        MutualTLSMetrics.registerGauge(RESTORED_GAUGE, restored::size);
+        if (log.isDebugEnabled()) {
+            log.debug("Warm start snapshot is written to: " + path + " every " + writeInterval + " seconds.");
+        }
+    }
+
+    /**
+     * Write the snapshot a last time, stop the periodic write and discard the recorded JWK Sets.
+     */
+    public synchronized void stop() {
+
+        if (file != null) {
+            writeSnapshot();
+        }
+        shutdown();
+        entries.clear();
+        restored.clear();
+    }
+
+    /**
+     * @return Whether a snapshot file is configured.
+     */
+    public boolean isEnabled() {
+
+        return file != null;
+    }
+
+    /**
+     * Record a JWK Set added to the JWKS cache on this node, to be written with the next snapshot.
+     *
+     * @param jwksUri JWKS URI.
+     * @param jwks    JWK Set.
+     */
+    public void record(String jwksUri, MutualTLSJWKSCacheEntry jwks) {
+
+        if (file == null || jwks == null || jwks.getContent() == null) {
+            return;
+        }
+        if (entries.size() >= MAX_ENTRIES && !entries.containsKey(jwksUri)) {
+            return;
+        }
+        entries.put(jwksUri, jwks);
+    }
+
+    /**
+     * Stop recording the JWK Set of a JWKS URI, once it is removed from the JWKS cache.
+     *
+     * @param jwksUri JWKS URI.
+     */
+    public void forget(String jwksUri) {
+
+        entries.remove(jwksUri);
+        restored.remove(jwksUri);
+    }
+
+    /**
+     * Stop recording all the JWK Sets, once the JWKS cache is cleared.
+     */
+    public void forgetAll() {
+
+        entries.clear();
+        restored.clear();
+    }
+
+    /**
+     * Take the restored JWK Set of a JWKS URI. A JWK Set is only returned once, and only if it is not older than the
+     * maximum age.
+     *
+     * @param jwksUri JWKS URI.
+     * @return Restored JWK Set, or null if there is none.
+     */
+    public MutualTLSJWKSCacheEntry takeRestored(String jwksUri) {
+
+        if (restored.isEmpty()) {
+            return null;
+        }
+        MutualTLSJWKSCacheEntry jwks = restored.remove(jwksUri);
+        if (jwks == null || System.currentTimeMillis() - jwks.getFetchedTime() > maxAge) {
+            return null;
+        }
+        MutualTLSMetrics.increment(MutualTLSMetrics.Counter.JWKS_RESTORED_FROM_SNAPSHOT);
+        return jwks;
+    }
+
+    /**
+     * Fetch the JWKS URI of a restored JWK Set in the background. The restored JWK Set stays in the JWKS cache if the
+     * URI can not be fetched.
+     *
+     * @param jwksUri    JWKS URI.
+     * @param mirrorUris Mirrors of the JWKS URI the JWK Set is cached against, or an empty list if there are none.
+     */
+    public void revalidate(URL jwksUri, List<URL> mirrorUris) {
+
+        ScheduledExecutorService current = executor;
+        if (current == null) {
+            return;
+        }
+        try {
+            current.execute(() -> {
+                try {
+                    MutualTLSJWKSRefresher.getInstance().refresh(jwksUri, mirrorUris, 0);
+                } catch (IOException | RuntimeException e) {
+                    log.warn("Error while revalidating the restored JWKS of: " + jwksUri
+                            + ". The restored JWKS is used until it expires.", e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Warm start snapshot is stopped. The restored JWKS of: " + jwksUri
+                        + " is not revalidated.", e);
+            }
+        }
+    }
+
+    /**
+     * @return Number of restored JWK Sets that were not looked up yet.
+     */
+    public int getRestoredCount() {
+
+        return restored.size();
+    }
+
+    /**
+     * Write the snapshot file.
+     *
+     * @param path Snapshot file.
+     * @param now  Current time in milliseconds.
+     * @throws IOException If the file could not be written.
+     */
+    synchronized void write(Path path, long now) throws IOException {
+
+        Map<String, MutualTLSJWKSCacheEntry> written = new HashMap<>();
+        addUnexpired(restored, written, now);
+        addUnexpired(entries, written, now);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(now);
+        out.writeInt(written.size());
+        for (Map.Entry<String, MutualTLSJWKSCacheEntry> entry : written.entrySet()) {
+            MutualTLSJWKSCacheEntry jwks = entry.getValue();
+            writeString(out, entry.getKey());
+            out.writeLong(jwks.getFetchedTime());
+            writeString(out, jwks.getContentType());
+            writeString(out, jwks.getContent());
+            jwks.getThumbprintIndex().writeTo(out);
+        }
+        out.flush();
+        CRC32 checksum = new CRC32();
+        checksum.update(bytes.toByteArray());
+        out.writeLong(checksum.getValue());
+        out.flush();
+
+        Path temporary = path.resolveSibling(path.getFileName() + TEMPORARY_FILE_SUFFIX);
+        Files.write(temporary, bytes.toByteArray());
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (log.isDebugEnabled()) {
+            log.debug("Warm start snapshot of " + written.size() + " JWKS written to: " + path);
+        }
+    }
+
+    /**
+     * Read the snapshot file. The JWK Sets that are not older than the maximum age are kept until they are looked up.
+     * Nothing is restored if the file can not be read.
+     *
+     * @param path   Snapshot file.
+     * @param maxAge Maximum age in milliseconds of the restored JWK Sets.
+     * @param now    Current time in milliseconds.
+     * @return Number of restored JWK Sets.
+     */
+    synchronized int load(Path path, long maxAge, long now) {
+
+        if (!Files.isRegularFile(path)) {
+            if (log.isDebugEnabled()) {
+                log.debug("Warm start snapshot: " + path + " does not exist. Starting without it.");
+            }
+            return 0;
+        }
+        Map<String, MutualTLSJWKSCacheEntry> loaded = new HashMap<>();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_LENGTH + CHECKSUM_LENGTH || size > Integer.MAX_VALUE) {
+                throw new IOException("Invalid snapshot size : " + size);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            ByteBuffer content = buffer.duplicate();
+            content.limit((int) size - CHECKSUM_LENGTH);
+            CRC32 checksum = new CRC32();
+            checksum.update(content.duplicate());
+            if (checksum.getValue() != buffer.getLong((int) size - CHECKSUM_LENGTH)) {
+                throw new IOException("Snapshot checksum does not match its content.");
+            }
+            DataInputStream in = new DataInputStream(new ByteBufferInputStream(content));
+            if (in.readInt() != MAGIC) {
+                throw new IOException("File is not a Mutual TLS snapshot.");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                log.info("Warm start snapshot: " + path + " is of version " + version + " instead of " + VERSION
+                        + ". Starting without it.");
+                return 0;
+            }
+            long writtenTime = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String jwksUri = readString(in);
+                long fetchedTime = in.readLong();
+                String contentType = readString(in);
+                String jwks = readString(in);
+                JWKSThumbprintIndex thumbprintIndex = JWKSThumbprintIndex.readFrom(in);
+                if (jwksUri != null && jwks != null && now - fetchedTime <= maxAge) {
+                    loaded.put(jwksUri, new MutualTLSJWKSCacheEntry(jwks, contentType, fetchedTime, thumbprintIndex));
+                }
+            }
+            restored.putAll(loaded);
+            this.maxAge = maxAge;
+            if (log.isDebugEnabled()) {
+                log.debug("Restored " + loaded.size() + " of the " + count + " JWKS of the warm start snapshot: "
+                        + path + " written " + (now - writtenTime) + " ms ago.");
+            }
+            return loaded.size();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Error while reading the warm start snapshot: " + path + ". Starting without it.", e);
+            return 0;
+        }
+    }
+
+    private void writeSnapshot() {
+
+        Path current = file;
+        if (current == null) {
+            return;
+        }
+        try {
+            write(current, System.currentTimeMillis());
+        } catch (IOException | RuntimeException e) {
+            // Keep the scheduled writes running.
+            log.error("Error while writing the warm start snapshot: " + current, e);
+        }
+    }
+
+    private void shutdown() {
+
+        file = null;
+        writeInterval = 0;
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        MutualTLSMetrics.unregisterGauge(RESTORED_GAUGE);
+    }
+
+    private void addUnexpired(Map<String, MutualTLSJWKSCacheEntry> from, Map<String, MutualTLSJWKSCacheEntry> to,
+                              long now) {
+
+        for (Map.Entry<String, MutualTLSJWKSCacheEntry> entry : from.entrySet()) {
+            if (now - entry.getValue().getFetchedTime() <= maxAge) {
+                to.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the content of a buffer without copying it.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int read = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, read);
+            return read;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.filter;
+
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.CertificateThumbprint;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter over certificate digests. Membership checks never return false for a digest that was added, but may
+ * return true for a digest that was not added, with the probability given at construction.
+ * <p>
+ * The filter is safe for concurrent use. Digests are expected to be outputs of a cryptographic hash function such as
+ * SHA-256, so their bytes are used directly as the hash values.
+ */
+public class CertificateBloomFilter {
+
+    private static final int MIN_DIGEST_LENGTH = 16;
+    private static final int MAX_HASH_FUNCTIONS = 16;
+    private static final int MAX_WORDS = Integer.MAX_VALUE - 8;
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashFunctionCount;
+
+    /**
+     * @param expectedInsertions       Number of digests the filter is sized for.
+     * @param falsePositiveProbability False positive probability when the expected number of digests is added.
+     */
+    public CertificateBloomFilter(int expectedInsertions, double falsePositiveProbability) {
+
+        if (expectedInsertions <= 0) {
+            throw new IllegalArgumentException("Expected insertions should be positive. Value : "
+                    + expectedInsertions);
+        }
+        if (!(falsePositiveProbability > 0 && falsePositiveProbability < 1)) {
+            throw new IllegalArgumentException("False positive probability should be between 0 and 1. Value : "
+                    + falsePositiveProbability);
+        }
+        double ln2 = Math.log(2);
+        double optimalBits = Math.ceil(-expectedInsertions * Math.log(falsePositiveProbability) / (ln2 * ln2));
+        int words = (int) Math.max(1, Math.min(MAX_WORDS, ((long) optimalBits + 63) >>> 6));
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = (long) words << 6;
+        this.hashFunctionCount = (int) Math.max(1, Math.min(MAX_HASH_FUNCTIONS,
+                Math.round((double) bitCount / expectedInsertions * ln2)));
+    }
+
+    /**
+     * Add a digest to the filter.
+     *
+     * @param digest Digest of the certificate.
+     */
+    public void put(byte[] digest) {
+
+        long hash1 = readLong(digest, 0);
+        long hash2 = readLong(digest, 8) | 1L;
+        for (int i = 0; i < hashFunctionCount; i++) {
+            long index = Math.floorMod(hash1 + i * hash2, bitCount);
+            int word = (int) (index >>> 6);
+            long mask = 1L << index;
+            if ((bits.get(word) & mask) == 0) {
+                bits.accumulateAndGet(word, mask, (current, bit) -> current | bit);
+            }
+        }
+    }
+
+    /**
+     * Check whether the digest may have been added to the filter.
+     *
+     * @param digest Digest of the certificate.
+     * @return False if the digest was definitely not added, true otherwise.
+     */
+    public boolean mightContain(byte[] digest) {
+
+        return mightContain(readLong(digest, 0), readLong(digest, 8));
+    }
+
+    /**
+     * Check whether the SHA-256 digest of a certificate may have been added to the filter.
+     *
+     * @param thumbprint Thumbprint of the certificate.
+     * @return False if the digest was definitely not added.
+     */
+    public boolean mightContain(CertificateThumbprint thumbprint) {
+
+        ByteBuffer digest = thumbprint.getSha256Buffer();
+        return mightContain(digest.getLong(0), digest.getLong(8));
+    }
+
+    private boolean mightContain(long hash1, long secondHash) {
+
+        long hash2 = secondHash | 1L;
+        for (int i = 0; i < hashFunctionCount; i++) {
+            long index = Math.floorMod(hash1 + i * hash2, bitCount);
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Number of bits in the filter.
+     */
+    public long getBitCount() {
+
+        return bitCount;
+    }
+
+    /**
+     * @return Number of bits set for each digest.
+     */
+    public int getHashFunctionCount() {
+
+        return hashFunctionCount;
+    }
+
+    private static long readLong(byte[] digest, int offset) {
+
+        if (digest == null || digest.length < MIN_DIGEST_LENGTH) {
+            throw new IllegalArgumentException("Digest should be at least " + MIN_DIGEST_LENGTH + " bytes long.");
+        }
+        long value = 0;
+        for (int i = offset; i < offset + 8; i++) {
+            value = (value << 8) | (digest[i] & 0xff);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.filter;
+
+import org.apache.axis2.clustering.ClusteringAgent;
+import org.apache.axis2.clustering.ClusteringCommand;
+import org.apache.axis2.clustering.ClusteringFault;
+import org.apache.axis2.clustering.ClusteringMessage;
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.internal.MutualTLSDataHolder;
+import org.wso2.carbon.utils.ConfigurationContextService;
+
+/**
+ * Cluster message through which the changes of service providers are announced to the other nodes of a cluster. The
+ * message makes the {@link RegisteredCertificateFilter} of the receiving node stop rejecting the certificates of the
+ * changed client until its next rebuild. A message without a client id makes the filter stop rejecting any
+ * certificate until its next rebuild.
+ */
+public class RegisteredCertificateChangeMessage extends ClusteringMessage {
+
+    private static final Log log = LogFactory.getLog(RegisteredCertificateChangeMessage.class);
+    private static final long serialVersionUID = 4211394863158372146L;
+
+    private final String clientId;
+
+    RegisteredCertificateChangeMessage(String clientId) {
+
+        this.clientId = clientId;
+    }
+
+    /**
+     * Announce a change of the service provider of a client to the other nodes of the cluster. Nothing is sent when
+     * clustering is not enabled.
+     *
+     * @param clientId Client id of the changed service provider.
+     */
+    static void announceChange(String clientId) {
+
+        ClusteringAgent clusteringAgent = getClusteringAgent();
+        if (clusteringAgent == null) {
+            return;
+        }
+        try {
+            clusteringAgent.sendMessage(new RegisteredCertificateChangeMessage(clientId), true);
+        } catch (ClusteringFault e) {
+            // The other nodes pick up the change with their next rebuild.
+            log.error("Error while announcing the change of the service provider of the client: " + clientId
+                    + " to the cluster.", e);
+        }
+    }
+
+    @Override
+    public void execute(ConfigurationContext configurationContext) {
+
+        if (log.isDebugEnabled()) {
+            log.debug("Received the change of the service provider of the client: " + clientId
+                    + " from the cluster.");
+        }
+        if (clientId == null) {
+            RegisteredCertificateFilter.getInstance().discardSnapshot();
+        } else {
+            RegisteredCertificateFilter.getInstance().addChangedClient(clientId);
+        }
+    }
+
+    @Override
+    public ClusteringCommand getResponse() {
+
+        return null;
+    }
+
+    private static ClusteringAgent getClusteringAgent() {
+
+        ConfigurationContextService configurationContextService =
+                MutualTLSDataHolder.getInstance().getConfigurationContextService();
+        if (configurationContextService == null || configurationContextService.getServerConfigContext() == null) {
+            return null;
+        }
+        return configurationContextService.getServerConfigContext().getAxisConfiguration().getClusteringAgent();
+    }
+}
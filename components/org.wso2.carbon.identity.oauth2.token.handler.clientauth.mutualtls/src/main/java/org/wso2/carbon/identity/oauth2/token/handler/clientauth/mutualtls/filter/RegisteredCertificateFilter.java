@@ -0,0 +1,482 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.filter;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.application.common.model.ServiceProvider;
+import org.wso2.carbon.identity.core.util.IdentityDatabaseUtil;
+import org.wso2.carbon.identity.core.util.IdentityUtil;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.CertificateThumbprint;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.CommonConstants;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSConfig;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSMetrics;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSUtil;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.ThumbprintEngine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prefilter that identifies client certificates which are not registered for any service provider, so that such
+ * requests can be rejected before the tenant, service provider and application lookups.
+ * <p>
+ * The filter holds a {@link CertificateBloomFilter} over the digests of the certificates registered for all service
+ * providers of all tenants, which is rebuilt periodically. A rebuild reads the registered certificates and the clients
+ * with a JWKS endpoint directly from the service provider tables of the identity database with a fixed number of
+ * queries, instead of loading each service provider through the application management service. Changes made
+ * through the application management service of this node are added to the filter as they happen, and are announced
+ * to the other nodes of a cluster with a {@link RegisteredCertificateChangeMessage}. A node receiving such an
+ * announcement does not reject the certificates of the changed client until its next rebuild, which picks up the new
+ * certificate. Clients validated through a JWKS endpoint are never rejected by the filter, since their keys can be
+ * rotated at any time without a change to the service provider.
+ * <p>
+ * The filter is disabled by default, and does not reject any certificate until its first build completes.
+ */
+public class RegisteredCertificateFilter {
+
+    private static final Log log = LogFactory.getLog(RegisteredCertificateFilter.class);
+    private static final RegisteredCertificateFilter instance = new RegisteredCertificateFilter();
+    private static final String REBUILD_THREAD_NAME = "MutualTLSRegisteredCertificateFilter";
+    private static final int MIN_EXPECTED_INSERTIONS = 1024;
+    // Leaves room for the certificates added between two rebuilds without exceeding the false positive probability.
+    private static final int EXPECTED_INSERTIONS_FACTOR = 2;
+    // The certificate of a service provider is kept in the certificate table, and is referenced by its identifier from
+    // the metadata of the service provider.
+    private static final String SP_CERTIFICATE_PROPERTY = "CERTIFICATE";
+    private static final String GET_SP_CERTIFICATE_IDS = "SELECT VALUE FROM SP_METADATA WHERE NAME = ?";
+    private static final String GET_CERTIFICATES = "SELECT ID, CERTIFICATE_IN_PEM FROM IDN_CERTIFICATE";
+    private static final String GET_JWKS_CLIENT_IDS = "SELECT DISTINCT I.INBOUND_AUTH_KEY "
+            + "FROM SP_METADATA M INNER JOIN SP_INBOUND_AUTH I ON M.SP_ID = I.APP_ID "
+            + "WHERE M.NAME = ? AND M.VALUE IS NOT NULL AND I.INBOUND_AUTH_TYPE = ?";
+
+    private final Object rebuildLock = new Object();
+    private final Queue<byte[]> pendingDigests = new ConcurrentLinkedQueue<>();
+    private final Queue<String> pendingJwksClientIds = new ConcurrentLinkedQueue<>();
+    private final Queue<String> pendingChangedClientIds = new ConcurrentLinkedQueue<>();
+
+    private volatile boolean enabled;
+    private volatile boolean rebuildInProgress;
+    private volatile Snapshot snapshot;
+    private double falsePositiveProbability = CommonConstants.DEFAULT_CERT_PREFILTER_FALSE_POSITIVE_PROBABILITY;
+    private int rebuildInterval;
+    private ScheduledExecutorService rebuildExecutor;
+
+    private RegisteredCertificateFilter() {
+
+    }
+
+    public static RegisteredCertificateFilter getInstance() {
+
+        return instance;
+    }
+
+    /**
+     * Schedule the periodic rebuild if the filter is enabled in the current configuration.
+     */
+    public void start() {
+
+        reconfigure(MutualTLSConfig.getInstance());
+    }
+
+    /**
+     * Apply a configuration. The filter is restarted only when the filter settings have changed.
+     *
+     * @param config Configuration to apply.
+     */
+    public synchronized void reconfigure(MutualTLSConfig config) {
+
+        if (rebuildExecutor != null) {
+            if (config.isCertificatePrefilterEnabled()
+                    && config.getCertificatePrefilterFalsePositiveProbability() == falsePositiveProbability
+                    && config.getCertificatePrefilterRebuildInterval() == rebuildInterval) {
+                return;
+            }
+            stop();
+        }
+        if (!config.isCertificatePrefilterEnabled()) {
+            if (log.isDebugEnabled()) {
+                log.debug("Registered certificate filter is disabled.");
+            }
+            return;
+        }
+        falsePositiveProbability = config.getCertificatePrefilterFalsePositiveProbability();
+        rebuildInterval = config.getCertificatePrefilterRebuildInterval();
+        rebuildExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, REBUILD_THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
+        enabled = true;
+        rebuildExecutor.scheduleWithFixedDelay(this::rebuild, 0, rebuildInterval, TimeUnit.SECONDS);
+        if (log.isDebugEnabled()) {
+            log.debug("Registered certificate filter is enabled with a false positive probability of "
+                    + falsePositiveProbability + " and a rebuild interval of " + rebuildInterval + " seconds.");
+        }
+    }
+
+    /**
+     * Stop the periodic rebuild and discard the filter.
+     */
+    public synchronized void stop() {
+
+        enabled = false;
+        snapshot = null;
+        if (rebuildExecutor != null) {
+            rebuildExecutor.shutdownNow();
+            rebuildExecutor = null;
+        }
+    }
+
+    /**
+     * Check whether the certificate is definitely not registered for any service provider.
+     *
+     * @param clientId    Client id of the request.
+     * @param certificate Certificate presented with the request.
+     * @return True if the certificate can not be used to authenticate the client.
+     */
+    public boolean isDefinitelyUnregistered(String clientId, Certificate certificate) {
+
+        Snapshot current = snapshot;
+        if (!enabled || current == null || current.jwksClientIds.contains(clientId)
+                || current.changedClientIds.contains(clientId)) {
+            return false;
+        }
+        CertificateThumbprint thumbprint;
+        try {
+            thumbprint = ThumbprintEngine.getThumbprint(certificate);
+        } catch (CertificateException e) {
+            return false;
+        }
+        if (current.filter.mightContain(thumbprint)) {
+            return false;
+        }
+        MutualTLSMetrics.increment(MutualTLSMetrics.Counter.CERT_PREFILTER_REJECTED);
+        return true;
+    }
+
+    /**
+     * Add the certificate and the JWKS configuration of a created or updated service provider to the filter.
+     *
+     * @param serviceProvider Service provider.
+     */
+    public void addServiceProvider(ServiceProvider serviceProvider) {
+
+        if (!enabled) {
+            return;
+        }
+        String clientId = MutualTLSUtil.getOAuthClientId(serviceProvider);
+        if (clientId != null) {
+            RegisteredCertificateChangeMessage.announceChange(clientId);
+        }
+        byte[] digest = getCertificateDigest(serviceProvider);
+        String jwksClientId = getJwksClientId(serviceProvider);
+        if (digest == null && jwksClientId == null) {
+            return;
+        }
+        Snapshot current;
+        do {
+            current = snapshot;
+            if (current != null) {
+                current.add(digest, jwksClientId);
+            }
+            // A rebuild in progress may have listed the applications before this change.
+            if (rebuildInProgress) {
+                if (digest != null) {
+                    pendingDigests.add(digest);
+                }
+                if (jwksClientId != null) {
+                    pendingJwksClientIds.add(jwksClientId);
+                }
+            }
+        } while (current != snapshot);
+    }
+
+    /**
+     * Stop rejecting the certificates presented by a client until the next rebuild completes. Called when the service
+     * provider of the client was changed on another node, since its new certificate is not in the filter yet.
+     *
+     * @param clientId Client id of the changed service provider.
+     */
+    public void addChangedClient(String clientId) {
+
+        if (!enabled) {
+            return;
+        }
+        Snapshot current;
+        do {
+            current = snapshot;
+            if (current != null) {
+                current.changedClientIds.add(clientId);
+            }
+            // A rebuild in progress may have listed the applications before this change.
+            if (rebuildInProgress) {
+                pendingChangedClientIds.add(clientId);
+            }
+        } while (current != snapshot);
+    }
+
+    /**
+     * Stop rejecting any certificate until the next rebuild completes. Called when the changes made on other nodes
+     * can not be attributed to a client.
+     */
+    public void discardSnapshot() {
+
+        snapshot = null;
+    }
+
+    /**
+     * Rebuild the filter from the service providers of all tenants. The previous filter is kept if the service
+     * providers can not be read.
+     */
+    public void rebuild() {
+
+        rebuild(RegisteredCertificateFilter::readRegistrations);
+    }
+
+    void rebuild(RegistrationReader registrationReader) {
+
+        synchronized (rebuildLock) {
+            pendingDigests.clear();
+            pendingJwksClientIds.clear();
+            pendingChangedClientIds.clear();
+            rebuildInProgress = true;
+            try {
+                Registrations registrations = registrationReader.read();
+                Snapshot rebuilt = build(registrations.getCertificates(), registrations.getJwksClientIds(),
+                        falsePositiveProbability);
+                snapshot = rebuilt;
+                byte[] digest;
+                while ((digest = pendingDigests.poll()) != null) {
+                    rebuilt.add(digest, null);
+                }
+                String clientId;
+                while ((clientId = pendingJwksClientIds.poll()) != null) {
+                    rebuilt.add(null, clientId);
+                }
+                while ((clientId = pendingChangedClientIds.poll()) != null) {
+                    rebuilt.changedClientIds.add(clientId);
+                }
+                if (log.isDebugEnabled()) {
+                    log.debug("Registered certificate filter rebuilt from " + registrations.getCertificates().size()
+                            + " certificates and " + registrations.getJwksClientIds().size() + " JWKS clients.");
+                }
+            } catch (SQLException e) {
+                MutualTLSMetrics.increment(MutualTLSMetrics.Counter.CERT_PREFILTER_REBUILD_FAILURE);
+                log.error("Error while rebuilding the registered certificate filter. The previous filter is kept.", e);
+            } catch (RuntimeException e) {
+                // Keep the scheduled rebuilds running.
+                MutualTLSMetrics.increment(MutualTLSMetrics.Counter.CERT_PREFILTER_REBUILD_FAILURE);
+                log.error("Unexpected error while rebuilding the registered certificate filter.", e);
+            } finally {
+                rebuildInProgress = false;
+            }
+        }
+    }
+
+    /**
+     * Build a filter snapshot from the given registrations.
+     *
+     * @param certificates             PEM encoded certificates registered for the service providers.
+     * @param jwksClientIds            Client ids of the service providers validated through a JWKS endpoint.
+     * @param falsePositiveProbability False positive probability of the filter.
+     * @return Filter snapshot.
+     */
+    static Snapshot build(Collection<String> certificates, Collection<String> jwksClientIds,
+                          double falsePositiveProbability) {
+
+        int expectedInsertions = Math.max(MIN_EXPECTED_INSERTIONS,
+                certificates.size() * EXPECTED_INSERTIONS_FACTOR);
+        Snapshot built = new Snapshot(new CertificateBloomFilter(expectedInsertions, falsePositiveProbability));
+        for (String certificate : certificates) {
+            built.add(getCertificateDigest(certificate, null), null);
+        }
+        for (String jwksClientId : jwksClientIds) {
+            built.add(null, jwksClientId);
+        }
+        return built;
+    }
+
+    /**
+     * Replace the filter. Used when the filter is built outside the periodic rebuild.
+     *
+     * @param snapshot Filter snapshot, or null to disable rejection.
+     */
+    void setSnapshot(Snapshot snapshot) {
+
+        this.snapshot = snapshot;
+        this.enabled = snapshot != null;
+    }
+
+    /**
+     * Read the certificates and the JWKS clients of the service providers of all tenants from the identity database.
+     * The certificate table is shared with other components, so only the certificates referenced by a service
+     * provider are kept.
+     */
+    private static Registrations readRegistrations() throws SQLException {
+
+        Registrations registrations = new Registrations();
+        try (Connection connection = IdentityDatabaseUtil.getDBConnection(false)) {
+            Set<String> certificateIds = new HashSet<>();
+            try (PreparedStatement statement = connection.prepareStatement(GET_SP_CERTIFICATE_IDS)) {
+                statement.setString(1, SP_CERTIFICATE_PROPERTY);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        certificateIds.add(StringUtils.trim(resultSet.getString(1)));
+                    }
+                }
+            }
+            if (!certificateIds.isEmpty()) {
+                try (PreparedStatement statement = connection.prepareStatement(GET_CERTIFICATES);
+                     ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        if (certificateIds.contains(String.valueOf(resultSet.getInt(1)))) {
+                            registrations.getCertificates().add(readCertificate(resultSet.getBinaryStream(2)));
+                        }
+                    }
+                }
+            }
+            try (PreparedStatement statement = connection.prepareStatement(GET_JWKS_CLIENT_IDS)) {
+                statement.setString(1, CommonConstants.JWKS_URI);
+                statement.setString(2, CommonConstants.OAUTH2_INBOUND_AUTH_TYPE);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        registrations.getJwksClientIds().add(resultSet.getString(1));
+                    }
+                }
+            }
+        }
+        return registrations;
+    }
+
+    private static String readCertificate(InputStream certificate) throws SQLException {
+
+        if (certificate == null) {
+            return null;
+        }
+        try (InputStream inputStream = certificate) {
+            return IOUtils.toString(inputStream, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new SQLException("Error while reading a registered certificate.", e);
+        }
+    }
+
+    private static byte[] getCertificateDigest(ServiceProvider serviceProvider) {
+
+        return getCertificateDigest(serviceProvider.getCertificateContent(), serviceProvider.getApplicationName());
+    }
+
+    private static byte[] getCertificateDigest(String certificateContent, String applicationName) {
+
+        if (StringUtils.isBlank(certificateContent)) {
+            return null;
+        }
+        try {
+            return ThumbprintEngine.getThumbprint(IdentityUtil.convertPEMEncodedContentToCertificate(
+                    certificateContent)).getSha256();
+        } catch (CertificateException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Invalid certificate registered for the service provider : " + applicationName, e);
+            }
+            return null;
+        }
+    }
+
+    private static String getJwksClientId(ServiceProvider serviceProvider) {
+
+        if (MutualTLSUtil.getPropertyValue(serviceProvider, CommonConstants.JWKS_URI) == null) {
+            return null;
+        }
+        return MutualTLSUtil.getOAuthClientId(serviceProvider);
+    }
+
+    /**
+     * Certificates and JWKS clients registered for the service providers of all tenants.
+     */
+    static class Registrations {
+
+        private final List<String> certificates = new ArrayList<>();
+        private final List<String> jwksClientIds = new ArrayList<>();
+
+        List<String> getCertificates() {
+
+            return certificates;
+        }
+
+        List<String> getJwksClientIds() {
+
+            return jwksClientIds;
+        }
+    }
+
+    /**
+     * Reads the registrations of the service providers of all tenants.
+     */
+    @FunctionalInterface
+    interface RegistrationReader {
+
+        Registrations read() throws SQLException;
+    }
+
+    /**
+     * Filter built from the service providers at a point in time, together with the later additions and the clients
+     * changed on other nodes since.
+     */
+    static class Snapshot {
+
+        private final CertificateBloomFilter filter;
+        private final Set<String> jwksClientIds = ConcurrentHashMap.newKeySet();
+        private final Set<String> changedClientIds = ConcurrentHashMap.newKeySet();
+
+        Snapshot(CertificateBloomFilter filter) {
+
+            this.filter = filter;
+        }
+
+        void add(byte[] digest, String jwksClientId) {
+
+            if (digest != null) {
+                filter.put(digest);
+            }
+            if (jwksClientId != null) {
+                jwksClientIds.add(jwksClientId);
+            }
+        }
+    }
+}
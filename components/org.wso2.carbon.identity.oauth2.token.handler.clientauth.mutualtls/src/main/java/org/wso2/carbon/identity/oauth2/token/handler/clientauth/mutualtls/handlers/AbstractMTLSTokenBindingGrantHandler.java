@@ -18,26 +18,14 @@
 
 package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.handlers;
 
-import com.nimbusds.jose.util.Base64URL;
-import com.nimbusds.jose.util.X509CertUtils;
-import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.wso2.carbon.identity.core.util.IdentityUtil;
 import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
-import org.wso2.carbon.identity.oauth2.model.HttpRequestHeader;
+import org.wso2.carbon.identity.oauth2.bean.OAuthClientAuthnContext;
 import org.wso2.carbon.identity.oauth2.token.OAuthTokenReqMessageContext;
 import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.CommonConstants;
-
-import java.io.ByteArrayInputStream;
-import java.security.cert.CertificateException;
-import java.security.cert.CertificateFactory;
-import java.security.cert.X509Certificate;
-import java.util.Arrays;
-import java.util.Base64;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Optional;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.ScopeCodec;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.TokenBindingUtil;
 
 /**
  * This class contains the common methods of MTLS Token Binding Grant Handlers.
@@ -47,78 +35,71 @@ public class AbstractMTLSTokenBindingGrantHandler {
     private static final Log log = LogFactory.getLog(MTLSTokenBindingAuthorizationCodeGrantHandler.class);
 
     /**
-     * Validate whether scope requested by the access token is valid.
+     * Bind the token to the certificate the client authenticated with, unless the token is already bound.
      *
-     * @param tokReqMsgCtx  Message context of token request.
-     * @param validateScope Boolean by checking if the scope is correct.
-     * @return if the scope is correct.
-     * @throws IdentityOAuth2Exception Error when performing the callback.
+     * @param tokReqMsgCtx Message context of token request.
+     * @return Whether the token is bound to the certificate of the client.
      */
-    public boolean validateScope(OAuthTokenReqMessageContext tokReqMsgCtx, boolean validateScope)
-            throws IdentityOAuth2Exception {
+    public boolean bindCertificate(OAuthTokenReqMessageContext tokReqMsgCtx) {
 
-        // Get MTLS certificate from transport headers.
-        HttpRequestHeader[] requestHeaders = tokReqMsgCtx.getOauth2AccessTokenReqDTO().getHttpRequestHeaders();
-        String headerName = IdentityUtil.getProperty(CommonConstants.MTLS_AUTH_HEADER);
+        if (tokReqMsgCtx.getTokenBinding() != null) {
+            return false;
+        }
+        // The thumbprint of the certificate is published by the MTLS client authenticator, whether the certificate
+        // was received through the TLS connection or through the certificate header.
+        OAuthClientAuthnContext oAuthClientAuthnContext =
+                tokReqMsgCtx.getOauth2AccessTokenReqDTO().getoAuthClientAuthnContext();
+        if (oAuthClientAuthnContext == null || !CommonConstants.AUTHENTICATOR_TYPE_MTLS.equals(
+                oAuthClientAuthnContext.getParameter(CommonConstants.AUTHENTICATOR_TYPE_PARAM))) {
+            return false;
+        }
+        Object certThumbprint =
+                oAuthClientAuthnContext.getParameter(CommonConstants.CLIENT_CERTIFICATE_THUMBPRINT_PARAM);
+        if (!(certThumbprint instanceof String)) {
+            return false;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Binding the token to the client MTLS certificate with thumbprint: " + certThumbprint);
+        }
+        tokReqMsgCtx.setTokenBinding(TokenBindingUtil.createCertificateBinding((String) certThumbprint));
+        return true;
+    }
 
-        Optional<HttpRequestHeader> certHeader =
-                Arrays.stream(requestHeaders).filter(httpRequestHeader ->
-                        headerName.equals(httpRequestHeader.getName())).findFirst();
+    /**
+     * Bind a refreshed token to the certificate the client authenticated with, unless the token is already bound.
+     * Tokens issued by earlier versions carry the certificate binding as a hidden scope. The scope is not carried
+     * over, and if the client did not authenticate with a certificate, the binding is moved to the token binding of
+     * the refreshed token instead.
+     *
+     * @param tokReqMsgCtx Message context of the refresh token request.
+     */
+    public void bindRefreshedToken(OAuthTokenReqMessageContext tokReqMsgCtx) {
 
-        String authenticatorType = (String) tokReqMsgCtx.getOauth2AccessTokenReqDTO().getoAuthClientAuthnContext()
-                .getParameter(CommonConstants.AUTHENTICATOR_TYPE_PARAM);
-        if (certHeader.isPresent() && CommonConstants.AUTHENTICATOR_TYPE_MTLS.equals(authenticatorType)) {
-            Base64URL certThumbprint = null;
+        String[] scopes = tokReqMsgCtx.getScope();
+        String legacyThumbprint = ScopeCodec.getBindingThumbprint(scopes);
+        tokReqMsgCtx.setScope(ScopeCodec.removeBindingScopes(scopes));
+        if (!bindCertificate(tokReqMsgCtx) && legacyThumbprint != null && tokReqMsgCtx.getTokenBinding() == null) {
             if (log.isDebugEnabled()) {
-                log.debug("Client MTLS certificate found: " + certHeader);
-            }
-            try {
-                if (certHeader.get().getValue() != null) {
-                    X509Certificate certificate = parseCertificate(certHeader.get().getValue()[0]);
-                    certThumbprint = X509CertUtils.computeSHA256Thumbprint(certificate);
-                }
-            } catch (CertificateException e) {
-                if (log.isDebugEnabled()) {
-                    log.debug("Error occurred while calculating the thumbprint of the MTLS certificate " +
-                            "of the client: " + tokReqMsgCtx.getOauth2AccessTokenReqDTO().getClientId(), e);
-                }
-                return false;
-            }
-
-            // Add certificate thumbprint as a hidden scope of the token.
-            if (certThumbprint != null) {
-                if (log.isDebugEnabled()) {
-                    log.debug("Client MTLS certificate thumbprint: " + certThumbprint);
-                }
-                String[] scopes = tokReqMsgCtx.getScope();
-                List<String> scopesList = new LinkedList<>(Arrays.asList(scopes));
-                scopesList.add(CommonConstants.CERT_THUMBPRINT + CommonConstants.SEPARATOR +
-                        CommonConstants.SHA256_DIGEST_ALGORITHM + CommonConstants.CERT_THUMBPRINT_SEPARATOR
-                        + certThumbprint.toString());
-                tokReqMsgCtx.setScope(scopesList.toArray(new String[scopesList.size()]));
+                log.debug("Migrating the certificate binding scope of the refreshed token to token binding.");
             }
+            tokReqMsgCtx.setTokenBinding(TokenBindingUtil.createCertificateBinding(legacyThumbprint));
         }
-        return validateScope;
     }
 
     /**
-     * Return X509 Certificate for the given Certificate Content.
+     * Validate whether scope requested by the access token is valid.
      *
-     * @param content Certificate Content.
-     * @return X509Certificate.
-     * @throws CertificateException Certificate Exception.
+     * @deprecated The certificate is no longer bound through a scope. Use
+     * {@link #bindCertificate(OAuthTokenReqMessageContext)} when the token is issued.
+     * @param tokReqMsgCtx  Message context of token request.
+     * @param validateScope Boolean by checking if the scope is correct.
+     * @return if the scope is correct.
+     * @throws IdentityOAuth2Exception Error when performing the callback.
      */
-    private static X509Certificate parseCertificate(String content) throws CertificateException {
-
-        // Trim extra spaces.
-        String decodedContent = StringUtils.trim(content);
-
-        // Remove certificate headers.
-        byte[] decoded = Base64.getDecoder().decode(StringUtils.trim(decodedContent
-                .replaceAll(CommonConstants.BEGIN_CERT, StringUtils.EMPTY)
-                .replaceAll(CommonConstants.END_CERT, StringUtils.EMPTY)));
+    @Deprecated
+    public boolean validateScope(OAuthTokenReqMessageContext tokReqMsgCtx, boolean validateScope)
+            throws IdentityOAuth2Exception {
 
-        return (X509Certificate) CertificateFactory.getInstance(CommonConstants.X509)
-                .generateCertificate(new ByteArrayInputStream(decoded));
+        return validateScope;
     }
 }
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.handlers;
+
+import org.wso2.carbon.identity.oauth2.authz.OAuthAuthzReqMessageContext;
+import org.wso2.carbon.identity.oauth2.token.OAuthTokenReqMessageContext;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.CommonConstants;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.TokenBindingUtil;
+import org.wso2.carbon.identity.oauth2.token.handlers.claims.JWTAccessTokenClaimProvider;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Adds the confirmation claim of RFC 8705, {@code "cnf": {"x5t#S256": "<thumbprint>"}}, to the JWT access tokens
+ * bound to a client certificate, so that resource servers can verify the binding without introspecting the token.
+ * The thumbprint is carried by the token binding alone and is not added to the scope claim.
+ *
+ * @see <href="https://tools.ietf.org/html/rfc8705#section-3.1">RFC 8705 JWT Certificate Thumbprint Confirmation</>
+ */
+public class CertificateBindingClaimProvider implements JWTAccessTokenClaimProvider {
+
+    @Override
+    public Map<String, Object> getAdditionalClaims(OAuthAuthzReqMessageContext context) {
+
+        // Tokens issued from the authorization endpoint are not bound to a client certificate.
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public Map<String, Object> getAdditionalClaims(OAuthTokenReqMessageContext context) {
+
+        if (context == null) {
+            return Collections.emptyMap();
+        }
+        String thumbprint = TokenBindingUtil.getCertificateThumbprint(context.getTokenBinding());
+        if (thumbprint == null) {
+            return Collections.emptyMap();
+        }
+        return Collections.singletonMap(CommonConstants.CONFIRMATION_CLAIM_ATTRIBUTE,
+                Collections.singletonMap(CommonConstants.X5T_S256, thumbprint));
+    }
+}
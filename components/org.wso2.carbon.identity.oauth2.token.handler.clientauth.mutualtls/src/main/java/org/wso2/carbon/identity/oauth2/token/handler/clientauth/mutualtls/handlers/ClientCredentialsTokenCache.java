@@ -0,0 +1,288 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.handlers;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.oauth2.dto.OAuth2AccessTokenReqDTO;
+import org.wso2.carbon.identity.oauth2.dto.OAuth2AccessTokenRespDTO;
+import org.wso2.carbon.identity.oauth2.token.OAuthTokenReqMessageContext;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.BoundedCache;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSConfig;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSMetrics;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.TokenBindingUtil;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Node local cache of the certificate bound client credentials tokens issued by
+ * {@link MTLSTokenBindingClientCredentialsGrantHandler}, keyed by the tenant, the client id, the granted scopes and
+ * the thumbprint of the bound certificate. A cached token is returned instead of issuing a new one while it has more
+ * than the configured fraction of its lifetime left, which saves a token table write per request for clients that
+ * request tokens more often than needed.
+ * <p>
+ * The tokens bound to a certificate are removed when they are revoked through the certificate on this node. Entries
+ * of tokens revoked otherwise are detected by the grant handler, which checks that the token is still active before
+ * reusing it. The cache is disabled by default.
+ */
+public class ClientCredentialsTokenCache {
+
+    private static final Log log = LogFactory.getLog(ClientCredentialsTokenCache.class);
+    private static final ClientCredentialsTokenCache instance = new ClientCredentialsTokenCache();
+    private static final String SIZE_GAUGE = "ClientCredentialsTokenReuse.Size";
+    private static final char KEY_SEPARATOR = '\n';
+
+    private volatile BoundedCache<String, CachedToken> entries;
+    private volatile double minRemainingLifetime;
+
+    private ClientCredentialsTokenCache() {
+
+    }
+
+    public static ClientCredentialsTokenCache getInstance() {
+
+        return instance;
+    }
+
+    /**
+     * Create the cache from the current configuration if token reuse is enabled.
+     */
+    public void start() {
+
+        reconfigure(MutualTLSConfig.getInstance());
+    }
+
+    /**
+     * Apply a configuration. The cached tokens are only discarded when token reuse is disabled or the capacity of the
+     * cache has changed.
+     *
+     * @param config Configuration to apply.
+     */
+    public synchronized void reconfigure(MutualTLSConfig config) {
+
+        if (!config.isTokenReuseEnabled()) {
+            if (entries != null) {
+                stop();
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Reuse of Mutual TLS client credentials tokens is disabled.");
+            }
+            return;
+        }
+        int capacity = config.getTokenReuseCapacity();
+        minRemainingLifetime = config.getTokenReuseMinRemainingLifetime();
+        if (entries == null || entries.getCapacity() != capacity) {
+            configure(capacity, minRemainingLifetime);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Reuse of Mutual TLS client credentials tokens is enabled with a capacity of " + capacity
+                    + " tokens and a minimum remaining lifetime of " + minRemainingLifetime + ".");
+        }
+    }
+
+    /**
+     * Disable token reuse and discard the cached tokens.
+     */
+    public synchronized void stop() {
+
+        entries = null;
+        MutualTLSMetrics.unregisterGauge(SIZE_GAUGE);
+    }
+
+    /**
+     * @return Whether token reuse is enabled.
+     */
+    public boolean isEnabled() {
+
+        return entries != null;
+    }
+
+    /**
+     * @return Number of cached tokens, or 0 if token reuse is disabled.
+     */
+    public int size() {
+
+        BoundedCache<String, CachedToken> current = entries;
+        return current == null ? 0 : current.size();
+    }
+
+    /**
+     * Remove the cached tokens of a client, for example when the client is updated or deleted.
+     *
+     * @param tenantDomain Tenant domain of the client.
+     * @param clientId     Client id.
+     */
+    public void invalidateClient(String tenantDomain, String clientId) {
+
+        BoundedCache<String, CachedToken> current = entries;
+        if (current != null && clientId != null) {
+            String prefix = StringUtils.defaultString(tenantDomain) + KEY_SEPARATOR + clientId + KEY_SEPARATOR;
+            current.removeIf(key -> key.startsWith(prefix));
+        }
+    }
+
+    /**
+     * Remove the cached tokens bound to a certificate, for example when the tokens bound to the certificate are
+     * revoked.
+     *
+     * @param certThumbprint Base64 URL encoded SHA-256 thumbprint of the certificate.
+     */
+    public void invalidateCertificate(String certThumbprint) {
+
+        BoundedCache<String, CachedToken> current = entries;
+        if (current != null && certThumbprint != null) {
+            current.removeIf(key -> certThumbprint.equals(getCertificateThumbprint(key)));
+        }
+    }
+
+    /**
+     * Returns the key of the token requested by a client credentials grant.
+     *
+     * @param tokReqMsgCtx Message context of the token request, after the scopes are validated and the token is bound.
+     * @return Cache key, or null if the token is not bound to a certificate.
+     */
+    static String getKey(OAuthTokenReqMessageContext tokReqMsgCtx) {
+
+        String certThumbprint = TokenBindingUtil.getCertificateThumbprint(tokReqMsgCtx.getTokenBinding());
+        OAuth2AccessTokenReqDTO tokenReqDTO = tokReqMsgCtx.getOauth2AccessTokenReqDTO();
+        if (certThumbprint == null || tokenReqDTO == null || tokenReqDTO.getClientId() == null) {
+            return null;
+        }
+        String[] scopes = tokReqMsgCtx.getScope() == null ? new String[0] : tokReqMsgCtx.getScope().clone();
+        Arrays.sort(scopes);
+        return StringUtils.defaultString(tokenReqDTO.getTenantDomain()) + KEY_SEPARATOR + tokenReqDTO.getClientId()
+                + KEY_SEPARATOR + certThumbprint + KEY_SEPARATOR + String.join(" ", scopes);
+    }
+
+    private static String getCertificateThumbprint(String key) {
+
+        // The thumbprint is the third part of the key, after the tenant domain and the client id.
+        int clientIdStart = key.indexOf(KEY_SEPARATOR) + 1;
+        int thumbprintStart = clientIdStart == 0 ? -1 : key.indexOf(KEY_SEPARATOR, clientIdStart) + 1;
+        int thumbprintEnd = thumbprintStart <= 0 ? -1 : key.indexOf(KEY_SEPARATOR, thumbprintStart);
+        return thumbprintEnd < 0 ? null : key.substring(thumbprintStart, thumbprintEnd);
+    }
+
+    /**
+     * Returns a cached token if it has enough of its lifetime left, with its expiry adjusted to the remaining
+     * lifetime.
+     *
+     * @param key Cache key.
+     * @param now Current time in milliseconds.
+     * @return Token response, or null if there is no token to reuse.
+     */
+    OAuth2AccessTokenRespDTO get(String key, long now) {
+
+        BoundedCache<String, CachedToken> current = entries;
+        if (current == null || key == null) {
+            return null;
+        }
+        CachedToken cached = current.get(key);
+        if (cached == null) {
+            return null;
+        }
+        long remaining = cached.expiryTime - now;
+        if (remaining <= (cached.expiryTime - cached.issuedTime) * minRemainingLifetime) {
+            current.remove(key, cached);
+            return null;
+        }
+        OAuth2AccessTokenRespDTO tokenRespDTO = new OAuth2AccessTokenRespDTO();
+        tokenRespDTO.setAccessToken(cached.accessToken);
+        tokenRespDTO.setTokenId(cached.tokenId);
+        tokenRespDTO.setRefreshToken(cached.refreshToken);
+        tokenRespDTO.setAuthorizedScopes(cached.authorizedScopes);
+        tokenRespDTO.setExpiresInMillis(remaining);
+        tokenRespDTO.setExpiresIn(TimeUnit.MILLISECONDS.toSeconds(remaining));
+        for (Map.Entry<String, String> parameter : cached.parameters.entrySet()) {
+            tokenRespDTO.addParameter(parameter.getKey(), parameter.getValue());
+        }
+        return tokenRespDTO;
+    }
+
+    /**
+     * Cache an issued token, making room for it if the cache is full.
+     *
+     * @param key          Cache key.
+     * @param tokenRespDTO Issued token.
+     * @param now          Current time in milliseconds.
+     */
+    void put(String key, OAuth2AccessTokenRespDTO tokenRespDTO, long now) {
+
+        BoundedCache<String, CachedToken> current = entries;
+        if (current == null || key == null || tokenRespDTO == null || tokenRespDTO.isError()
+                || tokenRespDTO.getAccessToken() == null || tokenRespDTO.getExpiresInMillis() <= 0) {
+            return;
+        }
+        current.put(key, new CachedToken(tokenRespDTO, now), entry -> entry.expiryTime <= now);
+    }
+
+    /**
+     * Remove a cached token.
+     *
+     * @param key Cache key.
+     */
+    void invalidate(String key) {
+
+        BoundedCache<String, CachedToken> current = entries;
+        if (current != null && key != null) {
+            current.remove(key);
+        }
+    }
+
+    /**
+     * Replace the cached tokens with an empty cache.
+     *
+     * @param capacity             Maximum number of cached tokens.
+     * @param minRemainingLifetime Fraction of its lifetime a token should have left to be reused.
+     */
+    synchronized void configure(int capacity, double minRemainingLifetime) {
+
+        this.minRemainingLifetime = minRemainingLifetime;
+        this.entries = new BoundedCache<>(capacity);
+        MutualTLSMetrics.registerGauge(SIZE_GAUGE, this::size);
+    }
+
+    private static final class CachedToken {
+
+        private final String accessToken;
+        private final String tokenId;
+        private final String refreshToken;
+        private final String authorizedScopes;
+        private final Map<String, String> parameters;
+        private final long issuedTime;
+        private final long expiryTime;
+
+        CachedToken(OAuth2AccessTokenRespDTO tokenRespDTO, long issuedTime) {
+
+            this.accessToken = tokenRespDTO.getAccessToken();
+            this.tokenId = tokenRespDTO.getTokenId();
+            this.refreshToken = tokenRespDTO.getRefreshToken();
+            this.authorizedScopes = tokenRespDTO.getAuthorizedScopes();
+            this.parameters = tokenRespDTO.getParameters() == null ? Collections.emptyMap()
+                    : new HashMap<>(tokenRespDTO.getParameters());
+            this.issuedTime = issuedTime;
+            this.expiryTime = issuedTime + tokenRespDTO.getExpiresInMillis();
+        }
+    }
+}
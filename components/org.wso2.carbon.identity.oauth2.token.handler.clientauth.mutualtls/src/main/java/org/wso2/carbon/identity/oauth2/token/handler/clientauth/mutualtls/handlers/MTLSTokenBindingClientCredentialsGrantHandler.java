@@ -18,60 +18,86 @@
 
 package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.handlers;
 
-import org.apache.commons.lang.ArrayUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.oauth.common.OAuthConstants;
 import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
 import org.wso2.carbon.identity.oauth2.dto.OAuth2AccessTokenRespDTO;
+import org.wso2.carbon.identity.oauth2.model.AccessTokenDO;
 import org.wso2.carbon.identity.oauth2.token.OAuthTokenReqMessageContext;
-import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.CommonConstants;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSMetrics;
 import org.wso2.carbon.identity.oauth2.token.handlers.grant.ClientCredentialsGrantHandler;
-
-import java.util.Arrays;
-import java.util.LinkedList;
-import java.util.List;
+import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
 
 /**
  * This class is used to bound the MTLS certificate of the client to the access token issued. Here, the certificate is
- * bounded to the access token using a hidden scope.
+ * bounded to the access token using the token binding metadata of the token.
+ * <p>
+ * When token reuse is enabled, a token previously issued to the client for the same scopes and certificate is returned
+ * instead of issuing a new one, while it has more than the configured fraction of its lifetime left.
  *
  * @see <href="https://tools.ietf.org/html/draft-ietf-oauth-mtls-17">IETF OAuth MTLS</>
  */
 public class MTLSTokenBindingClientCredentialsGrantHandler extends ClientCredentialsGrantHandler {
 
+    private static final Log log = LogFactory.getLog(MTLSTokenBindingClientCredentialsGrantHandler.class);
+
+    private static final AbstractMTLSTokenBindingGrantHandler tokenBindingHandler =
+            new AbstractMTLSTokenBindingGrantHandler();
+
     @Override
     public OAuth2AccessTokenRespDTO issue(OAuthTokenReqMessageContext tokReqMsgCtx)
             throws IdentityOAuth2Exception {
 
-        OAuth2AccessTokenRespDTO oAuth2AccessTokenRespDTO = super.issue(tokReqMsgCtx);
-        tokReqMsgCtx.setScope(getReducedResponseScopes(tokReqMsgCtx.getScope()));
-        return oAuth2AccessTokenRespDTO;
+        tokenBindingHandler.bindCertificate(tokReqMsgCtx);
+        ClientCredentialsTokenCache tokenCache = ClientCredentialsTokenCache.getInstance();
+        String key = tokenCache.isEnabled() ? ClientCredentialsTokenCache.getKey(tokReqMsgCtx) : null;
+        if (key == null) {
+            return issueToken(tokReqMsgCtx);
+        }
+        OAuth2AccessTokenRespDTO cachedTokenRespDTO = tokenCache.get(key, System.currentTimeMillis());
+        if (cachedTokenRespDTO != null) {
+            // The token may have been revoked since it was cached.
+            if (isActive(OAuth2Util.findAccessToken(cachedTokenRespDTO.getAccessToken(), false))) {
+                MutualTLSMetrics.increment(MutualTLSMetrics.Counter.CLIENT_CREDENTIALS_TOKEN_REUSED);
+                if (log.isDebugEnabled()) {
+                    log.debug("Reusing the certificate bound client credentials token issued to the client: "
+                            + tokReqMsgCtx.getOauth2AccessTokenReqDTO().getClientId());
+                }
+                return cachedTokenRespDTO;
+            }
+            tokenCache.invalidate(key);
+        }
+        OAuth2AccessTokenRespDTO tokenRespDTO = issueToken(tokReqMsgCtx);
+        tokenCache.put(key, tokenRespDTO, System.currentTimeMillis());
+        return tokenRespDTO;
     }
 
-    @Override
-    public boolean validateScope(OAuthTokenReqMessageContext tokReqMsgCtx) throws IdentityOAuth2Exception {
+    /**
+     * Issue a new token through the client credentials grant.
+     *
+     * @param tokReqMsgCtx Message context of the token request.
+     * @return Issued token.
+     * @throws IdentityOAuth2Exception Error while issuing the token.
+     */
+    OAuth2AccessTokenRespDTO issueToken(OAuthTokenReqMessageContext tokReqMsgCtx) throws IdentityOAuth2Exception {
 
-        boolean validateScope = super.validateScope(tokReqMsgCtx);
-        AbstractMTLSTokenBindingGrantHandler abstractMTLSTokenBindingGrantHandler =
-                new AbstractMTLSTokenBindingGrantHandler();
-        validateScope = abstractMTLSTokenBindingGrantHandler.validateScope(tokReqMsgCtx, validateScope);
-        return validateScope;
+        return super.issue(tokReqMsgCtx);
     }
 
     /**
-     * Remove the certificate thumbprint prefixed scope from the space delimited list of authorized scopes.
-     *
-     * @param scopes Authorized scopes of the token.
-     * @return scopes by removing the custom scope.
+     * The token found for a cached token may itself be served from the OAuth cache, so its state and lifetime are
+     * checked rather than only its presence.
      */
-    private String[] getReducedResponseScopes(String[] scopes) {
+    private static boolean isActive(AccessTokenDO accessTokenDO) {
 
-        if (ArrayUtils.isNotEmpty(scopes) && scopes.length > 0) {
-            List<String> scopesList = new LinkedList<>(Arrays.asList(scopes));
-            if (scopes.length == 1) {
-                scopesList.add(0, "default");
-            }
-            scopesList.removeIf(scope -> scope.startsWith(CommonConstants.CERT_THUMBPRINT + CommonConstants.SEPARATOR));
-            return scopesList.toArray(new String[0]);
+        if (accessTokenDO == null
+                || !OAuthConstants.TokenStates.TOKEN_STATE_ACTIVE.equals(accessTokenDO.getTokenState())) {
+            return false;
         }
-        return scopes;
+        long validityPeriod = accessTokenDO.getValidityPeriodInMillis();
+        // A negative validity period is used for tokens that do not expire.
+        return validityPeriod < 0 || accessTokenDO.getIssuedTime() == null
+                || accessTokenDO.getIssuedTime().getTime() + validityPeriod > System.currentTimeMillis();
     }
 }
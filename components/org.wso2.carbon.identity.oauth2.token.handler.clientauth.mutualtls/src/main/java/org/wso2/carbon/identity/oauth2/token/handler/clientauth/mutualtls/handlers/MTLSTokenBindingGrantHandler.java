@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.handlers;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.oauth.config.OAuthServerConfiguration;
+import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
+import org.wso2.carbon.identity.oauth2.dto.OAuth2AccessTokenRespDTO;
+import org.wso2.carbon.identity.oauth2.token.OAuthTokenReqMessageContext;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSConfig;
+import org.wso2.carbon.identity.oauth2.token.handlers.grant.AbstractAuthorizationGrantHandler;
+import org.wso2.carbon.identity.oauth2.token.handlers.grant.AuthorizationCodeGrantHandler;
+import org.wso2.carbon.identity.oauth2.token.handlers.grant.AuthorizationGrantHandler;
+import org.wso2.carbon.identity.oauth2.token.handlers.grant.PasswordGrantHandler;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Binds the tokens issued for any grant type to the certificate the client authenticated with, by wrapping the grant
+ * handler of the grant type. The handler is configured in identity.xml as the grant handler of each grant type whose
+ * tokens should be bound, and delegates the grant to the grant handler configured for the grant type with the
+ * MutualTLS.TokenBinding.GrantHandlers property, a comma separated list of grantType=className entries. The grant
+ * handlers of the authorization code, client credentials, password and refresh token grants are used when they are
+ * not configured.
+ * <p>
+ * The certificate is bound when the token is issued, which is after the token binding of the OAuth core is applied,
+ * so that the binding is not replaced. The thumbprint of the certificate is published once per request by the MTLS
+ * client authenticator, and a request that is already bound is not bound again.
+ *
+ * @see <href="https://tools.ietf.org/html/draft-ietf-oauth-mtls-17">IETF OAuth MTLS</>
+ */
+public class MTLSTokenBindingGrantHandler extends AbstractAuthorizationGrantHandler {
+
+    private static final Log log = LogFactory.getLog(MTLSTokenBindingGrantHandler.class);
+    private static final String REFRESH_TOKEN_GRANT_TYPE = "refresh_token";
+    private static final Map<String, String> DEFAULT_GRANT_HANDLERS = new HashMap<>();
+    private static final AbstractMTLSTokenBindingGrantHandler tokenBindingHandler =
+            new AbstractMTLSTokenBindingGrantHandler();
+
+    static {
+        DEFAULT_GRANT_HANDLERS.put("authorization_code", AuthorizationCodeGrantHandler.class.getName());
+        // The binding specific grant handlers keep the client credentials token reuse and the scopes of the tokens
+        // issued by earlier versions.
+        DEFAULT_GRANT_HANDLERS.put("client_credentials", MTLSTokenBindingClientCredentialsGrantHandler.class.getName());
+        DEFAULT_GRANT_HANDLERS.put("password", PasswordGrantHandler.class.getName());
+        DEFAULT_GRANT_HANDLERS.put(REFRESH_TOKEN_GRANT_TYPE, MTLSTokenBindingRefreshGrantHandler.class.getName());
+    }
+
+    private volatile String grantType;
+    private volatile AuthorizationGrantHandler delegate;
+
+    public MTLSTokenBindingGrantHandler() {
+
+    }
+
+    MTLSTokenBindingGrantHandler(String grantType, AuthorizationGrantHandler delegate) {
+
+        this.grantType = grantType;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public boolean validateGrant(OAuthTokenReqMessageContext tokReqMsgCtx) throws IdentityOAuth2Exception {
+
+        return getDelegate().validateGrant(tokReqMsgCtx);
+    }
+
+    @Override
+    public boolean authorizeAccessDelegation(OAuthTokenReqMessageContext tokReqMsgCtx)
+            throws IdentityOAuth2Exception {
+
+        return getDelegate().authorizeAccessDelegation(tokReqMsgCtx);
+    }
+
+    @Override
+    public boolean validateScope(OAuthTokenReqMessageContext tokReqMsgCtx) throws IdentityOAuth2Exception {
+
+        return getDelegate().validateScope(tokReqMsgCtx);
+    }
+
+    @Override
+    public OAuth2AccessTokenRespDTO issue(OAuthTokenReqMessageContext tokReqMsgCtx)
+            throws IdentityOAuth2Exception {
+
+        AuthorizationGrantHandler grantHandler = getDelegate();
+        if (REFRESH_TOKEN_GRANT_TYPE.equals(grantType)) {
+            tokenBindingHandler.bindRefreshedToken(tokReqMsgCtx);
+        } else {
+            tokenBindingHandler.bindCertificate(tokReqMsgCtx);
+        }
+        return grantHandler.issue(tokReqMsgCtx);
+    }
+
+    @Override
+    public boolean issueRefreshToken() throws IdentityOAuth2Exception {
+
+        return getDelegate().issueRefreshToken();
+    }
+
+    @Override
+    public boolean isOfTypeApplicationUser() throws IdentityOAuth2Exception {
+
+        return getDelegate().isOfTypeApplicationUser();
+    }
+
+    @Override
+    public boolean isConfidentialClient() throws IdentityOAuth2Exception {
+
+        return getDelegate().isConfidentialClient();
+    }
+
+    /**
+     * Returns the grant handler of the grant type this handler is configured for. The grant type is looked up among
+     * the grant handlers of the OAuth core, which are all created by the time a token is requested.
+     */
+    private AuthorizationGrantHandler getDelegate() throws IdentityOAuth2Exception {
+
+        AuthorizationGrantHandler grantHandler = delegate;
+        if (grantHandler != null) {
+            return grantHandler;
+        }
+        synchronized (this) {
+            if (delegate == null) {
+                grantType = getGrantType();
+                delegate = createDelegate(grantType);
+            }
+            return delegate;
+        }
+    }
+
+    private String getGrantType() throws IdentityOAuth2Exception {
+
+        for (Map.Entry<String, AuthorizationGrantHandler> grantHandler :
+                OAuthServerConfiguration.getInstance().getSupportedGrantTypes().entrySet()) {
+            if (grantHandler.getValue() == this) {
+                return grantHandler.getKey();
+            }
+        }
+        throw new IdentityOAuth2Exception("MTLS token binding grant handler is not configured for any grant type.");
+    }
+
+    private static AuthorizationGrantHandler createDelegate(String grantType) throws IdentityOAuth2Exception {
+
+        String className = MutualTLSConfig.getInstance().getTokenBindingGrantHandlers().get(grantType);
+        if (className == null) {
+            className = DEFAULT_GRANT_HANDLERS.get(grantType);
+        }
+        if (className == null || MTLSTokenBindingGrantHandler.class.getName().equals(className)) {
+            throw new IdentityOAuth2Exception("No grant handler is configured for the grant type: " + grantType
+                    + " in MutualTLS.TokenBinding.GrantHandlers.");
+        }
+        try {
+            AuthorizationGrantHandler grantHandler =
+                    (AuthorizationGrantHandler) Class.forName(className).getDeclaredConstructor().newInstance();
+            grantHandler.init();
+            if (log.isDebugEnabled()) {
+                log.debug("Binding the tokens of the grant type: " + grantType + " issued by: " + className);
+            }
+            return grantHandler;
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new IdentityOAuth2Exception("Error while creating the grant handler: " + className
+                    + " of the grant type: " + grantType, e);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.handlers;
+
+import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
+import org.wso2.carbon.identity.oauth2.dto.OAuth2AccessTokenRespDTO;
+import org.wso2.carbon.identity.oauth2.token.OAuthTokenReqMessageContext;
+import org.wso2.carbon.identity.oauth2.token.handlers.grant.PasswordGrantHandler;
+
+/**
+ * This class is used to bound the MTLS certificate of the client to the access token issued for the password grant.
+ * Here, the certificate is bounded to the access token using the token binding metadata of the token.
+ */
+public class MTLSTokenBindingPasswordGrantHandler extends PasswordGrantHandler {
+
+    private static final AbstractMTLSTokenBindingGrantHandler tokenBindingHandler =
+            new AbstractMTLSTokenBindingGrantHandler();
+
+    @Override
+    public OAuth2AccessTokenRespDTO issue(OAuthTokenReqMessageContext tokReqMsgCtx)
+            throws IdentityOAuth2Exception {
+
+        tokenBindingHandler.bindCertificate(tokReqMsgCtx);
+        return issueToken(tokReqMsgCtx);
+    }
+
+    /**
+     * Issue the token through the password grant.
+     *
+     * @param tokReqMsgCtx Message context of the token request.
+     * @return The issued token.
+     * @throws IdentityOAuth2Exception Error when issuing the token.
+     */
+    OAuth2AccessTokenRespDTO issueToken(OAuthTokenReqMessageContext tokReqMsgCtx) throws IdentityOAuth2Exception {
+
+        return super.issue(tokReqMsgCtx);
+    }
+}
@@ -24,32 +24,31 @@ import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
 import org.wso2.carbon.identity.oauth2.dto.OAuth2AccessTokenRespDTO;
 import org.wso2.carbon.identity.oauth2.token.OAuthTokenReqMessageContext;
-import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.CommonConstants;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.ScopeCodec;
 import org.wso2.carbon.identity.oauth2.token.handlers.grant.RefreshGrantHandler;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
-import java.util.List;
 
 /**
  * If MTLS token binding is used (MTLSTokenBindingAuthorizationCodeGrantHandler), the certificate of the client is
- * bounded to the access token using a hidden scope. This class is used to remove the hidden scope from the token
- * response.
+ * bounded to the access token using the token binding metadata of the token. This class binds the refreshed token to
+ * the certificate of the client, and migrates the hidden binding scope of the tokens issued by earlier versions to
+ * the token binding metadata.
  *
  * @see <href="https://tools.ietf.org/html/draft-ietf-oauth-mtls-17">IETF OAuth MTLS</>
  */
 public class MTLSTokenBindingRefreshGrantHandler extends RefreshGrantHandler {
 
     private static final Log log = LogFactory.getLog(MTLSTokenBindingRefreshGrantHandler.class);
+    private static final AbstractMTLSTokenBindingGrantHandler tokenBindingHandler =
+            new AbstractMTLSTokenBindingGrantHandler();
 
     @Override
     public OAuth2AccessTokenRespDTO issue(OAuthTokenReqMessageContext tokReqMsgCtx)
             throws IdentityOAuth2Exception {
 
-        OAuth2AccessTokenRespDTO oAuth2AccessTokenRespDTO = super.issue(tokReqMsgCtx);
-        tokReqMsgCtx.setScope(getReducedResponseScopes(tokReqMsgCtx.getScope()));
-        return oAuth2AccessTokenRespDTO;
+        tokenBindingHandler.bindRefreshedToken(tokReqMsgCtx);
+        return super.issue(tokReqMsgCtx);
     }
 
     @Override
@@ -62,47 +61,19 @@ public class MTLSTokenBindingRefreshGrantHandler extends RefreshGrantHandler {
         }
 
         String[] requestedScopes = tokReqMsgCtx.getOauth2AccessTokenReqDTO().getScope();
-        String[] modifiedScopes;
         if (ArrayUtils.isNotEmpty(requestedScopes)) {
             if (ArrayUtils.isEmpty(grantedScopes)) {
                 return false;
             }
 
-            // Add cert hash scope from previously granted scopes.
-            ArrayList<String> requestedScopeList = new ArrayList<>(Arrays.asList(requestedScopes));
-            for (String scope : grantedScopes) {
-                if (isAllowedScope(scope)) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Adding custom scope " + scope + " to the requested scopes.");
-                    }
-                    requestedScopeList.add(scope);
-                }
+            // Add cert hash and timestamp scopes from previously granted scopes.
+            String[] modifiedScopes = ScopeCodec.appendInternalScopes(requestedScopes, grantedScopes);
+            if (log.isDebugEnabled() && modifiedScopes != requestedScopes) {
+                log.debug("Adding custom scopes " + Arrays.toString(Arrays.copyOfRange(modifiedScopes,
+                        requestedScopes.length, modifiedScopes.length)) + " to the requested scopes.");
             }
-            modifiedScopes = requestedScopeList.toArray(new String[0]);
             tokReqMsgCtx.setScope(modifiedScopes);
         }
         return true;
     }
-
-    /**
-     * Remove the certificate thumbprint prefixed scope from the space delimited list of authorized scopes.
-     *
-     * @param scopes Authorized scopes of the token.
-     * @return scopes by removing the custom scope.
-     */
-    private String[] getReducedResponseScopes(String[] scopes) {
-
-        if (scopes != null && scopes.length > 0) {
-            List<String> scopesList = new LinkedList<>(Arrays.asList(scopes));
-            scopesList.removeIf(scope -> scope.startsWith(CommonConstants.CERT_THUMBPRINT + CommonConstants.SEPARATOR));
-            return scopesList.toArray(new String[0]);
-        }
-        return scopes;
-    }
-
-    private boolean isAllowedScope(String scope) {
-
-        return scope.startsWith(CommonConstants.CERT_THUMBPRINT + CommonConstants.SEPARATOR) ||
-                scope.startsWith(CommonConstants.TIMESTAMP_SCOPE_PREFIX);
-    }
 }
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.internal;
+
+import org.wso2.carbon.identity.application.mgt.ApplicationManagementService;
+import org.wso2.carbon.identity.oauth2.OAuth2TokenValidationService;
+import org.wso2.carbon.utils.ConfigurationContextService;
+
+/**
+ * Data holder for the OSGi services used by the Mutual TLS module.
+ */
+public class MutualTLSDataHolder {
+
+    private static final MutualTLSDataHolder instance = new MutualTLSDataHolder();
+
+    private ApplicationManagementService applicationManagementService;
+    private OAuth2TokenValidationService oAuth2TokenValidationService;
+    private ConfigurationContextService configurationContextService;
+
+    private MutualTLSDataHolder() {
+
+    }
+
+    public static MutualTLSDataHolder getInstance() {
+
+        return instance;
+    }
+
+    public ApplicationManagementService getApplicationManagementService() {
+
+        return applicationManagementService;
+    }
+
+    public void setApplicationManagementService(ApplicationManagementService applicationManagementService) {
+
+        this.applicationManagementService = applicationManagementService;
+    }
+
+    public OAuth2TokenValidationService getOAuth2TokenValidationService() {
+
+        return oAuth2TokenValidationService;
+    }
+
+    public void setOAuth2TokenValidationService(OAuth2TokenValidationService oAuth2TokenValidationService) {
+
+        this.oAuth2TokenValidationService = oAuth2TokenValidationService;
+    }
+
+    public ConfigurationContextService getConfigurationContextService() {
+
+        return configurationContextService;
+    }
+
+    public void setConfigurationContextService(ConfigurationContextService configurationContextService) {
+
+        this.configurationContextService = configurationContextService;
+    }
+}
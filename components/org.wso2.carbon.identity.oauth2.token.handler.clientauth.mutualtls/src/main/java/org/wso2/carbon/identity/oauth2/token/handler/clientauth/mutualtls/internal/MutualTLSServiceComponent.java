@@ -24,12 +24,38 @@ import org.osgi.framework.BundleContext;
 import org.osgi.service.component.ComponentContext;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicy;
+import org.wso2.carbon.identity.application.mgt.ApplicationManagementService;
+import org.wso2.carbon.identity.application.mgt.listener.ApplicationMgtListener;
 import org.wso2.carbon.identity.oauth.event.OAuthEventInterceptor;
 import org.wso2.carbon.identity.oauth2.IntrospectionDataProvider;
+import org.wso2.carbon.identity.oauth2.OAuth2TokenValidationService;
 import org.wso2.carbon.identity.oauth2.client.authentication.OAuthClientAuthenticator;
 import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.MutualTLSClientAuthenticator;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.cache.JWKSRotationNotificationService;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.cache.MutualTLSJWKSLocalDirectory;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.cache.MutualTLSJWKSMirrors;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.cache.MutualTLSJWKSNearCache;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.cache.MutualTLSWarmStartSnapshot;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.filter.RegisteredCertificateFilter;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.handlers.CertificateBindingClaimProvider;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.handlers.ClientCredentialsTokenCache;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.introspection.BatchIntrospectionService;
 import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.introspection.ISIntrospectionDataProvider;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.introspection.IntrospectionResponseCache;
 import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.introspection.IntrospectionResponseInterceptor;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.listener.MutualTLSApplicationMgtListener;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.revocation.CertificateTokenRevocationService;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.throttle.FailedAuthenticationThrottler;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSConfig;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSMetrics;
+import org.wso2.carbon.identity.oauth2.token.handlers.claims.JWTAccessTokenClaimProvider;
+import org.wso2.carbon.utils.ConfigurationContextService;
+
+import java.util.function.Consumer;
 
 /**
  * TLS Mutual Auth osgi Component.
@@ -42,6 +68,16 @@ public class MutualTLSServiceComponent {
 
     private static final Log log = LogFactory.getLog(MutualTLSServiceComponent.class);
 
+    private final Consumer<MutualTLSConfig> configReloadListener = config -> {
+        MutualTLSWarmStartSnapshot.getInstance().reconfigure(config);
+        RegisteredCertificateFilter.getInstance().reconfigure(config);
+        FailedAuthenticationThrottler.getInstance().reconfigure(config);
+        IntrospectionResponseCache.getInstance().reconfigure(config);
+        ClientCredentialsTokenCache.getInstance().reconfigure(config);
+        MutualTLSJWKSNearCache.getInstance().reconfigure(config);
+        MutualTLSJWKSLocalDirectory.getInstance().reconfigure(config);
+    };
+
     @Activate
     protected void activate(ComponentContext context) {
 
@@ -56,6 +92,26 @@ public class MutualTLSServiceComponent {
                     null);
             bundleContext.registerService(IntrospectionDataProvider.class.getName(), isIntrospectionDataProvider,
                     null);
+            bundleContext.registerService(JWTAccessTokenClaimProvider.class.getName(),
+                    new CertificateBindingClaimProvider(), null);
+            bundleContext.registerService(ApplicationMgtListener.class.getName(),
+                    new MutualTLSApplicationMgtListener(), null);
+            bundleContext.registerService(BatchIntrospectionService.class.getName(), new BatchIntrospectionService(),
+                    null);
+            bundleContext.registerService(CertificateTokenRevocationService.class.getName(),
+                    new CertificateTokenRevocationService(), null);
+            bundleContext.registerService(JWKSRotationNotificationService.class.getName(),
+                    new JWKSRotationNotificationService(), null);
+            MutualTLSConfig.reload();
+            MutualTLSWarmStartSnapshot.getInstance().start();
+            RegisteredCertificateFilter.getInstance().start();
+            FailedAuthenticationThrottler.getInstance().start();
+            IntrospectionResponseCache.getInstance().start();
+            ClientCredentialsTokenCache.getInstance().start();
+            MutualTLSJWKSNearCache.getInstance().start();
+            MutualTLSJWKSLocalDirectory.getInstance().start();
+            MutualTLSConfig.addReloadListener(configReloadListener);
+            MutualTLSMetrics.registerMBean();
             if (log.isDebugEnabled()) {
                 log.debug("Mutual TLS bundle is activated");
             }
@@ -64,4 +120,73 @@ public class MutualTLSServiceComponent {
             log.error("Error occurred while registering MTLS component.", e);
         }
     }
+
+    @Deactivate
+    protected void deactivate(ComponentContext context) {
+
+        MutualTLSConfig.removeReloadListener(configReloadListener);
+        MutualTLSWarmStartSnapshot.getInstance().stop();
+        RegisteredCertificateFilter.getInstance().stop();
+        FailedAuthenticationThrottler.getInstance().stop();
+        IntrospectionResponseCache.getInstance().stop();
+        ClientCredentialsTokenCache.getInstance().stop();
+        MutualTLSJWKSNearCache.getInstance().stop();
+        MutualTLSJWKSMirrors.getInstance().stop();
+        MutualTLSJWKSLocalDirectory.getInstance().stop();
+        MutualTLSMetrics.unregisterMBean();
+        if (log.isDebugEnabled()) {
+            log.debug("Mutual TLS bundle is deactivated");
+        }
+    }
+
+    @Reference(
+            name = "application.mgt.service",
+            service = ApplicationManagementService.class,
+            cardinality = ReferenceCardinality.MANDATORY,
+            policy = ReferencePolicy.DYNAMIC,
+            unbind = "unsetApplicationManagementService"
+    )
+    protected void setApplicationManagementService(ApplicationManagementService applicationManagementService) {
+
+        MutualTLSDataHolder.getInstance().setApplicationManagementService(applicationManagementService);
+    }
+
+    protected void unsetApplicationManagementService(ApplicationManagementService applicationManagementService) {
+
+        MutualTLSDataHolder.getInstance().setApplicationManagementService(null);
+    }
+
+    @Reference(
+            name = "oauth2.token.validation.service",
+            service = OAuth2TokenValidationService.class,
+            cardinality = ReferenceCardinality.OPTIONAL,
+            policy = ReferencePolicy.DYNAMIC,
+            unbind = "unsetOAuth2TokenValidationService"
+    )
+    protected void setOAuth2TokenValidationService(OAuth2TokenValidationService oAuth2TokenValidationService) {
+
+        MutualTLSDataHolder.getInstance().setOAuth2TokenValidationService(oAuth2TokenValidationService);
+    }
+
+    protected void unsetOAuth2TokenValidationService(OAuth2TokenValidationService oAuth2TokenValidationService) {
+
+        MutualTLSDataHolder.getInstance().setOAuth2TokenValidationService(null);
+    }
+
+    @Reference(
+            name = "config.context.service",
+            service = ConfigurationContextService.class,
+            cardinality = ReferenceCardinality.OPTIONAL,
+            policy = ReferencePolicy.DYNAMIC,
+            unbind = "unsetConfigurationContextService"
+    )
+    protected void setConfigurationContextService(ConfigurationContextService configurationContextService) {
+
+        MutualTLSDataHolder.getInstance().setConfigurationContextService(configurationContextService);
+    }
+
+    protected void unsetConfigurationContextService(ConfigurationContextService configurationContextService) {
+
+        MutualTLSDataHolder.getInstance().setConfigurationContextService(null);
+    }
 }
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.introspection;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.core.util.IdentityDatabaseUtil;
+import org.wso2.carbon.identity.oauth.config.OAuthServerConfiguration;
+import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
+import org.wso2.carbon.identity.oauth2.OAuth2TokenValidationService;
+import org.wso2.carbon.identity.oauth2.dto.OAuth2IntrospectionResponseDTO;
+import org.wso2.carbon.identity.oauth2.dto.OAuth2TokenValidationRequestDTO;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.internal.MutualTLSDataHolder;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.CommonConstants;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSConfig;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Introspects many tokens in one call, for resource servers such as API gateways that validate a large number of
+ * distinct tokens. Each distinct token is validated by the {@link OAuth2TokenValidationService}, and the
+ * {@link IntrospectionResponseInterceptor} additions, the cleaned scopes and the {@code cnf} claim of the certificate
+ * bound tokens, are then made to all the responses in a single pass.
+ * <p>
+ * The certificates of the bound tokens whose additions are not cached are read together from the token binding table
+ * of the OAuth core, with one query for up to {@value #MAX_TOKENS_PER_QUERY} tokens, instead of looking up each token.
+ * The validation of each token by the OAuth core is not batched, as the token validation service validates one token
+ * at a time.
+ * <p>
+ * The service is registered as an OSGi service. Authenticating and authorizing the resource server is left to the
+ * endpoint exposing the service, as with the introspection endpoint.
+ */
+public class BatchIntrospectionService {
+
+    private static final Log log = LogFactory.getLog(BatchIntrospectionService.class);
+    // Keeps the number of bind parameters of a query within the limits of all the supported databases.
+    static final int MAX_TOKENS_PER_QUERY = 100;
+    private static final String GET_CERTIFICATE_BINDINGS = "SELECT T.ACCESS_TOKEN, B.TOKEN_BINDING_VALUE "
+            + "FROM IDN_OAUTH2_ACCESS_TOKEN T INNER JOIN IDN_OAUTH2_TOKEN_BINDING B ON T.TOKEN_ID = B.TOKEN_ID "
+            + "WHERE B.TOKEN_BINDING_TYPE = ? AND T.ACCESS_TOKEN IN (";
+
+    private final CertificateBindingReader certificateBindingReader;
+
+    public BatchIntrospectionService() {
+
+        this(BatchIntrospectionService::readCertificateBindings);
+    }
+
+    BatchIntrospectionService(CertificateBindingReader certificateBindingReader) {
+
+        this.certificateBindingReader = certificateBindingReader;
+    }
+
+    /**
+     * Introspect a batch of tokens.
+     *
+     * @param tokens        Tokens to introspect. Repeated tokens are introspected once.
+     * @param tokenTypeHint Type of the tokens, such as bearer, or null.
+     * @return Introspection responses keyed by the token, in the order of the given tokens. Each response carries the
+     * active status, the scopes without the internal scopes, and the cnf claim in its properties if the token is bound
+     * to a certificate.
+     * @throws IdentityOAuth2Exception If the batch is too large or the token validation service is not available.
+     */
+    public Map<String, OAuth2IntrospectionResponseDTO> introspect(Collection<String> tokens, String tokenTypeHint)
+            throws IdentityOAuth2Exception {
+
+        if (tokens == null || tokens.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Set<String> distinctTokens = new LinkedHashSet<>(tokens);
+        distinctTokens.remove(null);
+        int maxSize = MutualTLSConfig.getInstance().getBatchIntrospectionMaxSize();
+        if (distinctTokens.size() > maxSize) {
+            throw new IdentityOAuth2Exception("Batch introspection of " + distinctTokens.size()
+                    + " tokens exceeds the maximum batch size of " + maxSize + ".");
+        }
+        OAuth2TokenValidationService validationService =
+                MutualTLSDataHolder.getInstance().getOAuth2TokenValidationService();
+        if (validationService == null) {
+            throw new IdentityOAuth2Exception("OAuth2 token validation service is not available.");
+        }
+
+        List<OAuth2TokenValidationRequestDTO> validationRequests = new ArrayList<>(distinctTokens.size());
+        Map<String, OAuth2IntrospectionResponseDTO> introspections = new LinkedHashMap<>();
+        IntrospectionResponseInterceptor.deferCompletion(true);
+        try {
+            for (String token : distinctTokens) {
+                OAuth2TokenValidationRequestDTO validationRequest = new OAuth2TokenValidationRequestDTO();
+                OAuth2TokenValidationRequestDTO.OAuth2AccessToken accessToken =
+                        validationRequest.new OAuth2AccessToken();
+                accessToken.setIdentifier(token);
+                accessToken.setTokenType(tokenTypeHint);
+                validationRequest.setAccessToken(accessToken);
+                OAuth2IntrospectionResponseDTO introspectionResponse =
+                        validationService.buildIntrospectionResponse(validationRequest);
+                if (introspectionResponse == null) {
+                    introspectionResponse = new OAuth2IntrospectionResponseDTO();
+                    introspectionResponse.setActive(false);
+                }
+                validationRequests.add(validationRequest);
+                introspections.put(token, introspectionResponse);
+            }
+        } finally {
+            IntrospectionResponseInterceptor.deferCompletion(false);
+        }
+
+        List<String> boundTokens = new ArrayList<>();
+        for (Map.Entry<String, OAuth2IntrospectionResponseDTO> introspection : introspections.entrySet()) {
+            if (IntrospectionResponseInterceptor.isCertificateBound(introspection.getValue())) {
+                boundTokens.add(introspection.getKey());
+            }
+        }
+        BatchCertificateResolver thumbprintResolver = new BatchCertificateResolver(boundTokens);
+        IntrospectionResponseCache cache = IntrospectionResponseCache.getInstance();
+        long now = System.currentTimeMillis();
+        for (OAuth2TokenValidationRequestDTO validationRequest : validationRequests) {
+            IntrospectionResponseInterceptor.complete(cache, validationRequest,
+                    introspections.get(validationRequest.getAccessToken().getIdentifier()), now, thumbprintResolver);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Introspected a batch of " + introspections.size() + " tokens.");
+        }
+        return introspections;
+    }
+
+    private static Map<String, String> readCertificateBindings(List<String> tokens) throws IdentityOAuth2Exception {
+
+        // The tokens are stored in their processed form, which is hashed when token hashing is enabled.
+        Map<String, String> tokensByStoredToken = new HashMap<>();
+        for (String token : tokens) {
+            tokensByStoredToken.put(OAuthServerConfiguration.getInstance().getPersistenceProcessor()
+                    .getProcessedAccessTokenIdentifier(token), token);
+        }
+        List<String> storedTokens = new ArrayList<>(tokensByStoredToken.keySet());
+        Map<String, String> thumbprints = new HashMap<>();
+        try (Connection connection = IdentityDatabaseUtil.getDBConnection(false)) {
+            for (int from = 0; from < storedTokens.size(); from += MAX_TOKENS_PER_QUERY) {
+                List<String> chunk = storedTokens.subList(from,
+                        Math.min(from + MAX_TOKENS_PER_QUERY, storedTokens.size()));
+                String query = GET_CERTIFICATE_BINDINGS + StringUtils.repeat("?", ", ", chunk.size()) + ")";
+                try (PreparedStatement statement = connection.prepareStatement(query)) {
+                    statement.setString(1, CommonConstants.CERTIFICATE_TOKEN_BINDING_TYPE);
+                    for (int i = 0; i < chunk.size(); i++) {
+                        statement.setString(i + 2, chunk.get(i));
+                    }
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        while (resultSet.next()) {
+                            String thumbprint = resultSet.getString(2);
+                            if (StringUtils.isNotBlank(thumbprint)) {
+                                thumbprints.put(tokensByStoredToken.get(resultSet.getString(1)), thumbprint);
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new IdentityOAuth2Exception("Error while retrieving the certificate bindings of the introspected "
+                    + "tokens.", e);
+        }
+        return thumbprints;
+    }
+
+    /**
+     * Resolves the certificates of the bound tokens of a batch. The certificates of all the bound tokens are read when
+     * the first of them is resolved, so a batch whose additions are all cached is not read at all.
+     */
+    private final class BatchCertificateResolver
+            implements IntrospectionResponseInterceptor.BoundCertificateResolver {
+
+        private final List<String> boundTokens;
+        private Map<String, String> thumbprints;
+
+        private BatchCertificateResolver(List<String> boundTokens) {
+
+            this.boundTokens = boundTokens;
+        }
+
+        @Override
+        public String resolve(String tokenIdentifier) throws IdentityOAuth2Exception {
+
+            if (thumbprints == null) {
+                thumbprints = certificateBindingReader.read(boundTokens);
+            }
+            return thumbprints.get(tokenIdentifier);
+        }
+    }
+
+    /**
+     * Reads the certificates a batch of tokens are bound to.
+     */
+    @FunctionalInterface
+    interface CertificateBindingReader {
+
+        /**
+         * @param tokens Introspected tokens bound to a certificate.
+         * @return Base64 URL encoded SHA-256 thumbprints of the certificates, keyed by the token.
+         */
+        Map<String, String> read(List<String> tokens) throws IdentityOAuth2Exception;
+    }
+}
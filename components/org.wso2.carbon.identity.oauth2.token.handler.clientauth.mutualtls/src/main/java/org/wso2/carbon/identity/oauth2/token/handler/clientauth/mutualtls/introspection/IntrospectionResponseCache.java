@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.introspection;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.json.JSONObject;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.BoundedCache;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSConfig;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSMetrics;
+
+/**
+ * Node local cache of the additions made by {@link IntrospectionResponseInterceptor} to the introspection response of
+ * an active token, keyed by the token identifier. An entry holds the scope string with the internal scopes removed
+ * and the {@code cnf} claim of the token, so that repeated introspections of a token do not look up its binding and
+ * decode its scopes again.
+ * <p>
+ * The additions of a token never change, and entries are only used for tokens the server reports as active, so an
+ * entry can not outlive the validity of its token. Entries are removed once the token expires, or when the token is
+ * revoked or reported as inactive. When the cache is full, expired entries are removed before any other entry.
+ * The cache is disabled by default.
+ */
+public class IntrospectionResponseCache {
+
+    private static final Log log = LogFactory.getLog(IntrospectionResponseCache.class);
+    private static final IntrospectionResponseCache instance = new IntrospectionResponseCache();
+    private static final String SIZE_GAUGE = "IntrospectionCache.Size";
+
+    private volatile BoundedCache<String, CachedIntrospection> entries;
+
+    private IntrospectionResponseCache() {
+
+    }
+
+    public static IntrospectionResponseCache getInstance() {
+
+        return instance;
+    }
+
+    /**
+     * Create the cache from the current configuration if the cache is enabled.
+     */
+    public void start() {
+
+        reconfigure(MutualTLSConfig.getInstance());
+    }
+
+    /**
+     * Apply a configuration. The cached entries are only discarded when the cache is disabled or its capacity has
+     * changed.
+     *
+     * @param config Configuration to apply.
+     */
+    public synchronized void reconfigure(MutualTLSConfig config) {
+
+        if (!config.isIntrospectionCacheEnabled()) {
+            if (entries != null) {
+                stop();
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Mutual TLS introspection cache is disabled.");
+            }
+            return;
+        }
+        int capacity = config.getIntrospectionCacheCapacity();
+        if (entries != null && entries.getCapacity() == capacity) {
+            return;
+        }
+        configure(capacity);
+        if (log.isDebugEnabled()) {
+            log.debug("Mutual TLS introspection cache is enabled with a capacity of " + capacity + " tokens.");
+        }
+    }
+
+    /**
+     * Disable the cache and discard the cached entries.
+     */
+    public synchronized void stop() {
+
+        entries = null;
+        MutualTLSMetrics.unregisterGauge(SIZE_GAUGE);
+    }
+
+    /**
+     * @return Whether the cache is enabled.
+     */
+    public boolean isEnabled() {
+
+        return entries != null;
+    }
+
+    /**
+     * Remove the entry of a token.
+     *
+     * @param tokenIdentifier Token identifier.
+     */
+    public void invalidate(String tokenIdentifier) {
+
+        BoundedCache<String, CachedIntrospection> current = entries;
+        if (current != null && tokenIdentifier != null) {
+            current.remove(tokenIdentifier);
+        }
+    }
+
+    /**
+     * @return Number of cached entries, or 0 if the cache is disabled.
+     */
+    public int size() {
+
+        BoundedCache<String, CachedIntrospection> current = entries;
+        return current == null ? 0 : current.size();
+    }
+
+    /**
+     * Returns the entry of a token if it was computed for the same scope string and the token has not expired.
+     *
+     * @param tokenIdentifier Token identifier.
+     * @param scope           Scope string of the introspection response.
+     * @param now             Current time in milliseconds.
+     * @return Cached entry, or null if there is no usable entry.
+     */
+    CachedIntrospection get(String tokenIdentifier, String scope, long now) {
+
+        BoundedCache<String, CachedIntrospection> current = entries;
+        if (current == null || tokenIdentifier == null) {
+            return null;
+        }
+        CachedIntrospection cached = current.get(tokenIdentifier);
+        if (cached == null) {
+            MutualTLSMetrics.increment(MutualTLSMetrics.Counter.INTROSPECTION_CACHE_MISS);
+            return null;
+        }
+        if (cached.expiryTime <= now) {
+            current.remove(tokenIdentifier, cached);
+            MutualTLSMetrics.increment(MutualTLSMetrics.Counter.INTROSPECTION_CACHE_MISS);
+            return null;
+        }
+        if (cached.scope == null ? scope != null : !cached.scope.equals(scope)) {
+            MutualTLSMetrics.increment(MutualTLSMetrics.Counter.INTROSPECTION_CACHE_MISS);
+            return null;
+        }
+        MutualTLSMetrics.increment(MutualTLSMetrics.Counter.INTROSPECTION_CACHE_HIT);
+        return cached;
+    }
+
+    /**
+     * Cache the entry of a token, making room for it if the cache is full.
+     *
+     * @param tokenIdentifier Token identifier.
+     * @param cached          Entry to cache.
+     * @param now             Current time in milliseconds.
+     */
+    void put(String tokenIdentifier, CachedIntrospection cached, long now) {
+
+        BoundedCache<String, CachedIntrospection> current = entries;
+        if (current == null || tokenIdentifier == null || cached.expiryTime <= now) {
+            return;
+        }
+        current.put(tokenIdentifier, cached, entry -> entry.expiryTime <= now);
+    }
+
+    /**
+     * Replace the cached entries with an empty cache of the given capacity.
+     *
+     * @param capacity Maximum number of cached entries.
+     */
+    synchronized void configure(int capacity) {
+
+        this.entries = new BoundedCache<>(capacity);
+        MutualTLSMetrics.registerGauge(SIZE_GAUGE, this::size);
+    }
+
+    /**
+     * Additions to the introspection response of a token. The {@code cnf} claim is shared by all the responses of the
+     * token and must not be modified.
+     */
+    static final class CachedIntrospection {
+
+        private final String scope;
+        private final String reducedScope;
+        private final JSONObject confirmation;
+        private final long expiryTime;
+
+        CachedIntrospection(String scope, String reducedScope, JSONObject confirmation, long expiryTime) {
+
+            this.scope = scope;
+            this.reducedScope = reducedScope;
+            this.confirmation = confirmation;
+            this.expiryTime = expiryTime;
+        }
+
+        /**
+         * @return Scope string without the internal scopes.
+         */
+        String getReducedScope() {
+
+            return reducedScope;
+        }
+
+        /**
+         * @return The cnf claim of the token, or null if the token is not bound to a certificate.
+         */
+        JSONObject getConfirmation() {
+
+            return confirmation;
+        }
+    }
+}
@@ -23,15 +23,21 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.json.JSONObject;
 import org.wso2.carbon.identity.oauth.event.AbstractOAuthEventInterceptor;
+import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
 import org.wso2.carbon.identity.oauth2.dto.OAuth2IntrospectionResponseDTO;
 import org.wso2.carbon.identity.oauth2.dto.OAuth2TokenValidationRequestDTO;
+import org.wso2.carbon.identity.oauth2.dto.OAuthRevocationRequestDTO;
+import org.wso2.carbon.identity.oauth2.dto.OAuthRevocationResponseDTO;
+import org.wso2.carbon.identity.oauth2.model.AccessTokenDO;
+import org.wso2.carbon.identity.oauth2.model.RefreshTokenValidationDataDO;
 import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.CommonConstants;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.ScopeCodec;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.TokenBindingUtil;
+import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
 
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class is used to modify the token introspection response.
@@ -39,50 +45,224 @@ import java.util.Map;
 public class IntrospectionResponseInterceptor extends AbstractOAuthEventInterceptor {
 
     private static Log log = LogFactory.getLog(IntrospectionResponseInterceptor.class);
+    private static final ThreadLocal<Boolean> completionDeferred = new ThreadLocal<>();
 
     @Override
     public void onPostTokenValidation(OAuth2TokenValidationRequestDTO oAuth2TokenValidationRequestDTO,
                                       OAuth2IntrospectionResponseDTO oAuth2IntrospectionResponseDTO, Map<String,
             Object> params) {
 
-        /*
-         Omit the cert thumbprint scope (added by MTLSTokenBindingAuthorizationCodeGrantHandler) from the scopes list
-         and add as a separate parameter in the introspection response as specified under
-         https://tools.ietf.org/html/draft-ietf-oauth-mtls-17.
-        */
-        JSONObject cnf = null;
+        if (Boolean.TRUE.equals(completionDeferred.get())) {
+            return;
+        }
+        complete(IntrospectionResponseCache.getInstance(), oAuth2TokenValidationRequestDTO,
+                oAuth2IntrospectionResponseDTO, System.currentTimeMillis());
+    }
+
+    @Override
+    public void onPostTokenRevocationByClient(OAuthRevocationRequestDTO revokeRequestDTO,
+                                              OAuthRevocationResponseDTO revokeResponseDTO,
+                                              AccessTokenDO accessTokenDO,
+                                              RefreshTokenValidationDataDO refreshTokenDO,
+                                              Map<String, Object> params) {
+
+        IntrospectionResponseCache cache = IntrospectionResponseCache.getInstance();
+        if (accessTokenDO != null) {
+            cache.invalidate(accessTokenDO.getAccessToken());
+        }
+        if (revokeRequestDTO != null) {
+            cache.invalidate(revokeRequestDTO.getToken());
+        }
+    }
+
+    /**
+     * Defer the additions to the introspection responses built by the current thread until {@link #complete} is
+     * called, so that the responses of a batch are completed in a single pass.
+     *
+     * @param deferred Whether the additions are deferred.
+     */
+    static void deferCompletion(boolean deferred) {
+
+        if (deferred) {
+            completionDeferred.set(Boolean.TRUE);
+        } else {
+            completionDeferred.remove();
+        }
+    }
+
+    /**
+     * Add the cnf claim of a token to its introspection response and remove the internal scopes from it, using the
+     * cached additions of the token when available.
+     *
+     * @param cache                           Introspection cache.
+     * @param oAuth2TokenValidationRequestDTO Validation request.
+     * @param oAuth2IntrospectionResponseDTO  Introspection response to complete.
+     * @param now                             Current time in milliseconds.
+     */
+    static void complete(IntrospectionResponseCache cache,
+                         OAuth2TokenValidationRequestDTO oAuth2TokenValidationRequestDTO,
+                         OAuth2IntrospectionResponseDTO oAuth2IntrospectionResponseDTO, long now) {
+
+        complete(cache, oAuth2TokenValidationRequestDTO, oAuth2IntrospectionResponseDTO, now,
+                IntrospectionResponseInterceptor::findBoundCertificateThumbprint);
+    }
+
+    /**
+     * Add the cnf claim of a token to its introspection response and remove the internal scopes from it, using the
+     * cached additions of the token when available.
+     *
+     * @param cache                           Introspection cache.
+     * @param oAuth2TokenValidationRequestDTO Validation request.
+     * @param oAuth2IntrospectionResponseDTO  Introspection response to complete.
+     * @param now                             Current time in milliseconds.
+     * @param thumbprintResolver              Resolves the certificate an active certificate bound token is bound to,
+     *                                        when the additions of the token are not cached.
+     */
+    static void complete(IntrospectionResponseCache cache,
+                         OAuth2TokenValidationRequestDTO oAuth2TokenValidationRequestDTO,
+                         OAuth2IntrospectionResponseDTO oAuth2IntrospectionResponseDTO, long now,
+                         BoundCertificateResolver thumbprintResolver) {
+
+        String tokenIdentifier = getTokenIdentifier(oAuth2TokenValidationRequestDTO);
         String scopeString = oAuth2IntrospectionResponseDTO.getScope();
-        if (StringUtils.isNotEmpty(scopeString)) {
-            String[] scopeArray = scopeString.trim().split("\\s+");
-            List<String> scopeList = new ArrayList<>(Arrays.asList(scopeArray));
-            List<String> removableScopes = new ArrayList<>();
-
-            // Iterate the scope list and remove any internal scopes.
-            for (String scope : scopeList) {
-                if (scope.startsWith(CommonConstants.CERT_THUMBPRINT + CommonConstants.SEPARATOR)) {
-                    String[] certHashScope = scope.split(CommonConstants.CERT_THUMBPRINT_SEPARATOR, 2);
-                    cnf = new JSONObject();
-                    cnf.put(certHashScope[0].trim(), certHashScope[1].trim());
 
-                    removableScopes.add(scope);
-                    if (log.isDebugEnabled()) {
-                        log.debug("Removing the internal scope " + scope + " from introspection response");
-                    }
-                }
+        IntrospectionResponseCache.CachedIntrospection cached = null;
+        if (oAuth2IntrospectionResponseDTO.isActive()) {
+            cached = cache.get(tokenIdentifier, scopeString, now);
+        } else {
+            cache.invalidate(tokenIdentifier);
+        }
+        if (cached == null) {
+            cached = resolve(oAuth2TokenValidationRequestDTO, oAuth2IntrospectionResponseDTO, thumbprintResolver);
+            if (oAuth2IntrospectionResponseDTO.isActive()) {
+                cache.put(tokenIdentifier, cached, now);
             }
-            scopeList.removeAll(removableScopes);
-            oAuth2IntrospectionResponseDTO.setScope(String.join(" ", scopeList));
         }
 
+        if (StringUtils.isNotEmpty(scopeString)) {
+            oAuth2IntrospectionResponseDTO.setScope(cached.getReducedScope());
+        }
+        JSONObject cnf = cached.getConfirmation();
+
         Map<String, Object> introspectionResponseProperties = oAuth2IntrospectionResponseDTO.getProperties();
         if (introspectionResponseProperties == null) {
             introspectionResponseProperties = new HashMap<>();
         }
 
-        // If the MTLS cert hash is present as a scope, add the cert hash under cnf parameter.
+        // If the token is bound to a MTLS cert, add the cert hash under cnf parameter.
         if (cnf != null) {
             introspectionResponseProperties.put(CommonConstants.CONFIRMATION_CLAIM_ATTRIBUTE, cnf);
         }
         oAuth2IntrospectionResponseDTO.setProperties(introspectionResponseProperties);
     }
+
+    /**
+     * Compute the additions to the introspection response of a token. The additions computed without the token
+     * binding, due to an error while retrieving it, are given an expiry time in the past so that they are not cached.
+     *
+     * @return Additions to the introspection response.
+     */
+    private static IntrospectionResponseCache.CachedIntrospection resolve(
+            OAuth2TokenValidationRequestDTO validationRequest, OAuth2IntrospectionResponseDTO introspectionResponse,
+            BoundCertificateResolver thumbprintResolver) {
+
+        /*
+         Add the thumbprint of the certificate the token is bound to as a separate parameter in the introspection
+         response as specified under https://tools.ietf.org/html/draft-ietf-oauth-mtls-17.
+        */
+        JSONObject cnf = null;
+        String certThumbprint = null;
+        long expiryTime = TimeUnit.SECONDS.toMillis(introspectionResponse.getExp());
+        try {
+            certThumbprint = getBoundCertificateThumbprint(validationRequest, introspectionResponse,
+                    thumbprintResolver);
+        } catch (IdentityOAuth2Exception e) {
+            log.error("Error while retrieving the token binding of the introspected token.", e);
+            expiryTime = 0;
+        }
+        if (certThumbprint != null) {
+            cnf = new JSONObject();
+            cnf.put(CommonConstants.CERT_THUMBPRINT + CommonConstants.SEPARATOR
+                    + CommonConstants.SHA256_DIGEST_ALGORITHM, certThumbprint);
+        }
+
+        /*
+         Tokens issued by earlier versions carry the cert thumbprint as a scope. Omit the scope from the scopes list
+         and add it to the cnf parameter instead.
+        */
+        String scopeString = introspectionResponse.getScope();
+        String reducedScope = scopeString;
+        if (StringUtils.isNotEmpty(scopeString)) {
+            ScopeCodec.DecodedScope decodedScope = ScopeCodec.decode(scopeString);
+            if (decodedScope.hasBinding()) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Removing the internal scope " + decodedScope.getBindingMethod()
+                            + CommonConstants.CERT_THUMBPRINT_SEPARATOR + decodedScope.getBindingValue()
+                            + " from introspection response");
+                }
+                if (cnf == null) {
+                    cnf = new JSONObject();
+                    cnf.put(decodedScope.getBindingMethod(), decodedScope.getBindingValue());
+                }
+            }
+            reducedScope = decodedScope.getScope();
+        }
+        return new IntrospectionResponseCache.CachedIntrospection(scopeString, reducedScope, cnf, expiryTime);
+    }
+
+    private static String getTokenIdentifier(OAuth2TokenValidationRequestDTO validationRequest) {
+
+        if (validationRequest == null || validationRequest.getAccessToken() == null) {
+            return null;
+        }
+        return validationRequest.getAccessToken().getIdentifier();
+    }
+
+    /**
+     * Check whether an introspected token is an active token bound to a certificate, whose certificate has to be
+     * resolved.
+     *
+     * @param introspectionResponse Introspection response of the token.
+     * @return True if the token is an active certificate bound token.
+     */
+    static boolean isCertificateBound(OAuth2IntrospectionResponseDTO introspectionResponse) {
+
+        return introspectionResponse.isActive()
+                && CommonConstants.CERTIFICATE_TOKEN_BINDING_TYPE.equals(introspectionResponse.getBindingType());
+    }
+
+    private static String getBoundCertificateThumbprint(OAuth2TokenValidationRequestDTO validationRequest,
+                                                        OAuth2IntrospectionResponseDTO introspectionResponse,
+                                                        BoundCertificateResolver thumbprintResolver)
+            throws IdentityOAuth2Exception {
+
+        String tokenIdentifier = getTokenIdentifier(validationRequest);
+        if (!isCertificateBound(introspectionResponse) || tokenIdentifier == null) {
+            return null;
+        }
+        return thumbprintResolver.resolve(tokenIdentifier);
+    }
+
+    private static String findBoundCertificateThumbprint(String tokenIdentifier) throws IdentityOAuth2Exception {
+
+        AccessTokenDO accessTokenDO = OAuth2Util.findAccessToken(tokenIdentifier, false);
+        if (accessTokenDO == null) {
+            return null;
+        }
+        return TokenBindingUtil.getCertificateThumbprint(accessTokenDO.getTokenBinding());
+    }
+
+    /**
+     * Resolves the thumbprint of the certificate a token is bound to.
+     */
+    @FunctionalInterface
+    interface BoundCertificateResolver {
+
+        /**
+         * @param tokenIdentifier Introspected token.
+         * @return Base64 URL encoded SHA-256 thumbprint of the certificate, or null if the token is not bound to a
+         * certificate.
+         */
+        String resolve(String tokenIdentifier) throws IdentityOAuth2Exception;
+    }
 }
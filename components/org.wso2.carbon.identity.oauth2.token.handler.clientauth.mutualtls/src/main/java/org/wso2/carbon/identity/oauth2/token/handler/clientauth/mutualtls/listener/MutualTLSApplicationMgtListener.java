@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.listener;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.application.common.IdentityApplicationManagementException;
+import org.wso2.carbon.identity.application.common.model.ServiceProvider;
+import org.wso2.carbon.identity.application.mgt.ApplicationManagementService;
+import org.wso2.carbon.identity.application.mgt.listener.AbstractApplicationMgtListener;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.cache.MutualTLSJWKSCache;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.cache.MutualTLSJWKSCacheKey;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.filter.RegisteredCertificateFilter;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.handlers.ClientCredentialsTokenCache;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.internal.MutualTLSDataHolder;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.CommonConstants;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSUtil;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+/**
+ * Application management listener which keeps the Mutual TLS module in sync with the service providers.
+ * <p>
+ * When a service provider is updated or deleted, the cached JWK Set of its JWKS URI and mirrors and the tokens cached
+ * for its client are removed. As an update may change the JWKS URI or mirrors, the entry of the configuration being
+ * replaced is removed before the update, and the entry of the new configuration after it. The JWKS cache propagates
+ * the removal to the other nodes of the cluster, where it also removes the near cache entry.
+ */
+public class MutualTLSApplicationMgtListener extends AbstractApplicationMgtListener {
+
+    private static final Log log = LogFactory.getLog(MutualTLSApplicationMgtListener.class);
+    private static final int DEFAULT_ORDER_ID = 900;
+
+    @Override
+    public int getDefaultOrderId() {
+
+        return DEFAULT_ORDER_ID;
+    }
+
+    @Override
+    public boolean doPostCreateApplication(ServiceProvider serviceProvider, String tenantDomain, String userName)
+            throws IdentityApplicationManagementException {
+
+        RegisteredCertificateFilter.getInstance().addServiceProvider(serviceProvider);
+        return true;
+    }
+
+    @Override
+    public boolean doPreUpdateApplication(ServiceProvider serviceProvider, String tenantDomain, String userName)
+            throws IdentityApplicationManagementException {
+
+        ApplicationManagementService applicationManagementService =
+                MutualTLSDataHolder.getInstance().getApplicationManagementService();
+        if (applicationManagementService == null) {
+            return true;
+        }
+        try {
+            ServiceProvider currentServiceProvider =
+                    applicationManagementService.getServiceProvider(serviceProvider.getApplicationID());
+            if (currentServiceProvider != null) {
+                clearCachedJWKS(currentServiceProvider);
+            }
+        } catch (IdentityApplicationManagementException e) {
+            // The cached JWK Set expires on its own, so the update is not blocked.
+            log.warn("Error while retrieving the application: " + serviceProvider.getApplicationName()
+                    + " of tenant: " + tenantDomain + " to clear the Mutual TLS caches.", e);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean doPostUpdateApplication(ServiceProvider serviceProvider, String tenantDomain, String userName)
+            throws IdentityApplicationManagementException {
+
+        RegisteredCertificateFilter.getInstance().addServiceProvider(serviceProvider);
+        clearCachedClientData(serviceProvider, tenantDomain);
+        return true;
+    }
+
+    @Override
+    public boolean doPreDeleteApplication(String applicationName, String tenantDomain, String userName)
+            throws IdentityApplicationManagementException {
+
+        ApplicationManagementService applicationManagementService =
+                MutualTLSDataHolder.getInstance().getApplicationManagementService();
+        if (applicationManagementService == null) {
+            return true;
+        }
+        try {
+            ServiceProvider serviceProvider =
+                    applicationManagementService.getApplicationExcludingFileBasedSPs(applicationName, tenantDomain);
+            if (serviceProvider != null) {
+                clearCachedClientData(serviceProvider, tenantDomain);
+            }
+        } catch (IdentityApplicationManagementException e) {
+            // The cached data expires on its own, so the deletion is not blocked.
+            log.warn("Error while retrieving the application: " + applicationName + " of tenant: " + tenantDomain
+                    + " to clear the Mutual TLS caches.", e);
+        }
+        return true;
+    }
+
+    /**
+     * Remove the cached data derived from the configuration of a service provider.
+     *
+     * @param serviceProvider Service provider.
+     * @param tenantDomain    Tenant domain of the service provider.
+     */
+    private void clearCachedClientData(ServiceProvider serviceProvider, String tenantDomain) {
+
+        clearCachedJWKS(serviceProvider);
+        String clientId = MutualTLSUtil.getOAuthClientId(serviceProvider);
+        if (clientId != null) {
+            ClientCredentialsTokenCache.getInstance().invalidateClient(tenantDomain, clientId);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Cleared the Mutual TLS caches of the application: " + serviceProvider.getApplicationName());
+        }
+    }
+
+    private static void clearCachedJWKS(ServiceProvider serviceProvider) {
+
+        String jwksUri = MutualTLSUtil.getPropertyValue(serviceProvider, CommonConstants.JWKS_URI);
+        if (jwksUri != null) {
+            MutualTLSJWKSCache.getInstance().clearCacheEntry(getJWKSCacheKey(jwksUri, serviceProvider));
+        }
+    }
+
+    private static MutualTLSJWKSCacheKey getJWKSCacheKey(String jwksUri, ServiceProvider serviceProvider) {
+
+        try {
+            return new MutualTLSJWKSCacheKey(new URL(jwksUri), MutualTLSUtil.getJWKSMirrors(serviceProvider));
+        } catch (MalformedURLException e) {
+            // A malformed JWKS URI is never fetched, but its entry is removed all the same.
+            return new MutualTLSJWKSCacheKey(jwksUri);
+        }
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.revocation;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.core.util.IdentityDatabaseUtil;
+import org.wso2.carbon.identity.oauth.cache.OAuthCache;
+import org.wso2.carbon.identity.oauth.config.OAuthServerConfiguration;
+import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
+import org.wso2.carbon.identity.oauth2.dao.OAuthTokenPersistenceFactory;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.handlers.ClientCredentialsTokenCache;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.introspection.IntrospectionResponseCache;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.CommonConstants;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSConfig;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSMetrics;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.ScopeCodec;
+import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Revokes all the tokens bound to a certificate, such as a compromised client certificate. The tokens are read and
+ * revoked in batches of the configured size, so a revocation does not hold all the bound tokens in memory.
+ * <p>
+ * The tokens are found in two passes. The first pass reads the token binding table of the OAuth core, where the
+ * binding of each certificate bound token is stored with the binding reference of the certificate, through the index
+ * on the binding reference, so its cost grows with the number of bound tokens. The second pass finds the tokens
+ * issued by earlier versions, which carry the binding as a hidden scope. The scope table has no index on the scope, so
+ * this pass reads the whole scope table once across its batches, in the order of the token identifier. It can be
+ * disabled with {@code MutualTLS.TokenRevocation.ScanLegacyScopes} once no token of an earlier version is left.
+ * <p>
+ * The tokens are revoked in the token storage, and removed from the caches that could still report them as active.
+ * The plain tokens are not known when token hashing is enabled, so the OAuth cache of each tenant owning a revoked
+ * token is cleared, which also removes the cached tokens the OAuth core would otherwise issue again. The client
+ * credentials tokens reused for the certificate on this node are removed as well. Other nodes check that a reused
+ * token is still active.
+ * <p>
+ * The service is registered as an OSGi service. Authorizing the administrator is left to the component exposing the
+ * service. As the tokens are read from the shared token storage, the revocation covers the tokens issued by every
+ * node, for every tenant.
+ */
+public class CertificateTokenRevocationService {
+
+    private static final Log log = LogFactory.getLog(CertificateTokenRevocationService.class);
+
+    // Tokens in the EXPIRED state are included, since their refresh tokens can still be used. The tokens are ordered
+    // by their identifier, so that the next batch is read after the last token of the previous batch.
+    private static final String GET_BINDING_BOUND_TOKENS = "SELECT T.TOKEN_ID, T.ACCESS_TOKEN, T.TENANT_ID "
+            + "FROM IDN_OAUTH2_TOKEN_BINDING B INNER JOIN IDN_OAUTH2_ACCESS_TOKEN T ON B.TOKEN_ID = T.TOKEN_ID "
+            + "WHERE B.TOKEN_BINDING_REF = ? AND B.TOKEN_BINDING_TYPE = ? AND B.TOKEN_ID > ? "
+            + "AND T.TOKEN_STATE IN ('ACTIVE', 'EXPIRED') ORDER BY B.TOKEN_ID";
+    private static final String GET_SCOPE_BOUND_TOKENS = "SELECT T.TOKEN_ID, T.ACCESS_TOKEN, T.TENANT_ID "
+            + "FROM IDN_OAUTH2_ACCESS_TOKEN_SCOPE S INNER JOIN IDN_OAUTH2_ACCESS_TOKEN T ON S.TOKEN_ID = T.TOKEN_ID "
+            + "WHERE S.TOKEN_SCOPE = ? AND S.TOKEN_ID > ? "
+            + "AND T.TOKEN_STATE IN ('ACTIVE', 'EXPIRED') ORDER BY S.TOKEN_ID";
+    // Lower than any token identifier, which is a UUID. An empty string is not used as it is a null value in Oracle.
+    private static final String FIRST_TOKEN_ID = " ";
+
+    private final BoundTokenFinder bindingTokenFinder;
+    private final BoundTokenFinder scopeTokenFinder;
+    private final TokenRevoker tokenRevoker;
+
+    public CertificateTokenRevocationService() {
+
+        this(CertificateTokenRevocationService::getBindingBoundTokens,
+                CertificateTokenRevocationService::getScopeBoundTokens,
+                CertificateTokenRevocationService::revokeAccessTokens);
+    }
+
+    CertificateTokenRevocationService(BoundTokenFinder bindingTokenFinder, BoundTokenFinder scopeTokenFinder,
+                                      TokenRevoker tokenRevoker) {
+
+        this.bindingTokenFinder = bindingTokenFinder;
+        this.scopeTokenFinder = scopeTokenFinder;
+        this.tokenRevoker = tokenRevoker;
+    }
+
+    /**
+     * Revoke all the tokens bound to a certificate. The access tokens are revoked along with their refresh tokens.
+     *
+     * @param thumbprint Base64 URL encoded SHA-256 thumbprint of the certificate.
+     * @return Number of revoked tokens.
+     * @throws IdentityOAuth2Exception If the bound tokens could not be read, or a batch could not be revoked. The
+     *                                 batches revoked before the failure stay revoked, and the remaining tokens are
+     *                                 revoked when the revocation is requested again.
+     */
+    public int revokeTokens(String thumbprint) throws IdentityOAuth2Exception {
+
+        if (StringUtils.isBlank(thumbprint)) {
+            throw new IdentityOAuth2Exception("Certificate thumbprint is required to revoke the bound tokens.");
+        }
+        MutualTLSConfig config = MutualTLSConfig.getInstance();
+        int revokedCount = 0;
+        try {
+            revokedCount = revokeTokens(bindingTokenFinder, thumbprint, config.getTokenRevocationBatchSize(), 0);
+            if (config.isTokenRevocationLegacyScopeScanEnabled()) {
+                revokedCount = revokeTokens(scopeTokenFinder, thumbprint, config.getTokenRevocationBatchSize(),
+                        revokedCount);
+            }
+        } finally {
+            // Cleared even if a batch failed, as the tokens of the earlier batches are revoked.
+            ClientCredentialsTokenCache.getInstance().invalidateCertificate(thumbprint);
+        }
+        log.info("Revoked " + revokedCount + " tokens bound to the certificate with thumbprint: " + thumbprint);
+        return revokedCount;
+    }
+
+    private int revokeTokens(BoundTokenFinder finder, String thumbprint, int batchSize, int revokedCount)
+            throws IdentityOAuth2Exception {
+
+        String lastTokenId = FIRST_TOKEN_ID;
+        List<BoundToken> batch;
+        do {
+            batch = finder.find(thumbprint, lastTokenId, batchSize);
+            if (batch.isEmpty()) {
+                break;
+            }
+            try {
+                tokenRevoker.revoke(batch);
+            } catch (IdentityOAuth2Exception e) {
+                throw new IdentityOAuth2Exception("Error while revoking the tokens bound to the certificate with "
+                        + "thumbprint: " + thumbprint + ". " + revokedCount + " tokens were revoked before the "
+                        + "failure.", e);
+            }
+            lastTokenId = batch.get(batch.size() - 1).getTokenId();
+            revokedCount += batch.size();
+            MutualTLSMetrics.add(MutualTLSMetrics.Counter.TOKEN_REVOKED_BY_CERTIFICATE, batch.size());
+        } while (batch.size() == batchSize);
+        return revokedCount;
+    }
+
+    private static List<BoundToken> getBindingBoundTokens(String thumbprint, String lastTokenId, int limit)
+            throws IdentityOAuth2Exception {
+
+        return getBoundTokens(GET_BINDING_BOUND_TOKENS, thumbprint, lastTokenId, limit,
+                OAuth2Util.getTokenBindingReference(thumbprint), CommonConstants.CERTIFICATE_TOKEN_BINDING_TYPE);
+    }
+
+    private static List<BoundToken> getScopeBoundTokens(String thumbprint, String lastTokenId, int limit)
+            throws IdentityOAuth2Exception {
+
+        return getBoundTokens(GET_SCOPE_BOUND_TOKENS, thumbprint, lastTokenId, limit,
+                ScopeCodec.getBindingScope(thumbprint));
+    }
+
+    private static List<BoundToken> getBoundTokens(String query, String thumbprint, String lastTokenId, int limit,
+                                                   String... bindingParameters) throws IdentityOAuth2Exception {
+
+        List<BoundToken> tokens = new ArrayList<>();
+        try (Connection connection = IdentityDatabaseUtil.getDBConnection(false);
+             PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setMaxRows(limit);
+            int parameterIndex = 1;
+            for (String bindingParameter : bindingParameters) {
+                statement.setString(parameterIndex++, bindingParameter);
+            }
+            statement.setString(parameterIndex, lastTokenId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    tokens.add(new BoundToken(resultSet.getString(1), resultSet.getString(2), resultSet.getInt(3)));
+                }
+            }
+        } catch (SQLException e) {
+            throw new IdentityOAuth2Exception("Error while retrieving the tokens bound to the certificate with "
+                    + "thumbprint: " + thumbprint, e);
+        }
+        return tokens;
+    }
+
+    private static void revokeAccessTokens(List<BoundToken> tokens) throws IdentityOAuth2Exception {
+
+        String[] storedAccessTokens = new String[tokens.size()];
+        Set<Integer> tenantIds = new TreeSet<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            storedAccessTokens[i] = tokens.get(i).getStoredAccessToken();
+            tenantIds.add(tokens.get(i).getTenantId());
+        }
+        // The tokens are revoked in the form they are stored, which is hashed when token hashing is enabled.
+        OAuthTokenPersistenceFactory.getInstance().getAccessTokenDAO().revokeAccessTokens(storedAccessTokens, true);
+        // The OAuth cache holds the tokens by the plain token, and by the client, user, scope and binding they were
+        // issued for, neither of which can be derived from a hashed token.
+        for (Integer tenantId : tenantIds) {
+            OAuthCache.getInstance().clear(tenantId);
+        }
+        if (OAuth2Util.isHashEnabled()) {
+            // Cached introspection additions are only used for the tokens reported as active.
+            return;
+        }
+        IntrospectionResponseCache introspectionCache = IntrospectionResponseCache.getInstance();
+        for (String storedAccessToken : storedAccessTokens) {
+            introspectionCache.invalidate(OAuthServerConfiguration.getInstance().getPersistenceProcessor()
+                    .getPreprocessedAccessTokenIdentifier(storedAccessToken));
+        }
+    }
+
+    /**
+     * Token bound to a certificate, as read from the token storage.
+     */
+    static class BoundToken {
+
+        private final String tokenId;
+        private final String storedAccessToken;
+        private final int tenantId;
+
+        BoundToken(String tokenId, String storedAccessToken, int tenantId) {
+
+            this.tokenId = tokenId;
+            this.storedAccessToken = storedAccessToken;
+            this.tenantId = tenantId;
+        }
+
+        String getTokenId() {
+
+            return tokenId;
+        }
+
+        String getStoredAccessToken() {
+
+            return storedAccessToken;
+        }
+
+        int getTenantId() {
+
+            return tenantId;
+        }
+    }
+
+    /**
+     * Reads a batch of the tokens bound to a certificate from the token storage.
+     */
+    @FunctionalInterface
+    interface BoundTokenFinder {
+
+        /**
+         * @param thumbprint  Base64 URL encoded SHA-256 thumbprint of the certificate.
+         * @param lastTokenId Identifier of the last token of the previous batch, or a value lower than any token
+         *                    identifier for the first batch.
+         * @param limit       Maximum number of tokens to return.
+         * @return Bound tokens, ordered by their identifier.
+         */
+        List<BoundToken> find(String thumbprint, String lastTokenId, int limit) throws IdentityOAuth2Exception;
+    }
+
+    /**
+     * Revokes a batch of tokens in the token storage and removes them from the caches.
+     */
+    @FunctionalInterface
+    interface TokenRevoker {
+
+        void revoke(List<BoundToken> tokens) throws IdentityOAuth2Exception;
+    }
+}
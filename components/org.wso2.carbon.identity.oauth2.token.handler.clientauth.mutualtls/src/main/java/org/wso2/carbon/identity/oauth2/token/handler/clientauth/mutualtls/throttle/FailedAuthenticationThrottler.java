@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.throttle;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.CommonConstants;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSConfig;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSMetrics;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.ThumbprintEngine;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+import java.util.Set;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Throttles Mutual TLS client authentication after repeated failures. Failures are counted separately for each
+ * client id and presented certificate pair, and for each source address, in {@link StripedTokenBucket}s. Each
+ * failure takes a token, and the requests of a key are rejected without being processed while its buckets are empty.
+ * <p>
+ * The client buckets are keyed by the presented certificate along with the client id, so that failures caused by
+ * others presenting a client id do not lock out the client presenting its registered certificate.
+ * <p>
+ * The source address is the address of the connection. The client address forwarded in the X-Forwarded-For header is
+ * only used when the connection comes from one of the configured trusted proxies, since the header can be set by any
+ * client to spread its failures over arbitrary addresses.
+ * <p>
+ * Keys are hashed with a random seed chosen at startup, so that colliding keys can not be computed in advance.
+ * The throttler is disabled by default.
+ */
+public class FailedAuthenticationThrottler {
+
+    private static final Log log = LogFactory.getLog(FailedAuthenticationThrottler.class);
+    private static final FailedAuthenticationThrottler instance = new FailedAuthenticationThrottler();
+    private static final String EXHAUSTED_CLIENT_BUCKETS_GAUGE = "FailedAuthenticationThrottle.ExhaustedClientBuckets";
+    private static final String EXHAUSTED_ADDRESS_BUCKETS_GAUGE =
+            "FailedAuthenticationThrottle.ExhaustedAddressBuckets";
+
+    private final long clientSeed;
+    private final long addressSeed;
+    private volatile Buckets buckets;
+    private MutualTLSConfig appliedConfig;
+
+    private FailedAuthenticationThrottler() {
+
+        SecureRandom random = new SecureRandom();
+        this.clientSeed = random.nextLong();
+        this.addressSeed = random.nextLong();
+    }
+
+    public static FailedAuthenticationThrottler getInstance() {
+
+        return instance;
+    }
+
+    /**
+     * Create the buckets from the current configuration if the throttler is enabled.
+     */
+    public void start() {
+
+        reconfigure(MutualTLSConfig.getInstance());
+    }
+
+    /**
+     * Apply a configuration. The buckets, and with them the failures counted so far, are only replaced when the
+     * throttling settings have changed.
+     *
+     * @param config Configuration to apply.
+     */
+    public synchronized void reconfigure(MutualTLSConfig config) {
+
+        if (!config.isFailedAuthenticationThrottleEnabled()) {
+            if (buckets != null) {
+                stop();
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Throttling of failed Mutual TLS authentications is disabled.");
+            }
+            return;
+        }
+        if (buckets != null && appliedConfig != null && hasSameSettings(appliedConfig, config)) {
+            return;
+        }
+        int bucketCount = config.getFailedAuthenticationThrottleBucketCount();
+        int clientCapacity = config.getFailedAuthenticationThrottleClientCapacity();
+        int addressCapacity = config.getFailedAuthenticationThrottleAddressCapacity();
+        int refillInterval = config.getFailedAuthenticationThrottleRefillInterval();
+        configure(new StripedTokenBucket(bucketCount, clientCapacity, refillInterval),
+                new StripedTokenBucket(bucketCount, addressCapacity, refillInterval));
+        appliedConfig = config;
+        if (log.isDebugEnabled()) {
+            log.debug("Throttling of failed Mutual TLS authentications is enabled with " + bucketCount
+                    + " buckets, a client capacity of " + clientCapacity + ", an address capacity of "
+                    + addressCapacity + " and a refill interval of " + refillInterval + " ms.");
+        }
+    }
+
+    /**
+     * Disable the throttler and discard the buckets.
+     */
+    public synchronized void stop() {
+
+        buckets = null;
+        appliedConfig = null;
+        MutualTLSMetrics.unregisterGauge(EXHAUSTED_CLIENT_BUCKETS_GAUGE);
+        MutualTLSMetrics.unregisterGauge(EXHAUSTED_ADDRESS_BUCKETS_GAUGE);
+    }
+
+    /**
+     * @return Whether the throttler is enabled.
+     */
+    public boolean isEnabled() {
+
+        return buckets != null;
+    }
+
+    /**
+     * Returns the source address of a request to throttle on. The X-Forwarded-For header is read from right to left,
+     * as each trusted proxy appends the address it received the request from, and the first address that is not a
+     * trusted proxy is returned.
+     *
+     * @param request Request.
+     * @return Source address of the request.
+     */
+    public String getSourceAddress(HttpServletRequest request) {
+
+        String address = request.getRemoteAddr();
+        Set<String> trustedProxies = MutualTLSConfig.getInstance().getFailedAuthenticationThrottleTrustedProxies();
+        if (address == null || !trustedProxies.contains(address)) {
+            return address;
+        }
+        String forwardedFor = request.getHeader(CommonConstants.FORWARDED_FOR_HEADER);
+        if (StringUtils.isBlank(forwardedFor)) {
+            return address;
+        }
+        String[] forwardedAddresses = forwardedFor.split(",");
+        for (int i = forwardedAddresses.length - 1; i >= 0; i--) {
+            String forwardedAddress = forwardedAddresses[i].trim();
+            if (forwardedAddress.isEmpty()) {
+                continue;
+            }
+            address = forwardedAddress;
+            if (!trustedProxies.contains(forwardedAddress)) {
+                break;
+            }
+        }
+        return address;
+    }
+
+    /**
+     * Check whether the requests from a source address are throttled.
+     *
+     * @param address Source address of the request.
+     * @return True if the request should be rejected.
+     */
+    public boolean isAddressThrottled(String address) {
+
+        Buckets current = buckets;
+        if (current == null || StringUtils.isEmpty(address)) {
+            return false;
+        }
+        return throttled(current.addressBuckets.isExhausted(hash(addressSeed, address, null)));
+    }
+
+    /**
+     * Check whether the requests of a client presenting a certificate are throttled.
+     *
+     * @param clientId    Client id of the request.
+     * @param certificate Certificate presented with the request.
+     * @return True if the request should be rejected.
+     */
+    public boolean isClientThrottled(String clientId, Certificate certificate) {
+
+        Buckets current = buckets;
+        if (current == null || clientId == null) {
+            return false;
+        }
+        return throttled(current.clientBuckets.isExhausted(hash(clientSeed, clientId, getDigest(certificate))));
+    }
+
+    /**
+     * Record a failed authentication.
+     *
+     * @param clientId    Client id of the request.
+     * @param certificate Certificate presented with the request, if any.
+     * @param address     Source address of the request, if known.
+     */
+    public void recordFailure(String clientId, Certificate certificate, String address) {
+
+        Buckets current = buckets;
+        if (current == null) {
+            return;
+        }
+        MutualTLSMetrics.increment(MutualTLSMetrics.Counter.AUTH_FAILURE_RECORDED);
+        if (clientId != null) {
+            current.clientBuckets.consume(hash(clientSeed, clientId, getDigest(certificate)));
+        }
+        if (StringUtils.isNotEmpty(address)) {
+            current.addressBuckets.consume(hash(addressSeed, address, null));
+        }
+    }
+
+    /**
+     * @return Number of client buckets that have no token left, or 0 if the throttler is disabled.
+     */
+    public int getExhaustedClientBucketCount() {
+
+        Buckets current = buckets;
+        return current == null ? 0 : current.clientBuckets.getExhaustedBucketCount();
+    }
+
+    /**
+     * @return Number of address buckets that have no token left, or 0 if the throttler is disabled.
+     */
+    public int getExhaustedAddressBucketCount() {
+
+        Buckets current = buckets;
+        return current == null ? 0 : current.addressBuckets.getExhaustedBucketCount();
+    }
+
+    /**
+     * Replace the buckets. Used when the buckets are created outside {@link #start()}.
+     *
+     * @param clientBuckets  Buckets for client id and certificate pairs.
+     * @param addressBuckets Buckets for source addresses.
+     */
+    void configure(StripedTokenBucket clientBuckets, StripedTokenBucket addressBuckets) {
+
+        this.buckets = new Buckets(clientBuckets, addressBuckets);
+        MutualTLSMetrics.registerGauge(EXHAUSTED_CLIENT_BUCKETS_GAUGE, this::getExhaustedClientBucketCount);
+        MutualTLSMetrics.registerGauge(EXHAUSTED_ADDRESS_BUCKETS_GAUGE, this::getExhaustedAddressBucketCount);
+    }
+
+    private static boolean throttled(boolean exhausted) {
+
+        if (exhausted) {
+            MutualTLSMetrics.increment(MutualTLSMetrics.Counter.AUTH_THROTTLED);
+        }
+        return exhausted;
+    }
+
+    private static ByteBuffer getDigest(Certificate certificate) {
+
+        if (certificate == null) {
+            return null;
+        }
+        try {
+            return ThumbprintEngine.getThumbprint(certificate).getSha256Buffer();
+        } catch (CertificateEncodingException e) {
+            return null;
+        }
+    }
+
+    private static long hash(long seed, String value, ByteBuffer bytes) {
+
+        long hash = seed;
+        for (int i = 0; i < value.length(); i++) {
+            hash = mix(hash ^ value.charAt(i));
+        }
+        // Separates the value from the bytes, so that the boundary between them can not be shifted.
+        hash = mix(hash ^ 0x10000L);
+        if (bytes != null) {
+            for (int i = 0; i < bytes.limit(); i++) {
+                hash = mix(hash ^ (bytes.get(i) & 0xff));
+            }
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+
+    private static long mix(long hash) {
+
+        return Long.rotateLeft(hash * 0x87c37b91114253d5L, 31) * 0x4cf5ad432745937fL;
+    }
+
+    private static boolean hasSameSettings(MutualTLSConfig applied, MutualTLSConfig config) {
+
+        return applied.getFailedAuthenticationThrottleBucketCount()
+                == config.getFailedAuthenticationThrottleBucketCount()
+                && applied.getFailedAuthenticationThrottleClientCapacity()
+                == config.getFailedAuthenticationThrottleClientCapacity()
+                && applied.getFailedAuthenticationThrottleAddressCapacity()
+                == config.getFailedAuthenticationThrottleAddressCapacity()
+                && applied.getFailedAuthenticationThrottleRefillInterval()
+                == config.getFailedAuthenticationThrottleRefillInterval();
+    }
+
+    private static class Buckets {
+
+        private final StripedTokenBucket clientBuckets;
+        private final StripedTokenBucket addressBuckets;
+
+        Buckets(StripedTokenBucket clientBuckets, StripedTokenBucket addressBuckets) {
+
+            this.clientBuckets = clientBuckets;
+            this.addressBuckets = addressBuckets;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.throttle;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed number of token buckets shared by any number of keys. A key is mapped to two buckets by its hash, takes
+ * tokens from both, and is exhausted only when both buckets are empty. This keeps the memory bounded, while a key
+ * is throttled because of other keys only if both of its buckets are emptied by them.
+ * <p>
+ * The state of each bucket is kept in a single long, holding the number of tokens taken in thousandths of a token,
+ * and the time up to which refills have been applied. Buckets are updated with compare and set, without locks.
+ */
+public class StripedTokenBucket {
+
+    /** Maximum number of tokens a bucket can hold. */
+    public static final int MAX_CAPACITY = 16000;
+
+    private static final int TIME_SHIFT = 24;
+    private static final long DEFICIT_MASK = (1L << TIME_SHIFT) - 1;
+    private static final long TOKEN = 1000;
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    private final AtomicLongArray buckets;
+    private final int mask;
+    private final long capacity;
+    private final long refillIntervalMillis;
+    private final long startNanos = System.nanoTime();
+
+    /**
+     * @param bucketCount          Number of buckets. Rounded up to a power of two.
+     * @param capacity             Number of tokens in a full bucket.
+     * @param refillIntervalMillis Time taken to add one token to a bucket.
+     */
+    public StripedTokenBucket(int bucketCount, int capacity, long refillIntervalMillis) {
+
+        if (bucketCount <= 0 || bucketCount > (1 << 30)) {
+            throw new IllegalArgumentException("Bucket count should be between 1 and 2^30. Value : " + bucketCount);
+        }
+        if (capacity <= 0 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Capacity should be between 1 and " + MAX_CAPACITY + ". Value : "
+                    + capacity);
+        }
+        if (refillIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Refill interval should be positive. Value : " + refillIntervalMillis);
+        }
+        int size = Math.max(2, Integer.highestOneBit(bucketCount - 1) << 1);
+        this.buckets = new AtomicLongArray(size);
+        this.mask = size - 1;
+        this.capacity = capacity * TOKEN;
+        this.refillIntervalMillis = refillIntervalMillis;
+    }
+
+    /**
+     * Check whether the buckets of a key have no token left.
+     *
+     * @param hash Hash of the key.
+     * @return True if both buckets of the key are empty.
+     */
+    public boolean isExhausted(long hash) {
+
+        long now = now();
+        return isEmpty(buckets.get(firstIndex(hash)), now) && isEmpty(buckets.get(secondIndex(hash)), now);
+    }
+
+    /**
+     * Take a token from both buckets of a key. Empty buckets are left empty.
+     *
+     * @param hash Hash of the key.
+     */
+    public void consume(long hash) {
+
+        long now = now();
+        consume(firstIndex(hash), now);
+        consume(secondIndex(hash), now);
+    }
+
+    /**
+     * @return Number of buckets that have no token left.
+     */
+    public int getExhaustedBucketCount() {
+
+        long now = now();
+        int count = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            if (isEmpty(buckets.get(i), now)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return Number of buckets.
+     */
+    public int getBucketCount() {
+
+        return buckets.length();
+    }
+
+    private void consume(int index, long now) {
+
+        while (true) {
+            long state = buckets.get(index);
+            long refilledState = refill(state, now);
+            long deficit = Math.min(capacity, (refilledState & DEFICIT_MASK) + TOKEN);
+            long updated = (refilledState & ~DEFICIT_MASK) | deficit;
+            if (updated == state || buckets.compareAndSet(index, state, updated)) {
+                return;
+            }
+        }
+    }
+
+    private boolean isEmpty(long state, long now) {
+
+        return (refill(state, now) & DEFICIT_MASK) > capacity - TOKEN;
+    }
+
+    /**
+     * Apply the refills due up to the given time. The time in the state is advanced only by the time accounted for
+     * by the applied refills, so that partial refills are not lost.
+     */
+    private long refill(long state, long now) {
+
+        long deficit = state & DEFICIT_MASK;
+        long time = state >>> TIME_SHIFT;
+        long elapsed = now - time;
+        if (deficit == 0) {
+            return now << TIME_SHIFT;
+        }
+        if (elapsed <= 0) {
+            return state;
+        }
+        long refilled = elapsed * TOKEN / refillIntervalMillis;
+        if (refilled >= deficit) {
+            return now << TIME_SHIFT;
+        }
+        return ((time + refilled * refillIntervalMillis / TOKEN) << TIME_SHIFT) | (deficit - refilled);
+    }
+
+    private int firstIndex(long hash) {
+
+        return (int) hash & mask;
+    }
+
+    private int secondIndex(long hash) {
+
+        return (int) (hash >>> 32) & mask;
+    }
+
+    private long now() {
+
+        return (System.nanoTime() - startNanos) / NANOS_PER_MILLI;
+    }
+}
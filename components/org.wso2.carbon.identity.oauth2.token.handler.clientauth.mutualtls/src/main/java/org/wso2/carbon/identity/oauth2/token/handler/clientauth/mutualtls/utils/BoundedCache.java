@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Concurrent map holding at most a fixed number of entries, for node local caches of values that are cheap to hold
+ * but costly to compute. Reads take no lock. When an entry is added to a full cache, the stale entries are removed
+ * first, and then arbitrary entries until a quarter of the capacity is free, so that the cost of a full cache is
+ * shared by many insertions.
+ *
+ * @param <K> Key type.
+ * @param <V> Value type.
+ */
+public class BoundedCache<K, V> {
+
+    private final Map<K, V> entries = new ConcurrentHashMap<>();
+    private final int capacity;
+
+    /**
+     * @param capacity Maximum number of entries.
+     */
+    public BoundedCache(int capacity) {
+
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Cache capacity should be positive. Value : " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    public V get(K key) {
+
+        return entries.get(key);
+    }
+
+    /**
+     * Add an entry, making room for it if the cache is full.
+     *
+     * @param key   Key.
+     * @param value Value.
+     */
+    public void put(K key, V value) {
+
+        put(key, value, null);
+    }
+
+    /**
+     * Add an entry, making room for it if the cache is full.
+     *
+     * @param key   Key.
+     * @param value Value.
+     * @param stale Values removed before any other value when the cache is full, or null.
+     */
+    public void put(K key, V value, Predicate<? super V> stale) {
+
+        if (entries.size() >= capacity && !entries.containsKey(key)) {
+            evict(stale);
+        }
+        entries.put(key, value);
+    }
+
+    public void remove(K key) {
+
+        entries.remove(key);
+    }
+
+    /**
+     * Remove an entry only if it still has the given value.
+     *
+     * @param key   Key.
+     * @param value Expected value.
+     */
+    public void remove(K key, V value) {
+
+        entries.remove(key, value);
+    }
+
+    /**
+     * Remove the entries whose key matches the given predicate.
+     *
+     * @param keys Predicate of the keys to remove.
+     */
+    public void removeIf(Predicate<? super K> keys) {
+
+        entries.keySet().removeIf(keys);
+    }
+
+    public void clear() {
+
+        entries.clear();
+    }
+
+    public int size() {
+
+        return entries.size();
+    }
+
+    public int getCapacity() {
+
+        return capacity;
+    }
+
+    private void evict(Predicate<? super V> stale) {
+
+        if (stale != null) {
+            entries.values().removeIf(stale);
+        }
+        int target = capacity - Math.max(1, capacity / 4);
+        Iterator<K> iterator = entries.keySet().iterator();
+        while (entries.size() > target && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * SHA-1 and SHA-256 digests of the DER encoding of a certificate. The string forms are produced only when requested,
+ * and kept for later use.
+ */
+public final class CertificateThumbprint {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final Base64.Encoder BASE64_URL_ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private final byte[] sha1;
+    private final byte[] sha256;
+    private volatile String sha1Base64Url;
+    private volatile String sha256Base64Url;
+    private volatile String legacySha1Thumbprint;
+
+    CertificateThumbprint(byte[] sha1, byte[] sha256) {
+
+        this.sha1 = sha1;
+        this.sha256 = sha256;
+    }
+
+    /**
+     * @return Copy of the SHA-1 digest.
+     */
+    public byte[] getSha1() {
+
+        return sha1.clone();
+    }
+
+    /**
+     * @return Copy of the SHA-256 digest.
+     */
+    public byte[] getSha256() {
+
+        return sha256.clone();
+    }
+
+    /**
+     * @return Read-only view of the SHA-256 digest, to read the digest on hot paths without copying it.
+     */
+    public ByteBuffer getSha256Buffer() {
+
+        return ByteBuffer.wrap(sha256).asReadOnlyBuffer();
+    }
+
+    /**
+     * Compare the SHA-256 digest with the given digest in constant time.
+     *
+     * @param digest SHA-256 digest.
+     * @return Whether the digests are equal.
+     */
+    public boolean matchesSha256(byte[] digest) {
+
+        return digest != null && MessageDigest.isEqual(sha256, digest);
+    }
+
+    /**
+     * Compare the SHA-256 digests of the two certificates in constant time.
+     *
+     * @param other Thumbprint of the other certificate.
+     * @return Whether the thumbprints are of the same certificate.
+     */
+    public boolean matches(CertificateThumbprint other) {
+
+        return other != null && MessageDigest.isEqual(sha256, other.sha256);
+    }
+
+    /**
+     * @return Base64url encoded SHA-1 digest, which is the x5t value of a JWK.
+     */
+    public String getSha1Base64Url() {
+
+        String value = sha1Base64Url;
+        if (value == null) {
+            value = BASE64_URL_ENCODER.encodeToString(sha1);
+            sha1Base64Url = value;
+        }
+        return value;
+    }
+
+    /**
+     * @return Base64url encoded SHA-256 digest, which is the x5t#S256 value of a JWK and a confirmation claim.
+     */
+    public String getSha256Base64Url() {
+
+        String value = sha256Base64Url;
+        if (value == null) {
+            value = BASE64_URL_ENCODER.encodeToString(sha256);
+            sha256Base64Url = value;
+        }
+        return value;
+    }
+
+    /**
+     * @return Base64url encoded hexadecimal SHA-1 digest, which is the format of the deprecated
+     * {@link MutualTLSUtil#getThumbPrint(java.security.cert.X509Certificate)}.
+     */
+    public String getLegacySha1Thumbprint() {
+
+        String value = legacySha1Thumbprint;
+        if (value == null) {
+            byte[] hex = new byte[sha1.length * 2];
+            for (int i = 0; i < sha1.length; i++) {
+                hex[2 * i] = (byte) HEX_DIGITS[(sha1[i] & 0xf0) >> 4];
+                hex[2 * i + 1] = (byte) HEX_DIGITS[sha1[i] & 0x0f];
+            }
+            value = new String(BASE64_URL_ENCODER.encode(hex), StandardCharsets.US_ASCII);
+            legacySha1Thumbprint = value;
+        }
+        return value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+
+        return o instanceof CertificateThumbprint && Arrays.equals(sha256, ((CertificateThumbprint) o).sha256);
+    }
+
+    @Override
+    public int hashCode() {
+
+        return Arrays.hashCode(sha256);
+    }
+
+    @Override
+    public String toString() {
+
+        return getSha256Base64Url();
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Parses client certificates received as request header content with a bounded cost. The size of the header and
+ * the decoded certificate are limited, and the decoded bytes must have the DER structure of a certificate before
+ * they are handed over to the {@link CertificateFactory}.
+ */
+public class ClientCertificateParser {
+
+    private static final byte DER_SEQUENCE_TAG = 0x30;
+    private static final int DER_LONG_FORM_LENGTH_MASK = 0x80;
+    private static final int DER_MAX_LENGTH_OCTETS = 3;
+
+    private static final ThreadLocal<CertificateFactory> CERTIFICATE_FACTORY = new ThreadLocal<>();
+
+    private final int maxHeaderLength;
+    private final int maxCertificateLength;
+
+    /**
+     * @param maxHeaderLength      Maximum number of characters accepted as certificate header content.
+     * @param maxCertificateLength Maximum number of bytes accepted as the DER encoded certificate.
+     */
+    public ClientCertificateParser(int maxHeaderLength, int maxCertificateLength) {
+
+        this.maxHeaderLength = maxHeaderLength;
+        this.maxCertificateLength = maxCertificateLength;
+    }
+
+    /**
+     * Return the X.509 certificate for the given certificate header content. The content can be PEM or Base64
+     * encoded, optionally URL encoded.
+     *
+     * @param content Certificate content.
+     * @return X509Certificate X.509 certificate after decoding the certificate content.
+     * @throws CertificateException If the content is too large, malformed or not a valid certificate.
+     */
+    public X509Certificate parse(String content) throws CertificateException {
+
+        byte[] encoded = decodeCertificate(content);
+        try {
+            return (X509Certificate) getCertificateFactory().generateCertificate(new ByteArrayInputStream(encoded));
+        } catch (CertificateException | ClassCastException e) {
+            MutualTLSMetrics.increment(MutualTLSMetrics.Counter.CERT_PARSE_FAILURE);
+            throw new CertificateException("Unable to parse the certificate content", e);
+        }
+    }
+
+    /**
+     * Return the DER encoding of the certificate in the given certificate header content, without parsing the
+     * certificate. The content can be PEM or Base64 encoded, optionally URL encoded.
+     *
+     * @param content Certificate content.
+     * @return DER encoding of the certificate.
+     * @throws CertificateException If the content is too large, malformed or does not have the structure of a
+     *                              certificate.
+     */
+    public byte[] decodeCertificate(String content) throws CertificateException {
+
+        if (content.length() > maxHeaderLength) {
+            MutualTLSMetrics.increment(MutualTLSMetrics.Counter.CERT_HEADER_TOO_LARGE);
+            throw new CertificateException("Certificate header length " + content.length() +
+                    " exceeds the maximum allowed length " + maxHeaderLength);
+        }
+
+        byte[] decoded = decode(content);
+        int certificateLength = getCertificateLength(decoded);
+        if (certificateLength < 0) {
+            MutualTLSMetrics.increment(MutualTLSMetrics.Counter.CERT_MALFORMED_STRUCTURE);
+            throw new CertificateException("Decoded certificate content does not have a valid DER structure");
+        }
+        return certificateLength == decoded.length ? decoded : Arrays.copyOf(decoded, certificateLength);
+    }
+
+    /**
+     * Decode the header content. First we try to Base64 decode, if it is not decodable, we try to URL decode first
+     * and then Base64 decode.
+     */
+    private byte[] decode(String content) throws CertificateException {
+
+        String sanitizedCertificate = sanitizeCertificate(content);
+        if (sanitizedCertificate.indexOf('%') < 0) {
+            try {
+                return base64Decode(sanitizedCertificate);
+            } catch (IllegalArgumentException e) {
+                // Try URL decoding first.
+            }
+        }
+        try {
+            String urlDecodedContent = URLDecoder.decode(content, StandardCharsets.UTF_8.name());
+            return base64Decode(sanitizeCertificate(urlDecodedContent));
+        } catch (IllegalArgumentException | UnsupportedEncodingException e) {
+            MutualTLSMetrics.increment(MutualTLSMetrics.Counter.CERT_MALFORMED_ENCODING);
+            throw new CertificateException("Certificate content is neither Base64 nor URL encoded Base64", e);
+        }
+    }
+
+    private byte[] base64Decode(String sanitizedCertificate) throws CertificateException {
+
+        // Reject oversized content before allocating the decode buffer.
+        if ((long) sanitizedCertificate.length() / 4 * 3 > maxCertificateLength + 2) {
+            MutualTLSMetrics.increment(MutualTLSMetrics.Counter.CERT_TOO_LARGE);
+            throw new CertificateException("Decoded certificate length exceeds the maximum allowed length " +
+                    maxCertificateLength);
+        }
+        return Base64.getDecoder().decode(sanitizedCertificate);
+    }
+
+    /**
+     * Sanitize the certificate before decoding, in a single pass over the content. Only the first PEM block is
+     * considered, and whitespaces as well as escaped new lines are removed.
+     *
+     * @param content certificate as a string.
+     * @return sanitized certificate.
+     */
+    public static String sanitizeCertificate(String content) {
+
+        int start = 0;
+        int end = content.length();
+        int beginIndex = content.indexOf(CommonConstants.BEGIN_CERT);
+        if (beginIndex >= 0) {
+            start = beginIndex + CommonConstants.BEGIN_CERT.length();
+        }
+        int endIndex = content.indexOf(CommonConstants.END_CERT, start);
+        if (endIndex >= 0) {
+            end = endIndex;
+        }
+
+        StringBuilder builder = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            char character = content.charAt(i);
+            if (Character.isWhitespace(character)) {
+                continue;
+            }
+            if (character == '\\' && i + 1 < end && content.charAt(i + 1) == 'n') {
+                i++;
+                continue;
+            }
+            builder.append(character);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Check whether the given bytes start with a DER encoded SEQUENCE which contains a SEQUENCE, which is the
+     * outer structure of an X.509 certificate, and return the length of that outer SEQUENCE.
+     *
+     * @param der DER encoded bytes.
+     * @return Length of the encoded certificate including the tag and length octets, or -1 if the structure is not
+     * valid.
+     */
+    public static int getCertificateLength(byte[] der) {
+
+        if (der == null || der.length < 4 || der[0] != DER_SEQUENCE_TAG) {
+            return -1;
+        }
+        int lengthOctet = der[1] & 0xff;
+        int headerLength;
+        int contentLength;
+        if ((lengthOctet & DER_LONG_FORM_LENGTH_MASK) == 0) {
+            headerLength = 2;
+            contentLength = lengthOctet;
+        } else {
+            int lengthOctets = lengthOctet & ~DER_LONG_FORM_LENGTH_MASK;
+            if (lengthOctets == 0 || lengthOctets > DER_MAX_LENGTH_OCTETS || der.length < 2 + lengthOctets) {
+                return -1;
+            }
+            headerLength = 2 + lengthOctets;
+            contentLength = 0;
+            for (int i = 2; i < headerLength; i++) {
+                contentLength = (contentLength << 8) | (der[i] & 0xff);
+            }
+        }
+        int totalLength = headerLength + contentLength;
+        if (contentLength < 2 || totalLength > der.length || der[headerLength] != DER_SEQUENCE_TAG) {
+            return -1;
+        }
+        return totalLength;
+    }
+
+    private static CertificateFactory getCertificateFactory() throws CertificateException {
+
+        CertificateFactory certificateFactory = CERTIFICATE_FACTORY.get();
+        if (certificateFactory == null) {
+            certificateFactory = CertificateFactory.getInstance(CommonConstants.X509);
+            CERTIFICATE_FACTORY.set(certificateFactory);
+        }
+        return certificateFactory;
+    }
+}
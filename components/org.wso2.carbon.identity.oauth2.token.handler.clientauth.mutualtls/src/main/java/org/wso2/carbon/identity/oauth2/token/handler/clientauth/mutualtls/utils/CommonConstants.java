@@ -24,11 +24,15 @@ package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils
 public class CommonConstants {
 
     public static final String JWKS_URI = "jwksURI";
+    public static final String JWKS_MIRROR_URIS = "jwksMirrorURIs";
+    public static final String JWKS_MIRROR_URI_SEPARATOR = ",";
     public static final String CERT_THUMBPRINT = "x5t";
     public static final String SEPARATOR = "#";
     public static final String TIMESTAMP_SCOPE_PREFIX = "TIME_";
     public static final String CERT_THUMBPRINT_SEPARATOR = ":";
     public static final String CONFIRMATION_CLAIM_ATTRIBUTE = "cnf";
+    public static final String X5T_S256 = "x5t#S256";
+    public static final String CERTIFICATE_TOKEN_BINDING_TYPE = "mtls-certificate";
     public static final String SHA256_DIGEST_ALGORITHM = "SHA256";
     public static final String AUTHENTICATOR_TYPE_PARAM = "authenticatorType";
     public static final String AUTHENTICATOR_TYPE_MTLS = "mtls";
@@ -45,5 +49,70 @@ public class CommonConstants {
     public static final String KEYS = "keys";
     public static final String OAUTH_JWT_BEARER_GRANT_TYPE = "urn:ietf:params:oauth:client-assertion-type:jwt-bearer";
     public static final String AUTHENTICATOR_TYPE_PK_JWT = "pkJWT";
+    public static final String CLIENT_CERTIFICATE_PARAM = "mtlsClientCertificate";
+    public static final String CLIENT_CERTIFICATE_THUMBPRINT_PARAM = "mtlsClientCertificateThumbprint";
+    public static final String MAX_CERT_HEADER_LENGTH = "MutualTLS.MaxCertificateHeaderLength";
+    public static final String MAX_CERT_LENGTH = "MutualTLS.MaxCertificateLength";
+    public static final String CERT_PARSE_FAILURE_LOG_INTERVAL = "MutualTLS.CertificateParseFailureLogInterval";
+    public static final int DEFAULT_MAX_CERT_HEADER_LENGTH = 32768;
+    public static final int DEFAULT_MAX_CERT_LENGTH = 16384;
+    public static final int DEFAULT_CERT_PARSE_FAILURE_LOG_INTERVAL = 60000;
+    public static final String OAUTH2_INBOUND_AUTH_TYPE = "oauth2";
+    public static final String CERT_PREFILTER_ENABLE = "MutualTLS.CertificatePrefilter.Enable";
+    public static final String CERT_PREFILTER_FALSE_POSITIVE_PROBABILITY =
+            "MutualTLS.CertificatePrefilter.FalsePositiveProbability";
+    public static final String CERT_PREFILTER_REBUILD_INTERVAL = "MutualTLS.CertificatePrefilter.RebuildInterval";
+    public static final double DEFAULT_CERT_PREFILTER_FALSE_POSITIVE_PROBABILITY = 0.001;
+    public static final int DEFAULT_CERT_PREFILTER_REBUILD_INTERVAL = 900;
+    public static final String FAILED_AUTH_THROTTLE_ENABLE = "MutualTLS.FailedAuthenticationThrottle.Enable";
+    public static final String FAILED_AUTH_THROTTLE_CLIENT_CAPACITY =
+            "MutualTLS.FailedAuthenticationThrottle.ClientCapacity";
+    public static final String FAILED_AUTH_THROTTLE_ADDRESS_CAPACITY =
+            "MutualTLS.FailedAuthenticationThrottle.AddressCapacity";
+    public static final String FAILED_AUTH_THROTTLE_REFILL_INTERVAL =
+            "MutualTLS.FailedAuthenticationThrottle.RefillInterval";
+    public static final String FAILED_AUTH_THROTTLE_BUCKET_COUNT = "MutualTLS.FailedAuthenticationThrottle.BucketCount";
+    public static final String FAILED_AUTH_THROTTLE_TRUSTED_PROXIES =
+            "MutualTLS.FailedAuthenticationThrottle.TrustedProxies";
+    public static final String FORWARDED_FOR_HEADER = "X-Forwarded-For";
+    public static final int DEFAULT_FAILED_AUTH_THROTTLE_CLIENT_CAPACITY = 10;
+    public static final int DEFAULT_FAILED_AUTH_THROTTLE_ADDRESS_CAPACITY = 100;
+    public static final int DEFAULT_FAILED_AUTH_THROTTLE_REFILL_INTERVAL = 6000;
+    public static final int DEFAULT_FAILED_AUTH_THROTTLE_BUCKET_COUNT = 4096;
+    public static final String INTROSPECTION_CACHE_ENABLE = "MutualTLS.IntrospectionCache.Enable";
+    public static final String INTROSPECTION_CACHE_CAPACITY = "MutualTLS.IntrospectionCache.Capacity";
+    public static final int DEFAULT_INTROSPECTION_CACHE_CAPACITY = 10000;
+    public static final String BATCH_INTROSPECTION_MAX_SIZE = "MutualTLS.BatchIntrospection.MaxSize";
+    public static final int DEFAULT_BATCH_INTROSPECTION_MAX_SIZE = 100;
+    public static final String BINDING_VERIFIER_CACHE_CAPACITY = "MutualTLS.BindingVerifier.DigestCacheCapacity";
+    public static final int DEFAULT_BINDING_VERIFIER_CACHE_CAPACITY = 1024;
+    public static final String TOKEN_REVOCATION_BATCH_SIZE = "MutualTLS.TokenRevocation.BatchSize";
+    public static final int DEFAULT_TOKEN_REVOCATION_BATCH_SIZE = 100;
+    public static final String TOKEN_REVOCATION_SCAN_LEGACY_SCOPES = "MutualTLS.TokenRevocation.ScanLegacyScopes";
+    public static final String TOKEN_BINDING_GRANT_HANDLERS = "MutualTLS.TokenBinding.GrantHandlers";
+    public static final String TOKEN_REUSE_ENABLE = "MutualTLS.ClientCredentialsTokenReuse.Enable";
+    public static final String TOKEN_REUSE_MIN_REMAINING_LIFETIME =
+            "MutualTLS.ClientCredentialsTokenReuse.MinRemainingLifetime";
+    public static final String TOKEN_REUSE_CAPACITY = "MutualTLS.ClientCredentialsTokenReuse.Capacity";
+    public static final double DEFAULT_TOKEN_REUSE_MIN_REMAINING_LIFETIME = 0.5;
+    public static final int DEFAULT_TOKEN_REUSE_CAPACITY = 10000;
+    public static final String JWKS_NEAR_CACHE_ENABLE = "MutualTLS.JWKSCache.NearCache.Enable";
+    public static final String JWKS_NEAR_CACHE_MAX_WEIGHT = "MutualTLS.JWKSCache.NearCache.MaxWeight";
+    public static final String JWKS_NEAR_CACHE_TIMEOUT = "MutualTLS.JWKSCache.NearCache.Timeout";
+    public static final int DEFAULT_JWKS_NEAR_CACHE_MAX_WEIGHT = 4194304;
+    public static final int DEFAULT_JWKS_NEAR_CACHE_TIMEOUT = 300;
+    public static final String JWKS_ROTATION_NOTICE_MIN_INTERVAL = "MutualTLS.JWKSCache.RotationNotice.MinInterval";
+    public static final int DEFAULT_JWKS_ROTATION_NOTICE_MIN_INTERVAL = 10;
+    public static final String JWKS_REFRESH_ON_MISS_ENABLE = "MutualTLS.JWKSCache.RefreshOnMiss.Enable";
+    public static final String JWKS_REFRESH_ON_MISS_COOLDOWN = "MutualTLS.JWKSCache.RefreshOnMiss.Cooldown";
+    public static final int DEFAULT_JWKS_REFRESH_ON_MISS_COOLDOWN = 60;
+    public static final String JWKS_MIRROR_HEDGE_DELAY = "MutualTLS.JWKSCache.Mirror.HedgeDelay";
+    public static final int DEFAULT_JWKS_MIRROR_HEDGE_DELAY = 500;
+    public static final String JWKS_LOCAL_DIRECTORY = "MutualTLS.JWKSCache.LocalDirectory";
+    public static final String JWKS_SNAPSHOT_FILE = "MutualTLS.Snapshot.File";
+    public static final String JWKS_SNAPSHOT_WRITE_INTERVAL = "MutualTLS.Snapshot.WriteInterval";
+    public static final int DEFAULT_JWKS_SNAPSHOT_WRITE_INTERVAL = 300;
+    public static final String JWKS_SNAPSHOT_MAX_AGE = "MutualTLS.Snapshot.MaxAge";
+    public static final int DEFAULT_JWKS_SNAPSHOT_MAX_AGE = 3600;
 
 }
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Allows at most one log entry per interval for a recurring event, while keeping count of the suppressed entries.
+ * This prevents a flood of bad requests from turning into a flood of log I/O.
+ */
+public class LogRateLimiter {
+
+    private final long intervalNanos;
+    private final AtomicLong nextPermitNanos;
+    private final AtomicLong suppressed = new AtomicLong();
+
+    /**
+     * @param intervalMillis Minimum interval between two log entries in milliseconds.
+     */
+    public LogRateLimiter(long intervalMillis) {
+
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        this.nextPermitNanos = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Returns whether the event can be logged now. When it cannot, the event is counted as suppressed.
+     *
+     * @return true if the caller should log the event.
+     */
+    public boolean tryAcquire() {
+
+        long now = System.nanoTime();
+        long next = nextPermitNanos.get();
+        if (now - next >= 0 && nextPermitNanos.compareAndSet(next, now + intervalNanos)) {
+            return true;
+        }
+        suppressed.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Returns the number of events suppressed since the last call and resets the count.
+     *
+     * @return Number of suppressed events.
+     */
+    public long drainSuppressedCount() {
+
+        return suppressed.getAndSet(0);
+    }
+}
@@ -0,0 +1,646 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.core.util.IdentityUtil;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.throttle.StripedTokenBucket;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Immutable snapshot of the Mutual TLS configuration in identity.xml.
+ * <p>
+ * The configuration is read and validated once, and the request path reads the values from the current snapshot
+ * instead of looking up and parsing the properties on every request. {@link #reload()} reads the configuration again
+ * and atomically replaces the current snapshot, after which the registered reload listeners are notified so that the
+ * components holding state derived from the configuration can apply the new values.
+ */
+public final class MutualTLSConfig {
+
+    private static final Log log = LogFactory.getLog(MutualTLSConfig.class);
+    private static final List<Consumer<MutualTLSConfig>> reloadListeners = new CopyOnWriteArrayList<>();
+    private static volatile MutualTLSConfig instance;
+
+    private final String clientCertificateHeader;
+    private final int maxCertificateHeaderLength;
+    private final int maxCertificateLength;
+    private final int certificateParseFailureLogInterval;
+    private final int jwksConnectionTimeout;
+    private final int jwksReadTimeout;
+    private final boolean certificatePrefilterEnabled;
+    private final double certificatePrefilterFalsePositiveProbability;
+    private final int certificatePrefilterRebuildInterval;
+    private final boolean failedAuthenticationThrottleEnabled;
+    private final int failedAuthenticationThrottleClientCapacity;
+    private final int failedAuthenticationThrottleAddressCapacity;
+    private final int failedAuthenticationThrottleRefillInterval;
+    private final int failedAuthenticationThrottleBucketCount;
+    private final Set<String> failedAuthenticationThrottleTrustedProxies;
+    private final boolean introspectionCacheEnabled;
+    private final int introspectionCacheCapacity;
+    private final int batchIntrospectionMaxSize;
+    private final int bindingVerifierCacheCapacity;
+    private final int tokenRevocationBatchSize;
+    private final boolean tokenRevocationLegacyScopeScanEnabled;
+    private final Map<String, String> tokenBindingGrantHandlers;
+    private final boolean tokenReuseEnabled;
+    private final double tokenReuseMinRemainingLifetime;
+    private final int tokenReuseCapacity;
+    private final boolean jwksNearCacheEnabled;
+    private final int jwksNearCacheMaxWeight;
+    private final int jwksNearCacheTimeout;
+    private final int jwksRotationNoticeMinInterval;
+    private final boolean jwksRefreshOnMissEnabled;
+    private final int jwksRefreshOnMissCooldown;
+    private final int jwksMirrorHedgeDelay;
+    private final String jwksLocalDirectory;
+    private final String snapshotFile;
+    private final int snapshotWriteInterval;
+    private final int snapshotMaxAge;
+
+    private MutualTLSConfig(Function<String, String> properties) {
+
+        clientCertificateHeader = StringUtils.trimToNull(properties.apply(CommonConstants.MTLS_AUTH_HEADER));
+        maxCertificateHeaderLength = readPositiveInt(properties, CommonConstants.MAX_CERT_HEADER_LENGTH,
+                CommonConstants.DEFAULT_MAX_CERT_HEADER_LENGTH);
+        maxCertificateLength = readPositiveInt(properties, CommonConstants.MAX_CERT_LENGTH,
+                CommonConstants.DEFAULT_MAX_CERT_LENGTH);
+        certificateParseFailureLogInterval = readPositiveInt(properties,
+                CommonConstants.CERT_PARSE_FAILURE_LOG_INTERVAL,
+                CommonConstants.DEFAULT_CERT_PARSE_FAILURE_LOG_INTERVAL);
+        jwksConnectionTimeout = readTimeout(properties, CommonConstants.HTTP_CONNECTION_TIMEOUT_XPATH);
+        jwksReadTimeout = readTimeout(properties, CommonConstants.HTTP_READ_TIMEOUT_XPATH);
+        certificatePrefilterEnabled = Boolean.parseBoolean(properties.apply(CommonConstants.CERT_PREFILTER_ENABLE));
+        certificatePrefilterFalsePositiveProbability = readProbability(properties,
+                CommonConstants.CERT_PREFILTER_FALSE_POSITIVE_PROBABILITY,
+                CommonConstants.DEFAULT_CERT_PREFILTER_FALSE_POSITIVE_PROBABILITY);
+        certificatePrefilterRebuildInterval = readPositiveInt(properties,
+                CommonConstants.CERT_PREFILTER_REBUILD_INTERVAL,
+                CommonConstants.DEFAULT_CERT_PREFILTER_REBUILD_INTERVAL);
+        failedAuthenticationThrottleEnabled =
+                Boolean.parseBoolean(properties.apply(CommonConstants.FAILED_AUTH_THROTTLE_ENABLE));
+        failedAuthenticationThrottleClientCapacity = readCapacity(properties,
+                CommonConstants.FAILED_AUTH_THROTTLE_CLIENT_CAPACITY,
+                CommonConstants.DEFAULT_FAILED_AUTH_THROTTLE_CLIENT_CAPACITY);
+        failedAuthenticationThrottleAddressCapacity = readCapacity(properties,
+                CommonConstants.FAILED_AUTH_THROTTLE_ADDRESS_CAPACITY,
+                CommonConstants.DEFAULT_FAILED_AUTH_THROTTLE_ADDRESS_CAPACITY);
+        failedAuthenticationThrottleRefillInterval = readPositiveInt(properties,
+                CommonConstants.FAILED_AUTH_THROTTLE_REFILL_INTERVAL,
+                CommonConstants.DEFAULT_FAILED_AUTH_THROTTLE_REFILL_INTERVAL);
+        failedAuthenticationThrottleBucketCount = readPositiveInt(properties,
+                CommonConstants.FAILED_AUTH_THROTTLE_BUCKET_COUNT,
+                CommonConstants.DEFAULT_FAILED_AUTH_THROTTLE_BUCKET_COUNT);
+        failedAuthenticationThrottleTrustedProxies = readAddresses(properties,
+                CommonConstants.FAILED_AUTH_THROTTLE_TRUSTED_PROXIES);
+        introspectionCacheEnabled =
+                Boolean.parseBoolean(properties.apply(CommonConstants.INTROSPECTION_CACHE_ENABLE));
+        introspectionCacheCapacity = readPositiveInt(properties, CommonConstants.INTROSPECTION_CACHE_CAPACITY,
+                CommonConstants.DEFAULT_INTROSPECTION_CACHE_CAPACITY);
+        batchIntrospectionMaxSize = readPositiveInt(properties, CommonConstants.BATCH_INTROSPECTION_MAX_SIZE,
+                CommonConstants.DEFAULT_BATCH_INTROSPECTION_MAX_SIZE);
+        bindingVerifierCacheCapacity = readPositiveInt(properties, CommonConstants.BINDING_VERIFIER_CACHE_CAPACITY,
+                CommonConstants.DEFAULT_BINDING_VERIFIER_CACHE_CAPACITY);
+        tokenRevocationBatchSize = readPositiveInt(properties, CommonConstants.TOKEN_REVOCATION_BATCH_SIZE,
+                CommonConstants.DEFAULT_TOKEN_REVOCATION_BATCH_SIZE);
+        // The scan is enabled unless it is explicitly disabled, so that the tokens of earlier versions are revoked.
+        tokenRevocationLegacyScopeScanEnabled = !"false".equalsIgnoreCase(
+                StringUtils.trim(properties.apply(CommonConstants.TOKEN_REVOCATION_SCAN_LEGACY_SCOPES)));
+        tokenBindingGrantHandlers = readGrantHandlers(properties, CommonConstants.TOKEN_BINDING_GRANT_HANDLERS);
+        tokenReuseEnabled = Boolean.parseBoolean(properties.apply(CommonConstants.TOKEN_REUSE_ENABLE));
+        tokenReuseMinRemainingLifetime = readProbability(properties,
+                CommonConstants.TOKEN_REUSE_MIN_REMAINING_LIFETIME,
+                CommonConstants.DEFAULT_TOKEN_REUSE_MIN_REMAINING_LIFETIME);
+        tokenReuseCapacity = readPositiveInt(properties, CommonConstants.TOKEN_REUSE_CAPACITY,
+                CommonConstants.DEFAULT_TOKEN_REUSE_CAPACITY);
+        // The near cache is enabled unless it is explicitly disabled.
+        jwksNearCacheEnabled = !"false".equalsIgnoreCase(
+                StringUtils.trim(properties.apply(CommonConstants.JWKS_NEAR_CACHE_ENABLE)));
+        jwksNearCacheMaxWeight = readPositiveInt(properties, CommonConstants.JWKS_NEAR_CACHE_MAX_WEIGHT,
+                CommonConstants.DEFAULT_JWKS_NEAR_CACHE_MAX_WEIGHT);
+        jwksNearCacheTimeout = readPositiveInt(properties, CommonConstants.JWKS_NEAR_CACHE_TIMEOUT,
+                CommonConstants.DEFAULT_JWKS_NEAR_CACHE_TIMEOUT);
+        jwksRotationNoticeMinInterval = readPositiveInt(properties, CommonConstants.JWKS_ROTATION_NOTICE_MIN_INTERVAL,
+                CommonConstants.DEFAULT_JWKS_ROTATION_NOTICE_MIN_INTERVAL);
+        jwksRefreshOnMissEnabled = Boolean.parseBoolean(properties.apply(CommonConstants.JWKS_REFRESH_ON_MISS_ENABLE));
+        jwksRefreshOnMissCooldown = readPositiveInt(properties, CommonConstants.JWKS_REFRESH_ON_MISS_COOLDOWN,
+                CommonConstants.DEFAULT_JWKS_REFRESH_ON_MISS_COOLDOWN);
+        jwksMirrorHedgeDelay = readPositiveInt(properties, CommonConstants.JWKS_MIRROR_HEDGE_DELAY,
+                CommonConstants.DEFAULT_JWKS_MIRROR_HEDGE_DELAY);
+        jwksLocalDirectory = StringUtils.trimToNull(properties.apply(CommonConstants.JWKS_LOCAL_DIRECTORY));
+        snapshotFile = StringUtils.trimToNull(properties.apply(CommonConstants.JWKS_SNAPSHOT_FILE));
+        snapshotWriteInterval = readPositiveInt(properties, CommonConstants.JWKS_SNAPSHOT_WRITE_INTERVAL,
+                CommonConstants.DEFAULT_JWKS_SNAPSHOT_WRITE_INTERVAL);
+        snapshotMaxAge = readPositiveInt(properties, CommonConstants.JWKS_SNAPSHOT_MAX_AGE,
+                CommonConstants.DEFAULT_JWKS_SNAPSHOT_MAX_AGE);
+    }
+
+    /**
+     * Returns the current configuration snapshot. The configuration is read on the first call if it has not been
+     * loaded yet.
+     *
+     * @return Current configuration snapshot.
+     */
+    public static MutualTLSConfig getInstance() {
+
+        MutualTLSConfig config = instance;
+        if (config == null) {
+            synchronized (MutualTLSConfig.class) {
+                config = instance;
+                if (config == null) {
+                    config = load(IdentityUtil::getProperty);
+                    instance = config;
+                }
+            }
+        }
+        return config;
+    }
+
+    /**
+     * Read the configuration from identity.xml, replace the current snapshot and notify the reload listeners.
+     *
+     * @return New configuration snapshot.
+     */
+    public static MutualTLSConfig reload() {
+
+        MutualTLSConfig config = load(IdentityUtil::getProperty);
+        update(config);
+        if (log.isDebugEnabled()) {
+            log.debug("Mutual TLS configuration reloaded: " + config);
+        }
+        return config;
+    }
+
+    /**
+     * Register a listener notified with the new snapshot after every reload.
+     *
+     * @param listener Reload listener.
+     */
+    public static void addReloadListener(Consumer<MutualTLSConfig> listener) {
+
+        reloadListeners.add(listener);
+    }
+
+    /**
+     * Remove a reload listener.
+     *
+     * @param listener Reload listener.
+     */
+    public static void removeReloadListener(Consumer<MutualTLSConfig> listener) {
+
+        reloadListeners.remove(listener);
+    }
+
+    static MutualTLSConfig load(Function<String, String> properties) {
+
+        return new MutualTLSConfig(properties);
+    }
+
+    static void update(MutualTLSConfig config) {
+
+        instance = config;
+        for (Consumer<MutualTLSConfig> listener : reloadListeners) {
+            try {
+                listener.accept(config);
+            } catch (RuntimeException e) {
+                log.error("Error while applying the reloaded Mutual TLS configuration.", e);
+            }
+        }
+    }
+
+    /**
+     * @return Name of the header carrying the client certificate, or null if not configured.
+     */
+    public String getClientCertificateHeader() {
+
+        return clientCertificateHeader;
+    }
+
+    public int getMaxCertificateHeaderLength() {
+
+        return maxCertificateHeaderLength;
+    }
+
+    public int getMaxCertificateLength() {
+
+        return maxCertificateLength;
+    }
+
+    /**
+     * @return Minimum interval in milliseconds between two logs of certificate parse failures.
+     */
+    public int getCertificateParseFailureLogInterval() {
+
+        return certificateParseFailureLogInterval;
+    }
+
+    /**
+     * @return Connection timeout in milliseconds for JWKS endpoints, or 0 for no timeout.
+     */
+    public int getJwksConnectionTimeout() {
+
+        return jwksConnectionTimeout;
+    }
+
+    /**
+     * @return Read timeout in milliseconds for JWKS endpoints, or 0 for no timeout.
+     */
+    public int getJwksReadTimeout() {
+
+        return jwksReadTimeout;
+    }
+
+    public boolean isCertificatePrefilterEnabled() {
+
+        return certificatePrefilterEnabled;
+    }
+
+    public double getCertificatePrefilterFalsePositiveProbability() {
+
+        return certificatePrefilterFalsePositiveProbability;
+    }
+
+    /**
+     * @return Interval in seconds between two rebuilds of the registered certificate filter.
+     */
+    public int getCertificatePrefilterRebuildInterval() {
+
+        return certificatePrefilterRebuildInterval;
+    }
+
+    public boolean isFailedAuthenticationThrottleEnabled() {
+
+        return failedAuthenticationThrottleEnabled;
+    }
+
+    public int getFailedAuthenticationThrottleClientCapacity() {
+
+        return failedAuthenticationThrottleClientCapacity;
+    }
+
+    public int getFailedAuthenticationThrottleAddressCapacity() {
+
+        return failedAuthenticationThrottleAddressCapacity;
+    }
+
+    /**
+     * @return Interval in milliseconds in which one failed authentication is forgiven.
+     */
+    public int getFailedAuthenticationThrottleRefillInterval() {
+
+        return failedAuthenticationThrottleRefillInterval;
+    }
+
+    public int getFailedAuthenticationThrottleBucketCount() {
+
+        return failedAuthenticationThrottleBucketCount;
+    }
+
+    /**
+     * @return Addresses of the reverse proxies whose forwarded client address is used to throttle the failed
+     * authentications, instead of the address of the proxy.
+     */
+    public Set<String> getFailedAuthenticationThrottleTrustedProxies() {
+
+        return failedAuthenticationThrottleTrustedProxies;
+    }
+
+    public boolean isIntrospectionCacheEnabled() {
+
+        return introspectionCacheEnabled;
+    }
+
+    /**
+     * @return Maximum number of tokens for which the introspection response additions are cached.
+     */
+    public int getIntrospectionCacheCapacity() {
+
+        return introspectionCacheCapacity;
+    }
+
+    /**
+     * @return Maximum number of distinct tokens in a batch introspection.
+     */
+    public int getBatchIntrospectionMaxSize() {
+
+        return batchIntrospectionMaxSize;
+    }
+
+    /**
+     * @return Maximum number of encoded certificates for which the binding verifier keeps the digest.
+     */
+    public int getBindingVerifierCacheCapacity() {
+
+        return bindingVerifierCacheCapacity;
+    }
+
+    /**
+     * @return Maximum number of tokens read and revoked at a time when revoking the tokens bound to a certificate.
+     */
+    public int getTokenRevocationBatchSize() {
+
+        return tokenRevocationBatchSize;
+    }
+
+    /**
+     * @return Whether the revocation of the tokens bound to a certificate also scans the scope table for the tokens
+     * issued by earlier versions, which carry the binding as a hidden scope.
+     */
+    public boolean isTokenRevocationLegacyScopeScanEnabled() {
+
+        return tokenRevocationLegacyScopeScanEnabled;
+    }
+
+    /**
+     * @return Class names of the grant handlers the certificate binding grant handler delegates to, keyed by the
+     * grant type, in addition to the default grant handlers of the standard grant types.
+     */
+    public Map<String, String> getTokenBindingGrantHandlers() {
+
+        return tokenBindingGrantHandlers;
+    }
+
+    /**
+     * @return Whether a valid certificate bound client credentials token is returned instead of issuing a new one.
+     */
+    public boolean isTokenReuseEnabled() {
+
+        return tokenReuseEnabled;
+    }
+
+    /**
+     * @return Fraction of its lifetime a client credentials token should have left to be reused.
+     */
+    public double getTokenReuseMinRemainingLifetime() {
+
+        return tokenReuseMinRemainingLifetime;
+    }
+
+    /**
+     * @return Maximum number of client credentials tokens kept for reuse.
+     */
+    public int getTokenReuseCapacity() {
+
+        return tokenReuseCapacity;
+    }
+
+    /**
+     * @return Whether the JWKS responses are kept in a node local near cache in front of the JWKS cache.
+     */
+    public boolean isJwksNearCacheEnabled() {
+
+        return jwksNearCacheEnabled;
+    }
+
+    /**
+     * @return Maximum total weight, in bytes, of the JWKS responses held by the near cache.
+     */
+    public int getJwksNearCacheMaxWeight() {
+
+        return jwksNearCacheMaxWeight;
+    }
+
+    /**
+     * @return Time in seconds a JWKS response is kept by the near cache.
+     */
+    public int getJwksNearCacheTimeout() {
+
+        return jwksNearCacheTimeout;
+    }
+
+    /**
+     * @return Minimum time in seconds between two refreshes of a JWKS URI triggered by rotation notices.
+     */
+    public int getJwksRotationNoticeMinInterval() {
+
+        return jwksRotationNoticeMinInterval;
+    }
+
+    /**
+     * @return Whether a cached JWKS is fetched again when the client certificate does not match any of its keys.
+     */
+    public boolean isJwksRefreshOnMissEnabled() {
+
+        return jwksRefreshOnMissEnabled;
+    }
+
+    /**
+     * @return Minimum time in seconds between two refreshes of a JWKS URI caused by unmatched client certificates.
+     */
+    public int getJwksRefreshOnMissCooldown() {
+
+        return jwksRefreshOnMissCooldown;
+    }
+
+    /**
+     * @return Time in milliseconds to wait for a JWKS URI before also fetching the next mirror of the JWKS.
+     */
+    public int getJwksMirrorHedgeDelay() {
+
+        return jwksMirrorHedgeDelay;
+    }
+
+    /**
+     * @return Directory of JWKS files served instead of fetching their JWKS URIs, or null if there is none.
+     */
+    public String getJwksLocalDirectory() {
+
+        return jwksLocalDirectory;
+    }
+
+    /**
+     * @return Path of the file the JWK Sets are persisted to across restarts, or null if they are not persisted.
+     */
+    public String getSnapshotFile() {
+
+        return snapshotFile;
+    }
+
+    /**
+     * @return Interval in seconds between two writes of the snapshot file.
+     */
+    public int getSnapshotWriteInterval() {
+
+        return snapshotWriteInterval;
+    }
+
+    /**
+     * @return Maximum age in seconds of a JWK Set, since it was fetched, for it to be persisted and restored.
+     */
+    public int getSnapshotMaxAge() {
+
+        return snapshotMaxAge;
+    }
+
+    @Override
+    public String toString() {
+
+        return "MutualTLSConfig{clientCertificateHeader=" + clientCertificateHeader
+                + ", maxCertificateHeaderLength=" + maxCertificateHeaderLength
+                + ", maxCertificateLength=" + maxCertificateLength
+                + ", certificateParseFailureLogInterval=" + certificateParseFailureLogInterval
+                + ", jwksConnectionTimeout=" + jwksConnectionTimeout
+                + ", jwksReadTimeout=" + jwksReadTimeout
+                + ", certificatePrefilterEnabled=" + certificatePrefilterEnabled
+                + ", certificatePrefilterFalsePositiveProbability=" + certificatePrefilterFalsePositiveProbability
+                + ", certificatePrefilterRebuildInterval=" + certificatePrefilterRebuildInterval
+                + ", failedAuthenticationThrottleEnabled=" + failedAuthenticationThrottleEnabled
+                + ", failedAuthenticationThrottleClientCapacity=" + failedAuthenticationThrottleClientCapacity
+                + ", failedAuthenticationThrottleAddressCapacity=" + failedAuthenticationThrottleAddressCapacity
+                + ", failedAuthenticationThrottleRefillInterval=" + failedAuthenticationThrottleRefillInterval
+                + ", failedAuthenticationThrottleBucketCount=" + failedAuthenticationThrottleBucketCount
+                + ", failedAuthenticationThrottleTrustedProxies=" + failedAuthenticationThrottleTrustedProxies
+                + ", introspectionCacheEnabled=" + introspectionCacheEnabled
+                + ", introspectionCacheCapacity=" + introspectionCacheCapacity
+                + ", batchIntrospectionMaxSize=" + batchIntrospectionMaxSize
+                + ", bindingVerifierCacheCapacity=" + bindingVerifierCacheCapacity
+                + ", tokenRevocationBatchSize=" + tokenRevocationBatchSize
+                + ", tokenRevocationLegacyScopeScanEnabled=" + tokenRevocationLegacyScopeScanEnabled
+                + ", tokenBindingGrantHandlers=" + tokenBindingGrantHandlers
+                + ", tokenReuseEnabled=" + tokenReuseEnabled
+                + ", tokenReuseMinRemainingLifetime=" + tokenReuseMinRemainingLifetime
+                + ", tokenReuseCapacity=" + tokenReuseCapacity
+                + ", jwksNearCacheEnabled=" + jwksNearCacheEnabled
+                + ", jwksNearCacheMaxWeight=" + jwksNearCacheMaxWeight
+                + ", jwksNearCacheTimeout=" + jwksNearCacheTimeout
+                + ", jwksRotationNoticeMinInterval=" + jwksRotationNoticeMinInterval
+                + ", jwksRefreshOnMissEnabled=" + jwksRefreshOnMissEnabled
+                + ", jwksRefreshOnMissCooldown=" + jwksRefreshOnMissCooldown
+                + ", jwksMirrorHedgeDelay=" + jwksMirrorHedgeDelay
+                + ", jwksLocalDirectory=" + jwksLocalDirectory
+                + ", snapshotFile=" + snapshotFile
+                + ", snapshotWriteInterval=" + snapshotWriteInterval
+                + ", snapshotMaxAge=" + snapshotMaxAge + "}";
+    }
+
+    private static Set<String> readAddresses(Function<String, String> properties, String xPath) {
+
+        String config = properties.apply(xPath);
+        if (StringUtils.isBlank(config)) {
+            return Collections.emptySet();
+        }
+        Set<String> addresses = new LinkedHashSet<>();
+        for (String address : config.split(",")) {
+            if (StringUtils.isNotBlank(address)) {
+                addresses.add(address.trim());
+            }
+        }
+        return Collections.unmodifiableSet(addresses);
+    }
+
+    private static Map<String, String> readGrantHandlers(Function<String, String> properties, String xPath) {
+
+        Map<String, String> grantHandlers = new LinkedHashMap<>();
+        String config = properties.apply(xPath);
+        if (StringUtils.isBlank(config)) {
+            return Collections.emptyMap();
+        }
+        for (String grantHandler : config.split(",")) {
+            String grantType = StringUtils.trim(StringUtils.substringBefore(grantHandler, "="));
+            String className = StringUtils.trim(StringUtils.substringAfter(grantHandler, "="));
+            if (StringUtils.isEmpty(grantType) || StringUtils.isEmpty(className)) {
+                log.error("Provided config value in " + xPath + " should be a comma separated list of grant types "
+                        + "and grant handler class names in the form grantType=className. Ignoring : "
+                        + grantHandler);
+                continue;
+            }
+            grantHandlers.put(grantType, className);
+        }
+        return Collections.unmodifiableMap(grantHandlers);
+    }
+
+    private static int readTimeout(Function<String, String> properties, String xPath) {
+
+        String config = properties.apply(xPath);
+        if (StringUtils.isBlank(config)) {
+            return 0;
+        }
+        try {
+            int configValue = Integer.parseInt(config.trim());
+            if (configValue >= 0) {
+                return configValue;
+            }
+        } catch (NumberFormatException e) {
+            // Handled below.
+        }
+        log.error("Provided HTTP connection config value in " + xPath + " should be a non negative integer. Value : "
+                + config);
+        return 0;
+    }
+
+    private static int readPositiveInt(Function<String, String> properties, String xPath, int defaultValue) {
+
+        String config = properties.apply(xPath);
+        if (StringUtils.isBlank(config)) {
+            return defaultValue;
+        }
+        try {
+            int configValue = Integer.parseInt(config.trim());
+            if (configValue > 0) {
+                return configValue;
+            }
+        } catch (NumberFormatException e) {
+            // Handled below.
+        }
+        log.error("Provided config value in " + xPath + " should be a positive integer. Value : " + config
+                + ". Using the default value : " + defaultValue);
+        return defaultValue;
+    }
+
+    private static int readCapacity(Function<String, String> properties, String xPath, int defaultValue) {
+
+        int capacity = readPositiveInt(properties, xPath, defaultValue);
+        if (capacity > StripedTokenBucket.MAX_CAPACITY) {
+            log.error("Provided config value in " + xPath + " should not exceed " + StripedTokenBucket.MAX_CAPACITY
+                    + ". Value : " + capacity + ". Using the default value : " + defaultValue);
+            return defaultValue;
+        }
+        return capacity;
+    }
+
+    private static double readProbability(Function<String, String> properties, String xPath, double defaultValue) {
+
+        String config = properties.apply(xPath);
+        if (StringUtils.isBlank(config)) {
+            return defaultValue;
+        }
+        try {
+            double configValue = Double.parseDouble(config.trim());
+            if (configValue > 0 && configValue < 1) {
+                return configValue;
+            }
+        } catch (NumberFormatException e) {
+            // Handled below.
+        }
+        log.error("Provided config value in " + xPath + " should be between 0 and 1. Value : " + config
+                + ". Using the default value : " + defaultValue);
+        return defaultValue;
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters describing the inputs rejected and the work saved by the Mutual TLS module, and gauges describing the
+ * state held by the module, along with the statistics of each JWKS URI and mirror requested through hedged retrieval.
+ * All are available through JMX once {@link #registerMBean()} is called.
+ */
+public class MutualTLSMetrics {
+
+    private static final Log log = LogFactory.getLog(MutualTLSMetrics.class);
+    private static final String MBEAN_NAME =
+            "org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls:type=MutualTLSMetrics";
+
+    /**
+     * Counters maintained by the Mutual TLS module.
+     */
+    public enum Counter {
+
+        /** Certificate header longer than the configured maximum. */
+        CERT_HEADER_TOO_LARGE,
+        /** Decoded certificate larger than the configured maximum. */
+        CERT_TOO_LARGE,
+        /** Certificate header that is neither Base64 nor URL encoded Base64. */
+        CERT_MALFORMED_ENCODING,
+        /** Decoded bytes that do not have the DER structure of a certificate. */
+        CERT_MALFORMED_STRUCTURE,
+        /** Structurally valid input rejected by the certificate factory. */
+        CERT_PARSE_FAILURE,
+        /** Certificate parse failures that were not logged due to log rate limiting. */
+        CERT_PARSE_FAILURE_LOG_SUPPRESSED,
+        /** Requests rejected because the certificate is not registered for any client. */
+        CERT_PREFILTER_REJECTED,
+        /** Rebuilds of the registered certificate filter that failed and kept the previous filter. */
+        CERT_PREFILTER_REBUILD_FAILURE,
+        /** Failed authentications counted by the failed authentication throttler. */
+        AUTH_FAILURE_RECORDED,
+        /** Requests rejected without being processed because of earlier failed authentications. */
+        AUTH_THROTTLED,
+        /** Introspection responses completed from the introspection cache. */
+        INTROSPECTION_CACHE_HIT,
+        /** Introspection responses of active tokens that were not found in the introspection cache. */
+        INTROSPECTION_CACHE_MISS,
+        /** Tokens revoked with the certificate they are bound to. */
+        TOKEN_REVOKED_BY_CERTIFICATE,
+        /** Client credentials token requests answered with a previously issued token. */
+        CLIENT_CREDENTIALS_TOKEN_REUSED,
+        /** JWKS responses found in the near cache. */
+        JWKS_NEAR_CACHE_HIT,
+        /** JWKS responses looked up in the JWKS cache as they were not found in the near cache. */
+        JWKS_NEAR_CACHE_MISS,
+        /** JWKS fetches that waited for a fetch of the same JWKS URI in progress instead of fetching it again. */
+        JWKS_FETCH_COALESCED,
+        /** JWKS refreshes skipped as the JWKS URI was fetched too recently. */
+        JWKS_REFRESH_RATE_LIMITED,
+        /** Cached JWKS refreshed on a key rotation notice. */
+        JWKS_ROTATION_REFRESHED,
+        /** Cached JWKS refreshed as the client certificate did not match any of its keys. */
+        JWKS_REFRESHED_ON_MISS,
+        /** Certificates of fetched JWKS that were decoded and hashed. */
+        JWKS_CERTIFICATE_THUMBPRINT_COMPUTED,
+        /** Certificates of refreshed JWKS whose thumbprint was reused from the previous version of the JWKS. */
+        JWKS_CERTIFICATE_THUMBPRINT_REUSED,
+        /** JWKS fetches that also requested a mirror as the JWKS URI did not answer within the hedge delay. */
+        JWKS_FETCH_HEDGED,
+        /** JWKS fetches completed with the response of a mirror instead of the JWKS URI. */
+        JWKS_MIRROR_USED,
+        /** JWKS files loaded from the JWKS local directory. */
+        JWKS_LOCAL_FILE_LOADED,
+        /** JWK Sets restored from the warm start snapshot and used without fetching their JWKS URI first. */
+        JWKS_RESTORED_FROM_SNAPSHOT
+    }
+
+    private static final LongAdder[] COUNTERS = new LongAdder[Counter.values().length];
+    private static final Map<String, LongSupplier> GAUGES = new ConcurrentHashMap<>();
+    private static volatile Supplier<Map<String, Map<String, Long>>> jwksUriStats = Collections::emptyMap;
+
+    static {
+        for (int i = 0; i < COUNTERS.length; i++) {
+            COUNTERS[i] = new LongAdder();
+        }
+    }
+
+    private MutualTLSMetrics() {
+
+    }
+
+    /**
+     * Increment the given counter by one.
+     *
+     * @param counter Counter to increment.
+     */
+    public static void increment(Counter counter) {
+
+        COUNTERS[counter.ordinal()].increment();
+    }
+
+    /**
+     * Increment the given counter by the given amount.
+     *
+     * @param counter Counter to increment.
+     * @param amount  Amount to add.
+     */
+    public static void add(Counter counter, long amount) {
+
+        COUNTERS[counter.ordinal()].add(amount);
+    }
+
+    /**
+     * Returns the current value of the given counter.
+     *
+     * @param counter Counter to read.
+     * @return Current value of the counter.
+     */
+    public static long getCount(Counter counter) {
+
+        return COUNTERS[counter.ordinal()].sum();
+    }
+
+    /**
+     * Returns a point in time view of all the counters.
+     *
+     * @return Counter values keyed by the counter.
+     */
+    public static Map<Counter, Long> getCounts() {
+
+        Map<Counter, Long> counts = new EnumMap<>(Counter.class);
+        for (Counter counter : Counter.values()) {
+            counts.put(counter, getCount(counter));
+        }
+        return Collections.unmodifiableMap(counts);
+    }
+
+    /**
+     * Reset all the counters.
+     */
+    public static void reset() {
+
+        for (LongAdder counter : COUNTERS) {
+            counter.reset();
+        }
+    }
+
+    /**
+     * Register a gauge. A gauge registered with the same name is replaced.
+     *
+     * @param name  Name of the gauge.
+     * @param gauge Supplier of the current value.
+     */
+    public static void registerGauge(String name, LongSupplier gauge) {
+
+        GAUGES.put(name, gauge);
+    }
+
+    /**
+     * Remove a gauge.
+     *
+     * @param name Name of the gauge.
+     */
+    public static void unregisterGauge(String name) {
+
+        GAUGES.remove(name);
+    }
+
+    /**
+     * Returns the current values of all the gauges.
+     *
+     * @return Gauge values keyed by the gauge name.
+     */
+    public static Map<String, Long> getGaugeValues() {
+
+        Map<String, Long> values = new TreeMap<>();
+        for (Map.Entry<String, LongSupplier> gauge : GAUGES.entrySet()) {
+            values.put(gauge.getKey(), gauge.getValue().getAsLong());
+        }
+        return values;
+    }
+
+    /**
+     * Set the supplier of the statistics of the JWKS URIs and mirrors.
+     *
+     * @param stats Supplier of the statistics keyed by the URI, and by the statistic name.
+     */
+    public static void registerJwksUriStats(Supplier<Map<String, Map<String, Long>>> stats) {
+
+        jwksUriStats = stats;
+    }
+
+    /**
+     * Returns the statistics of the JWKS URIs and mirrors.
+     *
+     * @return Statistics keyed by the URI, and by the statistic name.
+     */
+    public static Map<String, Map<String, Long>> getJwksUriStats() {
+
+        return jwksUriStats.get();
+    }
+
+    /**
+     * Register the counters and gauges with the platform MBean server.
+     */
+    public static void registerMBean() {
+
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(MBEAN_NAME);
+            if (!mBeanServer.isRegistered(objectName)) {
+                mBeanServer.registerMBean(new MetricsView(), objectName);
+            }
+        } catch (JMException e) {
+            log.error("Error while registering the Mutual TLS metrics MBean.", e);
+        }
+    }
+
+    /**
+     * Remove the counters and gauges from the platform MBean server.
+     */
+    public static void unregisterMBean() {
+
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(MBEAN_NAME);
+            if (mBeanServer.isRegistered(objectName)) {
+                mBeanServer.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            log.error("Error while unregistering the Mutual TLS metrics MBean.", e);
+        }
+    }
+
+    /**
+     * JMX view of the counters and gauges.
+     */
+    private static class MetricsView implements MutualTLSMetricsMXBean {
+
+        @Override
+        public Map<String, Long> getCounters() {
+
+            Map<String, Long> counters = new TreeMap<>();
+            for (Map.Entry<Counter, Long> count : getCounts().entrySet()) {
+                counters.put(count.getKey().name(), count.getValue());
+            }
+            return counters;
+        }
+
+        @Override
+        public Map<String, Long> getGauges() {
+
+            return getGaugeValues();
+        }
+
+        @Override
+        public Map<String, Map<String, Long>> getJwksUriStats() {
+
+            return MutualTLSMetrics.getJwksUriStats();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils;
+
+import java.util.Map;
+
+/**
+ * JMX interface exposing the counters, gauges and JWKS URI statistics of {@link MutualTLSMetrics}.
+ */
+public interface MutualTLSMetricsMXBean {
+
+    /**
+     * @return Counter values keyed by the counter name.
+     */
+    Map<String, Long> getCounters();
+
+    /**
+     * @return Gauge values keyed by the gauge name.
+     */
+    Map<String, Long> getGauges();
+
+    /**
+     * @return Statistics of the JWKS URIs and mirrors requested through hedged retrieval, keyed by the URI, and by
+     * the statistic name.
+     */
+    Map<String, Map<String, Long>> getJwksUriStats();
+}
@@ -18,22 +18,25 @@
 
 package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils;
 
-import org.apache.commons.codec.binary.Base64;
-import org.apache.commons.io.Charsets;
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.application.common.model.InboundAuthenticationConfig;
+import org.wso2.carbon.identity.application.common.model.InboundAuthenticationRequestConfig;
 import org.wso2.carbon.identity.application.common.model.ServiceProvider;
 import org.wso2.carbon.identity.application.common.model.ServiceProviderProperty;
-import org.wso2.carbon.identity.core.util.IdentityUtil;
 import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
 import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
 
-import java.security.MessageDigest;
+import java.net.MalformedURLException;
+import java.net.URL;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Util class for OAuth 2.0 client authentication using Mutual TLS.
@@ -59,11 +62,7 @@ public class MutualTLSUtil {
     public static String getThumbPrint(X509Certificate cert) throws NoSuchAlgorithmException,
             CertificateEncodingException {
 
-        MessageDigest md = MessageDigest.getInstance("SHA-1");
-        byte[] certEncoded = cert.getEncoded();
-        md.update(certEncoded);
-        return new String(new Base64(0, null, true).encode(
-                hexify(md.digest()).getBytes(Charsets.UTF_8)), Charsets.UTF_8);
+        return ThumbprintEngine.getThumbprint(cert).getLegacySha1Thumbprint();
     }
 
     /**
@@ -103,28 +102,6 @@ public class MutualTLSUtil {
         return builder.toString();
     }
 
-
-    /**
-     * Read HTTP connection configurations from identity.xml file.
-     *
-     * @param xPath xpath of the config property.
-     * @return Config property value.
-     */
-    public static int readHTTPConnectionConfigValue(String xPath) {
-
-        int configValue = 0;
-        String config = IdentityUtil.getProperty(xPath);
-        if (StringUtils.isNotBlank(config)) {
-            try {
-                configValue = Integer.parseInt(config);
-            } catch (NumberFormatException e) {
-                log.error("Provided HTTP connection config value in " + xPath + " should be an integer type. Value : "
-                        + config);
-            }
-        }
-        return configValue;
-    }
-
     /**
      * Checking Whether JWKS URI configured in the UI or not.
      *
@@ -162,5 +139,53 @@ public class MutualTLSUtil {
         }
         return null;
     }
-}
 
+    /**
+     * Obtaining the mirrors of the JWKS URI of a service provider. Mirrors that are not valid URLs are ignored.
+     *
+     * @param serviceProvider Service provider.
+     * @return Mirrors of the JWKS URI in the order they are tried, or an empty list if there are none.
+     */
+    public static List<URL> getJWKSMirrors(ServiceProvider serviceProvider) {
+
+        String mirrorUris = getPropertyValue(serviceProvider, CommonConstants.JWKS_MIRROR_URIS);
+        if (StringUtils.isBlank(mirrorUris)) {
+            return Collections.emptyList();
+        }
+        List<URL> mirrors = new ArrayList<>();
+        for (String mirrorUri : mirrorUris.split(CommonConstants.JWKS_MIRROR_URI_SEPARATOR)) {
+            if (StringUtils.isBlank(mirrorUri)) {
+                continue;
+            }
+            try {
+                mirrors.add(new URL(mirrorUri.trim()));
+            } catch (MalformedURLException e) {
+                log.warn("Ignoring the malformed JWKS mirror URI: " + mirrorUri.trim() + " of the application: "
+                        + serviceProvider.getApplicationName());
+            }
+        }
+        return mirrors;
+    }
+
+    /**
+     * Obtaining the OAuth client id of a service provider.
+     *
+     * @param serviceProvider Service provider.
+     * @return OAuth client id, or null if OAuth inbound authentication is not configured.
+     */
+    public static String getOAuthClientId(ServiceProvider serviceProvider) {
+
+        InboundAuthenticationConfig inboundConfig = serviceProvider.getInboundAuthenticationConfig();
+        if (inboundConfig == null || ArrayUtils.isEmpty(inboundConfig.getInboundAuthenticationRequestConfigs())) {
+            return null;
+        }
+        for (InboundAuthenticationRequestConfig requestConfig :
+                inboundConfig.getInboundAuthenticationRequestConfigs()) {
+            if (CommonConstants.OAUTH2_INBOUND_AUTH_TYPE.equals(requestConfig.getInboundAuthType())
+                    && StringUtils.isNotBlank(requestConfig.getInboundAuthKey())) {
+                return requestConfig.getInboundAuthKey();
+            }
+        }
+        return null;
+    }
+}
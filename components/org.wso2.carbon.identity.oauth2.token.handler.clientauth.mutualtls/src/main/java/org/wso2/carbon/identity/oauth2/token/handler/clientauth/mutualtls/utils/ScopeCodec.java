@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils;
+
+/**
+ * Codec for the internal scopes of the Mutual TLS module in scope arrays and space delimited scope strings.
+ * <p>
+ * Internal scopes are the certificate binding scopes ({@code x5t#<algorithm>:<thumbprint>}) carried by the tokens
+ * issued by earlier versions, and the timestamp scopes ({@code TIME_<value>}). Scopes are scanned once without
+ * regular expressions, and when there is no internal scope, which is the common case, the given scopes are returned
+ * without a copy.
+ */
+public class ScopeCodec {
+
+    private static final String BINDING_SCOPE_PREFIX = CommonConstants.CERT_THUMBPRINT + CommonConstants.SEPARATOR;
+    private static final String SHA256_BINDING_SCOPE_PREFIX = BINDING_SCOPE_PREFIX
+            + CommonConstants.SHA256_DIGEST_ALGORITHM + CommonConstants.CERT_THUMBPRINT_SEPARATOR;
+    private static final char SCOPE_DELIMITER = ' ';
+
+    private ScopeCodec() {
+
+    }
+
+    /**
+     * Check whether a scope is a certificate binding scope.
+     *
+     * @param scope Scope.
+     * @return True if the scope is a certificate binding scope.
+     */
+    public static boolean isBindingScope(String scope) {
+
+        return scope != null && scope.startsWith(BINDING_SCOPE_PREFIX);
+    }
+
+    /**
+     * Check whether a scope is an internal scope, which is either a certificate binding scope or a timestamp scope.
+     *
+     * @param scope Scope.
+     * @return True if the scope is an internal scope.
+     */
+    public static boolean isInternalScope(String scope) {
+
+        return scope != null && (scope.startsWith(BINDING_SCOPE_PREFIX)
+                || scope.startsWith(CommonConstants.TIMESTAMP_SCOPE_PREFIX));
+    }
+
+    /**
+     * Returns the SHA-256 certificate binding scope carried by the tokens issued by earlier versions.
+     *
+     * @param thumbprint Base64 URL encoded SHA-256 thumbprint of the certificate.
+     * @return Certificate binding scope.
+     */
+    public static String getBindingScope(String thumbprint) {
+
+        return SHA256_BINDING_SCOPE_PREFIX + thumbprint;
+    }
+
+    /**
+     * Returns the thumbprint carried by the SHA-256 certificate binding scope.
+     *
+     * @param scopes Scopes.
+     * @return Base64 URL encoded SHA-256 thumbprint, or null if there is no SHA-256 certificate binding scope.
+     */
+    public static String getBindingThumbprint(String[] scopes) {
+
+        if (scopes == null) {
+            return null;
+        }
+        for (String scope : scopes) {
+            if (scope != null && scope.startsWith(SHA256_BINDING_SCOPE_PREFIX)
+                    && scope.length() > SHA256_BINDING_SCOPE_PREFIX.length()) {
+                return scope.substring(SHA256_BINDING_SCOPE_PREFIX.length());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Remove the certificate binding scopes.
+     *
+     * @param scopes Scopes.
+     * @return Scopes without the certificate binding scopes. The given array is returned if there is nothing to
+     * remove.
+     */
+    public static String[] removeBindingScopes(String[] scopes) {
+
+        if (scopes == null) {
+            return null;
+        }
+        int bindingScopeCount = 0;
+        for (String scope : scopes) {
+            if (isBindingScope(scope)) {
+                bindingScopeCount++;
+            }
+        }
+        if (bindingScopeCount == 0) {
+            return scopes;
+        }
+        String[] reducedScopes = new String[scopes.length - bindingScopeCount];
+        int index = 0;
+        for (String scope : scopes) {
+            if (!isBindingScope(scope)) {
+                reducedScopes[index++] = scope;
+            }
+        }
+        return reducedScopes;
+    }
+
+    /**
+     * Append the internal scopes of the granted scopes to the requested scopes.
+     *
+     * @param requestedScopes Requested scopes.
+     * @param grantedScopes   Granted scopes.
+     * @return Requested scopes followed by the internal granted scopes. The requested scopes are returned if there is
+     * no internal granted scope.
+     */
+    public static String[] appendInternalScopes(String[] requestedScopes, String[] grantedScopes) {
+
+        if (grantedScopes == null) {
+            return requestedScopes;
+        }
+        int internalScopeCount = 0;
+        for (String scope : grantedScopes) {
+            if (isInternalScope(scope)) {
+                internalScopeCount++;
+            }
+        }
+        if (internalScopeCount == 0) {
+            return requestedScopes;
+        }
+        int requestedScopeCount = requestedScopes == null ? 0 : requestedScopes.length;
+        String[] scopes = new String[requestedScopeCount + internalScopeCount];
+        if (requestedScopeCount > 0) {
+            System.arraycopy(requestedScopes, 0, scopes, 0, requestedScopeCount);
+        }
+        int index = requestedScopeCount;
+        for (String scope : grantedScopes) {
+            if (isInternalScope(scope)) {
+                scopes[index++] = scope;
+            }
+        }
+        return scopes;
+    }
+
+    /**
+     * Separate the certificate binding scope from a space delimited scope string.
+     *
+     * @param scopeString Space delimited scope string.
+     * @return Scope string without the certificate binding scopes, and the last certificate binding scope.
+     */
+    public static DecodedScope decode(String scopeString) {
+
+        if (scopeString == null || scopeString.indexOf(BINDING_SCOPE_PREFIX) < 0) {
+            return new DecodedScope(scopeString, null, null);
+        }
+        int length = scopeString.length();
+        StringBuilder reducedScope = new StringBuilder(length);
+        String bindingMethod = null;
+        String bindingValue = null;
+        int index = 0;
+        while (index < length) {
+            while (index < length && Character.isWhitespace(scopeString.charAt(index))) {
+                index++;
+            }
+            int start = index;
+            while (index < length && !Character.isWhitespace(scopeString.charAt(index))) {
+                index++;
+            }
+            if (start == index) {
+                break;
+            }
+            if (scopeString.startsWith(BINDING_SCOPE_PREFIX, start)) {
+                int separator = scopeString.indexOf(CommonConstants.CERT_THUMBPRINT_SEPARATOR, start);
+                if (separator > 0 && separator < index - 1) {
+                    bindingMethod = scopeString.substring(start, separator);
+                    bindingValue = scopeString.substring(separator + 1, index);
+                }
+            } else {
+                if (reducedScope.length() > 0) {
+                    reducedScope.append(SCOPE_DELIMITER);
+                }
+                reducedScope.append(scopeString, start, index);
+            }
+        }
+        return new DecodedScope(reducedScope.toString(), bindingMethod, bindingValue);
+    }
+
+    /**
+     * Scope string separated from its certificate binding scope.
+     */
+    public static class DecodedScope {
+
+        private final String scope;
+        private final String bindingMethod;
+        private final String bindingValue;
+
+        DecodedScope(String scope, String bindingMethod, String bindingValue) {
+
+            this.scope = scope;
+            this.bindingMethod = bindingMethod;
+            this.bindingValue = bindingValue;
+        }
+
+        /**
+         * @return Scope string without the certificate binding scopes.
+         */
+        public String getScope() {
+
+            return scope;
+        }
+
+        /**
+         * @return Thumbprint method of the certificate binding scope, such as x5t#SHA256, or null.
+         */
+        public String getBindingMethod() {
+
+            return bindingMethod;
+        }
+
+        /**
+         * @return Thumbprint of the certificate binding scope, or null.
+         */
+        public String getBindingValue() {
+
+            return bindingValue;
+        }
+
+        /**
+         * @return Whether a certificate binding scope was found.
+         */
+        public boolean hasBinding() {
+
+            return bindingMethod != null;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+
+/**
+ * Computes {@link CertificateThumbprint}s. Each thread reuses its own digest instances, which are fed the DER encoding
+ * of a certificate block by block, so that the SHA-1 and SHA-256 digests are computed in a single pass over the bytes.
+ * <p>
+ * The thumbprint of the last certificate seen by a thread is kept, as the same certificate is usually looked up
+ * several times while a request is processed.
+ */
+public final class ThumbprintEngine {
+
+    private static final int SHA1_LENGTH = 20;
+    private static final int SHA256_LENGTH = 32;
+    private static final int BLOCK_SIZE = 512;
+
+    private static final ThreadLocal<State> STATE = ThreadLocal.withInitial(State::new);
+
+    private ThumbprintEngine() {
+
+    }
+
+    /**
+     * Get the thumbprint of a certificate.
+     *
+     * @param certificate Certificate.
+     * @return Thumbprint of the certificate.
+     * @throws CertificateEncodingException If the certificate can not be encoded.
+     */
+    public static CertificateThumbprint getThumbprint(Certificate certificate) throws CertificateEncodingException {
+
+        State state = STATE.get();
+        if (state.lastCertificate == certificate && state.lastThumbprint != null) {
+            return state.lastThumbprint;
+        }
+        CertificateThumbprint thumbprint = state.compute(certificate.getEncoded());
+        state.lastCertificate = certificate;
+        state.lastThumbprint = thumbprint;
+        return thumbprint;
+    }
+
+    /**
+     * Get the thumbprint of a DER encoded certificate.
+     *
+     * @param encoded DER encoding of the certificate.
+     * @return Thumbprint of the certificate.
+     */
+    public static CertificateThumbprint getThumbprint(byte[] encoded) {
+
+        return STATE.get().compute(encoded);
+    }
+
+    /**
+     * Compare the thumbprints of two certificates in constant time.
+     *
+     * @param certificate      Certificate.
+     * @param otherCertificate Other certificate.
+     * @return Whether the thumbprints are equal.
+     * @throws CertificateEncodingException If a certificate can not be encoded.
+     */
+    public static boolean matches(Certificate certificate, Certificate otherCertificate)
+            throws CertificateEncodingException {
+
+        if (certificate == null || otherCertificate == null) {
+            return false;
+        }
+        // The thumbprint of the first certificate is not kept as the last one, as it is usually the registered one.
+        CertificateThumbprint thumbprint = STATE.get().compute(certificate.getEncoded());
+        return thumbprint.matches(getThumbprint(otherCertificate));
+    }
+
+    private static final class State {
+
+        private final MessageDigest sha1;
+        private final MessageDigest sha256;
+        private Certificate lastCertificate;
+        private CertificateThumbprint lastThumbprint;
+
+        State() {
+
+            try {
+                sha1 = MessageDigest.getInstance("SHA-1");
+                sha256 = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-1 and SHA-256 should be supported by the JVM.", e);
+            }
+        }
+
+        CertificateThumbprint compute(byte[] encoded) {
+
+            for (int offset = 0; offset < encoded.length; offset += BLOCK_SIZE) {
+                int length = Math.min(BLOCK_SIZE, encoded.length - offset);
+                sha1.update(encoded, offset, length);
+                sha256.update(encoded, offset, length);
+            }
+            byte[] sha1Digest = new byte[SHA1_LENGTH];
+            byte[] sha256Digest = new byte[SHA256_LENGTH];
+            try {
+                sha1.digest(sha1Digest, 0, SHA1_LENGTH);
+                sha256.digest(sha256Digest, 0, SHA256_LENGTH);
+            } catch (DigestException e) {
+                sha1.reset();
+                sha256.reset();
+                throw new IllegalStateException("Error while computing the certificate thumbprint.", e);
+            }
+            return new CertificateThumbprint(sha1Digest, sha256Digest);
+        }
+    }
+}
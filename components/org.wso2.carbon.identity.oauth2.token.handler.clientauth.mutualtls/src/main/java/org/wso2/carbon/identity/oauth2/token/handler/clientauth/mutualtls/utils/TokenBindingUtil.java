@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils;
+
+import org.apache.commons.lang.StringUtils;
+import org.wso2.carbon.identity.oauth2.token.bindings.TokenBinding;
+import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
+
+/**
+ * Util class for binding access tokens to the certificate the client authenticated with.
+ * <p>
+ * Tokens are bound through the token binding metadata of the token. Tokens issued by earlier versions carry the
+ * binding as a hidden scope of the form {@code x5t#SHA256:<thumbprint>}, which is handled by {@link ScopeCodec}. The
+ * binding type is specific to this module, so that the certificate based token binder of the OAuth core, which reads
+ * the certificate from a request header, is not applied to these tokens on refresh and introspection.
+ */
+public class TokenBindingUtil {
+
+    private TokenBindingUtil() {
+
+    }
+
+    /**
+     * Create the binding of a token to a certificate.
+     *
+     * @param thumbprint Base64 URL encoded SHA-256 thumbprint of the certificate.
+     * @return Token binding.
+     */
+    public static TokenBinding createCertificateBinding(String thumbprint) {
+
+        return new TokenBinding(CommonConstants.CERTIFICATE_TOKEN_BINDING_TYPE,
+                OAuth2Util.getTokenBindingReference(thumbprint), thumbprint);
+    }
+
+    /**
+     * Returns the thumbprint of the certificate a token is bound to.
+     *
+     * @param tokenBinding Token binding of the token, or null.
+     * @return Base64 URL encoded SHA-256 thumbprint, or null if the token is not bound to a certificate.
+     */
+    public static String getCertificateThumbprint(TokenBinding tokenBinding) {
+
+        if (tokenBinding == null
+                || !CommonConstants.CERTIFICATE_TOKEN_BINDING_TYPE.equals(tokenBinding.getBindingType())
+                || StringUtils.isBlank(tokenBinding.getBindingValue())) {
+            return null;
+        }
+        return tokenBinding.getBindingValue();
+    }
+}
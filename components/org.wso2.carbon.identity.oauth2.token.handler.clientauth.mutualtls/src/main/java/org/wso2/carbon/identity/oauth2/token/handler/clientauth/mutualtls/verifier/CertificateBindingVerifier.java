@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.verifier;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.json.JSONObject;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.BoundedCache;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.CertificateThumbprint;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.ClientCertificateParser;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.CommonConstants;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSConfig;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSUtil;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.ThumbprintEngine;
+
+import java.security.MessageDigest;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Verifies that the client certificate presented to a resource server is the certificate a token is bound to, as
+ * given by the {@code cnf} claim of the token or its introspection response.
+ * <p>
+ * The presented certificate can be read from the servlet container, from a certificate header holding a PEM or
+ * Base64 encoded certificate, or from an X-Forwarded-Client-Cert header set by a proxy terminating TLS. Headers are
+ * only read when the caller passes them explicitly or, for the certificate header, when the header is configured,
+ * as they can only be trusted when set by a proxy. The SHA-256 digests of encoded certificates are kept in a bounded
+ * cache, so that a certificate presented repeatedly is decoded and digested once. Digests are compared in constant
+ * time.
+ *
+ * @see <href="https://tools.ietf.org/html/rfc8705#section-3">RFC 8705 Mutual-TLS Client Certificate-Bound Access
+ * Tokens</>
+ */
+public class CertificateBindingVerifier {
+
+    private static final Log log = LogFactory.getLog(CertificateBindingVerifier.class);
+    private static final CertificateBindingVerifier instance = new CertificateBindingVerifier();
+    private static final int SHA256_LENGTH = 32;
+    private static final String LEGACY_X5T_S256 = CommonConstants.CERT_THUMBPRINT + CommonConstants.SEPARATOR
+            + CommonConstants.SHA256_DIGEST_ALGORITHM;
+
+    private volatile DigestCache digestCache;
+
+    private CertificateBindingVerifier() {
+
+    }
+
+    public static CertificateBindingVerifier getInstance() {
+
+        return instance;
+    }
+
+    /**
+     * Verify the certificate of a request against a confirmation claim. The certificate is read from the servlet
+     * container, or from the certificate header configured with MutualTLS.ClientCertificateHeader.
+     *
+     * @param request      Request.
+     * @param confirmation Confirmation claim, see {@link #getConfirmationThumbprint(Object)}.
+     * @return Whether the request presents the certificate the token is bound to.
+     */
+    public boolean verify(HttpServletRequest request, Object confirmation) {
+
+        Object certObject = request.getAttribute(MutualTLSUtil.JAVAX_SERVLET_REQUEST_CERTIFICATE);
+        if (certObject instanceof X509Certificate[] && ((X509Certificate[]) certObject).length > 0) {
+            return verify(((X509Certificate[]) certObject)[0], confirmation);
+        } else if (certObject instanceof X509Certificate) {
+            return verify((X509Certificate) certObject, confirmation);
+        }
+        String headerName = MutualTLSConfig.getInstance().getClientCertificateHeader();
+        if (headerName == null) {
+            return false;
+        }
+        return verifyEncodedCertificate(request.getHeader(headerName), confirmation);
+    }
+
+    /**
+     * Verify a certificate against a confirmation claim.
+     *
+     * @param certificate  Presented certificate.
+     * @param confirmation Confirmation claim, see {@link #getConfirmationThumbprint(Object)}.
+     * @return Whether the certificate is the certificate the token is bound to.
+     */
+    public boolean verify(X509Certificate certificate, Object confirmation) {
+
+        byte[] expected = decodeThumbprint(getConfirmationThumbprint(confirmation));
+        if (certificate == null || expected == null) {
+            return false;
+        }
+        try {
+            return ThumbprintEngine.getThumbprint(certificate).matchesSha256(expected);
+        } catch (CertificateEncodingException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Unable to encode the presented certificate.", e);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Verify a PEM or Base64 encoded certificate, optionally URL encoded, against a confirmation claim.
+     *
+     * @param encodedCertificate Presented certificate.
+     * @param confirmation       Confirmation claim, see {@link #getConfirmationThumbprint(Object)}.
+     * @return Whether the certificate is the certificate the token is bound to.
+     */
+    public boolean verifyEncodedCertificate(String encodedCertificate, Object confirmation) {
+
+        byte[] expected = decodeThumbprint(getConfirmationThumbprint(confirmation));
+        if (StringUtils.isBlank(encodedCertificate) || expected == null) {
+            return false;
+        }
+        CertificateThumbprint thumbprint = getThumbprint(encodedCertificate);
+        return thumbprint != null && thumbprint.matchesSha256(expected);
+    }
+
+    /**
+     * Verify the client certificate of an X-Forwarded-Client-Cert header against a confirmation claim. The client
+     * certificate is taken from the first element of the header, which is added by the proxy terminating the TLS
+     * connection of the client. The Hash field is used when present, and the Cert field otherwise.
+     *
+     * @param forwardedClientCert X-Forwarded-Client-Cert header value.
+     * @param confirmation        Confirmation claim, see {@link #getConfirmationThumbprint(Object)}.
+     * @return Whether the client certificate is the certificate the token is bound to.
+     */
+    public boolean verifyForwardedCertificate(String forwardedClientCert, Object confirmation) {
+
+        byte[] expected = decodeThumbprint(getConfirmationThumbprint(confirmation));
+        if (StringUtils.isBlank(forwardedClientCert) || expected == null) {
+            return false;
+        }
+        ForwardedClientCertificate forwarded = ForwardedClientCertificate.parse(forwardedClientCert);
+        if (forwarded.getHash() != null) {
+            byte[] digest = decodeHex(forwarded.getHash());
+            return digest != null && MessageDigest.isEqual(digest, expected);
+        }
+        if (forwarded.getCert() != null) {
+            CertificateThumbprint thumbprint = getThumbprint(forwarded.getCert());
+            return thumbprint != null && thumbprint.matchesSha256(expected);
+        }
+        return false;
+    }
+
+    /**
+     * Returns the certificate thumbprint of a confirmation claim. The claim can be given as a map or a JSON object
+     * holding the x5t#S256 member, or the x5t#SHA256 member added by the introspection response interceptor, or as
+     * the thumbprint itself.
+     *
+     * @param confirmation Confirmation claim.
+     * @return Base64url encoded SHA-256 thumbprint, or null if the claim does not carry one.
+     */
+    public static String getConfirmationThumbprint(Object confirmation) {
+
+        Object thumbprint = null;
+        if (confirmation instanceof String) {
+            thumbprint = confirmation;
+        } else if (confirmation instanceof Map) {
+            Map<?, ?> claim = (Map<?, ?>) confirmation;
+            thumbprint = claim.get(CommonConstants.X5T_S256);
+            if (thumbprint == null) {
+                thumbprint = claim.get(LEGACY_X5T_S256);
+            }
+        } else if (confirmation instanceof JSONObject) {
+            JSONObject claim = (JSONObject) confirmation;
+            thumbprint = claim.opt(CommonConstants.X5T_S256);
+            if (thumbprint == null) {
+                thumbprint = claim.opt(LEGACY_X5T_S256);
+            }
+        }
+        return thumbprint instanceof String ? (String) thumbprint : null;
+    }
+
+    /**
+     * @return Number of encoded certificates for which the digest is cached.
+     */
+    public int getCachedDigestCount() {
+
+        DigestCache cache = digestCache;
+        return cache == null ? 0 : cache.digests.size();
+    }
+
+    private CertificateThumbprint getThumbprint(String encodedCertificate) {
+
+        DigestCache cache = getDigestCache(MutualTLSConfig.getInstance());
+        CertificateThumbprint thumbprint = cache.digests.get(encodedCertificate);
+        if (thumbprint != null) {
+            return thumbprint;
+        }
+        try {
+            thumbprint = ThumbprintEngine.getThumbprint(cache.parser.decodeCertificate(encodedCertificate));
+        } catch (CertificateException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Unable to decode the presented certificate. " + e.getMessage());
+            }
+            return null;
+        }
+        cache.digests.put(encodedCertificate, thumbprint);
+        return thumbprint;
+    }
+
+    private DigestCache getDigestCache(MutualTLSConfig config) {
+
+        DigestCache cache = digestCache;
+        if (cache == null || cache.config != config) {
+            cache = new DigestCache(config);
+            digestCache = cache;
+        }
+        return cache;
+    }
+
+    private static byte[] decodeThumbprint(String thumbprint) {
+
+        if (thumbprint == null) {
+            return null;
+        }
+        try {
+            byte[] digest = Base64.getUrlDecoder().decode(thumbprint);
+            return digest.length == SHA256_LENGTH ? digest : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static byte[] decodeHex(String hex) {
+
+        if (hex.length() != SHA256_LENGTH * 2) {
+            return null;
+        }
+        byte[] digest = new byte[SHA256_LENGTH];
+        for (int i = 0; i < SHA256_LENGTH; i++) {
+            int high = Character.digit(hex.charAt(2 * i), 16);
+            int low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            digest[i] = (byte) ((high << 4) | low);
+        }
+        return digest;
+    }
+
+    /**
+     * Certificate decoder and digest cache created from a configuration snapshot.
+     */
+    private static class DigestCache {
+
+        private final MutualTLSConfig config;
+        private final ClientCertificateParser parser;
+        private final BoundedCache<String, CertificateThumbprint> digests;
+
+        DigestCache(MutualTLSConfig config) {
+
+            this.config = config;
+            this.parser = new ClientCertificateParser(config.getMaxCertificateHeaderLength(),
+                    config.getMaxCertificateLength());
+            this.digests = new BoundedCache<>(config.getBindingVerifierCacheCapacity());
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.verifier;
+
+/**
+ * Client certificate fields of the first element of an X-Forwarded-Client-Cert header. The header is a comma
+ * separated list of elements, one added by each proxy, and each element is a semicolon separated list of
+ * {@code key=value} pairs whose values are double quoted when they contain a separator.
+ */
+public final class ForwardedClientCertificate {
+
+    private static final String HASH_KEY = "Hash";
+    private static final String CERT_KEY = "Cert";
+
+    private final String hash;
+    private final String cert;
+
+    private ForwardedClientCertificate(String hash, String cert) {
+
+        this.hash = hash;
+        this.cert = cert;
+    }
+
+    /**
+     * Parse the first element of an X-Forwarded-Client-Cert header value.
+     *
+     * @param headerValue Header value.
+     * @return Client certificate fields, which are null when absent.
+     */
+    public static ForwardedClientCertificate parse(String headerValue) {
+
+        String hash = null;
+        String cert = null;
+        int length = headerValue.length();
+        int index = 0;
+        while (index < length) {
+            int keyStart = index;
+            while (index < length && "=;,".indexOf(headerValue.charAt(index)) < 0) {
+                index++;
+            }
+            String key = headerValue.substring(keyStart, index).trim();
+            String value = null;
+            if (index < length && headerValue.charAt(index) == '=') {
+                index++;
+                StringBuilder builder = new StringBuilder();
+                index = readValue(headerValue, index, builder);
+                value = builder.toString();
+            }
+            if (HASH_KEY.equalsIgnoreCase(key)) {
+                hash = value;
+            } else if (CERT_KEY.equalsIgnoreCase(key)) {
+                cert = value;
+            }
+            if (index >= length || headerValue.charAt(index) == ',') {
+                break;
+            }
+            // Skip the pair separator.
+            index++;
+        }
+        return new ForwardedClientCertificate(hash, cert);
+    }
+
+    /**
+     * @return Hex encoded SHA-256 digest of the client certificate, or null.
+     */
+    public String getHash() {
+
+        return hash;
+    }
+
+    /**
+     * @return URL encoded PEM client certificate, or null.
+     */
+    public String getCert() {
+
+        return cert;
+    }
+
+    private static int readValue(String headerValue, int index, StringBuilder builder) {
+
+        int length = headerValue.length();
+        while (index < length && Character.isWhitespace(headerValue.charAt(index))) {
+            index++;
+        }
+        if (index < length && headerValue.charAt(index) == '"') {
+            index++;
+            while (index < length) {
+                char character = headerValue.charAt(index++);
+                if (character == '\\' && index < length) {
+                    builder.append(headerValue.charAt(index++));
+                } else if (character == '"') {
+                    break;
+                } else {
+                    builder.append(character);
+                }
+            }
+            // Ignore anything between the closing quote and the next separator.
+            while (index < length && headerValue.charAt(index) != ';' && headerValue.charAt(index) != ',') {
+                index++;
+            }
+            return index;
+        }
+        int start = index;
+        while (index < length && headerValue.charAt(index) != ';' && headerValue.charAt(index) != ',') {
+            index++;
+        }
+        builder.append(headerValue, start, index);
+        int end = builder.length();
+        while (end > 0 && Character.isWhitespace(builder.charAt(end - 1))) {
+            end--;
+        }
+        builder.setLength(end);
+        return index;
+    }
+}
@@ -35,8 +35,11 @@ import org.wso2.carbon.identity.core.util.IdentityUtil;
 import org.wso2.carbon.identity.oauth.dao.OAuthAppDO;
 import org.wso2.carbon.identity.oauth2.bean.OAuthClientAuthnContext;
 import org.wso2.carbon.identity.oauth2.model.ClientAuthenticationMethodModel;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.cache.JWKSThumbprintIndex;
 import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.CommonConstants;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSConfig;
 import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSUtil;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.ThumbprintEngine;
 import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
 
 import java.io.ByteArrayInputStream;
@@ -315,17 +318,26 @@ public class MutualTLSClientAuthenticatorTest {
             + "    \"x5t#S256\" : \"fMSq7nleARP8LlJGKDmYII1EjhGwBpW8BZapcCZNKSo=\"\n" + "  } ]\n" + "}";
 
     @DataProvider(name = "testAuthenticateClientWhenJWKSEndPointGiven")
-    public Object[][] testAuthenticateClientWhenJWKSEndPointGiven() {
+    public Object[][] testAuthenticateClientWhenJWKSEndPointGiven() throws Exception {
 
         Map<String, List> bodyParamsWithClientId = new HashMap<>();
         List<String> clientIdList = new ArrayList<>();
         clientIdList.add(clientId);
         bodyParamsWithClientId.put(OAuth.OAUTH_CLIENT_ID, clientIdList);
 
+        X509Certificate x5cCertificate = getCertificate(getJsonArray(testJsonWithX5C).get(0).getAsJsonObject()
+                .get("x5c").getAsJsonArray().get(0).getAsString());
+
         return new Object[][]{
 
+                // Certificate in the x5c attribute is not the request certificate.
                 {
                         getCertificate(certificateContent), new HashMap<String, List>(),
+                        buildOAuthClientAuthnContext(clientId), false, testJsonWithX5C
+                },
+
+                {
+                        x5cCertificate, new HashMap<String, List>(),
                         buildOAuthClientAuthnContext(clientId), true, testJsonWithX5C
                 },
 
@@ -338,9 +350,17 @@ public class MutualTLSClientAuthenticatorTest {
                         getCertificate(certificateContent), bodyParamsWithClientId,
                         buildOAuthClientAuthnContext(clientId), false, testJson
                 },
+                // Neither the x5t nor the x5c attributes match the request certificate.
                 {
                         getCertificate(certificateContent), bodyParamsWithClientId,
-                        buildOAuthClientAuthnContext(clientId), true, testJsonX5TXct
+                        buildOAuthClientAuthnContext(clientId), false, testJsonX5TXct
+                },
+                // Only the x5t#S256 attribute is published.
+                {
+                        getCertificate(certificateContent), bodyParamsWithClientId,
+                        buildOAuthClientAuthnContext(clientId), true, "{\"keys\":[{\"kty\":\"RSA\",\"x5t#S256\":\""
+                        + ThumbprintEngine.getThumbprint(getCertificate(certificateContent)).getSha256Base64Url()
+                        + "\"}]}"
                 },
         };
 
@@ -435,6 +455,7 @@ public class MutualTLSClientAuthenticatorTest {
         try (MockedStatic<IdentityUtil> identityUtil = Mockito.mockStatic(IdentityUtil.class)) {
             HttpServletRequest httpServletRequest = mock(HttpServletRequest.class);
             when(IdentityUtil.getProperty(CommonConstants.MTLS_AUTH_HEADER)).thenReturn("x-wso2-mtls-cert");
+            MutualTLSConfig.reload();
             when(httpServletRequest.getHeader("x-wso2-mtls-cert")).thenReturn(certificateContent3);
             assertEquals(mutualTLSClientAuthenticator.canAuthenticate(httpServletRequest, bodyContent, new
                     OAuthClientAuthnContext()), canHandle, "Expected can authenticate evaluation not received");
@@ -521,7 +542,8 @@ public class MutualTLSClientAuthenticatorTest {
                     thenReturn(SUPER_TENANT_DOMAIN_NAME);
             oAuth2Util.when(() -> OAuth2Util.getX509CertOfOAuthApp(oAuthClientAuthnContext.getClientId(),
                             SUPER_TENANT_DOMAIN_NAME)).thenReturn(null);
-            doReturn(getJsonArray(testJson)).when(mutualTLSClientAuthenticator1).getResourceContent(any());
+            doReturn(JWKSThumbprintIndex.build(testJson)).when(mutualTLSClientAuthenticator1)
+                    .getThumbprintIndex(any(), any());
             doReturn(new URL("https://wso2is.com/.well-known/jwks.json"))
                     .when(mutualTLSClientAuthenticator1).getJWKSEndpointOfSP(any(), any());
             mutualTLSUtil.when(() -> MutualTLSUtil.getThumbPrint(any(), any())).thenReturn(
@@ -536,6 +558,54 @@ public class MutualTLSClientAuthenticatorTest {
         }
     }
 
+    @DataProvider(name = "testAuthenticateClientWhenJWKSRefreshedOnMiss")
+    public Object[][] testAuthenticateClientWhenJWKSRefreshedOnMiss() {
+
+        return new Object[][]{
+
+                // The refreshed JWK Set contains the request certificate.
+                {testJsonWithX5T, true},
+                // The JWK Set was not refreshed.
+                {null, false},
+                // The refreshed JWK Set does not contain the request certificate either.
+                {testJson, false},
+        };
+    }
+
+    @Test(dataProvider = "testAuthenticateClientWhenJWKSRefreshedOnMiss")
+    public void testAuthenticateClientWhenJWKSRefreshedOnMiss(String refreshedJson, boolean authenticationResult)
+            throws Exception {
+
+        try (MockedStatic<OAuth2Util> oAuth2Util = Mockito.mockStatic(OAuth2Util.class);
+             MockedStatic<MutualTLSUtil> mutualTLSUtil = Mockito.mockStatic(MutualTLSUtil.class)) {
+            MutualTLSClientAuthenticator mutualTLSClientAuthenticator1 = Mockito.spy(mutualTLSClientAuthenticator);
+            OAuthClientAuthnContext oAuthClientAuthnContext = buildOAuthClientAuthnContext(clientId);
+            HttpServletRequest httpServletRequest = mock(HttpServletRequest.class);
+            mutualTLSUtil.when(() -> MutualTLSUtil.isJwksUriConfigured(any())).thenReturn(true);
+            oAuth2Util.when(() -> OAuth2Util.getTenantDomainOfOauthApp(anyString())).
+                    thenReturn(SUPER_TENANT_DOMAIN_NAME);
+            oAuth2Util.when(() -> OAuth2Util.getX509CertOfOAuthApp(oAuthClientAuthnContext.getClientId(),
+                    SUPER_TENANT_DOMAIN_NAME)).thenReturn(null);
+            // The cached JWK Set does not contain the request certificate.
+            doReturn(JWKSThumbprintIndex.build(testJson)).when(mutualTLSClientAuthenticator1)
+                    .getThumbprintIndex(any(), any());
+            doReturn(refreshedJson == null ? null : JWKSThumbprintIndex.build(refreshedJson))
+                    .when(mutualTLSClientAuthenticator1).refreshThumbprintIndex(any(), any());
+            doReturn(new URL("https://wso2is.com/.well-known/jwks.json"))
+                    .when(mutualTLSClientAuthenticator1).getJWKSEndpointOfSP(any(), any());
+            mutualTLSUtil.when(() -> MutualTLSUtil.getThumbPrint(any(), any())).thenReturn(
+                    "da39a3ee5e6b4b0d3255bfef95601890afd80709");
+            when(httpServletRequest.getAttribute(JAVAX_SERVLET_REQUEST_CERTIFICATE))
+                    .thenReturn(getCertificate(certificateContent));
+            oAuth2Util.when(() -> OAuth2Util.getAppInformationByClientId(anyString(), anyString()))
+                    .thenReturn(new OAuthAppDO());
+            assertEquals(mutualTLSClientAuthenticator1
+                            .authenticateClient(httpServletRequest, new HashMap<>(), oAuthClientAuthnContext),
+                    authenticationResult, "Expected client authentication result was not received after " +
+                            "refreshing the JWKS on a miss.");
+        }
+    }
+
     public static JsonArray getJsonArray(String resource) {
 
         JsonParser jp = new JsonParser();
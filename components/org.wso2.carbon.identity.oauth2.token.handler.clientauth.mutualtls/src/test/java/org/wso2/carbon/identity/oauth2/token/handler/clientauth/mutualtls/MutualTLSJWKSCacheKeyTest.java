@@ -21,6 +21,10 @@ package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls;
 import org.testng.annotations.Test;
 import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.cache.MutualTLSJWKSCacheKey;
 
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
@@ -48,6 +52,23 @@ public class MutualTLSJWKSCacheKeyTest {
         assertTrue(mutualTLSJWKSCacheKey.equals(mutualTLSJWKSCacheKeySample));
     }
 
+    @Test
+    public void testCacheKeyOfJWKSUriWithMirrors() throws Exception {
+
+        URL jwksUri = new URL("https://localhost/jwks");
+        MutualTLSJWKSCacheKey withoutMirrors = new MutualTLSJWKSCacheKey(jwksUri, Collections.emptyList());
+        MutualTLSJWKSCacheKey withMirror = new MutualTLSJWKSCacheKey(jwksUri,
+                Collections.singletonList(new URL("https://mirror.localhost/jwks")));
+        MutualTLSJWKSCacheKey withOtherMirror = new MutualTLSJWKSCacheKey(jwksUri,
+                Collections.singletonList(new URL("https://mirror2.localhost/jwks")));
+
+        assertEquals(withoutMirrors, new MutualTLSJWKSCacheKey(jwksUri.toString()));
+        assertFalse(withMirror.equals(withoutMirrors));
+        assertFalse(withMirror.equals(withOtherMirror));
+        assertEquals(withMirror, new MutualTLSJWKSCacheKey(jwksUri,
+                Arrays.asList(new URL("https://mirror.localhost/jwks"))));
+    }
+
     @Test
     public void testNotEquals() throws Exception {
 
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.cache;
+
+import com.nimbusds.jose.util.Resource;
+import org.mockito.MockedStatic;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.common.testng.WithCarbonHome;
+import org.wso2.carbon.identity.common.testng.WithRealmService;
+import org.wso2.carbon.identity.core.util.IdentityUtil;
+import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.CommonConstants;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSConfig;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Mockito.mockStatic;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Test class for JWKSRotationNotificationService class.
+ */
+@WithCarbonHome
+@WithRealmService
+public class JWKSRotationNotificationServiceTest {
+
+    private static final String JWKS_URI = "https://localhost/rotated/jwks";
+    private static final String OLD_JWKS = "{\"keys\":[{\"kid\":\"1\"}]}";
+    private static final String NEW_JWKS = "{\"keys\":[{\"kid\":\"1\"},{\"kid\":\"2\"}]}";
+
+    @AfterMethod
+    public void tearDown() {
+
+        MutualTLSJWKSCache.getInstance().clear();
+    }
+
+    @Test
+    public void testRotationRefreshesCachedJWKS() throws Exception {
+
+        AtomicInteger retrievals = new AtomicInteger();
+        JWKSRotationNotificationService service = new JWKSRotationNotificationService(
+                new MutualTLSJWKSRefresher(uri -> {
+                    retrievals.incrementAndGet();
+                    return new Resource(NEW_JWKS, "application/json");
+                }));
+        MutualTLSJWKSCacheKey key = new MutualTLSJWKSCacheKey(JWKS_URI);
+        MutualTLSJWKSCache.getInstance().addToCache(key,
+                new MutualTLSJWKSCacheEntry(new Resource(OLD_JWKS, "application/json")));
+
+        assertTrue(service.notifyRotation(JWKS_URI));
+        assertEquals(MutualTLSJWKSCache.getInstance().getValueFromCache(key).getContent(), NEW_JWKS);
+
+        // A notice received right after the refresh is rate limited.
+        assertFalse(service.notifyRotation(JWKS_URI));
+        assertEquals(retrievals.get(), 1);
+    }
+
+    @Test
+    public void testRotationRefreshesMirroredJWKS() throws Exception {
+
+        AtomicInteger retrievals = new AtomicInteger();
+        MutualTLSJWKSRefresher refresher = new MutualTLSJWKSRefresher(uri -> new Resource(
+                retrievals.getAndIncrement() == 0 ? OLD_JWKS : NEW_JWKS, "application/json"));
+        JWKSRotationNotificationService service = new JWKSRotationNotificationService(refresher);
+        URL jwksUri = new URL(JWKS_URI);
+        List<URL> mirrorUris = Collections.singletonList(new URL("https://mirror.localhost/rotated/jwks"));
+        try (MockedStatic<IdentityUtil> identityUtil = mockStatic(IdentityUtil.class)) {
+            identityUtil.when(() -> IdentityUtil.getProperty(CommonConstants.JWKS_ROTATION_NOTICE_MIN_INTERVAL))
+                    .thenReturn("1");
+            MutualTLSConfig.reload();
+            refresher.fetch(jwksUri, mirrorUris);
+            MutualTLSJWKSCacheKey key = new MutualTLSJWKSCacheKey(jwksUri, mirrorUris);
+            assertEquals(MutualTLSJWKSCache.getInstance().getValueFromCache(key).getContent(), OLD_JWKS);
+            // The JWK Set was fetched right now, so the notice is only accepted after the minimum interval.
+            Thread.sleep(TimeUnit.SECONDS.toMillis(1));
+
+            // The JWK Set is cached against the URI along with its mirrors, not against the URI alone.
+            assertTrue(service.notifyRotation(JWKS_URI));
+            assertEquals(MutualTLSJWKSCache.getInstance().getValueFromCache(key).getContent(), NEW_JWKS);
+            assertEquals(retrievals.get(), 2);
+        } finally {
+            MutualTLSConfig.reload();
+        }
+    }
+
+    @Test
+    public void testRotationOfJWKSThatIsNotCached() throws Exception {
+
+        AtomicInteger retrievals = new AtomicInteger();
+        JWKSRotationNotificationService service = new JWKSRotationNotificationService(
+                new MutualTLSJWKSRefresher(uri -> {
+                    retrievals.incrementAndGet();
+                    return new Resource(NEW_JWKS, "application/json");
+                }));
+
+        assertFalse(service.notifyRotation("https://localhost/unknown/jwks"));
+        assertEquals(retrievals.get(), 0);
+    }
+
+    @Test(expectedExceptions = IdentityOAuth2Exception.class)
+    public void testFailedRefreshKeepsCachedJWKS() throws Exception {
+
+        JWKSRotationNotificationService service = new JWKSRotationNotificationService(
+                new MutualTLSJWKSRefresher(uri -> {
+                    throw new IOException("Connection refused");
+                }));
+        MutualTLSJWKSCacheKey key = new MutualTLSJWKSCacheKey(JWKS_URI);
+        MutualTLSJWKSCache.getInstance().addToCache(key,
+                new MutualTLSJWKSCacheEntry(new Resource(OLD_JWKS, "application/json")));
+        try {
+            service.notifyRotation(JWKS_URI);
+        } finally {
+            assertEquals(MutualTLSJWKSCache.getInstance().getValueFromCache(key).getContent(), OLD_JWKS);
+        }
+    }
+
+    @Test(expectedExceptions = IdentityOAuth2Exception.class)
+    public void testInvalidJWKSUri() throws Exception {
+
+        new JWKSRotationNotificationService().notifyRotation("not a uri");
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.cache;
+
+import com.nimbusds.jose.util.Resource;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.CertificateThumbprint;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSMetrics;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.ThumbprintEngine;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Test class for MutualTLSJWKSCacheEntry and JWKSThumbprintIndex classes.
+ */
+public class MutualTLSJWKSCacheEntryTest {
+
+    private static final String CERTIFICATE_CONTENT = "MIIDmzCCAoOgAwIBAgIJAJuzH6NrV5s5MA0GCSqGSIb3DQEBCwUAMGQxCzAJBgNV"
+            + "BAYTAlNMMQswCQYDVQQIDAJXUDEQMA4GA1UEBwwHQ29sb21ibzENMAsGA1UECgwE"
+            + "d3NvMjENMAsGA1UECwwEd3NvMjEYMBYGA1UEAwwPdHJhdmVsb2NpdHkuY29tMB4X"
+            + "DTE4MDIwNjEwNTk1N1oXDTE5MDIwNjEwNTk1N1owZDELMAkGA1UEBhMCU0wxCzAJ"
+            + "BgNVBAgMAldQMRAwDgYDVQQHDAdDb2xvbWJvMQ0wCwYDVQQKDAR3c28yMQ0wCwYD"
+            + "VQQLDAR3c28yMRgwFgYDVQQDDA90cmF2ZWxvY2l0eS5jb20wggEiMA0GCSqGSIb3"
+            + "DQEBAQUAA4IBDwAwggEKAoIBAQDlKn3dmaLW7iBOKdlWY8Go8Q7kR6HNY/8j0arv"
+            + "EcZYqMrihcSX5i5Mz57t6Z3xpaGay2jPWND7dDA/RocircleBKQk0X2OxoEYba3W"
+            + "t477EpN9RWGAZuuANUSVKjC8FsNYhEp9y59IuxK+IgDAEfR8O2RNLYA6O3UjBC/R"
+            + "f443CwOE4jFm3eVAeLIBudn/viC56rPBozVX4DxPaHIzxocfK6EpDljEG4lJ7otS"
+            + "SbIpPlmAO/0f8F1Q6syv+sCkPRGn/OjTXWtUg6QXAclguOCl3MI+pLMThQUATcKb"
+            + "2QkPl8r8/b/S8qMRKzSVYyjNP+CsDRO/MdlC50QZSJBaNYqdAgMBAAGjUDBOMB0G"
+            + "A1UdDgQWBBSIXyhWV6Ac+FiqdXEeQwqzJfFLhDAfBgNVHSMEGDAWgBSIXyhWV6Ac"
+            + "+FiqdXEeQwqzJfFLhDAMBgNVHRMEBTADAQH/MA0GCSqGSIb3DQEBCwUAA4IBAQBQ"
+            + "S2jmfzF8x1iwmRqXILZ6qkF5ABAlNa3Z3bMFB7uErw2BxASMOLWfjZdEcyICDGIf"
+            + "ZeYchqEPTvv/RIqDlu8xda3N2kRp1un5Hfffavm6ZWR3J8LdsnSjrehZ/afxuy8a"
+            + "OFKiRtj9tqpG3C/s/NBJ9Gl4u5YhihOSJG9ELihJSxWDYI641AOalWnUQ/SxfeCO"
+            + "TY75aViCAD6QDmBxe/opQYExBdgNOCQ6HdP5WWBT6EEggBe/mqOM/dchj57rpPtw"
+            + "IOQjy9UCaY7tq4SmhAJyab0mxjcFoRBpzOJIDh+N8ozSDK+MepyFSwtW5zVacOiG"
+            + "OQUrBTGXQFZOGKje8sbS";
+    private static final String JWKS = "{\"keys\":["
+            + "{\"kty\":\"RSA\",\"kid\":\"1\",\"x5c\":[\"" + CERTIFICATE_CONTENT + "\"]},"
+            + "{\"kty\":\"RSA\",\"kid\":\"2\",\"x5t\":\"MjZlYTc1ZDEzNjQ4YzQ5MzI0MjRkNmI1MzEwMTk3YWQ\"},"
+            + "{\"kty\":\"RSA\",\"kid\":\"3\",\"x5c\":[\"not a certificate\"]}]}";
+    private static final String JWKS_URI = "https://localhost/jwks";
+
+    @Test
+    public void testThumbprintIndex() {
+
+        JWKSThumbprintIndex index = JWKSThumbprintIndex.build(JWKS);
+
+        assertEquals(index.size(), 3);
+        assertTrue(index.containsCertificate(ThumbprintEngine.getThumbprint(getCertificateBytes())));
+        assertTrue(index.containsX5t("MjZlYTc1ZDEzNjQ4YzQ5MzI0MjRkNmI1MzEwMTk3YWQ"));
+        assertFalse(index.containsX5t("MjZlYTc1ZDEzNjQ4YzQ5MzI0MjRkNmI1MzEwMTk3YWQ="));
+        assertFalse(index.containsCertificate(ThumbprintEngine.getThumbprint(new byte[]{1, 2, 3})));
+    }
+
+    @Test
+    public void testThumbprintIndexMembers() {
+
+        CertificateThumbprint thumbprint = ThumbprintEngine.getThumbprint(getCertificateBytes());
+        JWKSThumbprintIndex index = JWKSThumbprintIndex.build("{\"keys\":["
+                + "{\"kty\":\"RSA\",\"kid\":\"1\",\"x5t#S256\":\"" + thumbprint.getSha256Base64Url() + "\"},"
+                + "{\"kty\":\"RSA\",\"kid\":\"2\",\"x5t#S256\":\"" + thumbprint.getSha256Base64Url() + "\"}]}");
+
+        assertEquals(index.size(), 2);
+        assertEquals(index.getThumbprintCount(), 1);
+        assertFalse(index.hasX5t());
+        assertTrue(index.containsX5tS256(thumbprint));
+        // A thumbprint is only matched against the member it was taken from.
+        assertFalse(index.containsCertificate(thumbprint));
+        assertFalse(index.containsX5t(thumbprint.getSha256Base64Url()));
+        assertTrue(JWKSThumbprintIndex.build(JWKS).hasX5t());
+    }
+
+    @Test
+    public void testThumbprintIndexOfInvalidContent() {
+
+        assertEquals(JWKSThumbprintIndex.build(null).size(), 0);
+        assertEquals(JWKSThumbprintIndex.build("content").size(), 0);
+        assertEquals(JWKSThumbprintIndex.build("{\"keys\":{}}").size(), 0);
+    }
+
+    @Test
+    public void testRefreshedThumbprintIndexReusesUnchangedCertificates() {
+
+        String previousJwks = "{\"keys\":[{\"kty\":\"RSA\",\"kid\":\"1\",\"x5c\":[\"" + CERTIFICATE_CONTENT
+                + "\"]}]}";
+        String refreshedJwks = "{\"keys\":[{\"kty\":\"RSA\",\"kid\":\"1\",\"x5c\":[\"" + CERTIFICATE_CONTENT
+                + "\"]},{\"kty\":\"RSA\",\"kid\":\"2\",\"x5c\":[\"AQID\"]}]}";
+        JWKSThumbprintIndex previous = JWKSThumbprintIndex.build(previousJwks);
+
+        long computed = MutualTLSMetrics.getCount(MutualTLSMetrics.Counter.JWKS_CERTIFICATE_THUMBPRINT_COMPUTED);
+        long reused = MutualTLSMetrics.getCount(MutualTLSMetrics.Counter.JWKS_CERTIFICATE_THUMBPRINT_REUSED);
+        JWKSThumbprintIndex refreshed = JWKSThumbprintIndex.build(refreshedJwks, previous);
+
+        // Only the added certificate is hashed.
+        assertEquals(MutualTLSMetrics.getCount(MutualTLSMetrics.Counter.JWKS_CERTIFICATE_THUMBPRINT_COMPUTED),
+                computed + 1);
+        assertEquals(MutualTLSMetrics.getCount(MutualTLSMetrics.Counter.JWKS_CERTIFICATE_THUMBPRINT_REUSED),
+                reused + 1);
+        assertEquals(refreshed.size(), 2);
+        assertTrue(refreshed.containsCertificate(ThumbprintEngine.getThumbprint(getCertificateBytes())));
+        assertTrue(refreshed.containsCertificate(ThumbprintEngine.getThumbprint(new byte[]{1, 2, 3})));
+
+        // A certificate removed from the JWK Set is not kept in the index.
+        JWKSThumbprintIndex rotated = JWKSThumbprintIndex.build(
+                "{\"keys\":[{\"kty\":\"RSA\",\"kid\":\"2\",\"x5c\":[\"AQID\"]}]}", refreshed);
+        assertFalse(rotated.containsCertificate(ThumbprintEngine.getThumbprint(getCertificateBytes())));
+        assertTrue(rotated.containsCertificate(ThumbprintEngine.getThumbprint(new byte[]{1, 2, 3})));
+    }
+
+    @Test
+    public void testEntryWithUnchangedContentReusesThumbprintIndex() {
+
+        MutualTLSJWKSCacheEntry previous = new MutualTLSJWKSCacheEntry(new Resource(JWKS, "application/json"), 1000L);
+        MutualTLSJWKSCacheEntry refreshed =
+                new MutualTLSJWKSCacheEntry(new Resource(JWKS, "application/json"), 2000L, previous);
+
+        assertSame(refreshed.getThumbprintIndex(), previous.getThumbprintIndex());
+        assertEquals(refreshed.getFetchedTime(), 2000L);
+    }
+
+    @Test
+    public void testEntryIsReplicatedToOtherNodes() throws Exception {
+
+        ReplicatedCache cluster = new ReplicatedCache(3);
+        MutualTLSJWKSCacheKey key = new MutualTLSJWKSCacheKey(JWKS_URI);
+        MutualTLSJWKSCacheEntry fetched = new MutualTLSJWKSCacheEntry(new Resource(JWKS, "application/json"), 1000L);
+        cluster.put(0, key, fetched);
+
+        for (int node = 1; node < 3; node++) {
+            MutualTLSJWKSCacheEntry replicated = cluster.get(node, new MutualTLSJWKSCacheKey(JWKS_URI));
+            assertNotNull(replicated);
+            assertNotNull(replicated.getValue());
+            assertEquals(replicated.getValue().getContent(), JWKS);
+            assertEquals(replicated.getValue().getContentType(), "application/json");
+            assertEquals(replicated.getFetchedTime(), 1000L);
+            assertEquals(replicated.getThumbprintIndex().size(), 3);
+            assertTrue(replicated.getThumbprintIndex()
+                    .containsCertificate(ThumbprintEngine.getThumbprint(getCertificateBytes())));
+        }
+    }
+
+    @Test
+    public void testEmptyEntryIsReplicated() throws Exception {
+
+        ReplicatedCache cluster = new ReplicatedCache(2);
+        MutualTLSJWKSCacheKey key = new MutualTLSJWKSCacheKey(JWKS_URI);
+        cluster.put(0, key, new MutualTLSJWKSCacheEntry(null));
+
+        MutualTLSJWKSCacheEntry replicated = cluster.get(1, key);
+        assertNotNull(replicated);
+        assertNull(replicated.getValue());
+        assertEquals(replicated.getThumbprintIndex().size(), 0);
+    }
+
+    private static byte[] getCertificateBytes() {
+
+        return Base64.getDecoder().decode(CERTIFICATE_CONTENT);
+    }
+
+    /**
+     * In JVM stand in for a replicated cache. Entries are serialized when they are added on one node, and each of
+     * the other nodes keeps its own deserialized copy, as a clustered cache does.
+     */
+    private static class ReplicatedCache {
+
+        private final List<Map<MutualTLSJWKSCacheKey, MutualTLSJWKSCacheEntry>> nodes = new ArrayList<>();
+
+        ReplicatedCache(int nodeCount) {
+
+            for (int i = 0; i < nodeCount; i++) {
+                nodes.add(new HashMap<>());
+            }
+        }
+
+        void put(int node, MutualTLSJWKSCacheKey key, MutualTLSJWKSCacheEntry entry) throws Exception {
+
+            byte[] serializedKey = serialize(key);
+            byte[] serializedEntry = serialize(entry);
+            for (int i = 0; i < nodes.size(); i++) {
+                if (i == node) {
+                    nodes.get(i).put(key, entry);
+                } else {
+                    nodes.get(i).put((MutualTLSJWKSCacheKey) deserialize(serializedKey),
+                            (MutualTLSJWKSCacheEntry) deserialize(serializedEntry));
+                }
+            }
+        }
+
+        MutualTLSJWKSCacheEntry get(int node, MutualTLSJWKSCacheKey key) {
+
+            return nodes.get(node).get(key);
+        }
+
+        private static byte[] serialize(Object object) throws IOException {
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream outputStream = new ObjectOutputStream(bytes)) {
+                outputStream.writeObject(object);
+            }
+            return bytes.toByteArray();
+        }
+
+        private static Object deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+
+            try (ObjectInputStream inputStream = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                return inputStream.readObject();
+            }
+        }
+    }
+}
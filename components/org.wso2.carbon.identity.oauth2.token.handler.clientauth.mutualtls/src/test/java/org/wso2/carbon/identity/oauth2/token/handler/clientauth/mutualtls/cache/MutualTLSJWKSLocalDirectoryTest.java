@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.cache;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.stream.Stream;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Test class for MutualTLSJWKSLocalDirectory class.
+ */
+public class MutualTLSJWKSLocalDirectoryTest {
+
+    private static final String JWKS = "{\"keys\":[{\"kty\":\"RSA\",\"kid\":\"1\",\"x5t\":\"first\"}]}";
+    private static final String ROTATED_JWKS = "{\"keys\":[{\"kty\":\"RSA\",\"kid\":\"2\",\"x5t\":\"second\"}]}";
+    private static final long RELOAD_TIMEOUT = 20000;
+    private static final String PARTNER_FILE = "partner.example.com%2Fjwks.json";
+
+    private final MutualTLSJWKSLocalDirectory localDirectory = MutualTLSJWKSLocalDirectory.getInstance();
+    private Path directory;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+
+        directory = Files.createTempDirectory("jwks").toAbsolutePath().normalize();
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+
+        localDirectory.stop();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testFilesAreLoadedAtStartup() throws Exception {
+
+        write("partner.example.com%2F.well-known%2Fjwks.json", JWKS);
+        write("other.json", ROTATED_JWKS);
+        localDirectory.configure(directory);
+
+        assertTrue(localDirectory.isEnabled());
+        assertEquals(localDirectory.size(), 2);
+        MutualTLSJWKSCacheEntry jwks = localDirectory.get(new URL("https://Partner.Example.com/.well-known/jwks"));
+        assertNotNull(jwks);
+        assertEquals(jwks.getContent(), JWKS);
+        assertTrue(jwks.getThumbprintIndex().containsX5t("first"));
+        assertEquals(localDirectory.get(directory.resolve("other.json").toUri().toURL()).getContent(), ROTATED_JWKS);
+        assertNull(localDirectory.get(new URL("https://unknown.example.com/jwks")));
+    }
+
+    @Test
+    public void testFileNamesCoverTheWholeUri() throws Exception {
+
+        assertEquals(MutualTLSJWKSLocalDirectory.getRemoteFileName(new URL("https://partner.example.com/jwks")),
+                PARTNER_FILE);
+        assertEquals(MutualTLSJWKSLocalDirectory.getRemoteFileName(
+                new URL("https://partner.example.com:8443/tenant/jwks?kid=1")),
+                "partner.example.com%3A8443%2Ftenant%2Fjwks%3Fkid%3D1.json");
+    }
+
+    @Test
+    public void testUrisOfTheSameHostResolveToTheirOwnFiles() throws Exception {
+
+        write(PARTNER_FILE, JWKS);
+        write("partner.example.com.json", ROTATED_JWKS);
+        localDirectory.configure(directory);
+
+        assertEquals(localDirectory.get(new URL("https://partner.example.com/jwks")).getContent(), JWKS);
+        assertNull(localDirectory.get(new URL("https://partner.example.com/other/jwks")));
+        assertNull(localDirectory.get(new URL("https://partner.example.com/jwks/")));
+        assertNull(localDirectory.get(new URL("https://partner.example.com/jwks?client=other")));
+        assertNull(localDirectory.get(new URL("https://partner.example.com:8443/jwks")));
+    }
+
+    @Test
+    public void testFileUrisOutsideTheDirectoryAreNotResolved() throws Exception {
+
+        write(PARTNER_FILE, JWKS);
+        localDirectory.configure(directory);
+
+        assertNull(localDirectory.get(directory.resolve("../" + PARTNER_FILE).toUri().toURL()));
+        assertNull(localDirectory.get(directory.resolve("missing.json").toUri().toURL()));
+        assertTrue(MutualTLSJWKSLocalDirectory.isFileUri(directory.toUri().toURL()));
+        assertFalse(MutualTLSJWKSLocalDirectory.isFileUri(new URL("https://partner.example.com/jwks")));
+    }
+
+    @Test
+    public void testFilesAreReloadedWhenChanged() throws Exception {
+
+        write(PARTNER_FILE, JWKS);
+        localDirectory.configure(directory);
+        URL jwksUri = new URL("https://partner.example.com/jwks");
+
+        write(PARTNER_FILE, ROTATED_JWKS);
+        waitFor(() -> localDirectory.get(jwksUri).getThumbprintIndex().containsX5t("second"));
+        assertFalse(localDirectory.get(jwksUri).getThumbprintIndex().containsX5t("first"));
+
+        write("added.example.com%2Fjwks.json", JWKS);
+        waitFor(() -> localDirectory.get(new URL("https://added.example.com/jwks")) != null);
+
+        Files.delete(directory.resolve(PARTNER_FILE));
+        waitFor(() -> localDirectory.get(jwksUri) == null);
+    }
+
+    @Test
+    public void testNothingIsServedWhenStopped() throws Exception {
+
+        write(PARTNER_FILE, JWKS);
+        localDirectory.configure(directory);
+        localDirectory.stop();
+
+        assertFalse(localDirectory.isEnabled());
+        assertNull(localDirectory.get(new URL("https://partner.example.com/jwks")));
+    }
+
+    private void write(String fileName, String content) throws IOException {
+
+        // Files are replaced atomically, as the JWKS files of a deployment should be.
+        Path temporary = Files.createTempFile(directory.getParent(), "jwks", ".tmp");
+        Files.write(temporary, content.getBytes(StandardCharsets.UTF_8));
+        Files.move(temporary, directory.resolve(fileName), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void waitFor(ThrowingCondition condition) throws Exception {
+
+        long deadline = System.currentTimeMillis() + RELOAD_TIMEOUT;
+        while (!condition.isMet()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("JWKS local directory was not reloaded in " + RELOAD_TIMEOUT + " ms.");
+            }
+            Thread.sleep(20);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ThrowingCondition {
+
+        boolean isMet() throws Exception;
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.cache;
+
+import com.nimbusds.jose.util.Resource;
+import org.mockito.MockedStatic;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.common.testng.WithCarbonHome;
+import org.wso2.carbon.identity.common.testng.WithRealmService;
+import org.wso2.carbon.identity.core.util.IdentityUtil;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.CommonConstants;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSConfig;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSMetrics;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.mockito.Mockito.mockStatic;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+/**
+ * Test class for MutualTLSJWKSMirrors class.
+ */
+@WithCarbonHome
+@WithRealmService
+public class MutualTLSJWKSMirrorsTest {
+
+    private static final String PRIMARY_URI = "https://primary.localhost/jwks";
+    private static final String MIRROR_URI = "https://mirror.localhost/jwks";
+    private static final String SECOND_MIRROR_URI = "https://mirror2.localhost/jwks";
+    private static final String PRIMARY_JWKS = "{\"keys\":[{\"kid\":\"primary\"}]}";
+    private static final String MIRROR_JWKS = "{\"keys\":[{\"kid\":\"mirror\"}]}";
+    // Long enough for a test to fail if a failed URI waited for the hedge delay.
+    private static final long LONG_HEDGE_DELAY = 30000;
+
+    private final MutualTLSJWKSMirrors mirrors = MutualTLSJWKSMirrors.getInstance();
+
+    @AfterMethod
+    public void tearDown() {
+
+        mirrors.stop();
+        MutualTLSJWKSCache.getInstance().clear();
+    }
+
+    @Test
+    public void testUriWithoutMirrorsIsRetrievedDirectly() throws Exception {
+
+        AtomicInteger retrievals = new AtomicInteger();
+        Thread caller = Thread.currentThread();
+        Resource resource = mirrors.retrieve(new URL(PRIMARY_URI), Collections.emptyList(), uri -> {
+            retrievals.incrementAndGet();
+            assertSame(Thread.currentThread(), caller);
+            return new Resource(PRIMARY_JWKS, "application/json");
+        });
+
+        assertEquals(resource.getContent(), PRIMARY_JWKS);
+        assertEquals(retrievals.get(), 1);
+        assertTrue(mirrors.getStats().isEmpty());
+    }
+
+    @Test
+    public void testMirrorsAreRequestedOnCallingThreadWithoutTimeouts() throws Exception {
+
+        Thread caller = Thread.currentThread();
+        Resource resource = mirrors.retrieve(new URL(PRIMARY_URI), Collections.singletonList(new URL(MIRROR_URI)),
+                uri -> {
+                    assertSame(Thread.currentThread(), caller);
+                    if (PRIMARY_URI.equals(uri.toString())) {
+                        throw new IOException("Connection refused");
+                    }
+                    return new Resource(MIRROR_JWKS, "application/json");
+                });
+
+        assertEquals(resource.getContent(), MIRROR_JWKS);
+        assertEquals(mirrors.getStats().get(PRIMARY_URI).getFailures(), 1);
+        assertEquals(mirrors.getStats().get(MIRROR_URI).getUsed(), 1);
+    }
+
+    @Test
+    public void testMirrorsAreHedgedWithTimeouts() throws Exception {
+
+        AtomicReference<Thread> requestThread = new AtomicReference<>();
+        try (MockedStatic<IdentityUtil> identityUtil = mockStatic(IdentityUtil.class)) {
+            identityUtil.when(() -> IdentityUtil.getProperty(CommonConstants.HTTP_CONNECTION_TIMEOUT_XPATH))
+                    .thenReturn("1000");
+            identityUtil.when(() -> IdentityUtil.getProperty(CommonConstants.HTTP_READ_TIMEOUT_XPATH))
+                    .thenReturn("1000");
+            MutualTLSConfig.reload();
+            Resource resource = mirrors.retrieve(new URL(PRIMARY_URI),
+                    Collections.singletonList(new URL(MIRROR_URI)), uri -> {
+                        requestThread.set(Thread.currentThread());
+                        return new Resource(PRIMARY_JWKS, "application/json");
+                    });
+
+            assertEquals(resource.getContent(), PRIMARY_JWKS);
+            assertNotSame(requestThread.get(), Thread.currentThread());
+        } finally {
+            MutualTLSConfig.reload();
+        }
+    }
+
+    @Test
+    public void testMirrorIsRequestedWhenPrimaryIsSlow() throws Exception {
+
+        CountDownLatch release = new CountDownLatch(1);
+        long mirrorUsed = MutualTLSMetrics.getCount(MutualTLSMetrics.Counter.JWKS_MIRROR_USED);
+        try {
+            Resource resource = mirrors.retrieveHedged(Arrays.asList(new URL(PRIMARY_URI), new URL(MIRROR_URI)),
+                    uri -> {
+                        if (PRIMARY_URI.equals(uri.toString())) {
+                            awaitQuietly(release);
+                            return new Resource(PRIMARY_JWKS, "application/json");
+                        }
+                        return new Resource(MIRROR_JWKS, "application/json");
+                    }, 50);
+
+            assertEquals(resource.getContent(), MIRROR_JWKS);
+        } finally {
+            release.countDown();
+        }
+        assertEquals(MutualTLSMetrics.getCount(MutualTLSMetrics.Counter.JWKS_MIRROR_USED), mirrorUsed + 1);
+        assertEquals(mirrors.getStats().get(PRIMARY_URI).getSlow(), 1);
+        assertEquals(mirrors.getStats().get(PRIMARY_URI).getUsed(), 0);
+        assertEquals(mirrors.getStats().get(MIRROR_URI).getRequests(), 1);
+        assertEquals(mirrors.getStats().get(MIRROR_URI).getUsed(), 1);
+    }
+
+    @Test
+    public void testPrimaryIsUsedWhenItAnswersWithinHedgeDelay() throws Exception {
+
+        Resource resource = mirrors.retrieveHedged(Arrays.asList(new URL(PRIMARY_URI), new URL(MIRROR_URI)),
+                uri -> new Resource(PRIMARY_URI.equals(uri.toString()) ? PRIMARY_JWKS : MIRROR_JWKS,
+                        "application/json"), LONG_HEDGE_DELAY);
+
+        assertEquals(resource.getContent(), PRIMARY_JWKS);
+        assertEquals(mirrors.getStats().get(PRIMARY_URI).getUsed(), 1);
+        assertNull(mirrors.getStats().get(MIRROR_URI));
+        // The statistics are published through the metrics.
+        assertEquals(MutualTLSMetrics.getJwksUriStats().get(PRIMARY_URI).get("used"), Long.valueOf(1));
+        assertEquals(MutualTLSMetrics.getJwksUriStats().get(PRIMARY_URI).get("requests"), Long.valueOf(1));
+    }
+
+    @Test
+    public void testMirrorIsRequestedWithoutDelayWhenPrimaryFails() throws Exception {
+
+        Resource resource = mirrors.retrieveHedged(
+                Arrays.asList(new URL(PRIMARY_URI), new URL(MIRROR_URI), new URL(SECOND_MIRROR_URI)), uri -> {
+                    if (PRIMARY_URI.equals(uri.toString())) {
+                        throw new SocketTimeoutException("Read timed out");
+                    }
+                    if (MIRROR_URI.equals(uri.toString())) {
+                        // Not a JWK Set.
+                        return new Resource("<html></html>", "text/html");
+                    }
+                    return new Resource(MIRROR_JWKS, "application/json");
+                }, LONG_HEDGE_DELAY);
+
+        assertEquals(resource.getContent(), MIRROR_JWKS);
+        assertEquals(mirrors.getStats().get(PRIMARY_URI).getFailures(), 1);
+        assertEquals(mirrors.getStats().get(PRIMARY_URI).getTimeouts(), 1);
+        assertEquals(mirrors.getStats().get(MIRROR_URI).getFailures(), 1);
+        assertEquals(mirrors.getStats().get(MIRROR_URI).getTimeouts(), 0);
+        assertEquals(mirrors.getStats().get(SECOND_MIRROR_URI).getUsed(), 1);
+    }
+
+    @Test
+    public void testRetrievalFailsWhenAllUrisFail() throws Exception {
+
+        try {
+            mirrors.retrieveHedged(Arrays.asList(new URL(PRIMARY_URI), new URL(MIRROR_URI)), uri -> {
+                throw new IOException("Connection refused: " + uri);
+            }, LONG_HEDGE_DELAY);
+            fail("Retrieval should fail when neither the JWKS URI nor its mirrors answer.");
+        } catch (IOException e) {
+            assertEquals(e.getSuppressed().length, 1);
+        }
+        assertEquals(mirrors.getStats().get(PRIMARY_URI).getFailures(), 1);
+        assertEquals(mirrors.getStats().get(MIRROR_URI).getFailures(), 1);
+    }
+
+    @Test
+    public void testRefresherFetchesFromMirror() throws Exception {
+
+        URL primary = new URL(PRIMARY_URI);
+        MutualTLSJWKSRefresher refresher = new MutualTLSJWKSRefresher(uri -> {
+            if (PRIMARY_URI.equals(uri.toString())) {
+                throw new IOException("Connection refused");
+            }
+            return new Resource(MIRROR_JWKS, "application/json");
+        });
+
+        List<URL> mirrorUris = Collections.singletonList(new URL(MIRROR_URI));
+        MutualTLSJWKSCacheEntry jwks = refresher.fetch(primary, mirrorUris);
+
+        assertEquals(jwks.getContent(), MIRROR_JWKS);
+        assertEquals(MutualTLSJWKSCache.getInstance().getValueFromCache(new MutualTLSJWKSCacheKey(primary,
+                mirrorUris)).getContent(), MIRROR_JWKS);
+    }
+
+    @Test
+    public void testServiceProvidersSharingJWKSUriWithOtherMirrors() throws Exception {
+
+        URL primary = new URL(PRIMARY_URI);
+        List<URL> firstMirrors = Collections.singletonList(new URL(MIRROR_URI));
+        List<URL> secondMirrors = Collections.singletonList(new URL(SECOND_MIRROR_URI));
+        MutualTLSJWKSRefresher refresher = new MutualTLSJWKSRefresher(uri -> {
+            if (PRIMARY_URI.equals(uri.toString())) {
+                throw new IOException("Connection refused");
+            }
+            return new Resource(MIRROR_URI.equals(uri.toString()) ? MIRROR_JWKS : PRIMARY_JWKS,
+                    "application/json");
+        });
+
+        // The JWK Set retrieved through the mirror of one service provider is cached against its own URIs.
+        assertEquals(refresher.fetch(primary, firstMirrors).getContent(), MIRROR_JWKS);
+        MutualTLSJWKSCache cache = MutualTLSJWKSCache.getInstance();
+        assertNull(cache.getValueFromCache(new MutualTLSJWKSCacheKey(primary, secondMirrors)));
+        assertNull(cache.getValueFromCache(new MutualTLSJWKSCacheKey(primary, Collections.emptyList())));
+
+        // The other service provider gets the JWK Set of its own mirror.
+        assertEquals(refresher.fetch(primary, secondMirrors).getContent(), PRIMARY_JWKS);
+        assertEquals(cache.getValueFromCache(new MutualTLSJWKSCacheKey(primary, firstMirrors)).getContent(),
+                MIRROR_JWKS);
+
+        // A service provider without mirrors only gets the JWK Set of the JWKS URI itself.
+        try {
+            refresher.fetch(primary, Collections.emptyList());
+            fail("A JWK Set retrieved through mirrors should not be used for a JWKS URI without mirrors.");
+        } catch (IOException e) {
+            // Expected.
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
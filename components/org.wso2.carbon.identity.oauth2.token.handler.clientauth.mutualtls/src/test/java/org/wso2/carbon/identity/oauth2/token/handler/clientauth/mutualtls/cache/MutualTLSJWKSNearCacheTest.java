@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.cache;
+
+import com.nimbusds.jose.util.Resource;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Test class for MutualTLSJWKSNearCache class.
+ */
+public class MutualTLSJWKSNearCacheTest {
+
+    private static final String JWKS_URI = "https://localhost/jwks";
+    private static final String OTHER_JWKS_URI = "https://localhost/other/jwks";
+    private static final long TIMEOUT = 1000;
+
+    private final MutualTLSJWKSNearCache nearCache = MutualTLSJWKSNearCache.getInstance();
+
+    @BeforeMethod
+    public void setUp() {
+
+        nearCache.start();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+
+        nearCache.stop();
+    }
+
+    @Test
+    public void testPutAndGet() {
+
+        MutualTLSJWKSCacheEntry jwks = getJWKS("{\"keys\":[]}");
+        nearCache.put(JWKS_URI, jwks, nearCache.getStamp());
+
+        assertSame(nearCache.get(JWKS_URI), jwks);
+        assertNull(nearCache.get(OTHER_JWKS_URI));
+        assertEquals(nearCache.size(), 1);
+        assertTrue(nearCache.getWeight() > 2 * jwks.getContent().length());
+
+        nearCache.invalidate(JWKS_URI);
+        assertNull(nearCache.get(JWKS_URI));
+        assertEquals(nearCache.getWeight(), 0);
+    }
+
+    @Test
+    public void testPutAfterInvalidationIsDiscarded() {
+
+        long stamp = nearCache.getStamp();
+        // The JWKS cache entry is invalidated while the response read from it is being added.
+        nearCache.invalidate(JWKS_URI);
+        nearCache.put(JWKS_URI, getJWKS("{\"keys\":[]}"), stamp);
+
+        assertNull(nearCache.get(JWKS_URI));
+        assertEquals(nearCache.getWeight(), 0);
+    }
+
+    @Test
+    public void testEntriesExpire() {
+
+        nearCache.configure(4096, TIMEOUT);
+        MutualTLSJWKSCacheEntry jwks = getJWKS("{\"keys\":[]}");
+        nearCache.put(JWKS_URI, jwks, nearCache.getStamp());
+
+        assertSame(nearCache.get(JWKS_URI), jwks);
+        assertNull(nearCache.get(JWKS_URI, System.currentTimeMillis() + TIMEOUT));
+    }
+
+    @Test
+    public void testWeightIsBounded() {
+
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            content.append('k');
+        }
+        nearCache.configure(2048, TIMEOUT);
+        for (int i = 0; i < 20; i++) {
+            nearCache.put(JWKS_URI + i, getJWKS(content.toString()), nearCache.getStamp());
+            assertTrue(nearCache.getWeight() <= 2048);
+        }
+        assertTrue(nearCache.size() > 0);
+
+        // A response heavier than the cache is not cached.
+        for (int i = 0; i < 1000; i++) {
+            content.append('k');
+        }
+        nearCache.put(OTHER_JWKS_URI, getJWKS(content.toString()), nearCache.getStamp());
+        assertNull(nearCache.get(OTHER_JWKS_URI));
+
+        nearCache.invalidateAll();
+        assertEquals(nearCache.size(), 0);
+        assertEquals(nearCache.getWeight(), 0);
+    }
+
+    private static MutualTLSJWKSCacheEntry getJWKS(String content) {
+
+        return new MutualTLSJWKSCacheEntry(new Resource(content, "application/json"));
+    }
+}
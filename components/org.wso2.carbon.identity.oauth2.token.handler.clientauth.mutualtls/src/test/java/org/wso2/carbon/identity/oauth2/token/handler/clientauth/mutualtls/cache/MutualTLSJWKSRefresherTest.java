@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.cache;
+
+import com.nimbusds.jose.util.Resource;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.common.testng.WithCarbonHome;
+import org.wso2.carbon.identity.common.testng.WithRealmService;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.fail;
+
+/**
+ * Test class for MutualTLSJWKSRefresher class.
+ */
+@WithCarbonHome
+@WithRealmService
+public class MutualTLSJWKSRefresherTest {
+
+    private static final String JWKS_URI = "https://localhost/jwks";
+    private static final String JWKS = "{\"keys\":[]}";
+
+    @AfterMethod
+    public void tearDown() {
+
+        MutualTLSJWKSCache.getInstance().clear();
+    }
+
+    @Test
+    public void testFetchAddsToCache() throws Exception {
+
+        MutualTLSJWKSRefresher refresher = new MutualTLSJWKSRefresher(uri -> new Resource(JWKS, "application/json"));
+        MutualTLSJWKSCacheEntry jwks = refresher.fetch(new URL(JWKS_URI));
+
+        assertEquals(jwks.getContent(), JWKS);
+        assertSame(MutualTLSJWKSCache.getInstance().getValueFromCache(new MutualTLSJWKSCacheKey(JWKS_URI)), jwks);
+    }
+
+    @Test
+    public void testConcurrentFetchesAreCoalesced() throws Exception {
+
+        AtomicInteger retrievals = new AtomicInteger();
+        CountDownLatch retrieving = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        MutualTLSJWKSRefresher refresher = new MutualTLSJWKSRefresher(uri -> {
+            retrievals.incrementAndGet();
+            retrieving.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new Resource(JWKS, "application/json");
+        });
+        URL jwksUri = new URL(JWKS_URI);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<MutualTLSJWKSCacheEntry> first = executor.submit(() -> refresher.fetch(jwksUri));
+            retrieving.await(10, TimeUnit.SECONDS);
+            Future<MutualTLSJWKSCacheEntry> second = executor.submit(() -> refresher.fetch(jwksUri));
+            // Give the second fetch time to find the first one in progress.
+            Thread.sleep(100);
+            release.countDown();
+
+            assertSame(second.get(10, TimeUnit.SECONDS), first.get(10, TimeUnit.SECONDS));
+            assertEquals(retrievals.get(), 1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRefreshIsRateLimited() throws Exception {
+
+        AtomicInteger retrievals = new AtomicInteger();
+        MutualTLSJWKSRefresher refresher = new MutualTLSJWKSRefresher(uri -> {
+            retrievals.incrementAndGet();
+            return new Resource(JWKS, "application/json");
+        });
+        URL jwksUri = new URL(JWKS_URI);
+
+        assertNotNull(refresher.refresh(jwksUri, 60000));
+        assertNull(refresher.refresh(jwksUri, 60000));
+        assertNotNull(refresher.refresh(jwksUri, 0));
+        assertEquals(retrievals.get(), 2);
+    }
+
+    @Test
+    public void testFailedFetchIsNotCached() throws Exception {
+
+        MutualTLSJWKSRefresher refresher = new MutualTLSJWKSRefresher(uri -> {
+            throw new IOException("Connection refused");
+        });
+        try {
+            refresher.fetch(new URL(JWKS_URI));
+            fail("Expected the fetch to fail.");
+        } catch (IOException e) {
+            assertEquals(e.getMessage(), "Connection refused");
+        }
+        assertNull(MutualTLSJWKSCache.getInstance().getValueFromCache(new MutualTLSJWKSCacheKey(JWKS_URI)));
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.cache;
+
+import com.nimbusds.jose.util.Resource;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Test class for MutualTLSWarmStartSnapshot class.
+ */
+public class MutualTLSWarmStartSnapshotTest {
+
+    private static final String JWKS_URI = "https://partner.example.com/jwks";
+    private static final String JWKS = "{\"keys\":[{\"kty\":\"RSA\",\"kid\":\"1\",\"x5t\":\"first\"}]}";
+    private static final long MAX_AGE = TimeUnit.HOURS.toMillis(1);
+
+    private final MutualTLSWarmStartSnapshot snapshot = MutualTLSWarmStartSnapshot.getInstance();
+    private Path file;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+
+        file = Files.createTempFile("mutualtls", ".snapshot").toAbsolutePath().normalize();
+        snapshot.configure(file, 300, MAX_AGE);
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+
+        snapshot.stop();
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testJwksIsWrittenAndRestored() throws Exception {
+
+        long now = System.currentTimeMillis();
+        snapshot.record(JWKS_URI, new MutualTLSJWKSCacheEntry(new Resource(JWKS, "application/json"), now - 1000));
+        snapshot.write(file, now);
+        snapshot.forgetAll();
+
+        assertEquals(snapshot.load(file, MAX_AGE, now), 1);
+        assertEquals(snapshot.getRestoredCount(), 1);
+        MutualTLSJWKSCacheEntry restored = snapshot.takeRestored(JWKS_URI);
+        assertNotNull(restored);
+        assertEquals(restored.getContent(), JWKS);
+        assertEquals(restored.getContentType(), "application/json");
+        assertEquals(restored.getFetchedTime(), now - 1000);
+        assertEquals(restored.getThumbprintIndex().size(), 1);
+        assertTrue(restored.getThumbprintIndex().containsX5t("first"));
+        assertEquals(restored.getValue().getContent(), JWKS);
+        // A restored JWK Set is only used once, and is fetched again afterwards.
+        assertNull(snapshot.takeRestored(JWKS_URI));
+    }
+
+    @Test
+    public void testExpiredJwksIsNotRestored() throws Exception {
+
+        long now = System.currentTimeMillis();
+        snapshot.record(JWKS_URI, new MutualTLSJWKSCacheEntry(new Resource(JWKS, "application/json"),
+                now - MAX_AGE / 2));
+        snapshot.write(file, now);
+        snapshot.forgetAll();
+
+        assertEquals(snapshot.load(file, MAX_AGE, now + MAX_AGE), 0);
+        assertNull(snapshot.takeRestored(JWKS_URI));
+    }
+
+    @Test
+    public void testDamagedSnapshotIsIgnored() throws Exception {
+
+        long now = System.currentTimeMillis();
+        snapshot.record(JWKS_URI, new MutualTLSJWKSCacheEntry(new Resource(JWKS, "application/json"), now));
+        snapshot.write(file, now);
+        snapshot.forgetAll();
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(file, bytes);
+
+        assertEquals(snapshot.load(file, MAX_AGE, now), 0);
+        assertNull(snapshot.takeRestored(JWKS_URI));
+    }
+
+    @Test
+    public void testSnapshotOfEarlierVersionIsIgnored() throws Exception {
+
+        long now = System.currentTimeMillis();
+        snapshot.record(JWKS_URI, new MutualTLSJWKSCacheEntry(new Resource(JWKS, "application/json"), now));
+        snapshot.write(file, now);
+        snapshot.forgetAll();
+        // Version 1 snapshots also held the registered certificate filter, which is not restored.
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer.wrap(bytes).putInt(4, 1);
+        CRC32 checksum = new CRC32();
+        checksum.update(bytes, 0, bytes.length - 8);
+        ByteBuffer.wrap(bytes).putLong(bytes.length - 8, checksum.getValue());
+        Files.write(file, bytes);
+
+        assertEquals(snapshot.load(file, MAX_AGE, now), 0);
+        assertNull(snapshot.takeRestored(JWKS_URI));
+    }
+
+    @Test
+    public void testMissingSnapshotIsIgnored() throws Exception {
+
+        Files.delete(file);
+
+        assertEquals(snapshot.load(file, MAX_AGE, System.currentTimeMillis()), 0);
+        assertFalse(Files.exists(file));
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.filter;
+
+import org.apache.axis2.clustering.ClusteringAgent;
+import org.apache.axis2.clustering.ClusteringMessage;
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.axis2.engine.AxisConfiguration;
+import org.mockito.ArgumentCaptor;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.internal.MutualTLSDataHolder;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.CertificateThumbprint;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.ThumbprintEngine;
+import org.wso2.carbon.utils.ConfigurationContextService;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.sql.SQLException;
+import java.util.Base64;
+import java.util.Collections;
+
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Test class for CertificateBloomFilter and RegisteredCertificateFilter classes.
+ */
+public class RegisteredCertificateFilterTest {
+
+    private static final String CERTIFICATE_CONTENT = "MIIDmzCCAoOgAwIBAgIJAJuzH6NrV5s5MA0GCSqGSIb3DQEBCwUAMGQxCzAJBgNV"
+            + "BAYTAlNMMQswCQYDVQQIDAJXUDEQMA4GA1UEBwwHQ29sb21ibzENMAsGA1UECgwE"
+            + "d3NvMjENMAsGA1UECwwEd3NvMjEYMBYGA1UEAwwPdHJhdmVsb2NpdHkuY29tMB4X"
+            + "DTE4MDIwNjEwNTk1N1oXDTE5MDIwNjEwNTk1N1owZDELMAkGA1UEBhMCU0wxCzAJ"
+            + "BgNVBAgMAldQMRAwDgYDVQQHDAdDb2xvbWJvMQ0wCwYDVQQKDAR3c28yMQ0wCwYD"
+            + "VQQLDAR3c28yMRgwFgYDVQQDDA90cmF2ZWxvY2l0eS5jb20wggEiMA0GCSqGSIb3"
+            + "DQEBAQUAA4IBDwAwggEKAoIBAQDlKn3dmaLW7iBOKdlWY8Go8Q7kR6HNY/8j0arv"
+            + "EcZYqMrihcSX5i5Mz57t6Z3xpaGay2jPWND7dDA/RocircleBKQk0X2OxoEYba3W"
+            + "t477EpN9RWGAZuuANUSVKjC8FsNYhEp9y59IuxK+IgDAEfR8O2RNLYA6O3UjBC/R"
+            + "f443CwOE4jFm3eVAeLIBudn/viC56rPBozVX4DxPaHIzxocfK6EpDljEG4lJ7otS"
+            + "SbIpPlmAO/0f8F1Q6syv+sCkPRGn/OjTXWtUg6QXAclguOCl3MI+pLMThQUATcKb"
+            + "2QkPl8r8/b/S8qMRKzSVYyjNP+CsDRO/MdlC50QZSJBaNYqdAgMBAAGjUDBOMB0G"
+            + "A1UdDgQWBBSIXyhWV6Ac+FiqdXEeQwqzJfFLhDAfBgNVHSMEGDAWgBSIXyhWV6Ac"
+            + "+FiqdXEeQwqzJfFLhDAMBgNVHRMEBTADAQH/MA0GCSqGSIb3DQEBCwUAA4IBAQBQ"
+            + "S2jmfzF8x1iwmRqXILZ6qkF5ABAlNa3Z3bMFB7uErw2BxASMOLWfjZdEcyICDGIf"
+            + "ZeYchqEPTvv/RIqDlu8xda3N2kRp1un5Hfffavm6ZWR3J8LdsnSjrehZ/afxuy8a"
+            + "OFKiRtj9tqpG3C/s/NBJ9Gl4u5YhihOSJG9ELihJSxWDYI641AOalWnUQ/SxfeCO"
+            + "TY75aViCAD6QDmBxe/opQYExBdgNOCQ6HdP5WWBT6EEggBe/mqOM/dchj57rpPtw"
+            + "IOQjy9UCaY7tq4SmhAJyab0mxjcFoRBpzOJIDh+N8ozSDK+MepyFSwtW5zVacOiG"
+            + "OQUrBTGXQFZOGKje8sbS";
+    private static final String CLIENT_ID = "someClientId";
+
+    @AfterMethod
+    public void tearDown() {
+
+        RegisteredCertificateFilter.getInstance().setSnapshot(null);
+    }
+
+    @Test
+    public void testBloomFilterHasNoFalseNegatives() {
+
+        CertificateBloomFilter filter = new CertificateBloomFilter(10000, 0.001);
+        for (int i = 0; i < 10000; i++) {
+            filter.put(digestOf(i));
+        }
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(filter.mightContain(digestOf(i)));
+        }
+    }
+
+    @Test
+    public void testBloomFilterLooksUpThumbprints() {
+
+        CertificateBloomFilter filter = new CertificateBloomFilter(1000, 0.001);
+        for (int i = 0; i < 1000; i++) {
+            filter.put(digestOf(i));
+        }
+        for (int i = 0; i < 2000; i++) {
+            CertificateThumbprint thumbprint = ThumbprintEngine.getThumbprint(ByteBuffer.allocate(4).putInt(i).array());
+            assertEquals(filter.mightContain(thumbprint), filter.mightContain(digestOf(i)));
+        }
+    }
+
+    @Test
+    public void testBloomFilterFalsePositiveRate() {
+
+        CertificateBloomFilter filter = new CertificateBloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.put(digestOf(i));
+        }
+        int falsePositives = 0;
+        for (int i = 10000; i < 110000; i++) {
+            if (filter.mightContain(digestOf(i))) {
+                falsePositives++;
+            }
+        }
+        // Expected around 1000 false positives out of 100000 lookups.
+        assertTrue(falsePositives < 2000, "Unexpected number of false positives : " + falsePositives);
+    }
+
+    @Test
+    public void testFilterIsInactiveWithoutSnapshot() throws Exception {
+
+        assertFalse(RegisteredCertificateFilter.getInstance().isDefinitelyUnregistered(CLIENT_ID, getCertificate()));
+    }
+
+    @Test
+    public void testUnregisteredCertificateIsRejected() throws Exception {
+
+        RegisteredCertificateFilter.getInstance().setSnapshot(
+                RegisteredCertificateFilter.build(Collections.emptyList(), Collections.emptyList(), 0.001));
+        assertTrue(RegisteredCertificateFilter.getInstance().isDefinitelyUnregistered(CLIENT_ID, getCertificate()));
+    }
+
+    @Test
+    public void testRegisteredCertificateIsAccepted() throws Exception {
+
+        X509Certificate certificate = getCertificate();
+        RegisteredCertificateFilter.Snapshot snapshot = RegisteredCertificateFilter.build(Collections.emptyList(),
+                Collections.emptyList(), 0.001);
+        snapshot.add(ThumbprintEngine.getThumbprint(certificate).getSha256(), null);
+        RegisteredCertificateFilter.getInstance().setSnapshot(snapshot);
+        assertFalse(RegisteredCertificateFilter.getInstance().isDefinitelyUnregistered(CLIENT_ID, certificate));
+    }
+
+    @Test
+    public void testJwksClientIsNotRejected() throws Exception {
+
+        RegisteredCertificateFilter.Snapshot snapshot = RegisteredCertificateFilter.build(Collections.emptyList(),
+                Collections.emptyList(), 0.001);
+        snapshot.add(null, CLIENT_ID);
+        RegisteredCertificateFilter.getInstance().setSnapshot(snapshot);
+        assertFalse(RegisteredCertificateFilter.getInstance().isDefinitelyUnregistered(CLIENT_ID, getCertificate()));
+        assertTrue(RegisteredCertificateFilter.getInstance().isDefinitelyUnregistered("otherClientId",
+                getCertificate()));
+    }
+
+    @Test
+    public void testRebuildFromRegistrations() throws Exception {
+
+        RegisteredCertificateFilter.getInstance().setSnapshot(
+                RegisteredCertificateFilter.build(Collections.emptyList(), Collections.emptyList(), 0.001));
+        RegisteredCertificateFilter.getInstance().rebuild(() -> {
+            RegisteredCertificateFilter.Registrations registrations = new RegisteredCertificateFilter.Registrations();
+            registrations.getCertificates().add(null);
+            registrations.getJwksClientIds().add("jwksClientId");
+            return registrations;
+        });
+        assertTrue(RegisteredCertificateFilter.getInstance().isDefinitelyUnregistered(CLIENT_ID, getCertificate()));
+        assertFalse(RegisteredCertificateFilter.getInstance().isDefinitelyUnregistered("jwksClientId",
+                getCertificate()));
+
+        RegisteredCertificateFilter.getInstance().rebuild(() -> {
+            RegisteredCertificateFilter.Registrations registrations = new RegisteredCertificateFilter.Registrations();
+            registrations.getCertificates().add(CERTIFICATE_CONTENT);
+            return registrations;
+        });
+        assertFalse(RegisteredCertificateFilter.getInstance().isDefinitelyUnregistered(CLIENT_ID, getCertificate()));
+    }
+
+    @Test
+    public void testFailedRebuildKeepsPreviousFilter() throws Exception {
+
+        RegisteredCertificateFilter.Snapshot snapshot = RegisteredCertificateFilter.build(
+                Collections.singletonList(CERTIFICATE_CONTENT), Collections.emptyList(), 0.001);
+        RegisteredCertificateFilter.getInstance().setSnapshot(snapshot);
+        RegisteredCertificateFilter.getInstance().rebuild(() -> {
+            throw new SQLException("Database is not available.");
+        });
+
+        assertFalse(RegisteredCertificateFilter.getInstance().isDefinitelyUnregistered(CLIENT_ID, getCertificate()));
+    }
+
+    @Test
+    public void testClientChangedOnAnotherNodeIsNotRejected() throws Exception {
+
+        RegisteredCertificateFilter.getInstance().setSnapshot(
+                RegisteredCertificateFilter.build(Collections.emptyList(), Collections.emptyList(), 0.001));
+        new RegisteredCertificateChangeMessage(CLIENT_ID).execute(null);
+
+        assertFalse(RegisteredCertificateFilter.getInstance().isDefinitelyUnregistered(CLIENT_ID, getCertificate()));
+        assertTrue(RegisteredCertificateFilter.getInstance().isDefinitelyUnregistered("otherClientId",
+                getCertificate()));
+    }
+
+    @Test
+    public void testChangeIsAnnouncedToOtherNodes() throws Exception {
+
+        ClusteringAgent clusteringAgent = mock(ClusteringAgent.class);
+        ConfigurationContextService configurationContextService = mock(ConfigurationContextService.class);
+        ConfigurationContext configurationContext = mock(ConfigurationContext.class);
+        AxisConfiguration axisConfiguration = mock(AxisConfiguration.class);
+        when(configurationContextService.getServerConfigContext()).thenReturn(configurationContext);
+        when(configurationContext.getAxisConfiguration()).thenReturn(axisConfiguration);
+        when(axisConfiguration.getClusteringAgent()).thenReturn(clusteringAgent);
+        MutualTLSDataHolder.getInstance().setConfigurationContextService(configurationContextService);
+        try {
+            // The first change of a client is announced as well.
+            RegisteredCertificateChangeMessage.announceChange(CLIENT_ID);
+        } finally {
+            MutualTLSDataHolder.getInstance().setConfigurationContextService(null);
+        }
+        ArgumentCaptor<ClusteringMessage> message = ArgumentCaptor.forClass(ClusteringMessage.class);
+        verify(clusteringAgent).sendMessage(message.capture(), eq(true));
+
+        // The filter of the receiving node, which was built before the change.
+        RegisteredCertificateFilter.getInstance().setSnapshot(
+                RegisteredCertificateFilter.build(Collections.emptyList(), Collections.emptyList(), 0.001));
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        try (ObjectOutputStream outputStream = new ObjectOutputStream(serialized)) {
+            outputStream.writeObject(message.getValue());
+        }
+        try (ObjectInputStream inputStream = new ObjectInputStream(
+                new ByteArrayInputStream(serialized.toByteArray()))) {
+            ((ClusteringMessage) inputStream.readObject()).execute(null);
+        }
+
+        assertFalse(RegisteredCertificateFilter.getInstance().isDefinitelyUnregistered(CLIENT_ID, getCertificate()));
+        assertTrue(RegisteredCertificateFilter.getInstance().isDefinitelyUnregistered("otherClientId",
+                getCertificate()));
+    }
+
+    @Test
+    public void testUnattributedChangeDisablesRejection() throws Exception {
+
+        RegisteredCertificateFilter.getInstance().setSnapshot(
+                RegisteredCertificateFilter.build(Collections.emptyList(), Collections.emptyList(), 0.001));
+        new RegisteredCertificateChangeMessage(null).execute(null);
+
+        assertFalse(RegisteredCertificateFilter.getInstance().isDefinitelyUnregistered(CLIENT_ID, getCertificate()));
+    }
+
+    private static byte[] digestOf(int value) {
+
+        return ThumbprintEngine.getThumbprint(ByteBuffer.allocate(4).putInt(value).array()).getSha256();
+    }
+
+    private static X509Certificate getCertificate() throws Exception {
+
+        return (X509Certificate) CertificateFactory.getInstance("X.509").generateCertificate(
+                new ByteArrayInputStream(Base64.getDecoder().decode(CERTIFICATE_CONTENT)));
+    }
+}
@@ -36,7 +36,10 @@ import java.util.ArrayList;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mockStatic;
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
 
 /**
  * Test class for AbstractMTLSTokenBindingGrantHandlerTest class.
@@ -116,4 +119,69 @@ public class AbstractMTLSTokenBindingGrantHandlerTest {
             assertFalse(validateScope);
         }
     }
+
+    @Test
+    public void testBindCertificate() {
+
+        OAuth2AccessTokenReqDTO oauth2AccessTokenReqDTO = oauth2AccessTokenReqDTOObject();
+        oauth2AccessTokenReqDTO.setHttpRequestHeaders(new HttpRequestHeader[0]);
+        oauth2AccessTokenReqDTO.getoAuthClientAuthnContext().addParameter(
+                CommonConstants.CLIENT_CERTIFICATE_THUMBPRINT_PARAM, "thumbprint");
+        OAuthTokenReqMessageContext oAuthTokenReqMessageContext =
+                new OAuthTokenReqMessageContext(oauth2AccessTokenReqDTO);
+        oAuthTokenReqMessageContext.setScope(new String[]{"openid"});
+
+        assertTrue(new AbstractMTLSTokenBindingGrantHandler().bindCertificate(oAuthTokenReqMessageContext));
+        assertEquals(oAuthTokenReqMessageContext.getScope(), new String[]{"openid"});
+        assertEquals(oAuthTokenReqMessageContext.getTokenBinding().getBindingType(),
+                CommonConstants.CERTIFICATE_TOKEN_BINDING_TYPE);
+        assertEquals(oAuthTokenReqMessageContext.getTokenBinding().getBindingValue(), "thumbprint");
+
+        // A token that is already bound is not bound again.
+        assertFalse(new AbstractMTLSTokenBindingGrantHandler().bindCertificate(oAuthTokenReqMessageContext));
+    }
+
+    @Test
+    public void testBindCertificateAfterCoreTokenBinding() {
+
+        OAuth2AccessTokenReqDTO oauth2AccessTokenReqDTO = oauth2AccessTokenReqDTOObject();
+        oauth2AccessTokenReqDTO.getoAuthClientAuthnContext().addParameter(
+                CommonConstants.CLIENT_CERTIFICATE_THUMBPRINT_PARAM, "thumbprint");
+        OAuthTokenReqMessageContext oAuthTokenReqMessageContext =
+                new OAuthTokenReqMessageContext(oauth2AccessTokenReqDTO);
+        // The OAuth core resets the binding of applications without a token binding type before the grant handler
+        // issues the token.
+        oAuthTokenReqMessageContext.setTokenBinding(null);
+
+        assertTrue(new AbstractMTLSTokenBindingGrantHandler().bindCertificate(oAuthTokenReqMessageContext));
+        assertEquals(oAuthTokenReqMessageContext.getTokenBinding().getBindingValue(), "thumbprint");
+    }
+
+    @Test
+    public void testBindCertificateWithoutMTLSAuthentication() {
+
+        OAuth2AccessTokenReqDTO oauth2AccessTokenReqDTO = oauth2AccessTokenReqDTOObject();
+        oauth2AccessTokenReqDTO.setoAuthClientAuthnContext(new OAuthClientAuthnContext());
+        OAuthTokenReqMessageContext oAuthTokenReqMessageContext =
+                new OAuthTokenReqMessageContext(oauth2AccessTokenReqDTO);
+
+        assertFalse(new AbstractMTLSTokenBindingGrantHandler().bindCertificate(oAuthTokenReqMessageContext));
+        assertNull(oAuthTokenReqMessageContext.getTokenBinding());
+    }
+
+    @Test
+    public void testBindRefreshedTokenMigratesLegacyScope() {
+
+        OAuth2AccessTokenReqDTO oauth2AccessTokenReqDTO = oauth2AccessTokenReqDTOObject();
+        oauth2AccessTokenReqDTO.setoAuthClientAuthnContext(new OAuthClientAuthnContext());
+        OAuthTokenReqMessageContext oAuthTokenReqMessageContext =
+                new OAuthTokenReqMessageContext(oauth2AccessTokenReqDTO);
+        oAuthTokenReqMessageContext.setScope(new String[]{"openid", "x5t#SHA256:thumbprint"});
+
+        new AbstractMTLSTokenBindingGrantHandler().bindRefreshedToken(oAuthTokenReqMessageContext);
+        assertEquals(oAuthTokenReqMessageContext.getScope(), new String[]{"openid"});
+        assertEquals(oAuthTokenReqMessageContext.getTokenBinding().getBindingType(),
+                CommonConstants.CERTIFICATE_TOKEN_BINDING_TYPE);
+        assertEquals(oAuthTokenReqMessageContext.getTokenBinding().getBindingValue(), "thumbprint");
+    }
 }
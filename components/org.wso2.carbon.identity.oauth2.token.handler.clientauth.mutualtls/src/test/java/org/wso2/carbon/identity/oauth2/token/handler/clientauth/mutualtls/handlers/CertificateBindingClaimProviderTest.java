@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.handlers;
+
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.oauth2.authz.OAuthAuthzReqMessageContext;
+import org.wso2.carbon.identity.oauth2.dto.OAuth2AccessTokenReqDTO;
+import org.wso2.carbon.identity.oauth2.token.OAuthTokenReqMessageContext;
+import org.wso2.carbon.identity.oauth2.token.bindings.TokenBinding;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.CommonConstants;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Test class for CertificateBindingClaimProvider class.
+ */
+public class CertificateBindingClaimProviderTest {
+
+    private static final String THUMBPRINT = "bwcK0esc3ACC3DB2Y5_lESsXE8o9ltc05O89jdN-dg2";
+
+    private final CertificateBindingClaimProvider claimProvider = new CertificateBindingClaimProvider();
+
+    @Test
+    public void testConfirmationClaimOfCertificateBoundToken() {
+
+        OAuthTokenReqMessageContext tokReqMsgCtx = new OAuthTokenReqMessageContext(new OAuth2AccessTokenReqDTO());
+        tokReqMsgCtx.setTokenBinding(
+                new TokenBinding(CommonConstants.CERTIFICATE_TOKEN_BINDING_TYPE, "reference", THUMBPRINT));
+
+        Map<String, Object> claims = claimProvider.getAdditionalClaims(tokReqMsgCtx);
+        assertEquals(claims, Collections.singletonMap("cnf", Collections.singletonMap("x5t#S256", THUMBPRINT)));
+    }
+
+    @Test
+    public void testNoClaimsForUnboundToken() {
+
+        OAuthTokenReqMessageContext tokReqMsgCtx = new OAuthTokenReqMessageContext(new OAuth2AccessTokenReqDTO());
+        assertTrue(claimProvider.getAdditionalClaims(tokReqMsgCtx).isEmpty());
+
+        tokReqMsgCtx.setTokenBinding(new TokenBinding("cookie", "reference", THUMBPRINT));
+        assertTrue(claimProvider.getAdditionalClaims(tokReqMsgCtx).isEmpty());
+
+        assertTrue(claimProvider.getAdditionalClaims(new OAuthAuthzReqMessageContext(null)).isEmpty());
+    }
+}
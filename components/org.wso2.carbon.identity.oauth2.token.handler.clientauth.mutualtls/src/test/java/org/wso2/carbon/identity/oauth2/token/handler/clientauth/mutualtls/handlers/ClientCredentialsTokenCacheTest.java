@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.handlers;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.oauth2.dto.OAuth2AccessTokenReqDTO;
+import org.wso2.carbon.identity.oauth2.dto.OAuth2AccessTokenRespDTO;
+import org.wso2.carbon.identity.oauth2.token.OAuthTokenReqMessageContext;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.TokenBindingUtil;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertNull;
+
+/**
+ * Test class for ClientCredentialsTokenCache class.
+ */
+public class ClientCredentialsTokenCacheTest {
+
+    private static final String KEY = "carbon.super\nclient\nthumbprint\nread write";
+
+    private final ClientCredentialsTokenCache cache = ClientCredentialsTokenCache.getInstance();
+
+    @BeforeMethod
+    public void setUp() {
+
+        cache.configure(10, 0.5);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+
+        cache.stop();
+    }
+
+    @Test
+    public void testReuseWhileEnoughLifetimeIsLeft() {
+
+        OAuth2AccessTokenRespDTO tokenRespDTO = new OAuth2AccessTokenRespDTO();
+        tokenRespDTO.setAccessToken("token");
+        tokenRespDTO.setTokenId("tokenId");
+        tokenRespDTO.setAuthorizedScopes("read write");
+        tokenRespDTO.setExpiresInMillis(3600000);
+        tokenRespDTO.setExpiresIn(3600);
+        tokenRespDTO.addParameter("param", "value");
+        cache.put(KEY, tokenRespDTO, 0);
+
+        OAuth2AccessTokenRespDTO reused = cache.get(KEY, 1000000);
+        assertEquals(reused.getAccessToken(), "token");
+        assertEquals(reused.getTokenId(), "tokenId");
+        assertEquals(reused.getAuthorizedScopes(), "read write");
+        assertEquals(reused.getExpiresInMillis(), 2600000);
+        assertEquals(reused.getExpiresIn(), 2600);
+        assertEquals(reused.getParameters().get("param"), "value");
+
+        // Half of the lifetime of the token has passed.
+        assertNull(cache.get(KEY, 1800000));
+        assertEquals(cache.size(), 0);
+    }
+
+    @Test
+    public void testErrorResponseIsNotCached() {
+
+        OAuth2AccessTokenRespDTO tokenRespDTO = new OAuth2AccessTokenRespDTO();
+        tokenRespDTO.setError(true);
+        cache.put(KEY, tokenRespDTO, 0);
+
+        assertNull(cache.get(KEY, 0));
+    }
+
+    @Test
+    public void testInvalidate() {
+
+        OAuth2AccessTokenRespDTO tokenRespDTO = new OAuth2AccessTokenRespDTO();
+        tokenRespDTO.setAccessToken("token");
+        tokenRespDTO.setExpiresInMillis(3600000);
+        cache.put(KEY, tokenRespDTO, 0);
+        cache.invalidate(KEY);
+
+        assertNull(cache.get(KEY, 0));
+    }
+
+    @Test
+    public void testInvalidateClient() {
+
+        OAuth2AccessTokenRespDTO tokenRespDTO = new OAuth2AccessTokenRespDTO();
+        tokenRespDTO.setAccessToken("token");
+        tokenRespDTO.setExpiresInMillis(3600000);
+        cache.put(KEY, tokenRespDTO, 0);
+        cache.put("carbon.super\nclient\notherThumbprint\nread", tokenRespDTO, 0);
+        cache.put("carbon.super\nclient2\nthumbprint\nread write", tokenRespDTO, 0);
+        cache.put("tenant\nclient\nthumbprint\nread write", tokenRespDTO, 0);
+        cache.invalidateClient("carbon.super", "client");
+
+        assertNull(cache.get(KEY, 0));
+        assertNull(cache.get("carbon.super\nclient\notherThumbprint\nread", 0));
+        assertEquals(cache.get("carbon.super\nclient2\nthumbprint\nread write", 0).getAccessToken(), "token");
+        assertEquals(cache.get("tenant\nclient\nthumbprint\nread write", 0).getAccessToken(), "token");
+    }
+
+    @Test
+    public void testInvalidateCertificate() {
+
+        OAuth2AccessTokenRespDTO tokenRespDTO = new OAuth2AccessTokenRespDTO();
+        tokenRespDTO.setAccessToken("token");
+        tokenRespDTO.setExpiresInMillis(3600000);
+        cache.put(KEY, tokenRespDTO, 0);
+        cache.put("tenant\nclient2\nthumbprint\nread", tokenRespDTO, 0);
+        cache.put("carbon.super\nclient\notherThumbprint\nread write", tokenRespDTO, 0);
+        // The scopes are not mistaken for the thumbprint.
+        cache.put("carbon.super\nclient\nscope\nthumbprint", tokenRespDTO, 0);
+        cache.invalidateCertificate("thumbprint");
+
+        // A revoked token is not handed out again, so a new token is issued for the certificate.
+        assertNull(cache.get(KEY, 0));
+        assertNull(cache.get("tenant\nclient2\nthumbprint\nread", 0));
+        assertEquals(cache.get("carbon.super\nclient\notherThumbprint\nread write", 0).getAccessToken(), "token");
+        assertEquals(cache.get("carbon.super\nclient\nscope\nthumbprint", 0).getAccessToken(), "token");
+    }
+
+    @Test
+    public void testGetKey() {
+
+        OAuth2AccessTokenReqDTO tokenReqDTO = new OAuth2AccessTokenReqDTO();
+        tokenReqDTO.setClientId("client");
+        tokenReqDTO.setTenantDomain("carbon.super");
+        OAuthTokenReqMessageContext tokReqMsgCtx = new OAuthTokenReqMessageContext(tokenReqDTO);
+        tokReqMsgCtx.setScope(new String[]{"write", "read"});
+
+        // Tokens that are not bound to a certificate are not reused.
+        assertNull(ClientCredentialsTokenCache.getKey(tokReqMsgCtx));
+
+        tokReqMsgCtx.setTokenBinding(TokenBindingUtil.createCertificateBinding("thumbprint"));
+        assertEquals(ClientCredentialsTokenCache.getKey(tokReqMsgCtx), KEY);
+
+        tokReqMsgCtx.setTokenBinding(TokenBindingUtil.createCertificateBinding("otherThumbprint"));
+        assertNotEquals(ClientCredentialsTokenCache.getKey(tokReqMsgCtx), KEY);
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.handlers;
+
+import org.mockito.MockedStatic;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.common.testng.WithCarbonHome;
+import org.wso2.carbon.identity.oauth.common.OAuthConstants;
+import org.wso2.carbon.identity.oauth2.bean.OAuthClientAuthnContext;
+import org.wso2.carbon.identity.oauth2.dto.OAuth2AccessTokenReqDTO;
+import org.wso2.carbon.identity.oauth2.dto.OAuth2AccessTokenRespDTO;
+import org.wso2.carbon.identity.oauth2.model.AccessTokenDO;
+import org.wso2.carbon.identity.oauth2.token.OAuthTokenReqMessageContext;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.CommonConstants;
+import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
+
+import java.sql.Timestamp;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Test class for MTLSTokenBindingClientCredentialsGrantHandler class.
+ */
+@WithCarbonHome
+public class MTLSTokenBindingClientCredentialsGrantHandlerTest {
+
+    private static final String THUMBPRINT = "bwcK0esc3ACC3DB2Y5_lESsXE8o9ltc05O89jdN-dg2";
+    private static final long VALIDITY_PERIOD = 3600000;
+
+    private final ClientCredentialsTokenCache tokenCache = ClientCredentialsTokenCache.getInstance();
+    private MTLSTokenBindingClientCredentialsGrantHandler grantHandler;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+
+        tokenCache.configure(10, 0.5);
+        grantHandler = spy(new MTLSTokenBindingClientCredentialsGrantHandler());
+        doReturn(getTokenRespDTO("token1"), getTokenRespDTO("token2")).when(grantHandler).issueToken(any());
+    }
+
+    @AfterMethod
+    public void tearDown() {
+
+        tokenCache.stop();
+    }
+
+    @Test
+    public void testActiveTokenIsReused() throws Exception {
+
+        try (MockedStatic<OAuth2Util> oAuth2Util = mockStatic(OAuth2Util.class)) {
+            oAuth2Util.when(() -> OAuth2Util.findAccessToken(anyString(), anyBoolean())).thenReturn(
+                    getAccessTokenDO(OAuthConstants.TokenStates.TOKEN_STATE_ACTIVE, System.currentTimeMillis()));
+
+            assertEquals(grantHandler.issue(getTokReqMsgCtx()).getAccessToken(), "token1");
+            assertEquals(grantHandler.issue(getTokReqMsgCtx()).getAccessToken(), "token1");
+            verify(grantHandler, times(1)).issueToken(any());
+        }
+    }
+
+    @Test
+    public void testRevokedTokenIsNotReused() throws Exception {
+
+        try (MockedStatic<OAuth2Util> oAuth2Util = mockStatic(OAuth2Util.class)) {
+            oAuth2Util.when(() -> OAuth2Util.findAccessToken(anyString(), anyBoolean())).thenReturn(
+                    getAccessTokenDO(OAuthConstants.TokenStates.TOKEN_STATE_REVOKED, System.currentTimeMillis()));
+
+            assertEquals(grantHandler.issue(getTokReqMsgCtx()).getAccessToken(), "token1");
+            assertEquals(grantHandler.issue(getTokReqMsgCtx()).getAccessToken(), "token2");
+            verify(grantHandler, times(2)).issueToken(any());
+        }
+    }
+
+    @Test
+    public void testExpiredTokenIsNotReused() throws Exception {
+
+        try (MockedStatic<OAuth2Util> oAuth2Util = mockStatic(OAuth2Util.class)) {
+            // The token is still reported as active, for example from a stale cache entry, but its lifetime is over.
+            oAuth2Util.when(() -> OAuth2Util.findAccessToken(anyString(), anyBoolean())).thenReturn(
+                    getAccessTokenDO(OAuthConstants.TokenStates.TOKEN_STATE_ACTIVE,
+                            System.currentTimeMillis() - VALIDITY_PERIOD - 1000));
+
+            assertEquals(grantHandler.issue(getTokReqMsgCtx()).getAccessToken(), "token1");
+            assertEquals(grantHandler.issue(getTokReqMsgCtx()).getAccessToken(), "token2");
+        }
+    }
+
+    @Test
+    public void testTokensAreNotReusedWhenCacheIsDisabled() throws Exception {
+
+        tokenCache.stop();
+        try (MockedStatic<OAuth2Util> oAuth2Util = mockStatic(OAuth2Util.class)) {
+            assertEquals(grantHandler.issue(getTokReqMsgCtx()).getAccessToken(), "token1");
+            assertEquals(grantHandler.issue(getTokReqMsgCtx()).getAccessToken(), "token2");
+            oAuth2Util.verify(() -> OAuth2Util.findAccessToken(anyString(), anyBoolean()), never());
+        }
+    }
+
+    private static OAuthTokenReqMessageContext getTokReqMsgCtx() {
+
+        OAuth2AccessTokenReqDTO tokenReqDTO = new OAuth2AccessTokenReqDTO();
+        tokenReqDTO.setClientId("client");
+        tokenReqDTO.setTenantDomain("carbon.super");
+        OAuthClientAuthnContext oAuthClientAuthnContext = new OAuthClientAuthnContext();
+        oAuthClientAuthnContext.addParameter(CommonConstants.AUTHENTICATOR_TYPE_PARAM,
+                CommonConstants.AUTHENTICATOR_TYPE_MTLS);
+        oAuthClientAuthnContext.addParameter(CommonConstants.CLIENT_CERTIFICATE_THUMBPRINT_PARAM, THUMBPRINT);
+        tokenReqDTO.setoAuthClientAuthnContext(oAuthClientAuthnContext);
+        OAuthTokenReqMessageContext tokReqMsgCtx = new OAuthTokenReqMessageContext(tokenReqDTO);
+        tokReqMsgCtx.setScope(new String[]{"read"});
+        return tokReqMsgCtx;
+    }
+
+    private static OAuth2AccessTokenRespDTO getTokenRespDTO(String accessToken) {
+
+        OAuth2AccessTokenRespDTO tokenRespDTO = new OAuth2AccessTokenRespDTO();
+        tokenRespDTO.setAccessToken(accessToken);
+        tokenRespDTO.setExpiresInMillis(VALIDITY_PERIOD);
+        return tokenRespDTO;
+    }
+
+    private static AccessTokenDO getAccessTokenDO(String tokenState, long issuedTime) {
+
+        AccessTokenDO accessTokenDO = new AccessTokenDO();
+        accessTokenDO.setTokenState(tokenState);
+        accessTokenDO.setIssuedTime(new Timestamp(issuedTime));
+        accessTokenDO.setValidityPeriodInMillis(VALIDITY_PERIOD);
+        return accessTokenDO;
+    }
+}
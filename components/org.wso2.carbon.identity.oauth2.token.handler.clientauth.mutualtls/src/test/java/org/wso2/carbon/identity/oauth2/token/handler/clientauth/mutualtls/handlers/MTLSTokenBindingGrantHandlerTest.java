@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.handlers;
+
+import org.mockito.MockedStatic;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.common.testng.WithCarbonHome;
+import org.wso2.carbon.identity.core.util.IdentityUtil;
+import org.wso2.carbon.identity.oauth.config.OAuthServerConfiguration;
+import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
+import org.wso2.carbon.identity.oauth2.bean.OAuthClientAuthnContext;
+import org.wso2.carbon.identity.oauth2.dto.OAuth2AccessTokenReqDTO;
+import org.wso2.carbon.identity.oauth2.dto.OAuth2AccessTokenRespDTO;
+import org.wso2.carbon.identity.oauth2.token.OAuthTokenReqMessageContext;
+import org.wso2.carbon.identity.oauth2.token.bindings.TokenBinding;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.CommonConstants;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSConfig;
+import org.wso2.carbon.identity.oauth2.token.handlers.grant.AbstractAuthorizationGrantHandler;
+import org.wso2.carbon.identity.oauth2.token.handlers.grant.AuthorizationGrantHandler;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Test class for MTLSTokenBindingGrantHandler class.
+ */
+@WithCarbonHome
+public class MTLSTokenBindingGrantHandlerTest {
+
+    private static final String THUMBPRINT = "bwcK0esc3ACC3DB2Y5_lESsXE8o9ltc05O89jdN-dg2";
+    private static final String GRANT_TYPE = "urn:ietf:params:oauth:grant-type:jwt-bearer";
+
+    @Test
+    public void testCertificateIsBoundBeforeDelegateIssuesToken() throws Exception {
+
+        AuthorizationGrantHandler delegate = mock(AuthorizationGrantHandler.class);
+        AtomicReference<TokenBinding> tokenBinding = new AtomicReference<>();
+        OAuth2AccessTokenRespDTO tokenRespDTO = new OAuth2AccessTokenRespDTO();
+        doAnswer(invocation -> {
+            tokenBinding.set(invocation.<OAuthTokenReqMessageContext>getArgument(0).getTokenBinding());
+            return tokenRespDTO;
+        }).when(delegate).issue(any());
+        MTLSTokenBindingGrantHandler grantHandler = new MTLSTokenBindingGrantHandler(GRANT_TYPE, delegate);
+
+        assertSame(grantHandler.issue(getTokReqMsgCtx(new String[]{"read"})), tokenRespDTO);
+        assertEquals(tokenBinding.get().getBindingType(), CommonConstants.CERTIFICATE_TOKEN_BINDING_TYPE);
+        assertEquals(tokenBinding.get().getBindingValue(), THUMBPRINT);
+    }
+
+    @Test
+    public void testCoreTokenBindingIsNotReplaced() throws Exception {
+
+        AuthorizationGrantHandler delegate = mock(AuthorizationGrantHandler.class);
+        MTLSTokenBindingGrantHandler grantHandler = new MTLSTokenBindingGrantHandler(GRANT_TYPE, delegate);
+        OAuthTokenReqMessageContext tokReqMsgCtx = getTokReqMsgCtx(new String[]{"read"});
+        TokenBinding coreTokenBinding = new TokenBinding("cookie", "cookie-value", "cookie-value");
+        tokReqMsgCtx.setTokenBinding(coreTokenBinding);
+
+        grantHandler.issue(tokReqMsgCtx);
+        assertSame(tokReqMsgCtx.getTokenBinding(), coreTokenBinding);
+        verify(delegate).issue(tokReqMsgCtx);
+    }
+
+    @Test
+    public void testRefreshedTokenIsBound() throws Exception {
+
+        AuthorizationGrantHandler delegate = mock(AuthorizationGrantHandler.class);
+        MTLSTokenBindingGrantHandler grantHandler = new MTLSTokenBindingGrantHandler("refresh_token", delegate);
+        OAuthTokenReqMessageContext tokReqMsgCtx = getTokReqMsgCtx(new String[]{"read"});
+
+        grantHandler.issue(tokReqMsgCtx);
+        assertEquals(tokReqMsgCtx.getTokenBinding().getBindingValue(), THUMBPRINT);
+        assertEquals(tokReqMsgCtx.getScope(), new String[]{"read"});
+    }
+
+    @Test
+    public void testGrantIsValidatedByDelegate() throws Exception {
+
+        AuthorizationGrantHandler delegate = mock(AuthorizationGrantHandler.class);
+        OAuthTokenReqMessageContext tokReqMsgCtx = getTokReqMsgCtx(new String[]{"read"});
+        when(delegate.validateGrant(tokReqMsgCtx)).thenReturn(true);
+        when(delegate.authorizeAccessDelegation(tokReqMsgCtx)).thenReturn(true);
+        when(delegate.validateScope(tokReqMsgCtx)).thenReturn(false);
+        when(delegate.isConfidentialClient()).thenReturn(true);
+        when(delegate.issueRefreshToken()).thenReturn(false);
+        when(delegate.isOfTypeApplicationUser()).thenReturn(false);
+        MTLSTokenBindingGrantHandler grantHandler = new MTLSTokenBindingGrantHandler(GRANT_TYPE, delegate);
+
+        assertTrue(grantHandler.validateGrant(tokReqMsgCtx));
+        assertTrue(grantHandler.authorizeAccessDelegation(tokReqMsgCtx));
+        assertFalse(grantHandler.validateScope(tokReqMsgCtx));
+        assertTrue(grantHandler.isConfidentialClient());
+        assertFalse(grantHandler.issueRefreshToken());
+        assertFalse(grantHandler.isOfTypeApplicationUser());
+        // Validating the grant does not bind the token.
+        assertNull(tokReqMsgCtx.getTokenBinding());
+    }
+
+    @Test
+    public void testConfiguredGrantHandlerIsUsed() throws Exception {
+
+        try (MockedStatic<IdentityUtil> identityUtil = mockStatic(IdentityUtil.class);
+             MockedStatic<OAuthServerConfiguration> oAuthServerConfiguration =
+                     mockStatic(OAuthServerConfiguration.class)) {
+            identityUtil.when(() -> IdentityUtil.getProperty(CommonConstants.TOKEN_BINDING_GRANT_HANDLERS))
+                    .thenReturn(GRANT_TYPE + "=" + StubGrantHandler.class.getName());
+            MutualTLSConfig.reload();
+            MTLSTokenBindingGrantHandler grantHandler = new MTLSTokenBindingGrantHandler();
+            OAuthServerConfiguration serverConfiguration = mock(OAuthServerConfiguration.class);
+            oAuthServerConfiguration.when(OAuthServerConfiguration::getInstance).thenReturn(serverConfiguration);
+            when(serverConfiguration.getSupportedGrantTypes())
+                    .thenReturn(Collections.singletonMap(GRANT_TYPE, grantHandler));
+
+            assertFalse(grantHandler.isOfTypeApplicationUser());
+        } finally {
+            MutualTLSConfig.reload();
+        }
+    }
+
+    @Test(expectedExceptions = IdentityOAuth2Exception.class)
+    public void testGrantTypeWithoutGrantHandler() throws Exception {
+
+        try (MockedStatic<OAuthServerConfiguration> oAuthServerConfiguration =
+                     mockStatic(OAuthServerConfiguration.class)) {
+            MTLSTokenBindingGrantHandler grantHandler = new MTLSTokenBindingGrantHandler();
+            OAuthServerConfiguration serverConfiguration = mock(OAuthServerConfiguration.class);
+            oAuthServerConfiguration.when(OAuthServerConfiguration::getInstance).thenReturn(serverConfiguration);
+            when(serverConfiguration.getSupportedGrantTypes())
+                    .thenReturn(Collections.singletonMap(GRANT_TYPE, grantHandler));
+
+            grantHandler.issue(getTokReqMsgCtx(new String[]{"read"}));
+        }
+    }
+
+    private static OAuthTokenReqMessageContext getTokReqMsgCtx(String[] scopes) {
+
+        OAuth2AccessTokenReqDTO tokenReqDTO = new OAuth2AccessTokenReqDTO();
+        tokenReqDTO.setClientId("client");
+        OAuthClientAuthnContext oAuthClientAuthnContext = new OAuthClientAuthnContext();
+        oAuthClientAuthnContext.addParameter(CommonConstants.AUTHENTICATOR_TYPE_PARAM,
+                CommonConstants.AUTHENTICATOR_TYPE_MTLS);
+        oAuthClientAuthnContext.addParameter(CommonConstants.CLIENT_CERTIFICATE_THUMBPRINT_PARAM, THUMBPRINT);
+        tokenReqDTO.setoAuthClientAuthnContext(oAuthClientAuthnContext);
+        OAuthTokenReqMessageContext tokReqMsgCtx = new OAuthTokenReqMessageContext(tokenReqDTO);
+        tokReqMsgCtx.setScope(scopes);
+        return tokReqMsgCtx;
+    }
+
+    /**
+     * Grant handler configured for the grant type in the tests.
+     */
+    public static class StubGrantHandler extends AbstractAuthorizationGrantHandler {
+
+        @Override
+        public void init() {
+
+        }
+
+        @Override
+        public boolean isOfTypeApplicationUser() {
+
+            return false;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.handlers;
+
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.common.testng.WithCarbonHome;
+import org.wso2.carbon.identity.oauth2.bean.OAuthClientAuthnContext;
+import org.wso2.carbon.identity.oauth2.dto.OAuth2AccessTokenReqDTO;
+import org.wso2.carbon.identity.oauth2.dto.OAuth2AccessTokenRespDTO;
+import org.wso2.carbon.identity.oauth2.token.OAuthTokenReqMessageContext;
+import org.wso2.carbon.identity.oauth2.token.bindings.TokenBinding;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.CommonConstants;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+/**
+ * Test class for MTLSTokenBindingPasswordGrantHandler class.
+ */
+@WithCarbonHome
+public class MTLSTokenBindingPasswordGrantHandlerTest {
+
+    private static final String THUMBPRINT = "bwcK0esc3ACC3DB2Y5_lESsXE8o9ltc05O89jdN-dg2";
+
+    @Test
+    public void testTokenIsBoundToCertificate() throws Exception {
+
+        MTLSTokenBindingPasswordGrantHandler grantHandler = spy(new MTLSTokenBindingPasswordGrantHandler());
+        AtomicReference<TokenBinding> tokenBinding = new AtomicReference<>();
+        OAuth2AccessTokenRespDTO tokenRespDTO = new OAuth2AccessTokenRespDTO();
+        doAnswer(invocation -> {
+            tokenBinding.set(invocation.<OAuthTokenReqMessageContext>getArgument(0).getTokenBinding());
+            return tokenRespDTO;
+        }).when(grantHandler).issueToken(any());
+
+        assertSame(grantHandler.issue(getTokReqMsgCtx(CommonConstants.AUTHENTICATOR_TYPE_MTLS)), tokenRespDTO);
+        assertEquals(tokenBinding.get().getBindingType(), CommonConstants.CERTIFICATE_TOKEN_BINDING_TYPE);
+        assertEquals(tokenBinding.get().getBindingValue(), THUMBPRINT);
+    }
+
+    @Test
+    public void testTokenIsNotBoundWithoutMTLSAuthentication() throws Exception {
+
+        MTLSTokenBindingPasswordGrantHandler grantHandler = spy(new MTLSTokenBindingPasswordGrantHandler());
+        OAuthTokenReqMessageContext tokReqMsgCtx = getTokReqMsgCtx("BasicAuthClientAuthenticator");
+        doAnswer(invocation -> new OAuth2AccessTokenRespDTO()).when(grantHandler).issueToken(any());
+
+        grantHandler.issue(tokReqMsgCtx);
+        assertNull(tokReqMsgCtx.getTokenBinding());
+    }
+
+    private static OAuthTokenReqMessageContext getTokReqMsgCtx(String authenticatorType) {
+
+        OAuth2AccessTokenReqDTO tokenReqDTO = new OAuth2AccessTokenReqDTO();
+        tokenReqDTO.setClientId("client");
+        OAuthClientAuthnContext oAuthClientAuthnContext = new OAuthClientAuthnContext();
+        oAuthClientAuthnContext.addParameter(CommonConstants.AUTHENTICATOR_TYPE_PARAM, authenticatorType);
+        oAuthClientAuthnContext.addParameter(CommonConstants.CLIENT_CERTIFICATE_THUMBPRINT_PARAM, THUMBPRINT);
+        tokenReqDTO.setoAuthClientAuthnContext(oAuthClientAuthnContext);
+        return new OAuthTokenReqMessageContext(tokenReqDTO);
+    }
+}
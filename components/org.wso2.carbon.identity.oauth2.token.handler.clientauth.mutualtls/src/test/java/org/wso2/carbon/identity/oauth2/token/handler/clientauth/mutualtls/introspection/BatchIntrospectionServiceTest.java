@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.introspection;
+
+import org.json.JSONObject;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.common.testng.WithCarbonHome;
+import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
+import org.wso2.carbon.identity.oauth2.OAuth2TokenValidationService;
+import org.wso2.carbon.identity.oauth2.dto.OAuth2IntrospectionResponseDTO;
+import org.wso2.carbon.identity.oauth2.dto.OAuth2TokenValidationRequestDTO;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.internal.MutualTLSDataHolder;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.CommonConstants;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Test class for BatchIntrospectionService class.
+ */
+@WithCarbonHome
+public class BatchIntrospectionServiceTest {
+
+    private static final String THUMBPRINT = "bwcK0esc3ACC3DB2Y5_lESsXE8o9ltc05O89jdN-dg2";
+    private static final String BOUND_TOKEN = "bound-token";
+    private static final String UNBOUND_TOKEN = "unbound-token";
+    private static final String INACTIVE_TOKEN = "inactive-token";
+    private static final String CERTIFICATE_BOUND_TOKEN_PREFIX = "certificate-bound-token-";
+
+    private final BatchIntrospectionService batchIntrospectionService = new BatchIntrospectionService();
+
+    @AfterMethod
+    public void tearDown() {
+
+        MutualTLSDataHolder.getInstance().setOAuth2TokenValidationService(null);
+    }
+
+    @Test
+    public void testIntrospectBatch() throws Exception {
+
+        TokenValidationService validationService = new TokenValidationService();
+        MutualTLSDataHolder.getInstance().setOAuth2TokenValidationService(validationService);
+
+        Map<String, OAuth2IntrospectionResponseDTO> introspections = batchIntrospectionService.introspect(
+                Arrays.asList(BOUND_TOKEN, UNBOUND_TOKEN, BOUND_TOKEN, INACTIVE_TOKEN), "bearer");
+
+        assertEquals(new ArrayList<>(introspections.keySet()),
+                Arrays.asList(BOUND_TOKEN, UNBOUND_TOKEN, INACTIVE_TOKEN));
+        assertEquals(validationService.validatedTokens, Arrays.asList(BOUND_TOKEN, UNBOUND_TOKEN, INACTIVE_TOKEN));
+        // The interceptor made no additions while the responses of the batch were being built.
+        assertEquals(validationService.scopesAfterInterceptor,
+                Arrays.asList("openid x5t#SHA256:" + THUMBPRINT, "openid profile", null));
+
+        OAuth2IntrospectionResponseDTO bound = introspections.get(BOUND_TOKEN);
+        assertTrue(bound.isActive());
+        assertEquals(bound.getScope(), "openid");
+        assertEquals(((JSONObject) bound.getProperties().get("cnf")).get("x5t#SHA256"), THUMBPRINT);
+
+        OAuth2IntrospectionResponseDTO unbound = introspections.get(UNBOUND_TOKEN);
+        assertTrue(unbound.isActive());
+        assertEquals(unbound.getScope(), "openid profile");
+        assertNull(unbound.getProperties().get("cnf"));
+
+        assertFalse(introspections.get(INACTIVE_TOKEN).isActive());
+    }
+
+    @Test
+    public void testCertificateBindingsAreReadOncePerBatch() throws Exception {
+
+        MutualTLSDataHolder.getInstance().setOAuth2TokenValidationService(new TokenValidationService());
+        String firstToken = CERTIFICATE_BOUND_TOKEN_PREFIX + "1";
+        String secondToken = CERTIFICATE_BOUND_TOKEN_PREFIX + "2";
+        List<List<String>> reads = new ArrayList<>();
+        BatchIntrospectionService service = new BatchIntrospectionService(tokens -> {
+            reads.add(new ArrayList<>(tokens));
+            Map<String, String> thumbprints = new HashMap<>();
+            thumbprints.put(firstToken, THUMBPRINT);
+            return thumbprints;
+        });
+
+        Map<String, OAuth2IntrospectionResponseDTO> introspections = service.introspect(
+                Arrays.asList(firstToken, UNBOUND_TOKEN, secondToken), "bearer");
+
+        // Only the certificate bound tokens are read, together.
+        assertEquals(reads, Collections.singletonList(Arrays.asList(firstToken, secondToken)));
+        assertEquals(((JSONObject) introspections.get(firstToken).getProperties().get("cnf")).get("x5t#SHA256"),
+                THUMBPRINT);
+        assertNull(introspections.get(secondToken).getProperties().get("cnf"));
+        assertNull(introspections.get(UNBOUND_TOKEN).getProperties().get("cnf"));
+    }
+
+    @Test
+    public void testIntrospectEmptyBatch() throws Exception {
+
+        assertTrue(batchIntrospectionService.introspect(Collections.emptyList(), null).isEmpty());
+    }
+
+    @Test(expectedExceptions = IdentityOAuth2Exception.class)
+    public void testIntrospectWithoutValidationService() throws Exception {
+
+        batchIntrospectionService.introspect(Collections.singletonList(BOUND_TOKEN), null);
+    }
+
+    /**
+     * Validation service invoking the interceptor after building each response, as the OAuth2 component does.
+     */
+    private static class TokenValidationService extends OAuth2TokenValidationService {
+
+        private final IntrospectionResponseInterceptor interceptor = new IntrospectionResponseInterceptor();
+        private final List<String> validatedTokens = new ArrayList<>();
+        private final List<String> scopesAfterInterceptor = new ArrayList<>();
+
+        @Override
+        public OAuth2IntrospectionResponseDTO buildIntrospectionResponse(
+                OAuth2TokenValidationRequestDTO validationRequest) {
+
+            String token = validationRequest.getAccessToken().getIdentifier();
+            validatedTokens.add(token);
+            OAuth2IntrospectionResponseDTO introspectionResponse = new OAuth2IntrospectionResponseDTO();
+            if (BOUND_TOKEN.equals(token)) {
+                introspectionResponse.setActive(true);
+                introspectionResponse.setScope("openid x5t#SHA256:" + THUMBPRINT);
+            } else if (UNBOUND_TOKEN.equals(token)) {
+                introspectionResponse.setActive(true);
+                introspectionResponse.setScope("openid profile");
+            } else if (token.startsWith(CERTIFICATE_BOUND_TOKEN_PREFIX)) {
+                introspectionResponse.setActive(true);
+                introspectionResponse.setScope("openid");
+                introspectionResponse.setBindingType(CommonConstants.CERTIFICATE_TOKEN_BINDING_TYPE);
+            }
+            introspectionResponse.setExp(System.currentTimeMillis() / 1000 + 3600);
+            interceptor.onPostTokenValidation(validationRequest, introspectionResponse, null);
+            scopesAfterInterceptor.add(introspectionResponse.getScope());
+            return introspectionResponse;
+        }
+    }
+}
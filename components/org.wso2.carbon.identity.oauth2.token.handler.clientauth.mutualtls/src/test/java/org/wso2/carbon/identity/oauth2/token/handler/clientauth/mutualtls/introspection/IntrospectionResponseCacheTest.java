@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.introspection;
+
+import org.json.JSONObject;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.oauth2.dto.OAuth2IntrospectionResponseDTO;
+import org.wso2.carbon.identity.oauth2.dto.OAuth2TokenValidationRequestDTO;
+import org.wso2.carbon.identity.oauth2.dto.OAuthRevocationRequestDTO;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Test class for IntrospectionResponseCache class.
+ */
+public class IntrospectionResponseCacheTest {
+
+    private static final String TOKEN = "c2e8b4a4-5b4f-3f7e-9a5a-6bb8b21f3f65";
+    private static final String THUMBPRINT = "bwcK0esc3ACC3DB2Y5_lESsXE8o9ltc05O89jdN-dg2";
+    private static final String LEGACY_SCOPE = "openid x5t#SHA256:" + THUMBPRINT;
+
+    private final IntrospectionResponseCache cache = IntrospectionResponseCache.getInstance();
+
+    @AfterMethod
+    public void tearDown() {
+
+        cache.stop();
+    }
+
+    @Test
+    public void testDisabledCache() {
+
+        assertFalse(cache.isEnabled());
+        cache.put(TOKEN, entry("openid", 2000L), 1000L);
+        assertNull(cache.get(TOKEN, "openid", 1000L));
+        assertEquals(cache.size(), 0);
+    }
+
+    @Test
+    public void testGetReturnsEntryForSameScope() {
+
+        cache.configure(10);
+        IntrospectionResponseCache.CachedIntrospection cached = entry("openid", 2000L);
+        cache.put(TOKEN, cached, 1000L);
+        assertSame(cache.get(TOKEN, "openid", 1500L), cached);
+        assertNull(cache.get(TOKEN, "openid profile", 1500L));
+    }
+
+    @Test
+    public void testExpiredEntriesAreRemoved() {
+
+        cache.configure(10);
+        cache.put(TOKEN, entry("openid", 500L), 1000L);
+        assertEquals(cache.size(), 0);
+
+        cache.put(TOKEN, entry("openid", 2000L), 1000L);
+        assertNull(cache.get(TOKEN, "openid", 2000L));
+        assertEquals(cache.size(), 0);
+    }
+
+    @Test
+    public void testFullCacheEvictsEntries() {
+
+        cache.configure(8);
+        for (int i = 0; i < 7; i++) {
+            cache.put(TOKEN + i, entry("openid", 1500L), 1000L);
+        }
+        cache.put(TOKEN + 7, entry("openid", 5000L), 1000L);
+        assertEquals(cache.size(), 8);
+
+        // All the entries other than the last one have expired, and are removed to make room for the new entry.
+        cache.put(TOKEN, entry("openid", 5000L), 2000L);
+        assertEquals(cache.size(), 2);
+
+        for (int i = 0; i < 20; i++) {
+            cache.put(TOKEN + "-" + i, entry("openid", 5000L), 2000L);
+            assertTrue(cache.size() <= 8);
+        }
+    }
+
+    @Test
+    public void testInterceptorCachesAndInvalidates() {
+
+        cache.configure(10);
+        IntrospectionResponseInterceptor interceptor = new IntrospectionResponseInterceptor();
+        OAuth2TokenValidationRequestDTO validationRequest = new OAuth2TokenValidationRequestDTO();
+        OAuth2TokenValidationRequestDTO.OAuth2AccessToken accessToken = validationRequest.new OAuth2AccessToken();
+        accessToken.setIdentifier(TOKEN);
+        validationRequest.setAccessToken(accessToken);
+
+        OAuth2IntrospectionResponseDTO response = activeResponse();
+        interceptor.onPostTokenValidation(validationRequest, response, null);
+        assertEquals(response.getScope(), "openid");
+        JSONObject cnf = (JSONObject) response.getProperties().get("cnf");
+        assertEquals(cnf.get("x5t#SHA256"), THUMBPRINT);
+        assertEquals(cache.size(), 1);
+
+        OAuth2IntrospectionResponseDTO repeatedResponse = activeResponse();
+        interceptor.onPostTokenValidation(validationRequest, repeatedResponse, null);
+        assertEquals(repeatedResponse.getScope(), "openid");
+        assertSame(repeatedResponse.getProperties().get("cnf"), cnf);
+
+        OAuthRevocationRequestDTO revocationRequest = new OAuthRevocationRequestDTO();
+        revocationRequest.setToken(TOKEN);
+        interceptor.onPostTokenRevocationByClient(revocationRequest, null, null, null, null);
+        assertEquals(cache.size(), 0);
+
+        interceptor.onPostTokenValidation(validationRequest, activeResponse(), null);
+        assertEquals(cache.size(), 1);
+        interceptor.onPostTokenValidation(validationRequest, new OAuth2IntrospectionResponseDTO(), null);
+        assertEquals(cache.size(), 0);
+    }
+
+    private static OAuth2IntrospectionResponseDTO activeResponse() {
+
+        OAuth2IntrospectionResponseDTO response = new OAuth2IntrospectionResponseDTO();
+        response.setActive(true);
+        response.setScope(LEGACY_SCOPE);
+        response.setExp(System.currentTimeMillis() / 1000 + 3600);
+        return response;
+    }
+
+    private static IntrospectionResponseCache.CachedIntrospection entry(String scope, long expiryTime) {
+
+        return new IntrospectionResponseCache.CachedIntrospection(scope, scope, null, expiryTime);
+    }
+}
@@ -18,21 +18,35 @@
 
 package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.introspection;
 
+import org.json.JSONObject;
+import org.mockito.MockedStatic;
 import org.testng.annotations.BeforeTest;
 import org.testng.annotations.Test;
 import org.wso2.carbon.identity.oauth2.dto.OAuth2IntrospectionResponseDTO;
 import org.wso2.carbon.identity.oauth2.dto.OAuth2TokenValidationRequestDTO;
+import org.wso2.carbon.identity.oauth2.model.AccessTokenDO;
+import org.wso2.carbon.identity.oauth2.token.bindings.TokenBinding;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.CommonConstants;
+import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
 
 import java.util.HashMap;
 import java.util.Map;
 
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
 
 /**
  * Test class for IntrospectionResponseInterceptorTest class.
  */
 public class IntrospectionResponseInterceptorTest {
 
+    private static final String THUMBPRINT = "bwcK0esc3ACC3DB2Y5_lESsXE8o9ltc05O89jdN-dg2";
+
     IntrospectionResponseInterceptor introspectionResponseInterceptor;
 
     @BeforeTest
@@ -73,4 +87,96 @@ public class IntrospectionResponseInterceptorTest {
                 oAuth2IntrospectionResponseDTO3, introspectionData);
         assertNotNull(oAuth2IntrospectionResponseDTO3.getProperties());
     }
+
+    @Test
+    public void testCertificateBoundTokenGetsConfirmation() throws Exception {
+
+        String token = "certificate-bound-token";
+        try (MockedStatic<OAuth2Util> oAuth2Util = mockStatic(OAuth2Util.class)) {
+            oAuth2Util.when(() -> OAuth2Util.findAccessToken(token, false)).thenReturn(
+                    accessToken(new TokenBinding(CommonConstants.CERTIFICATE_TOKEN_BINDING_TYPE, "reference",
+                            THUMBPRINT)));
+            OAuth2IntrospectionResponseDTO introspectionResponse =
+                    activeResponse(CommonConstants.CERTIFICATE_TOKEN_BINDING_TYPE);
+
+            introspectionResponseInterceptor.onPostTokenValidation(validationRequest(token), introspectionResponse,
+                    null);
+
+            JSONObject cnf = (JSONObject) introspectionResponse.getProperties().get("cnf");
+            assertEquals(cnf.get("x5t#SHA256"), THUMBPRINT);
+        }
+    }
+
+    @Test
+    public void testUnboundTokenIsNotLookedUp() {
+
+        String token = "unbound-token";
+        try (MockedStatic<OAuth2Util> oAuth2Util = mockStatic(OAuth2Util.class)) {
+            OAuth2IntrospectionResponseDTO introspectionResponse = activeResponse(null);
+
+            introspectionResponseInterceptor.onPostTokenValidation(validationRequest(token), introspectionResponse,
+                    null);
+
+            assertNull(introspectionResponse.getProperties().get("cnf"));
+            oAuth2Util.verify(() -> OAuth2Util.findAccessToken(anyString(), anyBoolean()), never());
+        }
+    }
+
+    @Test
+    public void testTokenWithOtherBindingTypeIsNotLookedUp() {
+
+        String token = "cookie-bound-token";
+        try (MockedStatic<OAuth2Util> oAuth2Util = mockStatic(OAuth2Util.class)) {
+            OAuth2IntrospectionResponseDTO introspectionResponse = activeResponse("cookie");
+
+            introspectionResponseInterceptor.onPostTokenValidation(validationRequest(token), introspectionResponse,
+                    null);
+
+            assertNull(introspectionResponse.getProperties().get("cnf"));
+            oAuth2Util.verify(() -> OAuth2Util.findAccessToken(anyString(), anyBoolean()), never());
+        }
+    }
+
+    @Test
+    public void testCertificateBoundTokenWithoutCertificateBinding() throws Exception {
+
+        String token = "token-bound-to-cookie";
+        try (MockedStatic<OAuth2Util> oAuth2Util = mockStatic(OAuth2Util.class)) {
+            oAuth2Util.when(() -> OAuth2Util.findAccessToken(token, false)).thenReturn(
+                    accessToken(new TokenBinding("cookie", "reference", "value")));
+            OAuth2IntrospectionResponseDTO introspectionResponse =
+                    activeResponse(CommonConstants.CERTIFICATE_TOKEN_BINDING_TYPE);
+
+            introspectionResponseInterceptor.onPostTokenValidation(validationRequest(token), introspectionResponse,
+                    null);
+
+            assertNull(introspectionResponse.getProperties().get("cnf"));
+        }
+    }
+
+    private static OAuth2TokenValidationRequestDTO validationRequest(String token) {
+
+        OAuth2TokenValidationRequestDTO validationRequest = new OAuth2TokenValidationRequestDTO();
+        OAuth2TokenValidationRequestDTO.OAuth2AccessToken accessToken = validationRequest.new OAuth2AccessToken();
+        accessToken.setIdentifier(token);
+        validationRequest.setAccessToken(accessToken);
+        return validationRequest;
+    }
+
+    private static OAuth2IntrospectionResponseDTO activeResponse(String bindingType) {
+
+        OAuth2IntrospectionResponseDTO introspectionResponse = new OAuth2IntrospectionResponseDTO();
+        introspectionResponse.setActive(true);
+        introspectionResponse.setScope("openid");
+        introspectionResponse.setBindingType(bindingType);
+        introspectionResponse.setExp(System.currentTimeMillis() / 1000 + 3600);
+        return introspectionResponse;
+    }
+
+    private static AccessTokenDO accessToken(TokenBinding tokenBinding) {
+
+        AccessTokenDO accessTokenDO = new AccessTokenDO();
+        accessTokenDO.setTokenBinding(tokenBinding);
+        return accessTokenDO;
+    }
 }
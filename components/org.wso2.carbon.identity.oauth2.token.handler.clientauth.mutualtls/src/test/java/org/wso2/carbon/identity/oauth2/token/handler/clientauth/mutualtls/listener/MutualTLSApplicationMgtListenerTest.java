@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.listener;
+
+import com.nimbusds.jose.util.Resource;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.application.common.model.ServiceProvider;
+import org.wso2.carbon.identity.application.common.model.ServiceProviderProperty;
+import org.wso2.carbon.identity.application.mgt.ApplicationManagementService;
+import org.wso2.carbon.identity.common.testng.WithCarbonHome;
+import org.wso2.carbon.identity.common.testng.WithRealmService;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.cache.MutualTLSJWKSCache;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.cache.MutualTLSJWKSCacheEntry;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.cache.MutualTLSJWKSCacheKey;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.internal.MutualTLSDataHolder;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.CommonConstants;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Test class for MutualTLSApplicationMgtListener class.
+ */
+@WithCarbonHome
+@WithRealmService
+public class MutualTLSApplicationMgtListenerTest {
+
+    private static final String TENANT_DOMAIN = "carbon.super";
+    private static final String APPLICATION_NAME = "app";
+    private static final int APPLICATION_ID = 3;
+    private static final String JWKS_URI = "https://localhost/app/jwks";
+    private static final String OTHER_JWKS_URI = "https://localhost/other/jwks";
+
+    private final MutualTLSApplicationMgtListener listener = new MutualTLSApplicationMgtListener();
+
+    @AfterMethod
+    public void tearDown() {
+
+        MutualTLSDataHolder.getInstance().setApplicationManagementService(null);
+        MutualTLSJWKSCache.getInstance().clear();
+    }
+
+    @Test
+    public void testUpdateClearsCachedJWKS() throws Exception {
+
+        addToJWKSCache(JWKS_URI);
+        addToJWKSCache(OTHER_JWKS_URI);
+
+        assertTrue(listener.doPostUpdateApplication(getServiceProvider(), TENANT_DOMAIN, "admin"));
+        assertNull(MutualTLSJWKSCache.getInstance().getValueFromCache(new MutualTLSJWKSCacheKey(JWKS_URI)));
+        assertNotNull(MutualTLSJWKSCache.getInstance().getValueFromCache(new MutualTLSJWKSCacheKey(OTHER_JWKS_URI)));
+    }
+
+    @Test
+    public void testUpdateClearsCachedJWKSOfReplacedConfiguration() throws Exception {
+
+        ApplicationManagementService applicationManagementService = mock(ApplicationManagementService.class);
+        when(applicationManagementService.getServiceProvider(APPLICATION_ID)).thenReturn(getServiceProvider());
+        MutualTLSDataHolder.getInstance().setApplicationManagementService(applicationManagementService);
+        addToJWKSCache(JWKS_URI);
+        addToJWKSCache(OTHER_JWKS_URI);
+        ServiceProvider updatedServiceProvider = getServiceProvider(OTHER_JWKS_URI);
+
+        assertTrue(listener.doPreUpdateApplication(updatedServiceProvider, TENANT_DOMAIN, "admin"));
+        assertNull(MutualTLSJWKSCache.getInstance().getValueFromCache(new MutualTLSJWKSCacheKey(JWKS_URI)));
+        assertNotNull(MutualTLSJWKSCache.getInstance().getValueFromCache(new MutualTLSJWKSCacheKey(OTHER_JWKS_URI)));
+
+        assertTrue(listener.doPostUpdateApplication(updatedServiceProvider, TENANT_DOMAIN, "admin"));
+        assertNull(MutualTLSJWKSCache.getInstance().getValueFromCache(new MutualTLSJWKSCacheKey(OTHER_JWKS_URI)));
+    }
+
+    @Test
+    public void testDeleteClearsCachedJWKS() throws Exception {
+
+        ApplicationManagementService applicationManagementService = mock(ApplicationManagementService.class);
+        ServiceProvider serviceProvider = getServiceProvider();
+        when(applicationManagementService.getApplicationExcludingFileBasedSPs(APPLICATION_NAME, TENANT_DOMAIN))
+                .thenReturn(serviceProvider);
+        MutualTLSDataHolder.getInstance().setApplicationManagementService(applicationManagementService);
+        addToJWKSCache(JWKS_URI);
+
+        assertTrue(listener.doPreDeleteApplication(APPLICATION_NAME, TENANT_DOMAIN, "admin"));
+        assertNull(MutualTLSJWKSCache.getInstance().getValueFromCache(new MutualTLSJWKSCacheKey(JWKS_URI)));
+    }
+
+    @Test
+    public void testDeleteOfUnknownApplication() throws Exception {
+
+        ApplicationManagementService applicationManagementService = mock(ApplicationManagementService.class);
+        MutualTLSDataHolder.getInstance().setApplicationManagementService(applicationManagementService);
+        addToJWKSCache(JWKS_URI);
+
+        assertTrue(listener.doPreDeleteApplication(APPLICATION_NAME, TENANT_DOMAIN, "admin"));
+        assertNotNull(MutualTLSJWKSCache.getInstance().getValueFromCache(new MutualTLSJWKSCacheKey(JWKS_URI)));
+    }
+
+    private static void addToJWKSCache(String jwksUri) {
+
+        MutualTLSJWKSCache.getInstance().addToCache(new MutualTLSJWKSCacheKey(jwksUri),
+                new MutualTLSJWKSCacheEntry(new Resource("{\"keys\":[]}", "application/json")));
+    }
+
+    private static ServiceProvider getServiceProvider() {
+
+        return getServiceProvider(JWKS_URI);
+    }
+
+    private static ServiceProvider getServiceProvider(String jwksUriValue) {
+
+        ServiceProviderProperty jwksUri = new ServiceProviderProperty();
+        jwksUri.setName(CommonConstants.JWKS_URI);
+        jwksUri.setValue(jwksUriValue);
+        ServiceProvider serviceProvider = new ServiceProvider();
+        serviceProvider.setApplicationID(APPLICATION_ID);
+        serviceProvider.setApplicationName(APPLICATION_NAME);
+        serviceProvider.setSpProperties(new ServiceProviderProperty[]{jwksUri});
+        return serviceProvider;
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com).
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.revocation;
+
+import org.mockito.MockedStatic;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.common.testng.WithCarbonHome;
+import org.wso2.carbon.identity.core.util.IdentityUtil;
+import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.handlers.ClientCredentialsTokenCache;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.revocation.CertificateTokenRevocationService.BoundToken;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.CommonConstants;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSConfig;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.verify;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+/**
+ * Test class for CertificateTokenRevocationService class.
+ */
+
+@WithCarbonHome
+public class CertificateTokenRevocationServiceTest {
+
+    private static final String THUMBPRINT = "bwcK0esc3ACC3DB2Y5_lESsXE8o9ltc05O89jdN-dg2";
+    private static final String FIRST_TOKEN_ID = " ";
+
+    @Test
+    public void testRevokeTokensInBatches() throws Exception {
+
+        int tokenCount = CommonConstants.DEFAULT_TOKEN_REVOCATION_BATCH_SIZE * 2 + 1;
+        TreeMap<String, String> storedTokens = getStoredTokens(tokenCount);
+        List<String> lastTokenIds = new ArrayList<>();
+        List<List<BoundToken>> batches = new ArrayList<>();
+        CertificateTokenRevocationService service = new CertificateTokenRevocationService(
+                (thumbprint, lastTokenId, limit) -> {
+                    assertEquals(thumbprint, THUMBPRINT);
+                    lastTokenIds.add(lastTokenId);
+                    return getBatch(storedTokens, lastTokenId, limit);
+                }, (thumbprint, lastTokenId, limit) -> Collections.emptyList(), batches::add);
+
+        assertEquals(service.revokeTokens(THUMBPRINT), tokenCount);
+        assertEquals(batches.size(), 3);
+        assertEquals(lastTokenIds, Arrays.asList(FIRST_TOKEN_ID, "tokenId00099", "tokenId00199"));
+        List<String> revoked = new ArrayList<>();
+        for (List<BoundToken> batch : batches) {
+            assertTrue(batch.size() <= CommonConstants.DEFAULT_TOKEN_REVOCATION_BATCH_SIZE);
+            for (BoundToken token : batch) {
+                revoked.add(token.getStoredAccessToken());
+            }
+        }
+        assertEquals(revoked, new ArrayList<>(storedTokens.values()));
+    }
+
+    @Test
+    public void testRevokeTokensReadsUntilNoTokenIsLeft() throws Exception {
+
+        TreeMap<String, String> storedTokens = getStoredTokens(CommonConstants.DEFAULT_TOKEN_REVOCATION_BATCH_SIZE);
+        List<String> lastTokenIds = new ArrayList<>();
+        CertificateTokenRevocationService service = new CertificateTokenRevocationService(
+                (thumbprint, lastTokenId, limit) -> {
+                    lastTokenIds.add(lastTokenId);
+                    return getBatch(storedTokens, lastTokenId, limit);
+                }, (thumbprint, lastTokenId, limit) -> Collections.emptyList(), tokens -> { });
+
+        assertEquals(service.revokeTokens(THUMBPRINT), CommonConstants.DEFAULT_TOKEN_REVOCATION_BATCH_SIZE);
+        assertEquals(lastTokenIds, Arrays.asList(FIRST_TOKEN_ID, "tokenId00099"));
+    }
+
+    @Test
+    public void testLegacyScopeTokensAreRevokedAfterBoundTokens() throws Exception {
+
+        List<String> revoked = new ArrayList<>();
+        List<String> legacyLastTokenIds = new ArrayList<>();
+        CertificateTokenRevocationService service = new CertificateTokenRevocationService(
+                (thumbprint, lastTokenId, limit) -> FIRST_TOKEN_ID.equals(lastTokenId)
+                        ? Collections.singletonList(new BoundToken("tokenId2", "token2", -1234))
+                        : Collections.emptyList(),
+                (thumbprint, lastTokenId, limit) -> {
+                    legacyLastTokenIds.add(lastTokenId);
+                    return FIRST_TOKEN_ID.equals(lastTokenId)
+                            ? Arrays.asList(new BoundToken("tokenId1", "token1", -1234),
+                            new BoundToken("tokenId3", "token3", 1))
+                            : Collections.emptyList();
+                }, tokens -> tokens.forEach(token -> revoked.add(token.getStoredAccessToken())));
+
+        assertEquals(service.revokeTokens(THUMBPRINT), 3);
+        assertEquals(revoked, Arrays.asList("token2", "token1", "token3"));
+        // The legacy scan starts from the first token, as the identifiers of the two passes are not related.
+        assertEquals(legacyLastTokenIds, Collections.singletonList(FIRST_TOKEN_ID));
+    }
+
+    @Test
+    public void testLegacyScopeScanCanBeDisabled() throws Exception {
+
+        try (MockedStatic<IdentityUtil> identityUtil = mockStatic(IdentityUtil.class)) {
+            identityUtil.when(() -> IdentityUtil.getProperty(CommonConstants.TOKEN_REVOCATION_SCAN_LEGACY_SCOPES))
+                    .thenReturn("false");
+            MutualTLSConfig.reload();
+            CertificateTokenRevocationService service = new CertificateTokenRevocationService(
+                    (thumbprint, lastTokenId, limit) -> Collections.emptyList(),
+                    (thumbprint, lastTokenId, limit) -> {
+                        throw new AssertionError("Legacy scope table should not be scanned.");
+                    }, tokens -> { });
+
+            assertEquals(service.revokeTokens(THUMBPRINT), 0);
+        } finally {
+            MutualTLSConfig.reload();
+        }
+    }
+
+    @Test
+    public void testReusedTokensOfCertificateAreRemoved() throws Exception {
+
+        ClientCredentialsTokenCache tokenCache = mock(ClientCredentialsTokenCache.class);
+        try (MockedStatic<ClientCredentialsTokenCache> cache = mockStatic(ClientCredentialsTokenCache.class)) {
+            cache.when(ClientCredentialsTokenCache::getInstance).thenReturn(tokenCache);
+            CertificateTokenRevocationService service = new CertificateTokenRevocationService(
+                    (thumbprint, lastTokenId, limit) -> Collections.singletonList(
+                            new BoundToken("tokenId1", "token1", -1234)), (thumbprint, lastTokenId, limit) -> {
+                        throw new IdentityOAuth2Exception("Database error.");
+                    }, tokens -> { });
+
+            try {
+                service.revokeTokens(THUMBPRINT);
+                fail("Revocation should fail when the legacy tokens can not be read.");
+            } catch (IdentityOAuth2Exception e) {
+                // The tokens of the first pass are revoked, so they should not be reused either.
+                verify(tokenCache).invalidateCertificate(THUMBPRINT);
+            }
+        }
+    }
+
+    @Test
+    public void testFailedBatchIsReported() throws Exception {
+
+        CertificateTokenRevocationService service = new CertificateTokenRevocationService(
+                (thumbprint, lastTokenId, limit) -> Collections.singletonList(
+                        new BoundToken("tokenId1", "token1", -1234)),
+                (thumbprint, lastTokenId, limit) -> Collections.emptyList(), tokens -> {
+                    throw new IdentityOAuth2Exception("Database error.");
+                });
+
+        try {
+            service.revokeTokens(THUMBPRINT);
+            fail("Revocation should fail when a batch can not be revoked.");
+        } catch (IdentityOAuth2Exception e) {
+            assertTrue(e.getMessage().contains("0 tokens were revoked"));
+        }
+    }
+
+    @Test(expectedExceptions = IdentityOAuth2Exception.class)
+    public void testFailedReadIsReported() throws Exception {
+
+        new CertificateTokenRevocationService((thumbprint, lastTokenId, limit) -> {
+            throw new IdentityOAuth2Exception("Database error.");
+        }, (thumbprint, lastTokenId, limit) -> Collections.emptyList(), tokens -> { }).revokeTokens(THUMBPRINT);
+    }
+
+    @Test(expectedExceptions = IdentityOAuth2Exception.class)
+    public void testRevokeTokensWithoutThumbprint() throws Exception {
+
+        new CertificateTokenRevocationService((thumbprint, lastTokenId, limit) -> Collections.emptyList(),
+                (thumbprint, lastTokenId, limit) -> Collections.emptyList(), tokens -> { }).revokeTokens(" ");
+    }
+
+    private static TreeMap<String, String> getStoredTokens(int tokenCount) {
+
+        TreeMap<String, String> storedTokens = new TreeMap<>();
+        for (int i = 0; i < tokenCount; i++) {
+            storedTokens.put(String.format("tokenId%05d", i), "token" + i);
+        }
+        return storedTokens;
+    }
+
+    private static List<BoundToken> getBatch(TreeMap<String, String> storedTokens, String lastTokenId, int limit) {
+
+        List<BoundToken> batch = new ArrayList<>();
+        for (String tokenId : storedTokens.tailMap(lastTokenId, false).keySet()) {
+            if (batch.size() == limit) {
+                break;
+            }
+            batch.add(new BoundToken(tokenId, storedTokens.get(tokenId), -1234));
+        }
+        return batch;
+    }
+}
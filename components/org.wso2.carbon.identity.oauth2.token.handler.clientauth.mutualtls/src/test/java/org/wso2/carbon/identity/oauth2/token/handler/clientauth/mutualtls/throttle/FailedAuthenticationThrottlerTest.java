@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.throttle;
+
+import org.mockito.MockedStatic;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.core.util.IdentityUtil;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.CommonConstants;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSConfig;
+import org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils.MutualTLSMetrics;
+
+import java.io.ByteArrayInputStream;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+
+import javax.servlet.http.HttpServletRequest;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Test class for StripedTokenBucket and FailedAuthenticationThrottler classes.
+ */
+public class FailedAuthenticationThrottlerTest {
+
+    private static final String CERTIFICATE_CONTENT = "MIIDmzCCAoOgAwIBAgIJAJuzH6NrV5s5MA0GCSqGSIb3DQEBCwUAMGQxCzAJBgNV"
+            + "BAYTAlNMMQswCQYDVQQIDAJXUDEQMA4GA1UEBwwHQ29sb21ibzENMAsGA1UECgwE"
+            + "d3NvMjENMAsGA1UECwwEd3NvMjEYMBYGA1UEAwwPdHJhdmVsb2NpdHkuY29tMB4X"
+            + "DTE4MDIwNjEwNTk1N1oXDTE5MDIwNjEwNTk1N1owZDELMAkGA1UEBhMCU0wxCzAJ"
+            + "BgNVBAgMAldQMRAwDgYDVQQHDAdDb2xvbWJvMQ0wCwYDVQQKDAR3c28yMQ0wCwYD"
+            + "VQQLDAR3c28yMRgwFgYDVQQDDA90cmF2ZWxvY2l0eS5jb20wggEiMA0GCSqGSIb3"
+            + "DQEBAQUAA4IBDwAwggEKAoIBAQDlKn3dmaLW7iBOKdlWY8Go8Q7kR6HNY/8j0arv"
+            + "EcZYqMrihcSX5i5Mz57t6Z3xpaGay2jPWND7dDA/RocircleBKQk0X2OxoEYba3W"
+            + "t477EpN9RWGAZuuANUSVKjC8FsNYhEp9y59IuxK+IgDAEfR8O2RNLYA6O3UjBC/R"
+            + "f443CwOE4jFm3eVAeLIBudn/viC56rPBozVX4DxPaHIzxocfK6EpDljEG4lJ7otS"
+            + "SbIpPlmAO/0f8F1Q6syv+sCkPRGn/OjTXWtUg6QXAclguOCl3MI+pLMThQUATcKb"
+            + "2QkPl8r8/b/S8qMRKzSVYyjNP+CsDRO/MdlC50QZSJBaNYqdAgMBAAGjUDBOMB0G"
+            + "A1UdDgQWBBSIXyhWV6Ac+FiqdXEeQwqzJfFLhDAfBgNVHSMEGDAWgBSIXyhWV6Ac"
+            + "+FiqdXEeQwqzJfFLhDAMBgNVHRMEBTADAQH/MA0GCSqGSIb3DQEBCwUAA4IBAQBQ"
+            + "S2jmfzF8x1iwmRqXILZ6qkF5ABAlNa3Z3bMFB7uErw2BxASMOLWfjZdEcyICDGIf"
+            + "ZeYchqEPTvv/RIqDlu8xda3N2kRp1un5Hfffavm6ZWR3J8LdsnSjrehZ/afxuy8a"
+            + "OFKiRtj9tqpG3C/s/NBJ9Gl4u5YhihOSJG9ELihJSxWDYI641AOalWnUQ/SxfeCO"
+            + "TY75aViCAD6QDmBxe/opQYExBdgNOCQ6HdP5WWBT6EEggBe/mqOM/dchj57rpPtw"
+            + "IOQjy9UCaY7tq4SmhAJyab0mxjcFoRBpzOJIDh+N8ozSDK+MepyFSwtW5zVacOiG"
+            + "OQUrBTGXQFZOGKje8sbS";
+    private static final String CLIENT_ID = "someClientId";
+    private static final String ADDRESS = "10.100.0.1";
+
+    private final FailedAuthenticationThrottler throttler = FailedAuthenticationThrottler.getInstance();
+
+    @AfterMethod
+    public void tearDown() {
+
+        throttler.stop();
+    }
+
+    @Test
+    public void testBucketIsExhaustedAfterCapacity() {
+
+        StripedTokenBucket bucket = new StripedTokenBucket(16, 3, 60000);
+        for (int i = 0; i < 3; i++) {
+            assertFalse(bucket.isExhausted(42L));
+            bucket.consume(42L);
+        }
+        assertTrue(bucket.isExhausted(42L));
+        assertFalse(bucket.isExhausted(43L));
+        // Key 42 is mapped to buckets 10 and 0, while key 43 is mapped to buckets 11 and 0.
+        assertEquals(bucket.getExhaustedBucketCount(), 2);
+    }
+
+    @Test
+    public void testBucketRefills() throws Exception {
+
+        StripedTokenBucket bucket = new StripedTokenBucket(16, 2, 50);
+        bucket.consume(7L);
+        bucket.consume(7L);
+        assertTrue(bucket.isExhausted(7L));
+        Thread.sleep(120);
+        assertFalse(bucket.isExhausted(7L));
+    }
+
+    @Test
+    public void testBucketCountIsRoundedToPowerOfTwo() {
+
+        assertEquals(new StripedTokenBucket(1000, 1, 1000).getBucketCount(), 1024);
+        assertEquals(new StripedTokenBucket(1024, 1, 1000).getBucketCount(), 1024);
+        assertEquals(new StripedTokenBucket(1, 1, 1000).getBucketCount(), 2);
+    }
+
+    @Test
+    public void testDisabledThrottlerDoesNotThrottle() throws Exception {
+
+        X509Certificate certificate = getCertificate();
+        for (int i = 0; i < 100; i++) {
+            throttler.recordFailure(CLIENT_ID, certificate, ADDRESS);
+        }
+        assertFalse(throttler.isEnabled());
+        assertFalse(throttler.isClientThrottled(CLIENT_ID, certificate));
+        assertFalse(throttler.isAddressThrottled(ADDRESS));
+    }
+
+    @Test
+    public void testClientIsThrottledForPresentedCertificate() throws Exception {
+
+        throttler.configure(new StripedTokenBucket(1024, 2, 60000), new StripedTokenBucket(1024, 100, 60000));
+        X509Certificate certificate = getCertificate();
+        long throttled = MutualTLSMetrics.getCount(MutualTLSMetrics.Counter.AUTH_THROTTLED);
+
+        throttler.recordFailure(CLIENT_ID, certificate, ADDRESS);
+        assertFalse(throttler.isClientThrottled(CLIENT_ID, certificate));
+        throttler.recordFailure(CLIENT_ID, certificate, ADDRESS);
+        assertTrue(throttler.isClientThrottled(CLIENT_ID, certificate));
+        assertEquals(MutualTLSMetrics.getCount(MutualTLSMetrics.Counter.AUTH_THROTTLED), throttled + 1);
+
+        assertFalse(throttler.isClientThrottled(CLIENT_ID, null));
+        assertFalse(throttler.isClientThrottled("otherClientId", certificate));
+        assertFalse(throttler.isAddressThrottled(ADDRESS));
+        assertEquals(MutualTLSMetrics.getGaugeValues().get("FailedAuthenticationThrottle.ExhaustedClientBuckets"),
+                Long.valueOf(2));
+    }
+
+    @Test
+    public void testAddressIsThrottled() throws Exception {
+
+        throttler.configure(new StripedTokenBucket(1024, 100, 60000), new StripedTokenBucket(1024, 3, 60000));
+        for (int i = 0; i < 3; i++) {
+            assertFalse(throttler.isAddressThrottled(ADDRESS));
+            throttler.recordFailure(CLIENT_ID + i, null, ADDRESS);
+        }
+        assertTrue(throttler.isAddressThrottled(ADDRESS));
+        assertFalse(throttler.isAddressThrottled("10.100.0.2"));
+        assertFalse(throttler.isAddressThrottled(null));
+    }
+
+    @Test
+    public void testSourceAddressIsConnectionAddress() {
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getRemoteAddr()).thenReturn(ADDRESS);
+        when(request.getHeader(CommonConstants.FORWARDED_FOR_HEADER)).thenReturn("10.100.0.2");
+
+        // The forwarded address is ignored unless the connection comes from a trusted proxy.
+        assertEquals(throttler.getSourceAddress(request), ADDRESS);
+    }
+
+    @Test
+    public void testSourceAddressIsForwardedByTrustedProxies() {
+
+        try (MockedStatic<IdentityUtil> identityUtil = mockStatic(IdentityUtil.class)) {
+            identityUtil.when(() -> IdentityUtil.getProperty(CommonConstants.FAILED_AUTH_THROTTLE_TRUSTED_PROXIES))
+                    .thenReturn("192.168.0.1, 192.168.0.2");
+            MutualTLSConfig.reload();
+            HttpServletRequest request = mock(HttpServletRequest.class);
+            when(request.getRemoteAddr()).thenReturn("192.168.0.1");
+
+            when(request.getHeader(CommonConstants.FORWARDED_FOR_HEADER)).thenReturn(null);
+            assertEquals(throttler.getSourceAddress(request), "192.168.0.1");
+            // Addresses set by the client are left of the address appended by the first trusted proxy.
+            when(request.getHeader(CommonConstants.FORWARDED_FOR_HEADER))
+                    .thenReturn("10.100.0.2, " + ADDRESS + ", 192.168.0.2");
+            assertEquals(throttler.getSourceAddress(request), ADDRESS);
+            when(request.getHeader(CommonConstants.FORWARDED_FOR_HEADER)).thenReturn("192.168.0.2");
+            assertEquals(throttler.getSourceAddress(request), "192.168.0.2");
+        } finally {
+            MutualTLSConfig.reload();
+        }
+    }
+
+    private static X509Certificate getCertificate() throws Exception {
+
+        return (X509Certificate) CertificateFactory.getInstance("X.509").generateCertificate(
+                new ByteArrayInputStream(Base64.getDecoder().decode(CERTIFICATE_CONTENT)));
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Test class for BoundedCache class.
+ */
+public class BoundedCacheTest {
+
+    @Test
+    public void testPutAndRemove() {
+
+        BoundedCache<String, Integer> cache = new BoundedCache<>(4);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        assertEquals(cache.get("a"), Integer.valueOf(1));
+        assertEquals(cache.size(), 2);
+
+        cache.remove("a", 3);
+        assertEquals(cache.get("a"), Integer.valueOf(1));
+        cache.remove("a", 1);
+        assertNull(cache.get("a"));
+        cache.remove("b");
+        assertEquals(cache.size(), 0);
+    }
+
+    @Test
+    public void testEvictsStaleEntriesFirst() {
+
+        BoundedCache<String, Integer> cache = new BoundedCache<>(8);
+        for (int i = 0; i < 8; i++) {
+            cache.put("key" + i, i);
+        }
+        cache.put("key8", 8, value -> value % 2 == 0);
+
+        assertEquals(cache.size(), 5);
+        for (int i = 1; i < 8; i += 2) {
+            assertEquals(cache.get("key" + i), Integer.valueOf(i));
+        }
+        assertEquals(cache.get("key8"), Integer.valueOf(8));
+    }
+
+    @Test
+    public void testSizeIsBounded() {
+
+        BoundedCache<Integer, Integer> cache = new BoundedCache<>(10);
+        for (int i = 0; i < 100; i++) {
+            cache.put(i, i);
+            assertTrue(cache.size() <= cache.getCapacity());
+        }
+        assertEquals(cache.get(99), Integer.valueOf(99));
+
+        // Replacing an entry of a full cache does not evict anything.
+        int size = cache.size();
+        cache.put(99, 100);
+        assertEquals(cache.size(), size);
+
+        cache.clear();
+        assertEquals(cache.size(), 0);
+    }
+
+    @Test
+    public void testRemoveIf() {
+
+        BoundedCache<String, String> cache = new BoundedCache<>(10);
+        cache.put("client1:a", "a");
+        cache.put("client1:b", "b");
+        cache.put("client2:a", "a");
+        cache.removeIf(key -> key.startsWith("client1:"));
+
+        assertEquals(cache.size(), 1);
+        assertEquals(cache.get("client2:a"), "a");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidCapacity() {
+
+        new BoundedCache<String, String>(0);
+    }
+}
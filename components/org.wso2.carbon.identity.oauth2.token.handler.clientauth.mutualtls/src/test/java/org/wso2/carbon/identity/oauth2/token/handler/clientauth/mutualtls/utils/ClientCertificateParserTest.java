@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Base64;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+/**
+ * Test class for ClientCertificateParser class.
+ */
+public class ClientCertificateParserTest {
+
+    private static final String CERTIFICATE_CONTENT = "MIIDmzCCAoOgAwIBAgIJAJuzH6NrV5s5MA0GCSqGSIb3DQEBCwUAMGQxCzAJBgNV"
+            + "BAYTAlNMMQswCQYDVQQIDAJXUDEQMA4GA1UEBwwHQ29sb21ibzENMAsGA1UECgwE\n"
+            + "d3NvMjENMAsGA1UECwwEd3NvMjEYMBYGA1UEAwwPdHJhdmVsb2NpdHkuY29tMB4X\n"
+            + "DTE4MDIwNjEwNTk1N1oXDTE5MDIwNjEwNTk1N1owZDELMAkGA1UEBhMCU0wxCzAJ\n"
+            + "BgNVBAgMAldQMRAwDgYDVQQHDAdDb2xvbWJvMQ0wCwYDVQQKDAR3c28yMQ0wCwYD\n"
+            + "VQQLDAR3c28yMRgwFgYDVQQDDA90cmF2ZWxvY2l0eS5jb20wggEiMA0GCSqGSIb3\n"
+            + "DQEBAQUAA4IBDwAwggEKAoIBAQDlKn3dmaLW7iBOKdlWY8Go8Q7kR6HNY/8j0arv\n"
+            + "EcZYqMrihcSX5i5Mz57t6Z3xpaGay2jPWND7dDA/RocircleBKQk0X2OxoEYba3W\n"
+            + "t477EpN9RWGAZuuANUSVKjC8FsNYhEp9y59IuxK+IgDAEfR8O2RNLYA6O3UjBC/R\n"
+            + "f443CwOE4jFm3eVAeLIBudn/viC56rPBozVX4DxPaHIzxocfK6EpDljEG4lJ7otS\n"
+            + "SbIpPlmAO/0f8F1Q6syv+sCkPRGn/OjTXWtUg6QXAclguOCl3MI+pLMThQUATcKb\n"
+            + "2QkPl8r8/b/S8qMRKzSVYyjNP+CsDRO/MdlC50QZSJBaNYqdAgMBAAGjUDBOMB0G\n"
+            + "A1UdDgQWBBSIXyhWV6Ac+FiqdXEeQwqzJfFLhDAfBgNVHSMEGDAWgBSIXyhWV6Ac\n"
+            + "+FiqdXEeQwqzJfFLhDAMBgNVHRMEBTADAQH/MA0GCSqGSIb3DQEBCwUAA4IBAQBQ\n"
+            + "S2jmfzF8x1iwmRqXILZ6qkF5ABAlNa3Z3bMFB7uErw2BxASMOLWfjZdEcyICDGIf\n"
+            + "ZeYchqEPTvv/RIqDlu8xda3N2kRp1un5Hfffavm6ZWR3J8LdsnSjrehZ/afxuy8a\n"
+            + "OFKiRtj9tqpG3C/s/NBJ9Gl4u5YhihOSJG9ELihJSxWDYI641AOalWnUQ/SxfeCO\n"
+            + "TY75aViCAD6QDmBxe/opQYExBdgNOCQ6HdP5WWBT6EEggBe/mqOM/dchj57rpPtw\n"
+            + "IOQjy9UCaY7tq4SmhAJyab0mxjcFoRBpzOJIDh+N8ozSDK+MepyFSwtW5zVacOiG\n" + "OQUrBTGXQFZOGKje8sbS";
+
+    private static final String PEM_CERTIFICATE = CommonConstants.BEGIN_CERT + "\n" + CERTIFICATE_CONTENT + "\n" +
+            CommonConstants.END_CERT;
+
+    private final ClientCertificateParser parser = new ClientCertificateParser(
+            CommonConstants.DEFAULT_MAX_CERT_HEADER_LENGTH, CommonConstants.DEFAULT_MAX_CERT_LENGTH);
+
+    @DataProvider(name = "validCertificateContent")
+    public Object[][] validCertificateContent() throws Exception {
+
+        return new Object[][]{
+                {CERTIFICATE_CONTENT},
+                {PEM_CERTIFICATE},
+                {PEM_CERTIFICATE.replace("\n", "\\n")},
+                {URLEncoder.encode(PEM_CERTIFICATE, StandardCharsets.UTF_8.name())},
+                {PEM_CERTIFICATE + "\n" + PEM_CERTIFICATE}
+        };
+    }
+
+    @Test(dataProvider = "validCertificateContent")
+    public void testParse(String content) throws Exception {
+
+        X509Certificate certificate = parser.parse(content);
+        assertNotNull(certificate);
+        assertEquals(certificate.getSubjectDN().toString(),
+                "CN=travelocity.com, OU=wso2, O=wso2, L=Colombo, ST=WP, C=SL");
+    }
+
+    @DataProvider(name = "invalidCertificateContent")
+    public Object[][] invalidCertificateContent() {
+
+        byte[] junk = new byte[512];
+        Arrays.fill(junk, (byte) 0x41);
+        byte[] truncated = Arrays.copyOf(Base64.getMimeDecoder().decode(CERTIFICATE_CONTENT), 200);
+        return new Object[][]{
+                {"not a certificate %zz", MutualTLSMetrics.Counter.CERT_MALFORMED_ENCODING},
+                {Base64.getEncoder().encodeToString(junk), MutualTLSMetrics.Counter.CERT_MALFORMED_STRUCTURE},
+                {Base64.getEncoder().encodeToString(truncated), MutualTLSMetrics.Counter.CERT_MALFORMED_STRUCTURE},
+                {Base64.getEncoder().encodeToString(new byte[CommonConstants.DEFAULT_MAX_CERT_LENGTH + 3]),
+                        MutualTLSMetrics.Counter.CERT_TOO_LARGE},
+                {new String(new char[CommonConstants.DEFAULT_MAX_CERT_HEADER_LENGTH + 1]).replace('\0', 'A'),
+                        MutualTLSMetrics.Counter.CERT_HEADER_TOO_LARGE}
+        };
+    }
+
+    @Test(dataProvider = "invalidCertificateContent")
+    public void testParseRejectsInvalidContent(String content, MutualTLSMetrics.Counter counter) {
+
+        long rejectedBefore = MutualTLSMetrics.getCount(counter);
+        try {
+            parser.parse(content);
+            fail("Invalid certificate content was accepted.");
+        } catch (CertificateException e) {
+            assertEquals(MutualTLSMetrics.getCount(counter), rejectedBefore + 1);
+        }
+    }
+
+    @Test
+    public void testGetCertificateLength() {
+
+        byte[] der = Base64.getMimeDecoder().decode(CERTIFICATE_CONTENT);
+        assertEquals(ClientCertificateParser.getCertificateLength(der), der.length);
+        assertEquals(ClientCertificateParser.getCertificateLength(Arrays.copyOf(der, der.length + 10)), der.length);
+        assertEquals(ClientCertificateParser.getCertificateLength(new byte[]{0x30, (byte) 0x84, 0, 0, 0, 1}), -1);
+        assertEquals(ClientCertificateParser.getCertificateLength(new byte[]{0x31, 0x02, 0x30, 0x00}), -1);
+    }
+
+    @Test
+    public void testLogRateLimiter() {
+
+        LogRateLimiter logRateLimiter = new LogRateLimiter(60000);
+        assertTrue(logRateLimiter.tryAcquire());
+        assertFalse(logRateLimiter.tryAcquire());
+        assertFalse(logRateLimiter.tryAcquire());
+        assertEquals(logRateLimiter.drainSuppressedCount(), 2);
+        assertEquals(logRateLimiter.drainSuppressedCount(), 0);
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Test class for MutualTLSConfig class.
+ */
+public class MutualTLSConfigTest {
+
+    @Test
+    public void testDefaults() {
+
+        MutualTLSConfig config = MutualTLSConfig.load(new HashMap<String, String>()::get);
+        assertNull(config.getClientCertificateHeader());
+        assertEquals(config.getMaxCertificateHeaderLength(), CommonConstants.DEFAULT_MAX_CERT_HEADER_LENGTH);
+        assertEquals(config.getMaxCertificateLength(), CommonConstants.DEFAULT_MAX_CERT_LENGTH);
+        assertEquals(config.getJwksConnectionTimeout(), 0);
+        assertEquals(config.getJwksReadTimeout(), 0);
+        assertFalse(config.isCertificatePrefilterEnabled());
+        assertEquals(config.getCertificatePrefilterFalsePositiveProbability(),
+                CommonConstants.DEFAULT_CERT_PREFILTER_FALSE_POSITIVE_PROBABILITY);
+        assertFalse(config.isFailedAuthenticationThrottleEnabled());
+        assertEquals(config.getFailedAuthenticationThrottleBucketCount(),
+                CommonConstants.DEFAULT_FAILED_AUTH_THROTTLE_BUCKET_COUNT);
+        assertTrue(config.getFailedAuthenticationThrottleTrustedProxies().isEmpty());
+        assertFalse(config.isIntrospectionCacheEnabled());
+        assertEquals(config.getIntrospectionCacheCapacity(), CommonConstants.DEFAULT_INTROSPECTION_CACHE_CAPACITY);
+        assertEquals(config.getBatchIntrospectionMaxSize(), CommonConstants.DEFAULT_BATCH_INTROSPECTION_MAX_SIZE);
+        assertEquals(config.getBindingVerifierCacheCapacity(), CommonConstants.DEFAULT_BINDING_VERIFIER_CACHE_CAPACITY);
+        assertEquals(config.getTokenRevocationBatchSize(), CommonConstants.DEFAULT_TOKEN_REVOCATION_BATCH_SIZE);
+        assertTrue(config.isTokenRevocationLegacyScopeScanEnabled());
+        assertFalse(config.isTokenReuseEnabled());
+        assertTrue(config.getTokenBindingGrantHandlers().isEmpty());
+        assertEquals(config.getTokenReuseMinRemainingLifetime(),
+                CommonConstants.DEFAULT_TOKEN_REUSE_MIN_REMAINING_LIFETIME);
+        assertTrue(config.isJwksNearCacheEnabled());
+        assertEquals(config.getJwksNearCacheMaxWeight(), CommonConstants.DEFAULT_JWKS_NEAR_CACHE_MAX_WEIGHT);
+        assertEquals(config.getJwksNearCacheTimeout(), CommonConstants.DEFAULT_JWKS_NEAR_CACHE_TIMEOUT);
+        assertEquals(config.getJwksRotationNoticeMinInterval(),
+                CommonConstants.DEFAULT_JWKS_ROTATION_NOTICE_MIN_INTERVAL);
+        assertFalse(config.isJwksRefreshOnMissEnabled());
+        assertEquals(config.getJwksRefreshOnMissCooldown(), CommonConstants.DEFAULT_JWKS_REFRESH_ON_MISS_COOLDOWN);
+        assertEquals(config.getJwksMirrorHedgeDelay(), CommonConstants.DEFAULT_JWKS_MIRROR_HEDGE_DELAY);
+        assertNull(config.getJwksLocalDirectory());
+        assertNull(config.getSnapshotFile());
+        assertEquals(config.getSnapshotWriteInterval(), CommonConstants.DEFAULT_JWKS_SNAPSHOT_WRITE_INTERVAL);
+        assertEquals(config.getSnapshotMaxAge(), CommonConstants.DEFAULT_JWKS_SNAPSHOT_MAX_AGE);
+    }
+
+    @Test
+    public void testConfiguredValues() {
+
+        Map<String, String> properties = new HashMap<>();
+        properties.put(CommonConstants.MTLS_AUTH_HEADER, " x-wso2-mtls-cert ");
+        properties.put(CommonConstants.MAX_CERT_LENGTH, "8192");
+        properties.put(CommonConstants.HTTP_CONNECTION_TIMEOUT_XPATH, "2000");
+        properties.put(CommonConstants.HTTP_READ_TIMEOUT_XPATH, "3000");
+        properties.put(CommonConstants.CERT_PREFILTER_ENABLE, "true");
+        properties.put(CommonConstants.CERT_PREFILTER_FALSE_POSITIVE_PROBABILITY, "0.01");
+        properties.put(CommonConstants.FAILED_AUTH_THROTTLE_ENABLE, "true");
+        properties.put(CommonConstants.FAILED_AUTH_THROTTLE_CLIENT_CAPACITY, "5");
+        properties.put(CommonConstants.INTROSPECTION_CACHE_ENABLE, "true");
+        properties.put(CommonConstants.INTROSPECTION_CACHE_CAPACITY, "500");
+        properties.put(CommonConstants.TOKEN_REVOCATION_SCAN_LEGACY_SCOPES, "false");
+        properties.put(CommonConstants.TOKEN_BINDING_GRANT_HANDLERS,
+                "urn:ietf:params:oauth:grant-type:jwt-bearer = org.example.JWTBearerGrantHandler, invalid,"
+                        + "password=org.example.PasswordGrantHandler");
+
+        MutualTLSConfig config = MutualTLSConfig.load(properties::get);
+        assertEquals(config.getClientCertificateHeader(), "x-wso2-mtls-cert");
+        assertEquals(config.getMaxCertificateLength(), 8192);
+        assertEquals(config.getJwksConnectionTimeout(), 2000);
+        assertEquals(config.getJwksReadTimeout(), 3000);
+        assertTrue(config.isCertificatePrefilterEnabled());
+        assertEquals(config.getCertificatePrefilterFalsePositiveProbability(), 0.01);
+        assertTrue(config.isFailedAuthenticationThrottleEnabled());
+        assertEquals(config.getFailedAuthenticationThrottleClientCapacity(), 5);
+        assertTrue(config.isIntrospectionCacheEnabled());
+        assertEquals(config.getIntrospectionCacheCapacity(), 500);
+        assertFalse(config.isTokenRevocationLegacyScopeScanEnabled());
+        assertEquals(config.getTokenBindingGrantHandlers().size(), 2);
+        assertEquals(config.getTokenBindingGrantHandlers().get("urn:ietf:params:oauth:grant-type:jwt-bearer"),
+                "org.example.JWTBearerGrantHandler");
+        assertEquals(config.getTokenBindingGrantHandlers().get("password"), "org.example.PasswordGrantHandler");
+    }
+
+    @Test
+    public void testInvalidValuesFallBackToDefaults() {
+
+        Map<String, String> properties = new HashMap<>();
+        properties.put(CommonConstants.MAX_CERT_HEADER_LENGTH, "-1");
+        properties.put(CommonConstants.MAX_CERT_LENGTH, "large");
+        properties.put(CommonConstants.HTTP_READ_TIMEOUT_XPATH, "-5");
+        properties.put(CommonConstants.CERT_PREFILTER_FALSE_POSITIVE_PROBABILITY, "1.5");
+        properties.put(CommonConstants.FAILED_AUTH_THROTTLE_ADDRESS_CAPACITY, "1000000");
+
+        MutualTLSConfig config = MutualTLSConfig.load(properties::get);
+        assertEquals(config.getMaxCertificateHeaderLength(), CommonConstants.DEFAULT_MAX_CERT_HEADER_LENGTH);
+        assertEquals(config.getMaxCertificateLength(), CommonConstants.DEFAULT_MAX_CERT_LENGTH);
+        assertEquals(config.getJwksReadTimeout(), 0);
+        assertEquals(config.getCertificatePrefilterFalsePositiveProbability(),
+                CommonConstants.DEFAULT_CERT_PREFILTER_FALSE_POSITIVE_PROBABILITY);
+        assertEquals(config.getFailedAuthenticationThrottleAddressCapacity(),
+                CommonConstants.DEFAULT_FAILED_AUTH_THROTTLE_ADDRESS_CAPACITY);
+    }
+
+    @Test
+    public void testUpdateNotifiesReloadListeners() {
+
+        MutualTLSConfig previous = MutualTLSConfig.getInstance();
+        List<MutualTLSConfig> notified = new ArrayList<>();
+        Consumer<MutualTLSConfig> listener = notified::add;
+        MutualTLSConfig.addReloadListener(listener);
+        try {
+            MutualTLSConfig config = MutualTLSConfig.load(new HashMap<String, String>()::get);
+            MutualTLSConfig.update(config);
+            assertSame(MutualTLSConfig.getInstance(), config);
+            assertEquals(notified.size(), 1);
+            assertSame(notified.get(0), config);
+        } finally {
+            MutualTLSConfig.removeReloadListener(listener);
+            MutualTLSConfig.update(previous);
+        }
+        assertEquals(notified.size(), 1);
+    }
+}
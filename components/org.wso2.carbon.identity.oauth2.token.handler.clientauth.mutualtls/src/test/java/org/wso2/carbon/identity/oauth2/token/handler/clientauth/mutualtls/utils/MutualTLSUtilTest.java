@@ -23,7 +23,6 @@ import org.testng.annotations.Test;
 import org.wso2.carbon.identity.application.common.model.ServiceProvider;
 import org.wso2.carbon.identity.application.common.model.ServiceProviderProperty;
 import org.wso2.carbon.identity.common.testng.WithCarbonHome;
-import org.wso2.carbon.identity.core.util.IdentityUtil;
 import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
 
 import java.io.ByteArrayInputStream;
@@ -104,15 +103,4 @@ public class MutualTLSUtilTest {
             assertTrue(MutualTLSUtil.isJwksUriConfigured(serviceProvider));
         }
     }
-
-    @Test
-    public void testReadHTTPConnectionConfigValue() {
-
-        try (MockedStatic<IdentityUtil> identityUtil = mockStatic(IdentityUtil.class)) {
-            identityUtil.when(() -> IdentityUtil.getProperty("path")).thenReturn("xPath");
-            assertEquals(MutualTLSUtil.readHTTPConnectionConfigValue("path"), 0);
-            identityUtil.when(() -> IdentityUtil.getProperty("path")).thenReturn("123");
-            assertEquals(MutualTLSUtil.readHTTPConnectionConfigValue("path"), 123);
-        }
-    }
 }
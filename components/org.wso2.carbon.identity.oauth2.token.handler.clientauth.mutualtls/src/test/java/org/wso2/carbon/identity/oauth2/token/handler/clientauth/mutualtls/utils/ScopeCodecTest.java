@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Test class for ScopeCodec class.
+ */
+public class ScopeCodecTest {
+
+    private static final String THUMBPRINT = "bwcK0esc3ACC3DB2Y5_lESsXE8o9ltc05O89jdN-dg2";
+    private static final String BINDING_SCOPE = "x5t#SHA256:" + THUMBPRINT;
+    private static final String TIMESTAMP_SCOPE = "TIME_1700000000000";
+
+    @Test
+    public void testBindingScopes() {
+
+        String[] scopes = {"openid", BINDING_SCOPE, "profile"};
+        assertTrue(ScopeCodec.isBindingScope(BINDING_SCOPE));
+        assertEquals(ScopeCodec.getBindingScope(THUMBPRINT), BINDING_SCOPE);
+        assertFalse(ScopeCodec.isBindingScope("openid"));
+        assertFalse(ScopeCodec.isBindingScope(TIMESTAMP_SCOPE));
+        assertTrue(ScopeCodec.isInternalScope(TIMESTAMP_SCOPE));
+        assertEquals(ScopeCodec.getBindingThumbprint(scopes), THUMBPRINT);
+        assertNull(ScopeCodec.getBindingThumbprint(new String[]{"openid"}));
+        assertEquals(ScopeCodec.removeBindingScopes(scopes), new String[]{"openid", "profile"});
+
+        String[] unbound = {"openid", "profile"};
+        assertSame(ScopeCodec.removeBindingScopes(unbound), unbound);
+    }
+
+    @Test
+    public void testAppendInternalScopes() {
+
+        String[] requestedScopes = {"openid"};
+        assertEquals(ScopeCodec.appendInternalScopes(requestedScopes,
+                new String[]{"openid", BINDING_SCOPE, "profile", TIMESTAMP_SCOPE}),
+                new String[]{"openid", BINDING_SCOPE, TIMESTAMP_SCOPE});
+        assertSame(ScopeCodec.appendInternalScopes(requestedScopes, new String[]{"openid", "profile"}),
+                requestedScopes);
+        assertSame(ScopeCodec.appendInternalScopes(requestedScopes, null), requestedScopes);
+    }
+
+    @DataProvider(name = "scopeStrings")
+    public Object[][] scopeStrings() {
+
+        return new Object[][]{
+                {"openid profile", "openid profile", null},
+                {"openid " + BINDING_SCOPE + " profile", "openid profile", THUMBPRINT},
+                {BINDING_SCOPE, "", THUMBPRINT},
+                {"  openid\t" + BINDING_SCOPE + "\n profile  ", "openid profile", THUMBPRINT},
+                {"openid x5t#SHA256:", "openid", null}
+        };
+    }
+
+    @Test(dataProvider = "scopeStrings")
+    public void testDecode(String scopeString, String expectedScope, String expectedThumbprint) {
+
+        ScopeCodec.DecodedScope decodedScope = ScopeCodec.decode(scopeString);
+        assertEquals(decodedScope.getScope(), expectedScope);
+        assertEquals(decodedScope.getBindingValue(), expectedThumbprint);
+        assertEquals(decodedScope.hasBinding(), expectedThumbprint != null);
+        if (expectedThumbprint != null) {
+            assertEquals(decodedScope.getBindingMethod(), "x5t#SHA256");
+        }
+    }
+
+    @Test
+    public void testDecodeWithoutBindingScopeReturnsSameString() {
+
+        String scopeString = "openid  profile";
+        assertSame(ScopeCodec.decode(scopeString).getScope(), scopeString);
+    }
+}
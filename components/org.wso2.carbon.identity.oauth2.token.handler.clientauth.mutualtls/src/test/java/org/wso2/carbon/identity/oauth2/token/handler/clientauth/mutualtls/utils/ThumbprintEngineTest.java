@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Base64;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Test class for ThumbprintEngine and CertificateThumbprint classes.
+ */
+public class ThumbprintEngineTest {
+
+    private static final String CERTIFICATE_CONTENT = "MIIDmzCCAoOgAwIBAgIJAJuzH6NrV5s5MA0GCSqGSIb3DQEBCwUAMGQxCzAJBgNV"
+            + "BAYTAlNMMQswCQYDVQQIDAJXUDEQMA4GA1UEBwwHQ29sb21ibzENMAsGA1UECgwE"
+            + "d3NvMjENMAsGA1UECwwEd3NvMjEYMBYGA1UEAwwPdHJhdmVsb2NpdHkuY29tMB4X"
+            + "DTE4MDIwNjEwNTk1N1oXDTE5MDIwNjEwNTk1N1owZDELMAkGA1UEBhMCU0wxCzAJ"
+            + "BgNVBAgMAldQMRAwDgYDVQQHDAdDb2xvbWJvMQ0wCwYDVQQKDAR3c28yMQ0wCwYD"
+            + "VQQLDAR3c28yMRgwFgYDVQQDDA90cmF2ZWxvY2l0eS5jb20wggEiMA0GCSqGSIb3"
+            + "DQEBAQUAA4IBDwAwggEKAoIBAQDlKn3dmaLW7iBOKdlWY8Go8Q7kR6HNY/8j0arv"
+            + "EcZYqMrihcSX5i5Mz57t6Z3xpaGay2jPWND7dDA/RocircleBKQk0X2OxoEYba3W"
+            + "t477EpN9RWGAZuuANUSVKjC8FsNYhEp9y59IuxK+IgDAEfR8O2RNLYA6O3UjBC/R"
+            + "f443CwOE4jFm3eVAeLIBudn/viC56rPBozVX4DxPaHIzxocfK6EpDljEG4lJ7otS"
+            + "SbIpPlmAO/0f8F1Q6syv+sCkPRGn/OjTXWtUg6QXAclguOCl3MI+pLMThQUATcKb"
+            + "2QkPl8r8/b/S8qMRKzSVYyjNP+CsDRO/MdlC50QZSJBaNYqdAgMBAAGjUDBOMB0G"
+            + "A1UdDgQWBBSIXyhWV6Ac+FiqdXEeQwqzJfFLhDAfBgNVHSMEGDAWgBSIXyhWV6Ac"
+            + "+FiqdXEeQwqzJfFLhDAMBgNVHRMEBTADAQH/MA0GCSqGSIb3DQEBCwUAA4IBAQBQ"
+            + "S2jmfzF8x1iwmRqXILZ6qkF5ABAlNa3Z3bMFB7uErw2BxASMOLWfjZdEcyICDGIf"
+            + "ZeYchqEPTvv/RIqDlu8xda3N2kRp1un5Hfffavm6ZWR3J8LdsnSjrehZ/afxuy8a"
+            + "OFKiRtj9tqpG3C/s/NBJ9Gl4u5YhihOSJG9ELihJSxWDYI641AOalWnUQ/SxfeCO"
+            + "TY75aViCAD6QDmBxe/opQYExBdgNOCQ6HdP5WWBT6EEggBe/mqOM/dchj57rpPtw"
+            + "IOQjy9UCaY7tq4SmhAJyab0mxjcFoRBpzOJIDh+N8ozSDK+MepyFSwtW5zVacOiG"
+            + "OQUrBTGXQFZOGKje8sbS";
+
+    @Test
+    public void testDigestsMatchMessageDigest() throws Exception {
+
+        X509Certificate certificate = getCertificate();
+        CertificateThumbprint thumbprint = ThumbprintEngine.getThumbprint(certificate);
+        byte[] sha1 = MessageDigest.getInstance("SHA-1").digest(certificate.getEncoded());
+        byte[] sha256 = MessageDigest.getInstance("SHA-256").digest(certificate.getEncoded());
+
+        assertTrue(Arrays.equals(thumbprint.getSha1(), sha1));
+        assertTrue(Arrays.equals(thumbprint.getSha256(), sha256));
+        assertTrue(thumbprint.matchesSha256(sha256));
+        assertFalse(thumbprint.matchesSha256(sha1));
+        assertEquals(thumbprint.getSha1Base64Url(), Base64.getUrlEncoder().withoutPadding().encodeToString(sha1));
+        assertEquals(thumbprint.getSha256Base64Url(),
+                Base64.getUrlEncoder().withoutPadding().encodeToString(sha256));
+    }
+
+    @Test
+    public void testSha256BufferIsReadOnlyView() throws Exception {
+
+        X509Certificate certificate = getCertificate();
+        CertificateThumbprint thumbprint = ThumbprintEngine.getThumbprint(certificate);
+        byte[] sha256 = MessageDigest.getInstance("SHA-256").digest(certificate.getEncoded());
+
+        ByteBuffer buffer = thumbprint.getSha256Buffer();
+        assertEquals(buffer, ByteBuffer.wrap(sha256));
+        assertTrue(buffer.isReadOnly());
+        assertTrue(thumbprint.matchesSha256(sha256));
+    }
+
+    @Test
+    public void testLegacyThumbprintFormat() throws Exception {
+
+        X509Certificate certificate = getCertificate();
+        byte[] sha1 = MessageDigest.getInstance("SHA-1").digest(certificate.getEncoded());
+        String expected = Base64.getUrlEncoder().withoutPadding().encodeToString(
+                MutualTLSUtil.hexify(sha1).getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(ThumbprintEngine.getThumbprint(certificate).getLegacySha1Thumbprint(), expected);
+    }
+
+    @Test
+    public void testDigestsAreResetBetweenCalls() {
+
+        byte[] content = new byte[2000];
+        Arrays.fill(content, (byte) 7);
+        assertEquals(ThumbprintEngine.getThumbprint(content), ThumbprintEngine.getThumbprint(content));
+        assertFalse(ThumbprintEngine.getThumbprint(content).equals(ThumbprintEngine.getThumbprint(new byte[1])));
+    }
+
+    @Test
+    public void testThumbprintOfLastCertificateIsReused() throws Exception {
+
+        X509Certificate certificate = getCertificate();
+        assertSame(ThumbprintEngine.getThumbprint(certificate), ThumbprintEngine.getThumbprint(certificate));
+    }
+
+    @Test
+    public void testMatches() throws Exception {
+
+        X509Certificate certificate = getCertificate();
+        X509Certificate sameCertificate = getCertificate();
+        assertTrue(ThumbprintEngine.matches(certificate, sameCertificate));
+        assertFalse(ThumbprintEngine.matches(certificate, null));
+        assertFalse(ThumbprintEngine.matches(null, certificate));
+    }
+
+    private static X509Certificate getCertificate() throws Exception {
+
+        return (X509Certificate) CertificateFactory.getInstance("X.509").generateCertificate(
+                new ByteArrayInputStream(Base64.getDecoder().decode(CERTIFICATE_CONTENT)));
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.utils;
+
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.oauth2.token.bindings.TokenBinding;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+/**
+ * Test class for TokenBindingUtil class.
+ */
+public class TokenBindingUtilTest {
+
+    private static final String THUMBPRINT = "bwcK0esc3ACC3DB2Y5_lESsXE8o9ltc05O89jdN-dg2";
+
+    @Test
+    public void testGetCertificateThumbprint() {
+
+        assertEquals(TokenBindingUtil.getCertificateThumbprint(
+                new TokenBinding(CommonConstants.CERTIFICATE_TOKEN_BINDING_TYPE, "reference", THUMBPRINT)),
+                THUMBPRINT);
+        assertNull(TokenBindingUtil.getCertificateThumbprint(new TokenBinding("cookie", "reference", THUMBPRINT)));
+        assertNull(TokenBindingUtil.getCertificateThumbprint(null));
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2024, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handler.clientauth.mutualtls.verifier;
+
+import org.json.JSONObject;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.common.testng.WithCarbonHome;
+
+import java.io.ByteArrayInputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Test class for CertificateBindingVerifier and ForwardedClientCertificate classes.
+ */
+
+@WithCarbonHome
+public class CertificateBindingVerifierTest {
+
+    private static final String CERTIFICATE_CONTENT = "MIIDmzCCAoOgAwIBAgIJAJuzH6NrV5s5MA0GCSqGSIb3DQEBCwUAMGQxCzAJBgNV"
+            + "BAYTAlNMMQswCQYDVQQIDAJXUDEQMA4GA1UEBwwHQ29sb21ibzENMAsGA1UECgwE"
+            + "d3NvMjENMAsGA1UECwwEd3NvMjEYMBYGA1UEAwwPdHJhdmVsb2NpdHkuY29tMB4X"
+            + "DTE4MDIwNjEwNTk1N1oXDTE5MDIwNjEwNTk1N1owZDELMAkGA1UEBhMCU0wxCzAJ"
+            + "BgNVBAgMAldQMRAwDgYDVQQHDAdDb2xvbWJvMQ0wCwYDVQQKDAR3c28yMQ0wCwYD"
+            + "VQQLDAR3c28yMRgwFgYDVQQDDA90cmF2ZWxvY2l0eS5jb20wggEiMA0GCSqGSIb3"
+            + "DQEBAQUAA4IBDwAwggEKAoIBAQDlKn3dmaLW7iBOKdlWY8Go8Q7kR6HNY/8j0arv"
+            + "EcZYqMrihcSX5i5Mz57t6Z3xpaGay2jPWND7dDA/RocircleBKQk0X2OxoEYba3W"
+            + "t477EpN9RWGAZuuANUSVKjC8FsNYhEp9y59IuxK+IgDAEfR8O2RNLYA6O3UjBC/R"
+            + "f443CwOE4jFm3eVAeLIBudn/viC56rPBozVX4DxPaHIzxocfK6EpDljEG4lJ7otS"
+            + "SbIpPlmAO/0f8F1Q6syv+sCkPRGn/OjTXWtUg6QXAclguOCl3MI+pLMThQUATcKb"
+            + "2QkPl8r8/b/S8qMRKzSVYyjNP+CsDRO/MdlC50QZSJBaNYqdAgMBAAGjUDBOMB0G"
+            + "A1UdDgQWBBSIXyhWV6Ac+FiqdXEeQwqzJfFLhDAfBgNVHSMEGDAWgBSIXyhWV6Ac"
+            + "+FiqdXEeQwqzJfFLhDAMBgNVHRMEBTADAQH/MA0GCSqGSIb3DQEBCwUAA4IBAQBQ"
+            + "S2jmfzF8x1iwmRqXILZ6qkF5ABAlNa3Z3bMFB7uErw2BxASMOLWfjZdEcyICDGIf"
+            + "ZeYchqEPTvv/RIqDlu8xda3N2kRp1un5Hfffavm6ZWR3J8LdsnSjrehZ/afxuy8a"
+            + "OFKiRtj9tqpG3C/s/NBJ9Gl4u5YhihOSJG9ELihJSxWDYI641AOalWnUQ/SxfeCO"
+            + "TY75aViCAD6QDmBxe/opQYExBdgNOCQ6HdP5WWBT6EEggBe/mqOM/dchj57rpPtw"
+            + "IOQjy9UCaY7tq4SmhAJyab0mxjcFoRBpzOJIDh+N8ozSDK+MepyFSwtW5zVacOiG"
+            + "OQUrBTGXQFZOGKje8sbS";
+    private static final String PEM = "-----BEGIN CERTIFICATE-----\n" + CERTIFICATE_CONTENT
+            + "\n-----END CERTIFICATE-----\n";
+    private static final String OTHER_THUMBPRINT = "bwcK0esc3ACC3DB2Y5_lESsXE8o9ltc05O89jdN-dg2";
+
+    private final CertificateBindingVerifier verifier = CertificateBindingVerifier.getInstance();
+    private X509Certificate certificate;
+    private byte[] digest;
+    private Map<String, Object> confirmation;
+
+    @BeforeClass
+    public void setUp() throws Exception {
+
+        byte[] encoded = Base64.getDecoder().decode(CERTIFICATE_CONTENT);
+        certificate = (X509Certificate) CertificateFactory.getInstance("X.509")
+                .generateCertificate(new ByteArrayInputStream(encoded));
+        digest = MessageDigest.getInstance("SHA-256").digest(encoded);
+        confirmation = Collections.singletonMap("x5t#S256",
+                Base64.getUrlEncoder().withoutPadding().encodeToString(digest));
+    }
+
+    @Test
+    public void testVerifyCertificate() {
+
+        assertTrue(verifier.verify(certificate, confirmation));
+        assertFalse(verifier.verify(certificate, Collections.singletonMap("x5t#S256", OTHER_THUMBPRINT)));
+        assertFalse(verifier.verify(certificate, Collections.singletonMap("x5t#S256", "not a thumbprint")));
+        assertFalse(verifier.verify(certificate, Collections.emptyMap()));
+        assertFalse(verifier.verify((X509Certificate) null, confirmation));
+    }
+
+    @Test
+    public void testConfirmationFormats() {
+
+        String thumbprint = (String) confirmation.get("x5t#S256");
+        assertEquals(CertificateBindingVerifier.getConfirmationThumbprint(confirmation), thumbprint);
+        assertEquals(CertificateBindingVerifier.getConfirmationThumbprint(thumbprint), thumbprint);
+        assertEquals(CertificateBindingVerifier.getConfirmationThumbprint(
+                new JSONObject().put("x5t#SHA256", thumbprint)), thumbprint);
+        assertNull(CertificateBindingVerifier.getConfirmationThumbprint(null));
+        assertNull(CertificateBindingVerifier.getConfirmationThumbprint(Collections.singletonMap("x5t#S256", 1)));
+    }
+
+    @Test
+    public void testVerifyEncodedCertificate() throws Exception {
+
+        assertTrue(verifier.verifyEncodedCertificate(PEM, confirmation));
+        assertTrue(verifier.verifyEncodedCertificate(CERTIFICATE_CONTENT, confirmation));
+        assertTrue(verifier.verifyEncodedCertificate(URLEncoder.encode(PEM, StandardCharsets.UTF_8.name()),
+                confirmation));
+        assertFalse(verifier.verifyEncodedCertificate(PEM, OTHER_THUMBPRINT));
+        assertFalse(verifier.verifyEncodedCertificate("bm90IGEgY2VydGlmaWNhdGU=", confirmation));
+
+        int cachedDigestCount = verifier.getCachedDigestCount();
+        assertTrue(verifier.verifyEncodedCertificate(PEM, confirmation));
+        assertEquals(verifier.getCachedDigestCount(), cachedDigestCount);
+    }
+
+    @Test
+    public void testVerifyForwardedCertificate() throws Exception {
+
+        StringBuilder hash = new StringBuilder();
+        for (byte b : digest) {
+            hash.append(String.format("%02x", b));
+        }
+        String cert = URLEncoder.encode(PEM, StandardCharsets.UTF_8.name());
+        String subject = "\"CN=travelocity.com,OU=wso2\\\";O=wso2\"";
+
+        assertTrue(verifier.verifyForwardedCertificate("By=spiffe://gateway;Hash=" + hash + ";Subject=" + subject,
+                confirmation));
+        assertTrue(verifier.verifyForwardedCertificate("By=spiffe://gateway;Subject=" + subject + ";Cert=\"" + cert
+                + "\"", confirmation));
+        // Only the element added by the proxy terminating the connection of the client is considered.
+        assertFalse(verifier.verifyForwardedCertificate("By=spiffe://gateway;Hash=" + OTHER_THUMBPRINT
+                + ",By=spiffe://internal;Hash=" + hash, confirmation));
+        assertFalse(verifier.verifyForwardedCertificate("By=spiffe://gateway", confirmation));
+
+        ForwardedClientCertificate forwarded = ForwardedClientCertificate.parse(" Subject=" + subject
+                + "; hash = " + hash + " ;Cert=\"" + cert + "\",Hash=other");
+        assertEquals(forwarded.getHash(), hash.toString());
+        assertEquals(forwarded.getCert(), cert);
+    }
+}